@@ -0,0 +1,91 @@
+package com.github.avifimageio.jmh;
+
+import com.github.avifimageio.Avif;
+import com.github.avifimageio.AvifDecoderOptions;
+import com.github.avifimageio.DecodeResult;
+import com.github.avifimageio.ImageInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解码路径基准：{@link Avif#getInfo}、{@link Avif#decode}、{@link Avif#decodeFrame}
+ * 和经过 {@code AvifImageReader} 的 {@link ImageIO#read}
+ *
+ * <p>参数矩阵覆盖图片尺寸、位深度、Alpha 和解码线程数（0 表示使用所有核心），
+ * 16 和 64 对应图标尺寸，主要反映每次调用的固定开销。</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecodeBenchmark {
+
+    @Param({"16", "64", "256", "1024", "2048"})
+    public int size;
+
+    @Param({"8", "10"})
+    public int bitDepth;
+
+    @Param({"false", "true"})
+    public boolean alpha;
+
+    @Param({"1", "0"})
+    public int threads;
+
+    private byte[] data;
+    private AvifDecoderOptions options;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = Fixtures.avif(size, bitDepth, alpha);
+        options = new AvifDecoderOptions();
+        options.setMaxThreads(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        options.close();
+    }
+
+    @Benchmark
+    public ImageInfo getInfo() throws IOException {
+        return Avif.getInfo(data, 0, data.length);
+    }
+
+    @Benchmark
+    public DecodeResult decode() throws IOException {
+        return Avif.decode(data, 0, data.length, options);
+    }
+
+    @Benchmark
+    public DecodeResult decodeFrame() throws IOException {
+        return Avif.decodeFrame(data, 0, data.length, 0, options);
+    }
+
+    /**
+     * ImageIO 路径使用读取器的默认设置（单线程解码），不受 threads 参数影响
+     */
+    @Benchmark
+    public BufferedImage imageIORead() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(data));
+    }
+}
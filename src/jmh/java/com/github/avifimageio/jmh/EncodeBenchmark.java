@@ -0,0 +1,113 @@
+package com.github.avifimageio.jmh;
+
+import com.github.avifimageio.Avif;
+import com.github.avifimageio.AvifEncoderOptions;
+import com.github.avifimageio.AvifWriteParam;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编码路径基准：{@link Avif#encodeRGB}/{@link Avif#encodeRGBA}
+ * 和经过 {@code AvifImageWriter} 的 ImageIO 写入
+ *
+ * <p>参数矩阵覆盖图片尺寸、位深度、Alpha、编码速度、质量和编码线程数（0 表示使用所有核心）。
+ * 16 和 64 对应图标尺寸，主要反映每次调用的固定开销。
+ * 编码比解码慢得多，默认只包含中小尺寸，需要时用 {@code -p size=4096} 覆盖。</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncodeBenchmark {
+
+    @Param({"16", "64", "256", "1024"})
+    public int size;
+
+    @Param({"8", "10"})
+    public int bitDepth;
+
+    @Param({"false", "true"})
+    public boolean alpha;
+
+    @Param({"6", "10"})
+    public int speed;
+
+    @Param({"60", "90"})
+    public int quality;
+
+    @Param({"1", "0"})
+    public int threads;
+
+    private byte[] pixels;
+    private BufferedImage image;
+    private AvifEncoderOptions options;
+    private AvifWriteParam writeParam;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pixels = Fixtures.pixels(size, alpha);
+        image = Fixtures.image(size, alpha);
+        options = new AvifEncoderOptions();
+        options.setBitDepth(bitDepth);
+        options.setSpeed(speed);
+        options.setQuality(quality);
+        options.setMaxThreads(threads);
+
+        writeParam = new AvifWriteParam(Locale.ROOT);
+        writeParam.setQuality(quality);
+        writeParam.setSpeed(speed);
+        writeParam.setBitDepth(bitDepth);
+        writeParam.setMaxThreads(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        options.close();
+    }
+
+    /**
+     * 按 alpha 参数调用 encodeRGB 或 encodeRGBA
+     */
+    @Benchmark
+    public byte[] encodePixels() throws IOException {
+        return alpha
+            ? Avif.encodeRGBA(pixels, size, size, size * 4, options)
+            : Avif.encodeRGB(pixels, size, size, size * 3, options);
+    }
+
+    @Benchmark
+    public byte[] imageIOWrite() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("avif").next();
+        try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), writeParam);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+}
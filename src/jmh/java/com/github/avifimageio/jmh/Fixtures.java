@@ -0,0 +1,109 @@
+package com.github.avifimageio.jmh;
+
+import com.github.avifimageio.Avif;
+import com.github.avifimageio.AvifEncoderOptions;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基准测试的图片素材
+ *
+ * <p>素材在运行时按固定种子生成，不需要下载任何文件：渐变叠加噪声和色块，
+ * 压缩率接近照片，而不是纯色图片那样几乎不占码率。同一 JVM 内按参数缓存。</p>
+ */
+final class Fixtures {
+
+    private static final Map<String, Object> CACHE = new ConcurrentHashMap<String, Object>();
+
+    private Fixtures() {
+    }
+
+    /**
+     * 生成 RGB 或 RGBA 像素（每通道 8 位，紧密排列）
+     *
+     * @param size 宽和高
+     * @param alpha 是否带 Alpha（半透明渐变）
+     */
+    static byte[] pixels(int size, boolean alpha) {
+        String key = "pixels-" + size + "-" + alpha;
+        byte[] cached = (byte[]) CACHE.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        int channels = alpha ? 4 : 3;
+        byte[] pixels = new byte[size * size * channels];
+        Random random = new Random(0x41564946L + size);
+        int block = Math.max(8, size / 16);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int i = (y * size + x) * channels;
+                int tint = ((x / block) * 31 + (y / block) * 17) & 0x3F;
+                int noise = random.nextInt(24);
+                pixels[i] = (byte) clamp(x * 255 / size + tint - 32 + noise);
+                pixels[i + 1] = (byte) clamp(y * 255 / size + noise);
+                pixels[i + 2] = (byte) clamp((x + y) * 255 / (2 * size) - tint + 32 + noise);
+                if (alpha) {
+                    pixels[i + 3] = (byte) clamp(255 - (x * 192 / size));
+                }
+            }
+        }
+        CACHE.put(key, pixels);
+        return pixels;
+    }
+
+    /**
+     * 生成 BufferedImage（TYPE_INT_RGB 或 TYPE_INT_ARGB）
+     */
+    static BufferedImage image(int size, boolean alpha) {
+        byte[] pixels = pixels(size, alpha);
+        int channels = alpha ? 4 : 3;
+        BufferedImage image = new BufferedImage(size, size,
+            alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int i = (y * size + x) * channels;
+                int a = alpha ? (pixels[i + 3] & 0xFF) : 0xFF;
+                row[x] = (a << 24) | ((pixels[i] & 0xFF) << 16)
+                    | ((pixels[i + 1] & 0xFF) << 8) | (pixels[i + 2] & 0xFF);
+            }
+            image.setRGB(0, y, size, 1, row, 0, size);
+        }
+        return image;
+    }
+
+    /**
+     * 生成 AVIF 数据（使用最快的编码速度，减少准备时间）
+     *
+     * @param size 宽和高
+     * @param bitDepth 位深度（8、10 或 12）
+     * @param alpha 是否带 Alpha
+     */
+    static byte[] avif(int size, int bitDepth, boolean alpha) throws IOException {
+        String key = "avif-" + size + "-" + bitDepth + "-" + alpha;
+        byte[] cached = (byte[]) CACHE.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] pixels = pixels(size, alpha);
+        byte[] avif;
+        try (AvifEncoderOptions options = new AvifEncoderOptions()) {
+            options.setSpeed(10);
+            options.setBitDepth(bitDepth);
+            options.setPixelFormat(AvifEncoderOptions.PIXEL_FORMAT_YUV420);
+            avif = alpha
+                ? Avif.encodeRGBA(pixels, size, size, size * 4, options)
+                : Avif.encodeRGB(pixels, size, size, size * 3, options);
+        }
+        CACHE.put(key, avif);
+        return avif;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
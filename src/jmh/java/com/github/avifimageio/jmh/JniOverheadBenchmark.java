@@ -0,0 +1,83 @@
+package com.github.avifimageio.jmh;
+
+import com.github.avifimageio.Avif;
+import com.github.avifimageio.AvifEncoderOptions;
+import com.github.avifimageio.DecodeResult;
+import com.github.avifimageio.ImageInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图标尺寸的单次调用开销基准：{@link Avif#getInfo}、{@link Avif#decode} 和 {@link Avif#encodeRGB}
+ *
+ * <p>16 和 64 像素的图片编解码本身只需要几微秒，结果主要反映每次调用的固定开销
+ * （JNI 转换、查找类和字段、数组拷贝、解析容器）。{@code getInfo} 只解析容器，不解码像素。</p>
+ *
+ * <p>本类只使用最初版本就有的 API，不依赖 {@link Fixtures}，可以原样复制到旧版本的源码树中运行，
+ * 用于比较两个版本的每次调用开销。</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JniOverheadBenchmark {
+
+    @Param({"16", "64"})
+    public int size;
+
+    private byte[] pixels;
+    private byte[] data;
+    private AvifEncoderOptions options;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        pixels = new byte[size * size * 3];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int i = (y * size + x) * 3;
+                pixels[i] = (byte) (x * 255 / size);
+                pixels[i + 1] = (byte) (y * 255 / size);
+                pixels[i + 2] = (byte) ((x ^ y) * 255 / size);
+            }
+        }
+        options = new AvifEncoderOptions();
+        options.setSpeed(10);
+        data = Avif.encodeRGB(pixels, size, size, size * 3, options);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        options.close();
+    }
+
+    @Benchmark
+    public ImageInfo getInfo() throws IOException {
+        return Avif.getInfo(data, 0, data.length);
+    }
+
+    @Benchmark
+    public DecodeResult decode() throws IOException {
+        return Avif.decode(data, 0, data.length, null);
+    }
+
+    @Benchmark
+    public byte[] encodeRGB() throws IOException {
+        return Avif.encodeRGB(pixels, size, size, size * 3, options);
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.avifimageio.jmh;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 以 1、2、4 … 直到可用核心数的线程数依次运行吞吐量基准，输出扩展性表格
+ *
+ * <p>扩展效率 = N 线程吞吐量 / (1 线程吞吐量 × N)，接近 1 表示线性扩展。
+ * 每次运行都附带 GC 分析，表格中同时列出每次操作分配的字节数。</p>
+ */
+public final class ScalingRunner {
+
+    private ScalingRunner() {
+    }
+
+    /**
+     * @param args 第一个参数为基准测试的正则表达式（默认 ThroughputBenchmark）
+     */
+    public static void main(String[] args) throws RunnerException {
+        String include = (args.length > 0) ? args[0] : ThroughputBenchmark.class.getSimpleName();
+        List<Integer> threadCounts = new ArrayList<Integer>();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(cores);
+
+        // 基准名和 @Param 取值 -> (线程数 -> 结果)
+        Map<String, Map<Integer, RunResult>> results = new LinkedHashMap<String, Map<Integer, RunResult>>();
+        for (int threads : threadCounts) {
+            Options options = new OptionsBuilder()
+                .include(include)
+                .threads(threads)
+                .addProfiler(GCProfiler.class)
+                .build();
+            Collection<RunResult> runs = new Runner(options).run();
+            for (RunResult run : runs) {
+                String name = label(run.getParams());
+                Map<Integer, RunResult> byThreads = results.get(name);
+                if (byThreads == null) {
+                    byThreads = new LinkedHashMap<Integer, RunResult>();
+                    results.put(name, byThreads);
+                }
+                byThreads.put(threads, run);
+            }
+        }
+
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-80s %8s %14s %10s %14s",
+            "Benchmark", "Threads", "Score", "Scaling", "Alloc B/op"));
+        for (Map.Entry<String, Map<Integer, RunResult>> entry : results.entrySet()) {
+            RunResult base = entry.getValue().get(1);
+            double baseScore = (base != null) ? base.getPrimaryResult().getScore() : Double.NaN;
+            for (Map.Entry<Integer, RunResult> run : entry.getValue().entrySet()) {
+                int threads = run.getKey();
+                double score = run.getValue().getPrimaryResult().getScore();
+                double efficiency = score / (baseScore * threads);
+                System.out.println(String.format(Locale.ROOT, "%-80s %8d %14.2f %10.2f %14.0f",
+                    entry.getKey(), threads, score, efficiency, allocation(run.getValue())));
+            }
+        }
+    }
+
+    /**
+     * 基准名加上各 @Param 的取值，不同参数组合的结果分别成行
+     */
+    private static String label(BenchmarkParams params) {
+        List<String> values = new ArrayList<String>();
+        for (String key : params.getParamsKeys()) {
+            values.add(key + "=" + params.getParam(key));
+        }
+        if (values.isEmpty()) {
+            return params.getBenchmark();
+        }
+        return params.getBenchmark() + " (" + String.join(", ", values) + ")";
+    }
+
+    /**
+     * 读取 GC 分析器的每次操作分配字节数，没有数据时返回 NaN
+     */
+    private static double allocation(RunResult run) {
+        for (Map.Entry<String, Result> secondary
+                : run.getSecondaryResults().entrySet()) {
+            if (secondary.getKey().endsWith("gc.alloc.rate.norm")) {
+                return secondary.getValue().getScore();
+            }
+        }
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.avifimageio.jmh;
+
+import com.github.avifimageio.Avif;
+import com.github.avifimageio.AvifDecoderOptions;
+import com.github.avifimageio.AvifEncoderOptions;
+import com.github.avifimageio.DecodeResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多线程吞吐量基准：每个 JMH 线程独立地单线程编解码小图
+ *
+ * <p>用于衡量多个调用方并发使用本库时的扩展性（原生层锁竞争、JNI 临界区、分配压力），
+ * 由 {@link ScalingRunner} 以不同的线程数运行，也可以用 {@code -t} 手动指定。</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ThroughputBenchmark {
+
+    @Param({"512"})
+    public int size;
+
+    private byte[] data;
+    private byte[] pixels;
+    private AvifDecoderOptions decoderOptions;
+    private AvifEncoderOptions encoderOptions;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = Fixtures.avif(size, 8, false);
+        pixels = Fixtures.pixels(size, false);
+        decoderOptions = new AvifDecoderOptions();
+        decoderOptions.setMaxThreads(1);
+        encoderOptions = new AvifEncoderOptions();
+        encoderOptions.setMaxThreads(1);
+        encoderOptions.setSpeed(10);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        decoderOptions.close();
+        encoderOptions.close();
+    }
+
+    @Benchmark
+    public DecodeResult decode() throws IOException {
+        return Avif.decode(data, 0, data.length, decoderOptions);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return Avif.encodeRGB(pixels, size, size, size * 3, encoderOptions);
+    }
+}
@@ -4,12 +4,26 @@
  * This file implements the JNI bridge between Java and libavif.
  */
 
+// 严格 C 标准模式下 glibc 默认不声明 clock_gettime
+#if defined(__linux__) && !defined(_POSIX_C_SOURCE)
+#define _POSIX_C_SOURCE 200112L
+#endif
+
 #include <jni.h>
 #include <stdlib.h>
 #include <string.h>
+#include <stdint.h>
 #include <avif/avif.h>
 #include "avif_imageio.h"
 
+#if defined(_WIN32)
+#include <windows.h>
+#define AVIF_THREAD_LOCAL __declspec(thread)
+#else
+#include <time.h>
+#define AVIF_THREAD_LOCAL __thread
+#endif
+
 /* ============================================================================
  * Helper structures
  * ============================================================================ */
@@ -19,39 +33,207 @@ typedef struct {
     int speed;        // 0-10
     int bitDepth;     // 8, 10, 12
     int lossless;     // 0 or 1
+    int maxThreads;   // 0 = auto (所有可用核心)
+    int tileRowsLog2; // 0-6
+    int tileColsLog2; // 0-6
+    int autoTiling;   // 0 or 1，启用时忽略 tileRowsLog2/tileColsLog2
+    int pixelFormat;  // avifPixelFormat (YUV444/422/420/400)
+    int keyframeInterval; // 动画关键帧最大间隔，0 表示由编码器决定
 } EncoderConfig;
 
 typedef struct {
     int ignoreIcc;    // 0 or 1
     int ignoreExif;   // 0 or 1
+    int ignoreXmp;    // 0 or 1
+    int highBitDepth; // 0 or 1
+    int maxThreads;   // 0 = auto (所有可用核心)
+    int codecChoice;  // avifCodecChoice
+    int strictFlags;  // avifStrictFlags
+    uint32_t imageSizeLimit;       // 最大像素数
+    uint32_t imageDimensionLimit;  // 最大宽/高，0 表示不限制
+    int primaryItemOnly; // 0 or 1，只解码主图片项，忽略图片序列的轨道（读取缩略图时使用）
 } DecoderOptions;
 
+// 与 Java 层 RasterLayout 的标志位一致
+#define LAYOUT_FLAG_PREMULTIPLIED 1
+#define LAYOUT_FLAG_IGNORE_ALPHA  2
+// 单通道灰度（不是 avifRGBFormat 的取值）
+#define LAYOUT_FORMAT_GRAY        (-1)
+
+// 编码时 Alpha 通道的处理方式
+#define ENCODE_ALPHA_AUTO 0   // Alpha 全部不透明时不编码 Alpha 平面
+#define ENCODE_ALPHA_KEEP 1   // 始终编码 Alpha 平面
+#define ENCODE_ALPHA_DROP 2   // 忽略 Alpha
+
+// 自动线程数（由 Java 层按 Runtime.availableProcessors() 设置，可感知容器 CPU 配额）
+static int autoThreadCount = 1;
+
+/* ============================================================================
+ * Stage timings
+ * ============================================================================ */
+
+// 与 Java 层 AvifMetricsRegistry 的下标一致
+#define STAGE_PARSE   0   // 解析容器（流输入时包括读取）
+#define STAGE_CODEC   1   // AV1 解码/编码
+#define STAGE_CONVERT 2   // YUV 与 RGB 之间的转换、缩放和采样
+#define STAGE_COPY    3   // 输入复制到原生内存、输出复制到 Java 数组
+#define STAGE_THREADS 4   // 最近一次使用的编解码线程数（不是耗时）
+#define STAGE_COUNT   5
+
+// 有指标监听器时由 Java 层开启；关闭时每个阶段只多一次分支判断
+static volatile int metricsEnabled = 0;
+// 每个线程单独累计，Java 层在同一线程中读取并清零
+static AVIF_THREAD_LOCAL int64_t stageValues[STAGE_COUNT];
+
+static int64_t nowNanos(void) {
+#if defined(_WIN32)
+    static LARGE_INTEGER frequency;
+    LARGE_INTEGER counter;
+    if (frequency.QuadPart == 0) {
+        QueryPerformanceFrequency(&frequency);
+    }
+    QueryPerformanceCounter(&counter);
+    return (int64_t)((double)counter.QuadPart * 1e9 / (double)frequency.QuadPart);
+#else
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (int64_t)ts.tv_sec * 1000000000LL + ts.tv_nsec;
+#endif
+}
+
+/**
+ * 开始计时，未开启指标时返回 0
+ */
+static int64_t stageBegin(void) {
+    return metricsEnabled ? nowNanos() : 0;
+}
+
+/**
+ * 将 stageBegin 以来的耗时累计到指定阶段
+ */
+static void stageEnd(int stage, int64_t start) {
+    if (start != 0) {
+        stageValues[stage] += nowNanos() - start;
+    }
+}
+
+static void stageThreads(int threads) {
+    if (metricsEnabled) {
+        stageValues[STAGE_THREADS] = threads;
+    }
+}
+
 /* ============================================================================
  * Helper functions
  * ============================================================================ */
 
+static int resolveThreadCount(int maxThreads) {
+    return (maxThreads > 0) ? maxThreads : autoThreadCount;
+}
+
+/**
+ * JNI_OnLoad 时解析并缓存的类和成员 ID，热路径上不再调用 FindClass/GetMethodID/GetFieldID
+ */
+static struct {
+    jclass ioException;            // 全局引用
+    jclass illegalArgumentException;
+    jclass imageInfo;
+    jmethodID imageInfoInit;
+    jfieldID encoderOptionsPointer;
+    jfieldID decoderOptionsPointer;
+    jmethodID streamSourceReadAt;
+} jniCache;
+
+/**
+ * 查找类并创建全局引用
+ */
+static jclass findGlobalClass(JNIEnv *env, const char *name) {
+    jclass local = (*env)->FindClass(env, name);
+    if (local == NULL) {
+        return NULL;
+    }
+    jclass global = (jclass)(*env)->NewGlobalRef(env, local);
+    (*env)->DeleteLocalRef(env, local);
+    return global;
+}
+
+JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved) {
+    JNIEnv *env;
+    if ((*vm)->GetEnv(vm, (void**)&env, JNI_VERSION_1_6) != JNI_OK) {
+        return JNI_ERR;
+    }
+    
+    jniCache.ioException = findGlobalClass(env, "java/io/IOException");
+    jniCache.illegalArgumentException = findGlobalClass(env, "java/lang/IllegalArgumentException");
+    jniCache.imageInfo = findGlobalClass(env, "com/github/avifimageio/ImageInfo");
+    if (jniCache.ioException == NULL || jniCache.illegalArgumentException == NULL
+            || jniCache.imageInfo == NULL) {
+        return JNI_ERR;
+    }
+    jniCache.imageInfoInit = (*env)->GetMethodID(env, jniCache.imageInfo, "<init>", "(IIIZIDZZ)V");
+    if (jniCache.imageInfoInit == NULL) {
+        return JNI_ERR;
+    }
+    
+    jclass cls = (*env)->FindClass(env, "com/github/avifimageio/AvifEncoderOptions");
+    if (cls == NULL) {
+        return JNI_ERR;
+    }
+    jniCache.encoderOptionsPointer = (*env)->GetFieldID(env, cls, "fPointer", "J");
+    (*env)->DeleteLocalRef(env, cls);
+    
+    cls = (*env)->FindClass(env, "com/github/avifimageio/AvifDecoderOptions");
+    if (cls == NULL) {
+        return JNI_ERR;
+    }
+    jniCache.decoderOptionsPointer = (*env)->GetFieldID(env, cls, "fPointer", "J");
+    (*env)->DeleteLocalRef(env, cls);
+    
+    cls = (*env)->FindClass(env, "com/github/avifimageio/AvifStreamSource");
+    if (cls == NULL) {
+        return JNI_ERR;
+    }
+    jniCache.streamSourceReadAt = (*env)->GetMethodID(env, cls, "readAt", "(J[BI)I");
+    (*env)->DeleteLocalRef(env, cls);
+    
+    if (jniCache.encoderOptionsPointer == NULL || jniCache.decoderOptionsPointer == NULL
+            || jniCache.streamSourceReadAt == NULL) {
+        return JNI_ERR;
+    }
+    return JNI_VERSION_1_6;
+}
+
+JNIEXPORT void JNICALL JNI_OnUnload(JavaVM *vm, void *reserved) {
+    JNIEnv *env;
+    if ((*vm)->GetEnv(vm, (void**)&env, JNI_VERSION_1_6) != JNI_OK) {
+        return;
+    }
+    (*env)->DeleteGlobalRef(env, jniCache.ioException);
+    (*env)->DeleteGlobalRef(env, jniCache.illegalArgumentException);
+    (*env)->DeleteGlobalRef(env, jniCache.imageInfo);
+    memset(&jniCache, 0, sizeof(jniCache));
+}
+
 static void throwIOException(JNIEnv *env, const char* message) {
-    jclass excClass = (*env)->FindClass(env, "java/io/IOException");
-    if (excClass != NULL) {
-        (*env)->ThrowNew(env, excClass, message);
+    // 回调 Java 层时抛出的异常（如 ImageInputStream 的 IOException）优先保留
+    if ((*env)->ExceptionCheck(env)) {
+        return;
     }
+    (*env)->ThrowNew(env, jniCache.ioException, message);
 }
 
 static void throwIllegalArgumentException(JNIEnv *env, const char* message) {
-    jclass excClass = (*env)->FindClass(env, "java/lang/IllegalArgumentException");
-    if (excClass != NULL) {
-        (*env)->ThrowNew(env, excClass, message);
-    }
+    (*env)->ThrowNew(env, jniCache.illegalArgumentException, message);
 }
 
-static jfieldID getPointerField(JNIEnv *env, jobject obj) {
-    jclass cls = (*env)->GetObjectClass(env, obj);
-    return (*env)->GetFieldID(env, cls, "fPointer", "J");
+static EncoderConfig *getEncoderConfig(JNIEnv *env, jobject obj) {
+    return (EncoderConfig*)(intptr_t)(*env)->GetLongField(env, obj,
+        jniCache.encoderOptionsPointer);
 }
 
-static jlong getPointer(JNIEnv *env, jobject obj) {
-    jfieldID fid = getPointerField(env, obj);
-    return (*env)->GetLongField(env, obj, fid);
+static DecoderOptions *getDecoderOptions(JNIEnv *env, jobject obj) {
+    return (DecoderOptions*)(intptr_t)(*env)->GetLongField(env, obj,
+        jniCache.decoderOptionsPointer);
 }
 
 /* ============================================================================
@@ -68,6 +250,12 @@ JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifEncoderOptions_createCon
     config->speed = 6;      // DEFAULT_SPEED
     config->bitDepth = 8;   // DEFAULT_BIT_DEPTH
     config->lossless = 0;
+    config->maxThreads = 1;     // DEFAULT_MAX_THREADS，THREADS_AUTO(0) 需显式设置
+    config->tileRowsLog2 = 0;
+    config->tileColsLog2 = 0;
+    config->autoTiling = 0;
+    config->pixelFormat = AVIF_PIXEL_FORMAT_YUV444;
+    config->keyframeInterval = 0;
     return (jlong)(intptr_t)config;
 }
 
@@ -78,9 +266,19 @@ JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_deleteConf
     }
 }
 
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifEncoderOptions_copyConfig
+  (JNIEnv *env, jclass cls, jlong ptr) {
+    EncoderConfig *config = (EncoderConfig*)malloc(sizeof(EncoderConfig));
+    if (config == NULL) {
+        return 0;
+    }
+    memcpy(config, (const EncoderConfig*)(intptr_t)ptr, sizeof(EncoderConfig));
+    return (jlong)(intptr_t)config;
+}
+
 JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifEncoderOptions_getQuality
   (JNIEnv *env, jobject obj) {
-    EncoderConfig *config = (EncoderConfig*)(intptr_t)getPointer(env, obj);
+    EncoderConfig *config = getEncoderConfig(env, obj);
     return config ? config->quality : 60;
 }
 
@@ -90,7 +288,7 @@ JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setQuality
         throwIllegalArgumentException(env, "Quality must be between 0 and 100");
         return;
     }
-    EncoderConfig *config = (EncoderConfig*)(intptr_t)getPointer(env, obj);
+    EncoderConfig *config = getEncoderConfig(env, obj);
     if (config) {
         config->quality = quality;
     }
@@ -98,7 +296,7 @@ JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setQuality
 
 JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifEncoderOptions_getSpeed
   (JNIEnv *env, jobject obj) {
-    EncoderConfig *config = (EncoderConfig*)(intptr_t)getPointer(env, obj);
+    EncoderConfig *config = getEncoderConfig(env, obj);
     return config ? config->speed : 6;
 }
 
@@ -108,7 +306,7 @@ JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setSpeed
         throwIllegalArgumentException(env, "Speed must be between 0 and 10");
         return;
     }
-    EncoderConfig *config = (EncoderConfig*)(intptr_t)getPointer(env, obj);
+    EncoderConfig *config = getEncoderConfig(env, obj);
     if (config) {
         config->speed = speed;
     }
@@ -116,7 +314,7 @@ JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setSpeed
 
 JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifEncoderOptions_getBitDepth
   (JNIEnv *env, jobject obj) {
-    EncoderConfig *config = (EncoderConfig*)(intptr_t)getPointer(env, obj);
+    EncoderConfig *config = getEncoderConfig(env, obj);
     return config ? config->bitDepth : 8;
 }
 
@@ -126,7 +324,7 @@ JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setBitDept
         throwIllegalArgumentException(env, "Bit depth must be 8, 10, or 12");
         return;
     }
-    EncoderConfig *config = (EncoderConfig*)(intptr_t)getPointer(env, obj);
+    EncoderConfig *config = getEncoderConfig(env, obj);
     if (config) {
         config->bitDepth = bitDepth;
     }
@@ -134,18 +332,123 @@ JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setBitDept
 
 JNIEXPORT jboolean JNICALL Java_com_github_avifimageio_AvifEncoderOptions_isLossless
   (JNIEnv *env, jobject obj) {
-    EncoderConfig *config = (EncoderConfig*)(intptr_t)getPointer(env, obj);
+    EncoderConfig *config = getEncoderConfig(env, obj);
     return config ? (config->lossless != 0) : JNI_FALSE;
 }
 
 JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setLossless
   (JNIEnv *env, jobject obj, jboolean lossless) {
-    EncoderConfig *config = (EncoderConfig*)(intptr_t)getPointer(env, obj);
+    EncoderConfig *config = getEncoderConfig(env, obj);
     if (config) {
         config->lossless = lossless ? 1 : 0;
     }
 }
 
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifEncoderOptions_getMaxThreads
+  (JNIEnv *env, jobject obj) {
+    EncoderConfig *config = getEncoderConfig(env, obj);
+    return config ? config->maxThreads : 0;
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setMaxThreads
+  (JNIEnv *env, jobject obj, jint maxThreads) {
+    if (maxThreads < 0) {
+        throwIllegalArgumentException(env, "Max threads must be >= 0");
+        return;
+    }
+    EncoderConfig *config = getEncoderConfig(env, obj);
+    if (config) {
+        config->maxThreads = maxThreads;
+    }
+}
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifEncoderOptions_getTileRowsLog2
+  (JNIEnv *env, jobject obj) {
+    EncoderConfig *config = getEncoderConfig(env, obj);
+    return config ? config->tileRowsLog2 : 0;
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setTileRowsLog2
+  (JNIEnv *env, jobject obj, jint tileRowsLog2) {
+    if (tileRowsLog2 < 0 || tileRowsLog2 > 6) {
+        throwIllegalArgumentException(env, "Tile rows log2 must be between 0 and 6");
+        return;
+    }
+    EncoderConfig *config = getEncoderConfig(env, obj);
+    if (config) {
+        config->tileRowsLog2 = tileRowsLog2;
+    }
+}
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifEncoderOptions_getTileColsLog2
+  (JNIEnv *env, jobject obj) {
+    EncoderConfig *config = getEncoderConfig(env, obj);
+    return config ? config->tileColsLog2 : 0;
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setTileColsLog2
+  (JNIEnv *env, jobject obj, jint tileColsLog2) {
+    if (tileColsLog2 < 0 || tileColsLog2 > 6) {
+        throwIllegalArgumentException(env, "Tile cols log2 must be between 0 and 6");
+        return;
+    }
+    EncoderConfig *config = getEncoderConfig(env, obj);
+    if (config) {
+        config->tileColsLog2 = tileColsLog2;
+    }
+}
+
+JNIEXPORT jboolean JNICALL Java_com_github_avifimageio_AvifEncoderOptions_isAutoTiling
+  (JNIEnv *env, jobject obj) {
+    EncoderConfig *config = getEncoderConfig(env, obj);
+    return config ? (config->autoTiling != 0) : JNI_FALSE;
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setAutoTiling
+  (JNIEnv *env, jobject obj, jboolean autoTiling) {
+    EncoderConfig *config = getEncoderConfig(env, obj);
+    if (config) {
+        config->autoTiling = autoTiling ? 1 : 0;
+    }
+}
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifEncoderOptions_getPixelFormat
+  (JNIEnv *env, jobject obj) {
+    EncoderConfig *config = getEncoderConfig(env, obj);
+    return config ? config->pixelFormat : AVIF_PIXEL_FORMAT_YUV444;
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setPixelFormat
+  (JNIEnv *env, jobject obj, jint pixelFormat) {
+    if (pixelFormat != AVIF_PIXEL_FORMAT_YUV444 && pixelFormat != AVIF_PIXEL_FORMAT_YUV422
+            && pixelFormat != AVIF_PIXEL_FORMAT_YUV420 && pixelFormat != AVIF_PIXEL_FORMAT_YUV400) {
+        throwIllegalArgumentException(env, "Pixel format must be YUV444, YUV422, YUV420 or YUV400");
+        return;
+    }
+    EncoderConfig *config = getEncoderConfig(env, obj);
+    if (config) {
+        config->pixelFormat = pixelFormat;
+    }
+}
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifEncoderOptions_getKeyframeInterval
+  (JNIEnv *env, jobject obj) {
+    EncoderConfig *config = getEncoderConfig(env, obj);
+    return config ? config->keyframeInterval : 0;
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setKeyframeInterval
+  (JNIEnv *env, jobject obj, jint keyframeInterval) {
+    if (keyframeInterval < 0) {
+        throwIllegalArgumentException(env, "Keyframe interval must be >= 0");
+        return;
+    }
+    EncoderConfig *config = getEncoderConfig(env, obj);
+    if (config) {
+        config->keyframeInterval = keyframeInterval;
+    }
+}
+
 /* ============================================================================
  * Decoder Options JNI methods
  * ============================================================================ */
@@ -158,6 +461,14 @@ JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifDecoderOptions_createOpt
     }
     options->ignoreIcc = 0;
     options->ignoreExif = 0;
+    options->ignoreXmp = 0;
+    options->highBitDepth = 0;
+    options->maxThreads = 1;   // 与 libavif 默认值一致
+    options->codecChoice = AVIF_CODEC_CHOICE_AUTO;
+    options->strictFlags = AVIF_STRICT_ENABLED;
+    options->imageSizeLimit = AVIF_DEFAULT_IMAGE_SIZE_LIMIT;
+    options->imageDimensionLimit = AVIF_DEFAULT_IMAGE_DIMENSION_LIMIT;
+    options->primaryItemOnly = 0;
     return (jlong)(intptr_t)options;
 }
 
@@ -168,15 +479,25 @@ JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_deleteOpti
     }
 }
 
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifDecoderOptions_copyOptions
+  (JNIEnv *env, jclass cls, jlong ptr) {
+    DecoderOptions *options = (DecoderOptions*)malloc(sizeof(DecoderOptions));
+    if (options == NULL) {
+        return 0;
+    }
+    memcpy(options, (const DecoderOptions*)(intptr_t)ptr, sizeof(DecoderOptions));
+    return (jlong)(intptr_t)options;
+}
+
 JNIEXPORT jboolean JNICALL Java_com_github_avifimageio_AvifDecoderOptions_isIgnoreIcc
   (JNIEnv *env, jobject obj) {
-    DecoderOptions *options = (DecoderOptions*)(intptr_t)getPointer(env, obj);
+    DecoderOptions *options = getDecoderOptions(env, obj);
     return options ? (options->ignoreIcc != 0) : JNI_FALSE;
 }
 
 JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setIgnoreIcc
   (JNIEnv *env, jobject obj, jboolean ignore) {
-    DecoderOptions *options = (DecoderOptions*)(intptr_t)getPointer(env, obj);
+    DecoderOptions *options = getDecoderOptions(env, obj);
     if (options) {
         options->ignoreIcc = ignore ? 1 : 0;
     }
@@ -184,428 +505,1872 @@ JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setIgnoreI
 
 JNIEXPORT jboolean JNICALL Java_com_github_avifimageio_AvifDecoderOptions_isIgnoreExif
   (JNIEnv *env, jobject obj) {
-    DecoderOptions *options = (DecoderOptions*)(intptr_t)getPointer(env, obj);
+    DecoderOptions *options = getDecoderOptions(env, obj);
     return options ? (options->ignoreExif != 0) : JNI_FALSE;
 }
 
 JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setIgnoreExif
   (JNIEnv *env, jobject obj, jboolean ignore) {
-    DecoderOptions *options = (DecoderOptions*)(intptr_t)getPointer(env, obj);
+    DecoderOptions *options = getDecoderOptions(env, obj);
     if (options) {
         options->ignoreExif = ignore ? 1 : 0;
     }
 }
 
-/* ============================================================================
- * Avif main class JNI methods
- * ============================================================================ */
+JNIEXPORT jboolean JNICALL Java_com_github_avifimageio_AvifDecoderOptions_isHighBitDepth
+  (JNIEnv *env, jobject obj) {
+    DecoderOptions *options = getDecoderOptions(env, obj);
+    return options ? (options->highBitDepth != 0) : JNI_FALSE;
+}
 
-JNIEXPORT jobject JNICALL Java_com_github_avifimageio_Avif_getInfoNative
-  (JNIEnv *env, jclass cls, jbyteArray data, jint offset, jint length) {
-    
-    jbyte *dataBytes = (*env)->GetByteArrayElements(env, data, NULL);
-    if (dataBytes == NULL) {
-        throwIOException(env, "Failed to get byte array elements");
-        return NULL;
-    }
-    
-    avifDecoder *decoder = avifDecoderCreate();
-    if (decoder == NULL) {
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-        throwIOException(env, "Failed to create AVIF decoder");
-        return NULL;
-    }
-    
-    avifResult result = avifDecoderSetIOMemory(decoder, 
-        (const uint8_t*)(dataBytes + offset), (size_t)length);
-    if (result != AVIF_RESULT_OK) {
-        avifDecoderDestroy(decoder);
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-        throwIOException(env, avifResultToString(result));
-        return NULL;
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setHighBitDepth
+  (JNIEnv *env, jobject obj, jboolean highBitDepth) {
+    DecoderOptions *options = getDecoderOptions(env, obj);
+    if (options) {
+        options->highBitDepth = highBitDepth ? 1 : 0;
     }
-    
-    result = avifDecoderParse(decoder);
-    if (result != AVIF_RESULT_OK) {
-        avifDecoderDestroy(decoder);
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-        throwIOException(env, avifResultToString(result));
-        return NULL;
+}
+
+JNIEXPORT jboolean JNICALL Java_com_github_avifimageio_AvifDecoderOptions_isIgnoreXmp
+  (JNIEnv *env, jobject obj) {
+    DecoderOptions *options = getDecoderOptions(env, obj);
+    return options ? (options->ignoreXmp != 0) : JNI_FALSE;
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setIgnoreXmp
+  (JNIEnv *env, jobject obj, jboolean ignore) {
+    DecoderOptions *options = getDecoderOptions(env, obj);
+    if (options) {
+        options->ignoreXmp = ignore ? 1 : 0;
     }
-    
-    // Create ImageInfo object
-    jclass imageInfoClass = (*env)->FindClass(env, "com/github/avifimageio/ImageInfo");
-    if (imageInfoClass == NULL) {
-        avifDecoderDestroy(decoder);
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-        return NULL;
+}
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifDecoderOptions_getMaxThreads
+  (JNIEnv *env, jobject obj) {
+    DecoderOptions *options = getDecoderOptions(env, obj);
+    return options ? options->maxThreads : 1;
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setMaxThreads
+  (JNIEnv *env, jobject obj, jint maxThreads) {
+    if (maxThreads < 0) {
+        throwIllegalArgumentException(env, "Max threads must be >= 0");
+        return;
     }
-    
-    jmethodID constructor = (*env)->GetMethodID(env, imageInfoClass, "<init>", 
-        "(IIIZIDZZ)V");
-    if (constructor == NULL) {
-        avifDecoderDestroy(decoder);
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-        return NULL;
+    DecoderOptions *options = getDecoderOptions(env, obj);
+    if (options) {
+        options->maxThreads = maxThreads;
     }
-    
-    int width = decoder->image->width;
-    int height = decoder->image->height;
-    int bitDepth = decoder->image->depth;
-    int hasAlpha = decoder->alphaPresent ? 1 : 0;
-    int frameCount = decoder->imageCount;
-    double duration = decoder->duration;
-    int hasIccProfile = (decoder->image->icc.size > 0) ? 1 : 0;
-    int hasExif = (decoder->image->exif.size > 0) ? 1 : 0;
-    
-    jobject imageInfo = (*env)->NewObject(env, imageInfoClass, constructor,
-        width, height, bitDepth, (jboolean)hasAlpha,
-        frameCount, duration, (jboolean)hasIccProfile, (jboolean)hasExif);
-    
-    avifDecoderDestroy(decoder);
-    (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-    
-    return imageInfo;
 }
 
-static jobject decodeInternal(JNIEnv *env, jlong optionsPtr, jbyteArray data, 
-                              jint offset, jint length, jint frameIndex) {
-    
-    jbyte *dataBytes = (*env)->GetByteArrayElements(env, data, NULL);
-    if (dataBytes == NULL) {
-        throwIOException(env, "Failed to get byte array elements");
-        return NULL;
-    }
-    
-    avifDecoder *decoder = avifDecoderCreate();
-    if (decoder == NULL) {
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-        throwIOException(env, "Failed to create AVIF decoder");
-        return NULL;
+JNIEXPORT jstring JNICALL Java_com_github_avifimageio_AvifDecoderOptions_getCodec
+  (JNIEnv *env, jobject obj) {
+    DecoderOptions *options = getDecoderOptions(env, obj);
+    if (options == NULL || options->codecChoice == AVIF_CODEC_CHOICE_AUTO) {
+        return (*env)->NewStringUTF(env, "auto");
     }
-    
-    avifResult result = avifDecoderSetIOMemory(decoder, 
-        (const uint8_t*)(dataBytes + offset), (size_t)length);
-    if (result != AVIF_RESULT_OK) {
-        avifDecoderDestroy(decoder);
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-        throwIOException(env, avifResultToString(result));
-        return NULL;
+    const char *name = avifCodecName((avifCodecChoice)options->codecChoice, AVIF_CODEC_FLAG_CAN_DECODE);
+    return (*env)->NewStringUTF(env, name ? name : "auto");
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setCodec
+  (JNIEnv *env, jobject obj, jstring codec) {
+    if (codec == NULL) {
+        throwIllegalArgumentException(env, "Codec name may not be null");
+        return;
     }
-    
-    result = avifDecoderParse(decoder);
-    if (result != AVIF_RESULT_OK) {
-        avifDecoderDestroy(decoder);
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-        throwIOException(env, avifResultToString(result));
-        return NULL;
+    const char *name = (*env)->GetStringUTFChars(env, codec, NULL);
+    if (name == NULL) {
+        return;
     }
-    
-    // Decode specific frame or first frame
-    if (frameIndex >= 0) {
-        result = avifDecoderNthImage(decoder, frameIndex);
-    } else {
-        result = avifDecoderNextImage(decoder);
+    avifCodecChoice choice = AVIF_CODEC_CHOICE_AUTO;
+    int valid = 1;
+    if (strcmp(name, "auto") != 0) {
+        choice = avifCodecChoiceFromName(name);
+        valid = (choice != AVIF_CODEC_CHOICE_AUTO)
+            && (avifCodecName(choice, AVIF_CODEC_FLAG_CAN_DECODE) != NULL);
     }
-    
-    if (result != AVIF_RESULT_OK) {
-        avifDecoderDestroy(decoder);
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-        throwIOException(env, avifResultToString(result));
-        return NULL;
+    (*env)->ReleaseStringUTFChars(env, codec, name);
+    if (!valid) {
+        throwIllegalArgumentException(env, "Codec is not available for decoding");
+        return;
     }
-    
-    avifImage *image = decoder->image;
-    int width = image->width;
-    int height = image->height;
-    int bitDepth = image->depth;
-    int hasAlpha = decoder->alphaPresent ? 1 : 0;
-    
-    // Convert to RGB
-    avifRGBImage rgb;
-    avifRGBImageSetDefaults(&rgb, image);
-    rgb.format = hasAlpha ? AVIF_RGB_FORMAT_RGBA : AVIF_RGB_FORMAT_RGB;
-    rgb.depth = 8;
-    
-    avifRGBImageAllocatePixels(&rgb);
-    
-    result = avifImageYUVToRGB(image, &rgb);
-    if (result != AVIF_RESULT_OK) {
-        avifRGBImageFreePixels(&rgb);
-        avifDecoderDestroy(decoder);
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-        throwIOException(env, avifResultToString(result));
-        return NULL;
+    DecoderOptions *options = getDecoderOptions(env, obj);
+    if (options) {
+        options->codecChoice = choice;
     }
-    
-    // Convert to ARGB int array for Java
-    int pixelCount = width * height;
-    jintArray pixelsArray = (*env)->NewIntArray(env, pixelCount);
-    if (pixelsArray == NULL) {
-        avifRGBImageFreePixels(&rgb);
-        avifDecoderDestroy(decoder);
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-        return NULL;
+}
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifDecoderOptions_getStrictFlags
+  (JNIEnv *env, jobject obj) {
+    DecoderOptions *options = getDecoderOptions(env, obj);
+    return options ? options->strictFlags : AVIF_STRICT_ENABLED;
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setStrictFlags
+  (JNIEnv *env, jobject obj, jint strictFlags) {
+    if ((strictFlags & ~AVIF_STRICT_ENABLED) != 0) {
+        throwIllegalArgumentException(env, "Unknown strict flags");
+        return;
     }
-    
-    jint *pixels = (*env)->GetIntArrayElements(env, pixelsArray, NULL);
-    if (pixels == NULL) {
-        avifRGBImageFreePixels(&rgb);
-        avifDecoderDestroy(decoder);
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-        return NULL;
+    DecoderOptions *options = getDecoderOptions(env, obj);
+    if (options) {
+        options->strictFlags = strictFlags;
     }
-    
-    uint8_t *rgbPixels = rgb.pixels;
-    int bytesPerPixel = hasAlpha ? 4 : 3;
-    
-    for (int i = 0; i < pixelCount; i++) {
-        int r = rgbPixels[i * bytesPerPixel];
-        int g = rgbPixels[i * bytesPerPixel + 1];
-        int b = rgbPixels[i * bytesPerPixel + 2];
-        int a = hasAlpha ? rgbPixels[i * bytesPerPixel + 3] : 255;
-        pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+}
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifDecoderOptions_getImageSizeLimit
+  (JNIEnv *env, jobject obj) {
+    DecoderOptions *options = getDecoderOptions(env, obj);
+    return options ? (jint)options->imageSizeLimit : AVIF_DEFAULT_IMAGE_SIZE_LIMIT;
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setImageSizeLimit
+  (JNIEnv *env, jobject obj, jint limit) {
+    if (limit <= 0 || limit > AVIF_DEFAULT_IMAGE_SIZE_LIMIT) {
+        throwIllegalArgumentException(env, "Image size limit must be between 1 and 16384 * 16384");
+        return;
     }
-    
-    (*env)->ReleaseIntArrayElements(env, pixelsArray, pixels, 0);
-    
-    // Get ICC profile if present
-    jbyteArray iccArray = NULL;
-    if (image->icc.size > 0) {
-        iccArray = (*env)->NewByteArray(env, (jsize)image->icc.size);
-        if (iccArray != NULL) {
-            (*env)->SetByteArrayRegion(env, iccArray, 0, (jsize)image->icc.size, 
-                (const jbyte*)image->icc.data);
-        }
+    DecoderOptions *options = getDecoderOptions(env, obj);
+    if (options) {
+        options->imageSizeLimit = (uint32_t)limit;
     }
-    
-    avifRGBImageFreePixels(&rgb);
-    avifDecoderDestroy(decoder);
-    (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-    
-    // Create DecodeResult object
-    jclass decodeResultClass = (*env)->FindClass(env, "com/github/avifimageio/DecodeResult");
-    if (decodeResultClass == NULL) {
-        return NULL;
+}
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifDecoderOptions_getImageDimensionLimit
+  (JNIEnv *env, jobject obj) {
+    DecoderOptions *options = getDecoderOptions(env, obj);
+    return options ? (jint)options->imageDimensionLimit : AVIF_DEFAULT_IMAGE_DIMENSION_LIMIT;
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setImageDimensionLimit
+  (JNIEnv *env, jobject obj, jint limit) {
+    if (limit < 0) {
+        throwIllegalArgumentException(env, "Image dimension limit must be >= 0");
+        return;
     }
-    
-    jmethodID constructor = (*env)->GetMethodID(env, decodeResultClass, "<init>", 
-        "([IIIZI[B)V");
-    if (constructor == NULL) {
-        return NULL;
+    DecoderOptions *options = getDecoderOptions(env, obj);
+    if (options) {
+        options->imageDimensionLimit = (uint32_t)limit;
     }
-    
-    return (*env)->NewObject(env, decodeResultClass, constructor,
-        pixelsArray, width, height, (jboolean)hasAlpha, bitDepth, iccArray);
 }
 
-JNIEXPORT jobject JNICALL Java_com_github_avifimageio_Avif_decodeNative
-  (JNIEnv *env, jclass cls, jlong optionsPtr, jbyteArray data, jint offset, jint length) {
-    return decodeInternal(env, optionsPtr, data, offset, length, -1);
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setPrimaryItemOnly
+  (JNIEnv *env, jobject obj, jboolean primaryItemOnly) {
+    DecoderOptions *options = getDecoderOptions(env, obj);
+    if (options) {
+        options->primaryItemOnly = primaryItemOnly ? 1 : 0;
+    }
 }
 
-JNIEXPORT jobject JNICALL Java_com_github_avifimageio_Avif_decodeFrameNative
-  (JNIEnv *env, jclass cls, jlong optionsPtr, jbyteArray data, jint offset, jint length, jint frameIndex) {
-    return decodeInternal(env, optionsPtr, data, offset, length, frameIndex);
-}
+/* ============================================================================
+ * Decoder session JNI methods
+ * ============================================================================ */
 
-static jbyteArray encodeInternal(JNIEnv *env, jlong configPtr, jbyteArray pixelData,
-                                  jint width, jint height, jint stride, int hasAlpha) {
+/**
+ * 回调 Java 层 AvifStreamSource 的 avifIO 实现
+ *
+ * 每次读取都通过 JNI 调用 readAt(offset, buffer, length)，只读取解析和解码实际需要的范围。
+ * persistent 为 false：返回的数据只在下一次读取前有效，libavif 会自行复制需要保留的部分。
+ */
+typedef struct {
+    avifIO io;            // 必须是第一个成员
+    JNIEnv *env;          // 当前调用线程的 JNIEnv，每次进入会话前更新
+    jobject source;       // AvifStreamSource 全局引用
+    jmethodID readAt;
+    jbyteArray scratch;   // Java 层读取缓冲区（全局引用，只增不减）
+    jsize scratchSize;
+    uint8_t *buffer;      // 返回给 libavif 的原生缓冲区（只增不减）
+    size_t bufferSize;
+} JavaIO;
+
+typedef struct {
+    avifDecoder *decoder;
+    uint8_t *data;        // 输入数据，生命周期与 decoder 一致
+    size_t dataSize;
+    int ownsData;         // 1 表示 data 是会话持有的副本，0 表示指向 Java 层的直接缓冲区
+    JavaIO *io;           // 流输入时非 NULL，由 decoder 持有并在销毁 decoder 时释放
+    int ignoreIcc;        // 不向 Java 层返回 ICC 配置
+} DecoderSession;
+
+/**
+ * 取得会话并绑定当前线程的 JNIEnv（流输入的读取回调需要）
+ */
+static DecoderSession *sessionFromPointer(JNIEnv *env, jlong ptr) {
+    DecoderSession *session = (DecoderSession*)(intptr_t)ptr;
+    if (session != NULL && session->io != NULL) {
+        session->io->env = env;
+    }
+    return session;
+}
+
+static avifResult javaIORead(struct avifIO *io, uint32_t readFlags, uint64_t offset,
+                             size_t size, avifROData *out) {
+    JavaIO *jio = (JavaIO*)io;
+    JNIEnv *env = jio->env;
+    if (readFlags != 0) {
+        return AVIF_RESULT_IO_ERROR;
+    }
+    if (io->sizeHint > 0) {
+        if (offset > io->sizeHint) {
+            return AVIF_RESULT_IO_ERROR;
+        }
+        if (size > io->sizeHint - offset) {
+            size = (size_t)(io->sizeHint - offset);
+        }
+    }
+    if (size > (size_t)INT32_MAX) {
+        return AVIF_RESULT_IO_ERROR;
+    }
+    if (size == 0) {
+        out->data = jio->buffer;
+        out->size = 0;
+        return AVIF_RESULT_OK;
+    }
+    
+    if ((jsize)size > jio->scratchSize) {
+        jbyteArray local = (*env)->NewByteArray(env, (jsize)size);
+        if (local == NULL) {
+            return AVIF_RESULT_OUT_OF_MEMORY;
+        }
+        jbyteArray global = (jbyteArray)(*env)->NewGlobalRef(env, local);
+        (*env)->DeleteLocalRef(env, local);
+        if (global == NULL) {
+            return AVIF_RESULT_OUT_OF_MEMORY;
+        }
+        if (jio->scratch != NULL) {
+            (*env)->DeleteGlobalRef(env, jio->scratch);
+        }
+        jio->scratch = global;
+        jio->scratchSize = (jsize)size;
+    }
+    if (size > jio->bufferSize) {
+        uint8_t *buffer = (uint8_t*)realloc(jio->buffer, size);
+        if (buffer == NULL) {
+            return AVIF_RESULT_OUT_OF_MEMORY;
+        }
+        jio->buffer = buffer;
+        jio->bufferSize = size;
+    }
+    
+    jint read = (*env)->CallIntMethod(env, jio->source, jio->readAt,
+        (jlong)offset, jio->scratch, (jint)size);
+    if ((*env)->ExceptionCheck(env)) {
+        return AVIF_RESULT_IO_ERROR;
+    }
+    if (read < 0) {
+        read = 0;
+    }
+    (*env)->GetByteArrayRegion(env, jio->scratch, 0, read, (jbyte*)jio->buffer);
+    out->data = jio->buffer;
+    out->size = (size_t)read;
+    return AVIF_RESULT_OK;
+}
+
+static void javaIODestroy(struct avifIO *io) {
+    JavaIO *jio = (JavaIO*)io;
+    JNIEnv *env = jio->env;
+    if (env != NULL) {
+        if (jio->scratch != NULL) {
+            (*env)->DeleteGlobalRef(env, jio->scratch);
+        }
+        if (jio->source != NULL) {
+            (*env)->DeleteGlobalRef(env, jio->source);
+        }
+    }
+    free(jio->buffer);
+    free(jio);
+}
+
+/**
+ * 将解码选项应用到原生解码器（必须在 avifDecoderParse 之前调用）
+ */
+static void applyDecoderOptions(DecoderSession *session, const DecoderOptions *options) {
+    avifDecoder *decoder = session->decoder;
+    if (options == NULL) {
+        session->ignoreIcc = 0;
+        return;
+    }
+    decoder->maxThreads = resolveThreadCount(options->maxThreads);
+    decoder->codecChoice = (avifCodecChoice)options->codecChoice;
+    decoder->strictFlags = (avifStrictFlags)options->strictFlags;
+    decoder->imageSizeLimit = options->imageSizeLimit;
+    decoder->imageDimensionLimit = options->imageDimensionLimit;
+    decoder->ignoreExif = options->ignoreExif ? AVIF_TRUE : AVIF_FALSE;
+    decoder->ignoreXMP = options->ignoreXmp ? AVIF_TRUE : AVIF_FALSE;
+    decoder->requestedSource = options->primaryItemOnly ? AVIF_DECODER_SOURCE_PRIMARY_ITEM
+        : AVIF_DECODER_SOURCE_AUTO;
+    session->ignoreIcc = options->ignoreIcc;
+}
+
+static void destroySession(DecoderSession *session) {
+    if (session == NULL) {
+        return;
+    }
+    if (session->decoder != NULL) {
+        avifDecoderDestroy(session->decoder);
+    }
+    if (session->ownsData) {
+        free(session->data);
+    }
+    free(session);
+}
+
+static jbyteArray newByteArrayFromData(JNIEnv *env, const avifRWData *data) {
+    if (data->size == 0) {
+        return NULL;
+    }
+    jbyteArray array = (*env)->NewByteArray(env, (jsize)data->size);
+    if (array != NULL) {
+        int64_t start = stageBegin();
+        (*env)->SetByteArrayRegion(env, array, 0, (jsize)data->size,
+            (const jbyte*)data->data);
+        stageEnd(STAGE_COPY, start);
+    }
+    return array;
+}
+
+/**
+ * 定位到指定帧：已解码的帧直接复用，下一帧顺序解码，其余情况随机访问
+ */
+static avifResult seekFrame(avifDecoder *decoder, int frameIndex) {
+    if (frameIndex == decoder->imageIndex) {
+        return AVIF_RESULT_OK;
+    }
+    stageThreads(decoder->maxThreads);
+    int64_t start = stageBegin();
+    avifResult result;
+    if (frameIndex == decoder->imageIndex + 1) {
+        result = avifDecoderNextImage(decoder);
+    } else {
+        result = avifDecoderNthImage(decoder, (uint32_t)frameIndex);
+    }
+    stageEnd(STAGE_CODEC, start);
+    return result;
+}
+
+/**
+ * 计时的 YUV 到 RGB 转换
+ */
+static avifResult convertToRGB(const avifImage *image, avifRGBImage *rgb) {
+    int64_t start = stageBegin();
+    avifResult result = avifImageYUVToRGB(image, rgb);
+    stageEnd(STAGE_CONVERT, start);
+    return result;
+}
+
+/**
+ * 按 Java 层 RasterLayout 的描述配置 avifRGBImage（像素指针由调用方设置）
+ */
+static void setupRGBLayout(avifRGBImage *rgb, const avifImage *image,
+                           jint format, jint depth, jint flags) {
+    avifRGBImageSetDefaults(rgb, image);
+    rgb->format = (avifRGBFormat)format;
+    rgb->depth = (uint32_t)depth;
+    rgb->alphaPremultiplied = (flags & LAYOUT_FLAG_PREMULTIPLIED) ? AVIF_TRUE : AVIF_FALSE;
+}
+
+/**
+ * 检查 Java 数组中的像素区域（每行 pixelBytes 字节）是否完全落在数组范围内
+ */
+static int checkArrayBounds(JNIEnv *env, jarray pixels, jint bytesPerElement, jint offset,
+                            jint stride, jint height, int64_t pixelBytes) {
+    if (pixels == NULL || bytesPerElement <= 0 || offset < 0 || stride <= 0 || height <= 0) {
+        throwIllegalArgumentException(env, "Invalid pixel layout");
+        return 0;
+    }
+    int64_t rowBytes = (int64_t)stride * bytesPerElement;
+    int64_t arrayBytes = (int64_t)(*env)->GetArrayLength(env, pixels) * bytesPerElement;
+    int64_t required = (int64_t)offset * bytesPerElement
+        + (int64_t)(height - 1) * rowBytes + pixelBytes;
+    if (rowBytes < pixelBytes || required > arrayBytes) {
+        throwIllegalArgumentException(env, "Pixel buffer is too small for the image");
+        return 0;
+    }
+    return 1;
+}
+
+/**
+ * 检查 RGB 像素布局是否完全落在 Java 数组范围内
+ */
+static int checkLayoutBounds(JNIEnv *env, jarray pixels, jint bytesPerElement,
+                             jint offset, jint stride, const avifRGBImage *rgb) {
+    int64_t pixelBytes = (int64_t)rgb->width * avifRGBImagePixelSize(rgb);
+    return checkArrayBounds(env, pixels, bytesPerElement, offset, stride,
+        (jint)rgb->height, pixelBytes);
+}
+
+/**
+ * 单次持有临界区可处理的最大像素数
+ *
+ * GetPrimitiveArrayCritical 期间 GC 被阻塞（Java 8 的 GCLocker），只在小图片上直接转换；
+ * 更大的图片按行分段处理，每段约为该像素数。
+ */
+#define CRITICAL_MAX_PIXELS (64 * 1024)
+
+/**
+ * 分段解码时每段上下额外转换的行数
+ *
+ * 色度上采样会读取相邻的色度行，段边界处多转换几行、只复制中间的行，结果与整帧转换相同。
+ */
+#define BAND_OVERLAP 4
+
+/**
+ * 宽度为 width 的图片每段的行数（偶数，4:2:0 视图的起点必须与色度行对齐）
+ */
+static uint32_t bandRows(uint32_t width) {
+    uint32_t rows = CRITICAL_MAX_PIXELS / (width > 0 ? width : 1);
+    rows &= ~1u;
+    return rows < 2 ? 2 : rows;
+}
+
+/**
+ * 将一行像素写入 Java 数组（start 与 count 以数组元素计）
+ */
+static void copyRowToArray(JNIEnv *env, jarray pixels, jint bytesPerElement,
+                           jint start, jint count, const uint8_t *row) {
+    switch (bytesPerElement) {
+        case 1:
+            (*env)->SetByteArrayRegion(env, (jbyteArray)pixels, start, count, (const jbyte*)row);
+            break;
+        case 2:
+            (*env)->SetShortArrayRegion(env, (jshortArray)pixels, start, count, (const jshort*)row);
+            break;
+        default:
+            (*env)->SetIntArrayRegion(env, (jintArray)pixels, start, count, (const jint*)row);
+            break;
+    }
+}
+
+/**
+ * 从 Java 数组读取一行像素（start 与 count 以数组元素计）
+ */
+static void copyRowFromArray(JNIEnv *env, jarray pixels, jint bytesPerElement,
+                             jint start, jint count, uint8_t *row) {
+    switch (bytesPerElement) {
+        case 1:
+            (*env)->GetByteArrayRegion(env, (jbyteArray)pixels, start, count, (jbyte*)row);
+            break;
+        case 2:
+            (*env)->GetShortArrayRegion(env, (jshortArray)pixels, start, count, (jshort*)row);
+            break;
+        default:
+            (*env)->GetIntArrayRegion(env, (jintArray)pixels, start, count, (jint*)row);
+            break;
+    }
+}
+
+/**
+ * 将 YUV 图片转换为 RGB 写入 Java 数组（rgb 已由 setupRGBLayout 配置，布局已检查）
+ *
+ * 小图片在临界区内直接写入数组；大图片按行分段转换到临时缓冲区，再逐行复制到数组，
+ * 转换期间不持有临界区。逐行复制不会覆盖目标为子图时行与行之间的像素。
+ * 出错时抛出异常并返回 0。
+ */
+static int convertToArray(JNIEnv *env, const avifImage *image, avifRGBImage *rgb,
+                          jarray pixels, jint bytesPerElement, jint offset, jint stride) {
+    avifResult result;
+    if ((uint64_t)image->width * image->height <= CRITICAL_MAX_PIXELS) {
+        // 转换期间不调用任何 JNI 函数，可以安全地使用临界区
+        uint8_t *base = (uint8_t*)(*env)->GetPrimitiveArrayCritical(env, pixels, NULL);
+        if (base == NULL) {
+            return 0;
+        }
+        rgb->pixels = base + (size_t)offset * (size_t)bytesPerElement;
+        result = convertToRGB(image, rgb);
+        (*env)->ReleasePrimitiveArrayCritical(env, pixels, base, 0);
+        rgb->pixels = NULL;
+        if (result != AVIF_RESULT_OK) {
+            throwIOException(env, avifResultToString(result));
+            return 0;
+        }
+        return 1;
+    }
+    
+    uint32_t rowBytes = image->width * avifRGBImagePixelSize(rgb);
+    jint rowElements = (jint)(rowBytes / (uint32_t)bytesPerElement);
+    uint32_t band = bandRows(image->width);
+    uint8_t *buffer = (uint8_t*)malloc((size_t)(band + 2 * BAND_OVERLAP) * rowBytes);
+    if (buffer == NULL) {
+        throwIOException(env, "Failed to allocate conversion buffer");
+        return 0;
+    }
+    
+    result = AVIF_RESULT_OK;
+    for (uint32_t y = 0; y < image->height && result == AVIF_RESULT_OK; y += band) {
+        uint32_t rows = (image->height - y < band) ? image->height - y : band;
+        uint32_t top = (y > BAND_OVERLAP) ? y - BAND_OVERLAP : 0;
+        uint32_t bottom = (image->height - (y + rows) > BAND_OVERLAP)
+            ? y + rows + BAND_OVERLAP : image->height;
+        
+        avifImage *view = avifImageCreateEmpty();
+        if (view == NULL) {
+            result = AVIF_RESULT_OUT_OF_MEMORY;
+            break;
+        }
+        avifCropRect rect;
+        rect.x = 0;
+        rect.y = top;
+        rect.width = image->width;
+        rect.height = bottom - top;
+        result = avifImageSetViewRect(view, image, &rect);
+        if (result == AVIF_RESULT_OK) {
+            avifRGBImage bandRgb = *rgb;
+            bandRgb.width = image->width;
+            bandRgb.height = bottom - top;
+            bandRgb.rowBytes = rowBytes;
+            bandRgb.pixels = buffer;
+            result = convertToRGB(view, &bandRgb);
+        }
+        avifImageDestroy(view);
+        if (result != AVIF_RESULT_OK) {
+            break;
+        }
+        
+        int64_t start = stageBegin();
+        for (uint32_t row = 0; row < rows; row++) {
+            copyRowToArray(env, pixels, bytesPerElement, offset + (jint)(y + row) * stride,
+                rowElements, buffer + (size_t)(y + row - top) * rowBytes);
+        }
+        stageEnd(STAGE_COPY, start);
+        if ((*env)->ExceptionCheck(env)) {
+            free(buffer);
+            return 0;
+        }
+    }
+    free(buffer);
+    
+    if (result != AVIF_RESULT_OK) {
+        throwIOException(env, avifResultToString(result));
+        return 0;
+    }
+    return 1;
+}
+
+/**
+ * 创建解码器并解析输入，失败时销毁会话并抛出 IOException
+ *
+ * io 为 NULL 时解析会话的内存数据，否则将 io 交给解码器（无论成功与否都由本函数接管）。
+ */
+static jlong parseSession(JNIEnv *env, DecoderSession *session, jlong optionsPtr, JavaIO *io) {
+    session->decoder = avifDecoderCreate();
+    if (session->decoder == NULL) {
+        if (io != NULL) {
+            javaIODestroy(&io->io);
+        }
+        destroySession(session);
+        throwIOException(env, "Failed to create AVIF decoder");
+        return 0;
+    }
+    
+    applyDecoderOptions(session, (const DecoderOptions*)(intptr_t)optionsPtr);
+    
+    if (io != NULL) {
+        avifDecoderSetIO(session->decoder, &io->io);
+        session->io = io;
+    } else {
+        avifResult result = avifDecoderSetIOMemory(session->decoder,
+            session->data, session->dataSize);
+        if (result != AVIF_RESULT_OK) {
+            destroySession(session);
+            throwIOException(env, avifResultToString(result));
+            return 0;
+        }
+    }
+    
+    int64_t start = stageBegin();
+    avifResult result = avifDecoderParse(session->decoder);
+    stageEnd(STAGE_PARSE, start);
+    if (result != AVIF_RESULT_OK) {
+        destroySession(session);
+        throwIOException(env, avifResultToString(result));
+        return 0;
+    }
+    
+    return (jlong)(intptr_t)session;
+}
+
+/**
+ * 线程复用的输入缓冲区（只增不减），由 Java 层 AvifThreadResources 保证同一时刻只被一个会话使用
+ */
+typedef struct {
+    uint8_t *data;
+    size_t capacity;
+} InputBuffer;
+
+/** 输入缓冲区按此粒度向上取整，避免尺寸略有增长时反复 realloc */
+#define INPUT_BUFFER_GRANULARITY ((size_t)64 * 1024)
+
+/**
+ * 确保输入缓冲区至少能容纳 size 字节
+ */
+static int growInputBuffer(InputBuffer *buffer, size_t size) {
+    if (size <= buffer->capacity && buffer->data != NULL) {
+        return 1;
+    }
+    size_t capacity = (size + INPUT_BUFFER_GRANULARITY - 1)
+        / INPUT_BUFFER_GRANULARITY * INPUT_BUFFER_GRANULARITY;
+    if (capacity == 0) {
+        capacity = INPUT_BUFFER_GRANULARITY;
+    }
+    // 旧内容不需要保留，先释放再分配避免 realloc 复制
+    free(buffer->data);
+    buffer->data = (uint8_t*)malloc(capacity);
+    buffer->capacity = (buffer->data != NULL) ? capacity : 0;
+    return buffer->data != NULL;
+}
+
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifDecoderSession_openNative
+  (JNIEnv *env, jclass cls, jlong optionsPtr, jlong inputBufferPtr, jbyteArray data,
+   jint offset, jint length) {
+    
+    DecoderSession *session = (DecoderSession*)calloc(1, sizeof(DecoderSession));
+    if (session == NULL) {
+        throwIOException(env, "Failed to allocate decoder session");
+        return 0;
+    }
+    
+    // 复制一次输入数据，后续所有调用共享同一次解析结果；
+    // 启用线程资源复用时复制到线程的输入缓冲区，不再每次分配
+    InputBuffer *inputBuffer = (InputBuffer*)(intptr_t)inputBufferPtr;
+    if (inputBuffer != NULL) {
+        if (growInputBuffer(inputBuffer, (size_t)length)) {
+            session->data = inputBuffer->data;
+        }
+        session->ownsData = 0;
+    } else {
+        session->data = (uint8_t*)malloc(length > 0 ? (size_t)length : 1);
+        session->ownsData = 1;
+    }
+    if (session->data == NULL) {
+        destroySession(session);
+        throwIOException(env, "Failed to allocate input buffer");
+        return 0;
+    }
+    session->dataSize = (size_t)length;
+    int64_t start = stageBegin();
+    (*env)->GetByteArrayRegion(env, data, offset, length, (jbyte*)session->data);
+    stageEnd(STAGE_COPY, start);
+    if ((*env)->ExceptionCheck(env)) {
+        destroySession(session);
+        return 0;
+    }
+    
+    return parseSession(env, session, optionsPtr, NULL);
+}
+
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifDecoderSession_openDirectNative
+  (JNIEnv *env, jclass cls, jlong optionsPtr, jobject buffer, jint offset, jint length) {
+    
+    uint8_t *address = (uint8_t*)(*env)->GetDirectBufferAddress(env, buffer);
+    jlong capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+    if (address == NULL || capacity < 0) {
+        throwIllegalArgumentException(env, "Buffer is not a direct buffer");
+        return 0;
+    }
+    if (offset < 0 || length < 0 || (jlong)offset + length > capacity) {
+        throwIllegalArgumentException(env, "Invalid offset/length");
+        return 0;
+    }
+    
+    DecoderSession *session = (DecoderSession*)calloc(1, sizeof(DecoderSession));
+    if (session == NULL) {
+        throwIOException(env, "Failed to allocate decoder session");
+        return 0;
+    }
+    
+    // 直接解析缓冲区内存，不复制；Java 层会话在关闭前持有缓冲区的引用
+    session->data = address + offset;
+    session->dataSize = (size_t)length;
+    session->ownsData = 0;
+    
+    return parseSession(env, session, optionsPtr, NULL);
+}
+
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifDecoderSession_openStreamNative
+  (JNIEnv *env, jclass cls, jlong optionsPtr, jobject source, jlong sizeHint) {
+    
+    DecoderSession *session = (DecoderSession*)calloc(1, sizeof(DecoderSession));
+    JavaIO *io = (JavaIO*)calloc(1, sizeof(JavaIO));
+    if (session == NULL || io == NULL) {
+        free(session);
+        free(io);
+        throwIOException(env, "Failed to allocate decoder session");
+        return 0;
+    }
+    io->io.destroy = javaIODestroy;
+    io->io.read = javaIORead;
+    io->io.sizeHint = (sizeHint > 0) ? (uint64_t)sizeHint : 0;
+    io->io.persistent = AVIF_FALSE;
+    io->env = env;
+    io->readAt = jniCache.streamSourceReadAt;
+    io->source = (*env)->NewGlobalRef(env, source);
+    if (io->source == NULL) {
+        javaIODestroy(&io->io);
+        free(session);
+        throwIOException(env, "Failed to reference input stream");
+        return 0;
+    }
+    
+    return parseSession(env, session, optionsPtr, io);
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderSession_reconfigureNative
+  (JNIEnv *env, jclass cls, jlong ptr, jlong optionsPtr) {
+    
+    DecoderSession *session = sessionFromPointer(env, ptr);
+    
+    // 线程数、编解码器等设置只在解析时生效，更新选项后基于同一份输入数据重新解析
+    applyDecoderOptions(session, (const DecoderOptions*)(intptr_t)optionsPtr);
+    int64_t start = stageBegin();
+    avifResult result = avifDecoderParse(session->decoder);
+    stageEnd(STAGE_PARSE, start);
+    if (result != AVIF_RESULT_OK) {
+        throwIOException(env, avifResultToString(result));
+    }
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderSession_closeNative
+  (JNIEnv *env, jclass cls, jlong ptr) {
+    destroySession(sessionFromPointer(env, ptr));
+}
+
+JNIEXPORT jobject JNICALL Java_com_github_avifimageio_AvifDecoderSession_getInfoNative
+  (JNIEnv *env, jclass cls, jlong ptr) {
+    
+    DecoderSession *session = sessionFromPointer(env, ptr);
+    avifDecoder *decoder = session->decoder;
+    
+    int width = decoder->image->width;
+    int height = decoder->image->height;
+    int bitDepth = decoder->image->depth;
+    int hasAlpha = decoder->alphaPresent ? 1 : 0;
+    int frameCount = decoder->imageCount;
+    double duration = decoder->duration;
+    int hasIccProfile = (!session->ignoreIcc && decoder->image->icc.size > 0) ? 1 : 0;
+    int hasExif = (decoder->image->exif.size > 0) ? 1 : 0;
+    
+    return (*env)->NewObject(env, jniCache.imageInfo, jniCache.imageInfoInit,
+        width, height, bitDepth, (jboolean)hasAlpha,
+        frameCount, duration, (jboolean)hasIccProfile, (jboolean)hasExif);
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderSession_decodeIntoNative
+  (JNIEnv *env, jclass cls, jlong ptr, jint frameIndex, jarray pixels, jint bytesPerElement,
+   jint offset, jint stride, jint width, jint height, jint format, jint depth, jint flags) {
+    
+    DecoderSession *session = sessionFromPointer(env, ptr);
+    avifDecoder *decoder = session->decoder;
+    
+    avifResult result = seekFrame(decoder, frameIndex);
+    if (result != AVIF_RESULT_OK) {
+        throwIOException(env, avifResultToString(result));
+        return;
+    }
+    
+    avifImage *image = decoder->image;
+    if ((jint)image->width != width || (jint)image->height != height) {
+        throwIllegalArgumentException(env, "Destination size does not match image size");
+        return;
+    }
+    
+    avifRGBImage rgb;
+    setupRGBLayout(&rgb, image, format, depth, flags);
+    rgb.rowBytes = (uint32_t)(stride * bytesPerElement);
+    if (!checkLayoutBounds(env, pixels, bytesPerElement, offset, stride, &rgb)) {
+        return;
+    }
+    
+    convertToArray(env, image, &rgb, pixels, bytesPerElement, offset, stride);
+}
+
+/**
+ * 从 YUV 图片中按步长点采样出一块区域，生成 4:4:4（单色图片为 4:0:0）的新图片
+ *
+ * 输出像素 (x, y) 取自源图 (x0 + x * xSub, y0 + y * ySub)，色度平面按源图的下采样比例取值。
+ * 只复制输出需要的样本，之后的 YUV 到 RGB 转换只处理输出尺寸的像素。
+ */
+static avifImage *sampleRegion(const avifImage *image, uint32_t x0, uint32_t y0,
+                               uint32_t xSub, uint32_t ySub, uint32_t width, uint32_t height) {
+    avifPixelFormatInfo info;
+    avifGetPixelFormatInfo(image->yuvFormat, &info);
+    avifPixelFormat format = info.monochrome ? AVIF_PIXEL_FORMAT_YUV400 : AVIF_PIXEL_FORMAT_YUV444;
+    
+    avifImage *region = avifImageCreate(width, height, image->depth, format);
+    if (region == NULL) {
+        return NULL;
+    }
+    region->yuvRange = image->yuvRange;
+    region->colorPrimaries = image->colorPrimaries;
+    region->transferCharacteristics = image->transferCharacteristics;
+    region->matrixCoefficients = image->matrixCoefficients;
+    region->alphaPremultiplied = image->alphaPremultiplied;
+    avifPlanesFlags planes = AVIF_PLANES_YUV;
+    if (image->alphaPlane != NULL) {
+        planes |= AVIF_PLANES_A;
+    }
+    if (avifImageAllocatePlanes(region, planes) != AVIF_RESULT_OK) {
+        avifImageDestroy(region);
+        return NULL;
+    }
+    
+    int highBitDepth = (image->depth > 8);
+    int planeCount = info.monochrome ? 1 : 3;
+    for (uint32_t y = 0; y < height; y++) {
+        uint32_t sy = y0 + y * ySub;
+        for (int c = 0; c <= planeCount; c++) {
+            const uint8_t *srcPlane;
+            uint32_t srcRowBytes;
+            uint8_t *dst;
+            int shiftX = 0;
+            int shiftY = 0;
+            if (c == planeCount) {
+                // 最后一轮处理 Alpha 平面
+                if (image->alphaPlane == NULL) {
+                    break;
+                }
+                srcPlane = image->alphaPlane;
+                srcRowBytes = image->alphaRowBytes;
+                dst = region->alphaPlane + (size_t)y * region->alphaRowBytes;
+            } else {
+                srcPlane = image->yuvPlanes[c];
+                srcRowBytes = image->yuvRowBytes[c];
+                dst = region->yuvPlanes[c] + (size_t)y * region->yuvRowBytes[c];
+                if (c > 0) {
+                    shiftX = info.chromaShiftX;
+                    shiftY = info.chromaShiftY;
+                }
+            }
+            const uint8_t *src = srcPlane + (size_t)(sy >> shiftY) * srcRowBytes;
+            for (uint32_t x = 0; x < width; x++) {
+                uint32_t sx = (x0 + x * xSub) >> shiftX;
+                if (highBitDepth) {
+                    ((uint16_t*)dst)[x] = ((const uint16_t*)src)[sx];
+                } else {
+                    dst[x] = src[sx];
+                }
+            }
+        }
+    }
+    return region;
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderSession_decodeRegionNative
+  (JNIEnv *env, jclass cls, jlong ptr, jint frameIndex,
+   jint srcX, jint srcY, jint srcWidth, jint srcHeight, jint xSubsampling, jint ySubsampling,
+   jarray pixels, jint bytesPerElement, jint offset, jint stride, jint width, jint height,
+   jint format, jint depth, jint flags) {
+    
+    DecoderSession *session = sessionFromPointer(env, ptr);
+    avifDecoder *decoder = session->decoder;
+    
+    avifResult result = seekFrame(decoder, frameIndex);
+    if (result != AVIF_RESULT_OK) {
+        throwIOException(env, avifResultToString(result));
+        return;
+    }
+    
+    avifImage *image = decoder->image;
+    if (srcX < 0 || srcY < 0 || srcWidth <= 0 || srcHeight <= 0
+            || (int64_t)srcX + srcWidth > (int64_t)image->width
+            || (int64_t)srcY + srcHeight > (int64_t)image->height
+            || xSubsampling < 1 || ySubsampling < 1
+            || width != (srcWidth + xSubsampling - 1) / xSubsampling
+            || height != (srcHeight + ySubsampling - 1) / ySubsampling) {
+        throwIllegalArgumentException(env, "Invalid source region");
+        return;
+    }
+    
+    // 不下采样时在 YUV 层面裁剪：视图直接引用解码器的平面，不复制；
+    // 区域起点与色度下采样不对齐时视图不可用，改为逐样本复制区域
+    avifImage *region = NULL;
+    if (xSubsampling == 1 && ySubsampling == 1) {
+        region = avifImageCreateEmpty();
+        if (region != NULL) {
+            avifCropRect rect;
+            rect.x = (uint32_t)srcX;
+            rect.y = (uint32_t)srcY;
+            rect.width = (uint32_t)srcWidth;
+            rect.height = (uint32_t)srcHeight;
+            if (avifImageSetViewRect(region, image, &rect) != AVIF_RESULT_OK) {
+                avifImageDestroy(region);
+                region = NULL;
+            }
+        }
+    }
+    if (region == NULL) {
+        int64_t start = stageBegin();
+        region = sampleRegion(image, (uint32_t)srcX, (uint32_t)srcY,
+            (uint32_t)xSubsampling, (uint32_t)ySubsampling, (uint32_t)width, (uint32_t)height);
+        stageEnd(STAGE_CONVERT, start);
+        if (region == NULL) {
+            throwIOException(env, "Failed to allocate region image");
+            return;
+        }
+    }
+    
+    avifRGBImage rgb;
+    setupRGBLayout(&rgb, region, format, depth, flags);
+    rgb.rowBytes = (uint32_t)(stride * bytesPerElement);
+    if (!checkLayoutBounds(env, pixels, bytesPerElement, offset, stride, &rgb)) {
+        avifImageDestroy(region);
+        return;
+    }
+    
+    convertToArray(env, region, &rgb, pixels, bytesPerElement, offset, stride);
+    avifImageDestroy(region);
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderSession_decodeScaledNative
+  (JNIEnv *env, jclass cls, jlong ptr, jint frameIndex, jarray pixels, jint bytesPerElement,
+   jint offset, jint stride, jint width, jint height, jint format, jint depth, jint flags) {
+    
+    DecoderSession *session = sessionFromPointer(env, ptr);
+    avifDecoder *decoder = session->decoder;
+    
+    avifResult result = seekFrame(decoder, frameIndex);
+    if (result != AVIF_RESULT_OK) {
+        throwIOException(env, avifResultToString(result));
+        return;
+    }
+    if (width <= 0 || height <= 0) {
+        throwIllegalArgumentException(env, "Invalid destination size");
+        return;
+    }
+    
+    // 在整帧视图上缩放：解码器的平面保持不变（后续帧可能依赖它们），缩放结果写入视图自己的平面，
+    // 之后的 YUV 到 RGB 转换只处理目标尺寸的像素
+    avifImage *image = decoder->image;
+    avifImage *scaled = avifImageCreateEmpty();
+    if (scaled == NULL) {
+        throwIOException(env, "Failed to allocate scaled image");
+        return;
+    }
+    avifCropRect rect;
+    rect.x = 0;
+    rect.y = 0;
+    rect.width = image->width;
+    rect.height = image->height;
+    result = avifImageSetViewRect(scaled, image, &rect);
+    if (result == AVIF_RESULT_OK
+            && (image->width != (uint32_t)width || image->height != (uint32_t)height)) {
+        int64_t start = stageBegin();
+        result = avifImageScale(scaled, (uint32_t)width, (uint32_t)height, &decoder->diag);
+        stageEnd(STAGE_CONVERT, start);
+    }
+    if (result != AVIF_RESULT_OK) {
+        avifImageDestroy(scaled);
+        throwIOException(env, avifResultToString(result));
+        return;
+    }
+    
+    avifRGBImage rgb;
+    setupRGBLayout(&rgb, scaled, format, depth, flags);
+    rgb.rowBytes = (uint32_t)(stride * bytesPerElement);
+    if (!checkLayoutBounds(env, pixels, bytesPerElement, offset, stride, &rgb)) {
+        avifImageDestroy(scaled);
+        return;
+    }
+    
+    convertToArray(env, scaled, &rgb, pixels, bytesPerElement, offset, stride);
+    avifImageDestroy(scaled);
+}
+
+JNIEXPORT jlongArray JNICALL Java_com_github_avifimageio_AvifDecoderSession_getFrameTimingNative
+  (JNIEnv *env, jclass cls, jlong ptr, jint frameIndex) {
+    
+    DecoderSession *session = sessionFromPointer(env, ptr);
+    avifImageTiming timing;
+    avifResult result = avifDecoderNthImageTiming(session->decoder, (uint32_t)frameIndex, &timing);
+    if (result != AVIF_RESULT_OK) {
+        throwIOException(env, avifResultToString(result));
+        return NULL;
+    }
+    
+    // [timescale, ptsInTimescales, durationInTimescales]
+    jlong values[3];
+    values[0] = (jlong)timing.timescale;
+    values[1] = (jlong)timing.ptsInTimescales;
+    values[2] = (jlong)timing.durationInTimescales;
+    
+    jlongArray array = (*env)->NewLongArray(env, 3);
+    if (array != NULL) {
+        (*env)->SetLongArrayRegion(env, array, 0, 3, values);
+    }
+    return array;
+}
+
+JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_AvifDecoderSession_getExifNative
+  (JNIEnv *env, jclass cls, jlong ptr) {
+    DecoderSession *session = sessionFromPointer(env, ptr);
+    return newByteArrayFromData(env, &session->decoder->image->exif);
+}
+
+JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_AvifDecoderSession_getIccProfileNative
+  (JNIEnv *env, jclass cls, jlong ptr) {
+    DecoderSession *session = sessionFromPointer(env, ptr);
+    if (session->ignoreIcc) {
+        return NULL;
+    }
+    return newByteArrayFromData(env, &session->decoder->image->icc);
+}
+
+JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_AvifDecoderSession_getXmpNative
+  (JNIEnv *env, jclass cls, jlong ptr) {
+    DecoderSession *session = sessionFromPointer(env, ptr);
+    return newByteArrayFromData(env, &session->decoder->image->xmp);
+}
+
+/* ============================================================================
+ * Thread resources JNI methods
+ * ============================================================================ */
+
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifThreadResources_createNative
+  (JNIEnv *env, jclass cls) {
+    InputBuffer *buffer = (InputBuffer*)calloc(1, sizeof(InputBuffer));
+    if (buffer == NULL) {
+        throwIOException(env, "Failed to allocate input buffer");
+        return 0;
+    }
+    return (jlong)(intptr_t)buffer;
+}
+
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifThreadResources_capacityNative
+  (JNIEnv *env, jclass cls, jlong ptr) {
+    InputBuffer *buffer = (InputBuffer*)(intptr_t)ptr;
+    return (jlong)buffer->capacity;
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifThreadResources_trimNative
+  (JNIEnv *env, jclass cls, jlong ptr) {
+    InputBuffer *buffer = (InputBuffer*)(intptr_t)ptr;
+    free(buffer->data);
+    buffer->data = NULL;
+    buffer->capacity = 0;
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifThreadResources_freeNative
+  (JNIEnv *env, jclass cls, jlong ptr) {
+    InputBuffer *buffer = (InputBuffer*)(intptr_t)ptr;
+    if (buffer != NULL) {
+        free(buffer->data);
+        free(buffer);
+    }
+}
+
+/* ============================================================================
+ * Avif main class JNI methods
+ * ============================================================================ */
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_Avif_setAutoThreadCount
+  (JNIEnv *env, jclass cls, jint threads) {
+    autoThreadCount = (threads > 0) ? threads : 1;
+}
+
+/* ============================================================================
+ * Metrics JNI methods
+ * ============================================================================ */
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifMetricsRegistry_setEnabledNative
+  (JNIEnv *env, jclass cls, jboolean enabled) {
+    metricsEnabled = enabled ? 1 : 0;
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifMetricsRegistry_takeStageValuesNative
+  (JNIEnv *env, jclass cls, jlongArray values) {
+    if (values != NULL) {
+        jlong copy[STAGE_COUNT];
+        int i;
+        for (i = 0; i < STAGE_COUNT; i++) {
+            copy[i] = (jlong)stageValues[i];
+        }
+        (*env)->SetLongArrayRegion(env, values, 0, STAGE_COUNT, copy);
+    }
+    memset(stageValues, 0, sizeof(stageValues));
+}
+
+/**
+ * 按编码配置确定待编码图片的像素格式
+ *
+ * gray 为真时使用 4:0:0；无损编码必须使用 4:4:4，色度下采样会丢失信息。
+ */
+static avifPixelFormat encodePixelFormat(const EncoderConfig *config, int gray) {
+    if (gray) {
+        return AVIF_PIXEL_FORMAT_YUV400;
+    }
+    if (config && config->lossless) {
+        return AVIF_PIXEL_FORMAT_YUV444;
+    }
+    return (avifPixelFormat)(config ? config->pixelFormat : AVIF_PIXEL_FORMAT_YUV444);
+}
+
+/**
+ * 按编码配置创建待编码的 YUV 图片（不分配平面）
+ *
+ * gray 为真时使用 4:0:0 全范围，亮度平面直接保存灰度值。
+ */
+static avifImage *createEncodeImage(const EncoderConfig *config, jint width, jint height,
+                                    int gray) {
+    int bitDepth = config ? config->bitDepth : 8;
+    int lossless = config ? config->lossless : 0;
+    
+    avifImage *image = avifImageCreate(width, height, bitDepth, encodePixelFormat(config, gray));
+    if (image == NULL) {
+        return NULL;
+    }
+    if (gray) {
+        image->yuvRange = AVIF_RANGE_FULL;
+    } else if (lossless) {
+        // 无损编码使用 identity 矩阵，YUV 转换不会丢失信息
+        image->matrixCoefficients = AVIF_MATRIX_COEFFICIENTS_IDENTITY;
+        image->yuvRange = AVIF_RANGE_FULL;
+    }
+    return image;
+}
+
+/**
+ * 将 Java 字节数组中的一段设置为图片的元数据（数组为 NULL 时不设置）
+ * 
+ * 直接复制到 avifImage 持有的缓冲区，不经过 GetByteArrayElements 的临时副本。
+ * 与 avifImageSetMetadataExif/avifImageSetProfileICC/avifImageSetMetadataXMP 的结果相同，
+ * 三者都只是设置对应的 avifRWData。
+ */
+static avifResult setImageMetadata(JNIEnv *env, avifRWData *target, jbyteArray data,
+                                   jint offset, jint length) {
+    if (data == NULL || length <= 0) {
+        return AVIF_RESULT_OK;
+    }
+    avifResult result = avifRWDataRealloc(target, (size_t)length);
+    if (result != AVIF_RESULT_OK) {
+        return result;
+    }
+    (*env)->GetByteArrayRegion(env, data, offset, length, (jbyte*)target->data);
+    if ((*env)->ExceptionCheck(env)) {
+        (*env)->ExceptionClear(env);
+        avifRWDataFree(target);
+        return AVIF_RESULT_INVALID_ARGUMENT;
+    }
+    return AVIF_RESULT_OK;
+}
+
+/**
+ * 按编码配置设置编码器参数
+ */
+static void configureEncoder(avifEncoder *encoder, const EncoderConfig *config) {
+    int quality = config ? config->quality : 60;
+    int speed = config ? config->speed : 6;
+    int lossless = config ? config->lossless : 0;
+    int maxThreads = config ? config->maxThreads : 1;
+    int tileRowsLog2 = config ? config->tileRowsLog2 : 0;
+    int tileColsLog2 = config ? config->tileColsLog2 : 0;
+    int autoTiling = config ? config->autoTiling : 0;
+    
+    encoder->speed = speed;
+    encoder->maxThreads = resolveThreadCount(maxThreads);
+    stageThreads(encoder->maxThreads);
+    // AV1 编码器只能在 tile 之间并行，自动分块时由 libavif 按图片尺寸和线程数选择 tile 数
+    encoder->autoTiling = autoTiling ? AVIF_TRUE : AVIF_FALSE;
+    encoder->tileRowsLog2 = tileRowsLog2;
+    encoder->tileColsLog2 = tileColsLog2;
+    encoder->keyframeInterval = config ? config->keyframeInterval : 0;
+    
+    if (lossless) {
+        encoder->quality = AVIF_QUALITY_LOSSLESS;
+        encoder->qualityAlpha = AVIF_QUALITY_LOSSLESS;
+    } else {
+        // quality 范围: 0-100, 直接使用
+        encoder->quality = quality;
+        encoder->qualityAlpha = quality;
+    }
+}
+
+/**
+ * 按编码配置将 YUV 图片编码为单帧 AVIF，结果写入 output（由调用方释放）
+ */
+static avifResult encodeImage(const EncoderConfig *config, const avifImage *image,
+                              avifRWData *output) {
+    avifEncoder *encoder = avifEncoderCreate();
+    if (encoder == NULL) {
+        return AVIF_RESULT_OUT_OF_MEMORY;
+    }
+    configureEncoder(encoder, config);
     
-    EncoderConfig *config = (EncoderConfig*)(intptr_t)configPtr;
-    int quality = config ? config->quality : 60;
-    int speed = config ? config->speed : 6;
-    int bitDepth = config ? config->bitDepth : 8;
-    int lossless = config ? config->lossless : 0;
+    int64_t start = stageBegin();
+    avifResult result = avifEncoderAddImage(encoder, image, 1, AVIF_ADD_IMAGE_FLAG_SINGLE);
+    if (result == AVIF_RESULT_OK) {
+        result = avifEncoderFinish(encoder, output);
+    }
+    stageEnd(STAGE_CODEC, start);
+    avifEncoderDestroy(encoder);
+    if (result != AVIF_RESULT_OK) {
+        avifRWDataFree(output);
+    }
+    return result;
+}
+
+/**
+ * 检查 RGB 像素的 Alpha 通道是否全部不透明（8 位或 16 位每通道）
+ */
+static int isAlphaOpaque(const uint8_t *pixels, uint32_t rowBytes, uint32_t width,
+                         uint32_t height, avifRGBFormat format, uint32_t depth) {
+    uint32_t channels = 4;
+    uint32_t alphaIndex = (format == AVIF_RGB_FORMAT_ARGB || format == AVIF_RGB_FORMAT_ABGR) ? 0 : 3;
+    for (uint32_t y = 0; y < height; y++) {
+        const uint8_t *row = pixels + (size_t)y * rowBytes;
+        if (depth > 8) {
+            const uint16_t *row16 = (const uint16_t*)row;
+            for (uint32_t x = 0; x < width; x++) {
+                if (row16[x * channels + alphaIndex] != 0xFFFF) {
+                    return 0;
+                }
+            }
+        } else {
+            for (uint32_t x = 0; x < width; x++) {
+                if (row[x * channels + alphaIndex] != 0xFF) {
+                    return 0;
+                }
+            }
+        }
+    }
+    return 1;
+}
+
+/**
+ * 将灰度像素（8 位或 16 位）写入 4:0:0 图片亮度平面从 firstRow 开始的 rows 行，按需缩放到图片位深
+ */
+static void copyGrayToY(avifImage *image, const uint8_t *pixels, uint32_t rowBytes, jint depth,
+                        uint32_t firstRow, uint32_t rows) {
+    uint32_t maxIn = (depth > 8) ? 0xFFFF : 0xFF;
+    uint32_t maxOut = (1u << image->depth) - 1;
+    for (uint32_t y = 0; y < rows; y++) {
+        const uint8_t *src = pixels + (size_t)y * rowBytes;
+        uint8_t *dst = image->yuvPlanes[AVIF_CHAN_Y]
+            + (size_t)(firstRow + y) * image->yuvRowBytes[AVIF_CHAN_Y];
+        if (depth <= 8 && image->depth == 8) {
+            memcpy(dst, src, image->width);
+            continue;
+        }
+        for (uint32_t x = 0; x < image->width; x++) {
+            uint32_t v = (depth > 8) ? ((const uint16_t*)src)[x] : src[x];
+            uint32_t scaled = (v * maxOut + maxIn / 2) / maxIn;
+            if (image->depth > 8) {
+                ((uint16_t*)dst)[x] = (uint16_t)scaled;
+            } else {
+                dst[x] = (uint8_t)scaled;
+            }
+        }
+    }
+}
+
+/**
+ * 将 RGB 像素转换为待编码图片中从第 y 行开始的一段（不调用 JNI，可以在临界区内执行）
+ *
+ * 先转换到与该段同样大小的单独图片，再复制到目标图片已分配的平面；y 为偶数，
+ * 4:2:0 色度下采样合并的 2x2 像素总在同一段内，结果与整帧转换相同。
+ */
+static avifResult convertBand(avifImage *image, const avifRGBImage *rgb, uint32_t y, uint32_t rows) {
+    avifImage *band = avifImageCreate(image->width, rows, image->depth, image->yuvFormat);
+    if (band == NULL) {
+        return AVIF_RESULT_OUT_OF_MEMORY;
+    }
+    band->yuvRange = image->yuvRange;
+    band->colorPrimaries = image->colorPrimaries;
+    band->transferCharacteristics = image->transferCharacteristics;
+    band->matrixCoefficients = image->matrixCoefficients;
+    band->alphaPremultiplied = image->alphaPremultiplied;
     
-    jbyte *pixels = (*env)->GetByteArrayElements(env, pixelData, NULL);
-    if (pixels == NULL) {
-        throwIOException(env, "Failed to get byte array elements");
-        return NULL;
+    avifRGBImage bandRgb = *rgb;
+    bandRgb.height = rows;
+    bandRgb.pixels = rgb->pixels + (size_t)y * rgb->rowBytes;
+    avifResult result = avifImageRGBToYUV(band, &bandRgb);
+    if (result != AVIF_RESULT_OK) {
+        avifImageDestroy(band);
+        return result;
     }
     
-    avifImage *image = avifImageCreate(width, height, bitDepth, AVIF_PIXEL_FORMAT_YUV444);
-    if (image == NULL) {
-        (*env)->ReleaseByteArrayElements(env, pixelData, pixels, JNI_ABORT);
-        throwIOException(env, "Failed to create AVIF image");
-        return NULL;
+    avifPixelFormatInfo info;
+    avifGetPixelFormatInfo(image->yuvFormat, &info);
+    size_t channelSize = avifImageUsesU16(image) ? 2 : 1;
+    int planeCount = info.monochrome ? 1 : 3;
+    for (int c = 0; c <= planeCount; c++) {
+        const uint8_t *src;
+        uint32_t srcRowBytes;
+        uint8_t *dst;
+        uint32_t dstRowBytes;
+        int shiftX = 0;
+        int shiftY = 0;
+        if (c == planeCount) {
+            // 最后一轮处理 Alpha 平面
+            if (band->alphaPlane == NULL || image->alphaPlane == NULL) {
+                break;
+            }
+            src = band->alphaPlane;
+            srcRowBytes = band->alphaRowBytes;
+            dst = image->alphaPlane;
+            dstRowBytes = image->alphaRowBytes;
+        } else {
+            src = band->yuvPlanes[c];
+            srcRowBytes = band->yuvRowBytes[c];
+            dst = image->yuvPlanes[c];
+            dstRowBytes = image->yuvRowBytes[c];
+            if (c > 0) {
+                shiftX = info.chromaShiftX;
+                shiftY = info.chromaShiftY;
+            }
+        }
+        size_t rowBytes = ((image->width + shiftX) >> shiftX) * channelSize;
+        uint32_t planeRows = (rows + shiftY) >> shiftY;
+        dst += (size_t)(y >> shiftY) * dstRowBytes;
+        for (uint32_t row = 0; row < planeRows; row++) {
+            memcpy(dst + (size_t)row * dstRowBytes, src + (size_t)row * srcRowBytes, rowBytes);
+        }
+    }
+    avifImageDestroy(band);
+    return AVIF_RESULT_OK;
+}
+
+/**
+ * 将 Java 数组中的像素转换到待编码的图片（布局已检查）
+ *
+ * rgb 为 NULL 时按 grayDepth 位的灰度写入亮度平面，否则按 rgb 的格式转换（像素指针由本函数设置）。
+ * 小图片在一次临界区内直接转换；大图片先分配图片平面，再按行分段，每段重新获取数组并只在
+ * 该段的转换期间持有临界区。出错时抛出异常并返回 0。
+ */
+static int convertFromArray(JNIEnv *env, avifImage *image, avifRGBImage *rgb, jint grayDepth,
+                            jarray pixels, jint bytesPerElement, jint offset, jint stride) {
+    uint32_t rowBytes = (uint32_t)(stride * bytesPerElement);
+    int banded = ((uint64_t)image->width * image->height > CRITICAL_MAX_PIXELS);
+    uint32_t band = banded ? bandRows(image->width) : image->height;
+    
+    avifResult result = AVIF_RESULT_OK;
+    if (banded || rgb == NULL) {
+        avifPlanesFlags planes = AVIF_PLANES_YUV;
+        if (rgb != NULL && !rgb->ignoreAlpha
+                && rgb->format != AVIF_RGB_FORMAT_RGB && rgb->format != AVIF_RGB_FORMAT_BGR) {
+            planes |= AVIF_PLANES_A;
+        }
+        result = avifImageAllocatePlanes(image, planes);
+    }
+    
+    for (uint32_t y = 0; y < image->height && result == AVIF_RESULT_OK; y += band) {
+        uint32_t rows = (image->height - y < band) ? image->height - y : band;
+        // 临界区内只做转换（不调用 JNI），编码在释放数组后进行
+        uint8_t *base = (uint8_t*)(*env)->GetPrimitiveArrayCritical(env, pixels, NULL);
+        if (base == NULL) {
+            return 0;
+        }
+        const uint8_t *src = base + (size_t)offset * (size_t)bytesPerElement;
+        int64_t start = stageBegin();
+        if (rgb == NULL) {
+            copyGrayToY(image, src + (size_t)y * rowBytes, rowBytes, grayDepth, y, rows);
+        } else {
+            rgb->pixels = (uint8_t*)src;
+            rgb->rowBytes = rowBytes;
+            result = banded ? convertBand(image, rgb, y, rows) : avifImageRGBToYUV(image, rgb);
+            rgb->pixels = NULL;
+        }
+        stageEnd(STAGE_CONVERT, start);
+        (*env)->ReleasePrimitiveArrayCritical(env, pixels, base, JNI_ABORT);
     }
     
-    // Set up RGB image
+    if (result != AVIF_RESULT_OK) {
+        throwIOException(env, avifResultToString(result));
+        return 0;
+    }
+    return 1;
+}
+
+/**
+ * 检查 Java 数组中 RGB 像素的 Alpha 通道是否全部不透明（布局已检查）
+ *
+ * 与转换一样按行分段，每段单独持有临界区。获取数组失败时 JNI 已抛出异常，返回 -1。
+ */
+static int isArrayAlphaOpaque(JNIEnv *env, const avifRGBImage *rgb, jarray pixels,
+                              jint bytesPerElement, jint offset, jint stride) {
+    uint32_t rowBytes = (uint32_t)(stride * bytesPerElement);
+    uint32_t band = ((uint64_t)rgb->width * rgb->height > CRITICAL_MAX_PIXELS)
+        ? bandRows(rgb->width) : rgb->height;
+    int opaque = 1;
+    for (uint32_t y = 0; y < rgb->height && opaque; y += band) {
+        uint32_t rows = (rgb->height - y < band) ? rgb->height - y : band;
+        uint8_t *base = (uint8_t*)(*env)->GetPrimitiveArrayCritical(env, pixels, NULL);
+        if (base == NULL) {
+            return -1;
+        }
+        const uint8_t *src = base + (size_t)offset * (size_t)bytesPerElement
+            + (size_t)y * rowBytes;
+        int64_t start = stageBegin();
+        opaque = isAlphaOpaque(src, rowBytes, rgb->width, rows, rgb->format, rgb->depth);
+        stageEnd(STAGE_CONVERT, start);
+        (*env)->ReleasePrimitiveArrayCritical(env, pixels, base, JNI_ABORT);
+    }
+    return opaque;
+}
+
+/**
+ * 将 avifRGBImage 配置为 8 位 RGB(A) 像素（像素指针由调用方设置）
+ */
+static void setupPixelsLayout(avifRGBImage *rgb, const avifImage *image, int hasAlpha) {
+    avifRGBImageSetDefaults(rgb, image);
+    rgb->format = hasAlpha ? AVIF_RGB_FORMAT_RGBA : AVIF_RGB_FORMAT_RGB;
+    rgb->depth = 8;
+}
+
+/**
+ * 将 8 位 RGB(A) 像素转换到 YUV 图片
+ */
+static avifResult convertPixels(avifImage *image, const uint8_t *pixels, jint stride,
+                                int hasAlpha) {
     avifRGBImage rgb;
-    avifRGBImageSetDefaults(&rgb, image);
-    rgb.format = hasAlpha ? AVIF_RGB_FORMAT_RGBA : AVIF_RGB_FORMAT_RGB;
-    rgb.depth = 8;
+    setupPixelsLayout(&rgb, image, hasAlpha);
     rgb.pixels = (uint8_t*)pixels;
     rgb.rowBytes = stride;
-    
-    // Convert RGB to YUV
+    int64_t start = stageBegin();
     avifResult result = avifImageRGBToYUV(image, &rgb);
+    stageEnd(STAGE_CONVERT, start);
+    return result;
+}
+
+/**
+ * 将 8 位 RGB(A) 像素编码为 AVIF，结果写入 output（由调用方释放）
+ *
+ * 失败时抛出 IOException 并返回 0。
+ */
+static int encodePixels(JNIEnv *env, const EncoderConfig *config, const uint8_t *pixels,
+                        jint width, jint height, jint stride, int hasAlpha,
+                        avifRWData *output) {
+    
+    avifImage *image = createEncodeImage(config, width, height, 0);
+    if (image == NULL) {
+        throwIOException(env, "Failed to create AVIF image");
+        return 0;
+    }
+    
+    avifResult result = convertPixels(image, pixels, stride, hasAlpha);
+    if (result == AVIF_RESULT_OK) {
+        result = encodeImage(config, image, output);
+    }
+    avifImageDestroy(image);
     if (result != AVIF_RESULT_OK) {
-        avifImageDestroy(image);
-        (*env)->ReleaseByteArrayElements(env, pixelData, pixels, JNI_ABORT);
         throwIOException(env, avifResultToString(result));
-        return NULL;
+        return 0;
+    }
+    return 1;
+}
+
+/**
+ * 检查 8 位 RGB(A) 像素区域是否落在长度为 capacity 字节的缓冲区内
+ */
+static int checkPixelBounds(JNIEnv *env, jlong capacity, jint offset,
+                            jint width, jint height, jint stride, int hasAlpha) {
+    int64_t pixelBytes = (int64_t)width * (hasAlpha ? 4 : 3);
+    if (width <= 0 || height <= 0 || offset < 0 || stride < pixelBytes) {
+        throwIllegalArgumentException(env, "Invalid pixel layout");
+        return 0;
+    }
+    int64_t required = (int64_t)offset + (int64_t)(height - 1) * stride + pixelBytes;
+    if (required > capacity) {
+        throwIllegalArgumentException(env, "Pixel buffer is too small for the image");
+        return 0;
     }
+    return 1;
+}
+
+static jbyteArray encodeInternal(JNIEnv *env, jlong configPtr, jbyteArray pixelData,
+                                 jint width, jint height, jint stride, int hasAlpha) {
     
-    // Create encoder
-    avifEncoder *encoder = avifEncoderCreate();
-    if (encoder == NULL) {
-        avifImageDestroy(image);
-        (*env)->ReleaseByteArrayElements(env, pixelData, pixels, JNI_ABORT);
-        throwIOException(env, "Failed to create AVIF encoder");
+    if (!checkPixelBounds(env, (*env)->GetArrayLength(env, pixelData), 0,
+            width, height, stride, hasAlpha)) {
         return NULL;
     }
     
-    // Configure encoder
-    encoder->speed = speed;
-    
-    if (lossless) {
-        encoder->quality = AVIF_QUALITY_LOSSLESS;
-        encoder->qualityAlpha = AVIF_QUALITY_LOSSLESS;
-    } else {
-        // quality 范围: 0-100, 直接使用
-        encoder->quality = quality;
-        encoder->qualityAlpha = quality;
+    const EncoderConfig *config = (const EncoderConfig*)(intptr_t)configPtr;
+    avifImage *image = createEncodeImage(config, width, height, 0);
+    if (image == NULL) {
+        throwIOException(env, "Failed to create AVIF image");
+        return NULL;
     }
     
-    // Encode
-    avifRWData output = AVIF_DATA_EMPTY;
-    result = avifEncoderAddImage(encoder, image, 1, AVIF_ADD_IMAGE_FLAG_SINGLE);
-    if (result != AVIF_RESULT_OK) {
-        avifEncoderDestroy(encoder);
+    avifRGBImage rgb;
+    setupPixelsLayout(&rgb, image, hasAlpha);
+    if (!convertFromArray(env, image, &rgb, 8, pixelData, 1, 0, stride)) {
         avifImageDestroy(image);
-        (*env)->ReleaseByteArrayElements(env, pixelData, pixels, JNI_ABORT);
-        throwIOException(env, avifResultToString(result));
         return NULL;
     }
     
-    result = avifEncoderFinish(encoder, &output);
+    avifRWData output = AVIF_DATA_EMPTY;
+    avifResult result = encodeImage(config, image, &output);
+    avifImageDestroy(image);
     if (result != AVIF_RESULT_OK) {
-        avifEncoderDestroy(encoder);
-        avifImageDestroy(image);
-        (*env)->ReleaseByteArrayElements(env, pixelData, pixels, JNI_ABORT);
         throwIOException(env, avifResultToString(result));
         return NULL;
     }
     
     // Create result byte array
-    jbyteArray resultArray = (*env)->NewByteArray(env, (jsize)output.size);
-    if (resultArray != NULL) {
-        (*env)->SetByteArrayRegion(env, resultArray, 0, (jsize)output.size, 
-            (const jbyte*)output.data);
-    }
-    
+    jbyteArray resultArray = newByteArrayFromData(env, &output);
     avifRWDataFree(&output);
-    avifEncoderDestroy(encoder);
-    avifImageDestroy(image);
-    (*env)->ReleaseByteArrayElements(env, pixelData, pixels, JNI_ABORT);
-    
     return resultArray;
 }
 
-JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_Avif_encodeRGBNative
-  (JNIEnv *env, jclass cls, jlong configPtr, jbyteArray rgbData, jint width, jint height, jint stride) {
-    return encodeInternal(env, configPtr, rgbData, width, height, stride, 0);
+/**
+ * 获取直接缓冲区中像素区域的地址，失败时抛出 IllegalArgumentException 并返回 NULL
+ *
+ * 像素区域必须落在 limit 之内，limit 之后直到 capacity 的字节不会被读取。
+ */
+static const uint8_t *getDirectPixels(JNIEnv *env, jobject buffer, jint offset, jint limit,
+                                      jint width, jint height, jint stride, int hasAlpha) {
+    uint8_t *address = (uint8_t*)(*env)->GetDirectBufferAddress(env, buffer);
+    jlong capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+    if (address == NULL || capacity < 0) {
+        throwIllegalArgumentException(env, "Buffer is not a direct buffer");
+        return NULL;
+    }
+    if (limit < 0 || limit > capacity) {
+        throwIllegalArgumentException(env, "Invalid buffer limit");
+        return NULL;
+    }
+    if (!checkPixelBounds(env, limit, offset, width, height, stride, hasAlpha)) {
+        return NULL;
+    }
+    return address + offset;
 }
 
-JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_Avif_encodeRGBANative
-  (JNIEnv *env, jclass cls, jlong configPtr, jbyteArray rgbaData, jint width, jint height, jint stride) {
-    return encodeInternal(env, configPtr, rgbaData, width, height, stride, 1);
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_Avif_encodeDirectNative
+  (JNIEnv *env, jclass cls, jlong configPtr, jobject pixelBuffer, jint offset, jint limit,
+   jint width, jint height, jint stride, jboolean hasAlpha,
+   jobject outputBuffer, jint outputOffset, jint outputLength) {
+    
+    const uint8_t *pixels = getDirectPixels(env, pixelBuffer, offset, limit,
+        width, height, stride, hasAlpha);
+    if (pixels == NULL) {
+        return -1;
+    }
+    uint8_t *dst = (uint8_t*)(*env)->GetDirectBufferAddress(env, outputBuffer);
+    jlong dstCapacity = (*env)->GetDirectBufferCapacity(env, outputBuffer);
+    if (dst == NULL || dstCapacity < 0 || outputOffset < 0 || outputLength < 0
+            || (jlong)outputOffset + outputLength > dstCapacity) {
+        throwIllegalArgumentException(env, "Invalid output buffer");
+        return -1;
+    }
+    
+    avifRWData output = AVIF_DATA_EMPTY;
+    if (!encodePixels(env, (const EncoderConfig*)(intptr_t)configPtr, pixels,
+            width, height, stride, hasAlpha, &output)) {
+        return -1;
+    }
+    
+    // 输出缓冲区剩余空间不足时返回 -1，由 Java 层抛出 BufferOverflowException
+    jint written = -1;
+    if (output.size <= (size_t)outputLength) {
+        int64_t start = stageBegin();
+        memcpy(dst + outputOffset, output.data, output.size);
+        stageEnd(STAGE_COPY, start);
+        written = (jint)output.size;
+    }
+    avifRWDataFree(&output);
+    return written;
+}
+
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_Avif_encodeToNativeBufferNative
+  (JNIEnv *env, jclass cls, jlong configPtr, jobject pixelBuffer, jint offset, jint limit,
+   jint width, jint height, jint stride, jboolean hasAlpha) {
+    
+    const uint8_t *pixels = getDirectPixels(env, pixelBuffer, offset, limit,
+        width, height, stride, hasAlpha);
+    if (pixels == NULL) {
+        return 0;
+    }
+    
+    avifRWData *output = (avifRWData*)malloc(sizeof(avifRWData));
+    if (output == NULL) {
+        throwIOException(env, "Failed to allocate output buffer");
+        return 0;
+    }
+    output->data = NULL;
+    output->size = 0;
+    if (!encodePixels(env, (const EncoderConfig*)(intptr_t)configPtr, pixels,
+            width, height, stride, hasAlpha, output)) {
+        free(output);
+        return 0;
+    }
+    // 编码结果保留在 libavif 分配的内存中，由 AvifEncodedBuffer 负责释放
+    return (jlong)(intptr_t)output;
 }
 
-JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_Avif_getExifNative
-  (JNIEnv *env, jclass cls, jbyteArray data, jint offset, jint length) {
+/**
+ * 按 Java 层 RasterLayout 的描述将数组中的像素转换为待编码的 YUV 图片
+ *
+ * alphaMode 决定 Alpha 通道的处理方式（ENCODE_ALPHA_*）。
+ * 失败时抛出异常并返回 NULL。
+ */
+static avifImage *convertLayout(JNIEnv *env, const EncoderConfig *config, jarray pixels,
+                                jint bytesPerElement, jint offset, jint stride,
+                                jint width, jint height, jint format, jint depth, jint flags,
+                                int alphaMode) {
+    int gray = (format == LAYOUT_FORMAT_GRAY);
     
-    jbyte *dataBytes = (*env)->GetByteArrayElements(env, data, NULL);
-    if (dataBytes == NULL) {
-        throwIOException(env, "Failed to get byte array elements");
+    avifImage *image = createEncodeImage(config, width, height, gray);
+    if (image == NULL) {
+        throwIOException(env, "Failed to create AVIF image");
         return NULL;
     }
     
-    avifDecoder *decoder = avifDecoderCreate();
-    if (decoder == NULL) {
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-        throwIOException(env, "Failed to create AVIF decoder");
+    avifRGBImage rgb;
+    int64_t pixelBytes;
+    if (gray) {
+        pixelBytes = (int64_t)width * (depth > 8 ? 2 : 1);
+    } else {
+        setupRGBLayout(&rgb, image, format, depth, flags);
+        pixelBytes = (int64_t)width * avifRGBImagePixelSize(&rgb);
+    }
+    if (!checkArrayBounds(env, pixels, bytesPerElement, offset, stride, height, pixelBytes)) {
+        avifImageDestroy(image);
         return NULL;
     }
     
-    avifResult result = avifDecoderSetIOMemory(decoder, 
-        (const uint8_t*)(dataBytes + offset), (size_t)length);
-    if (result != AVIF_RESULT_OK) {
-        avifDecoderDestroy(decoder);
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-        throwIOException(env, avifResultToString(result));
+    if (!gray && rgb.format != AVIF_RGB_FORMAT_RGB && rgb.format != AVIF_RGB_FORMAT_BGR) {
+        // 填充字节不是 Alpha；自动模式下全部不透明的 Alpha 也不编码为 Alpha 平面
+        if ((flags & LAYOUT_FLAG_IGNORE_ALPHA) || alphaMode == ENCODE_ALPHA_DROP) {
+            rgb.ignoreAlpha = AVIF_TRUE;
+        } else if (alphaMode == ENCODE_ALPHA_AUTO) {
+            int opaque = isArrayAlphaOpaque(env, &rgb, pixels, bytesPerElement, offset, stride);
+            if (opaque < 0) {
+                avifImageDestroy(image);
+                return NULL;
+            }
+            rgb.ignoreAlpha = opaque ? AVIF_TRUE : AVIF_FALSE;
+        }
+    }
+    
+    if (!convertFromArray(env, image, gray ? NULL : &rgb, depth,
+            pixels, bytesPerElement, offset, stride)) {
+        avifImageDestroy(image);
+        return NULL;
+    }
+    return image;
+}
+
+JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_Avif_encodeLayoutNative
+  (JNIEnv *env, jclass cls, jlong configPtr, jarray pixels, jint bytesPerElement,
+   jint offset, jint stride, jint width, jint height, jint format, jint depth, jint flags,
+   jbyteArray exif, jint exifOffset, jint exifLength, jbyteArray icc, jint iccOffset,
+   jint iccLength, jbyteArray xmp, jint xmpOffset, jint xmpLength) {
+    
+    const EncoderConfig *config = (const EncoderConfig*)(intptr_t)configPtr;
+    avifImage *image = convertLayout(env, config, pixels, bytesPerElement, offset, stride,
+        width, height, format, depth, flags, ENCODE_ALPHA_AUTO);
+    if (image == NULL) {
         return NULL;
     }
     
-    result = avifDecoderParse(decoder);
+    avifResult result = setImageMetadata(env, &image->exif, exif, exifOffset, exifLength);
+    if (result == AVIF_RESULT_OK && image->exif.size > 0) {
+        // 与 avifenc 相同：像素按存储方向编码，EXIF 方向转换为 irot/imir，解码端据此旋转显示
+        if (avifImageExtractExifOrientationToIrotImir(image) != AVIF_RESULT_OK) {
+            // EXIF 无法解析时不影响编码，保持不旋转
+            image->transformFlags &= ~(avifTransformFlags)(AVIF_TRANSFORM_IROT | AVIF_TRANSFORM_IMIR);
+        }
+    }
+    if (result == AVIF_RESULT_OK) {
+        result = setImageMetadata(env, &image->icc, icc, iccOffset, iccLength);
+    }
+    if (result == AVIF_RESULT_OK) {
+        result = setImageMetadata(env, &image->xmp, xmp, xmpOffset, xmpLength);
+    }
+    avifRWData output = AVIF_DATA_EMPTY;
+    if (result == AVIF_RESULT_OK) {
+        result = encodeImage(config, image, &output);
+    }
+    avifImageDestroy(image);
     if (result != AVIF_RESULT_OK) {
-        avifDecoderDestroy(decoder);
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
         throwIOException(env, avifResultToString(result));
         return NULL;
     }
     
-    jbyteArray exifArray = NULL;
-    if (decoder->image->exif.size > 0) {
-        exifArray = (*env)->NewByteArray(env, (jsize)decoder->image->exif.size);
-        if (exifArray != NULL) {
-            (*env)->SetByteArrayRegion(env, exifArray, 0, (jsize)decoder->image->exif.size, 
-                (const jbyte*)decoder->image->exif.data);
+    jbyteArray resultArray = newByteArrayFromData(env, &output);
+    avifRWDataFree(&output);
+    return resultArray;
+}
+
+/* ============================================================================
+ * Encoder session JNI methods
+ * ============================================================================ */
+
+/**
+ * 为没有 Alpha 平面的图片分配全部不透明的 Alpha 平面
+ *
+ * 序列中所有帧的 Alpha 平面必须一致，编码 Alpha 的序列中不带 Alpha 的帧使用此平面。
+ */
+static avifResult fillOpaqueAlpha(avifImage *image) {
+    avifResult result = avifImageAllocatePlanes(image, AVIF_PLANES_A);
+    if (result != AVIF_RESULT_OK) {
+        return result;
+    }
+    uint16_t maxValue = (uint16_t)((1u << image->depth) - 1);
+    for (uint32_t y = 0; y < image->height; y++) {
+        uint8_t *row = image->alphaPlane + (size_t)y * image->alphaRowBytes;
+        if (image->depth > 8) {
+            uint16_t *row16 = (uint16_t*)row;
+            for (uint32_t x = 0; x < image->width; x++) {
+                row16[x] = maxValue;
+            }
+        } else {
+            memset(row, 0xFF, image->width);
         }
     }
+    return AVIF_RESULT_OK;
+}
+
+typedef struct {
+    avifEncoder *encoder;
+    EncoderConfig config;  // 打开时的配置副本，之后修改 AvifEncoderOptions 不影响会话
+    uint32_t width;        // 第一帧的尺寸，后续帧必须一致
+    uint32_t height;
+    int alphaMode;         // 第一帧决定是否编码 Alpha，后续帧保持一致
+    int frameCount;
+} EncoderSession;
+
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifEncoderSession_openNative
+  (JNIEnv *env, jclass cls, jlong configPtr, jlong timescale) {
     
-    avifDecoderDestroy(decoder);
-    (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
+    EncoderSession *session = (EncoderSession*)calloc(1, sizeof(EncoderSession));
+    if (session == NULL) {
+        throwIOException(env, "Failed to allocate encoder session");
+        return 0;
+    }
+    if (configPtr != 0) {
+        session->config = *(const EncoderConfig*)(intptr_t)configPtr;
+    } else {
+        session->config.quality = 60;
+        session->config.speed = 6;
+        session->config.bitDepth = 8;
+        session->config.maxThreads = 1;
+        session->config.pixelFormat = AVIF_PIXEL_FORMAT_YUV444;
+    }
     
-    return exifArray;
+    session->encoder = avifEncoderCreate();
+    if (session->encoder == NULL) {
+        free(session);
+        throwIOException(env, "Failed to create AVIF encoder");
+        return 0;
+    }
+    configureEncoder(session->encoder, &session->config);
+    session->encoder->timescale = (uint64_t)timescale;
+    session->alphaMode = ENCODE_ALPHA_AUTO;
+    return (jlong)(intptr_t)session;
 }
 
-JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_Avif_getIccProfileNative
-  (JNIEnv *env, jclass cls, jbyteArray data, jint offset, jint length) {
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderSession_addFrameNative
+  (JNIEnv *env, jclass cls, jlong ptr, jarray pixels, jint bytesPerElement,
+   jint offset, jint stride, jint width, jint height, jint format, jint depth, jint flags,
+   jlong duration, jboolean forceKeyframe) {
     
-    jbyte *dataBytes = (*env)->GetByteArrayElements(env, data, NULL);
-    if (dataBytes == NULL) {
-        throwIOException(env, "Failed to get byte array elements");
-        return NULL;
+    EncoderSession *session = (EncoderSession*)(intptr_t)ptr;
+    if (session->frameCount > 0
+            && ((uint32_t)width != session->width || (uint32_t)height != session->height)) {
+        throwIllegalArgumentException(env, "All frames must have the same size");
+        return;
     }
     
-    avifDecoder *decoder = avifDecoderCreate();
-    if (decoder == NULL) {
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-        throwIOException(env, "Failed to create AVIF decoder");
-        return NULL;
+    int alphaMode = session->alphaMode;
+    if (session->frameCount == 0) {
+        // 无法预知后续帧是否透明：第一帧带 Alpha 通道时整个序列都编码 Alpha
+        int hasAlpha = (format != LAYOUT_FORMAT_GRAY && format != AVIF_RGB_FORMAT_RGB
+            && format != AVIF_RGB_FORMAT_BGR && !(flags & LAYOUT_FLAG_IGNORE_ALPHA));
+        alphaMode = hasAlpha ? ENCODE_ALPHA_KEEP : ENCODE_ALPHA_DROP;
+    }
+    
+    avifImage *image = convertLayout(env, &session->config, pixels, bytesPerElement, offset,
+        stride, width, height, format, depth, flags, alphaMode);
+    if (image == NULL) {
+        return;
+    }
+    
+    avifResult result = AVIF_RESULT_OK;
+    if (alphaMode == ENCODE_ALPHA_KEEP && image->alphaPlane == NULL) {
+        // 后续帧没有 Alpha 通道（RGB 或填充字节），补一个不透明的 Alpha 平面与第一帧保持一致
+        result = fillOpaqueAlpha(image);
     }
     
-    avifResult result = avifDecoderSetIOMemory(decoder, 
-        (const uint8_t*)(dataBytes + offset), (size_t)length);
+    // 每帧立即编码，原始帧在返回前释放，只有压缩后的数据保留在编码器中
+    if (result == AVIF_RESULT_OK) {
+        avifAddImageFlags addFlags = forceKeyframe ? AVIF_ADD_IMAGE_FLAG_FORCE_KEYFRAME
+            : AVIF_ADD_IMAGE_FLAG_NONE;
+        int64_t start = stageBegin();
+        result = avifEncoderAddImage(session->encoder, image, (uint64_t)duration, addFlags);
+        stageEnd(STAGE_CODEC, start);
+    }
+    avifImageDestroy(image);
     if (result != AVIF_RESULT_OK) {
-        avifDecoderDestroy(decoder);
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
         throwIOException(env, avifResultToString(result));
-        return NULL;
+        return;
+    }
+    
+    if (session->frameCount == 0) {
+        session->width = (uint32_t)width;
+        session->height = (uint32_t)height;
+        session->alphaMode = alphaMode;
     }
+    session->frameCount++;
+}
+
+JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_AvifEncoderSession_finishNative
+  (JNIEnv *env, jclass cls, jlong ptr) {
     
-    result = avifDecoderParse(decoder);
+    EncoderSession *session = (EncoderSession*)(intptr_t)ptr;
+    avifRWData output = AVIF_DATA_EMPTY;
+    int64_t start = stageBegin();
+    avifResult result = avifEncoderFinish(session->encoder, &output);
+    stageEnd(STAGE_CODEC, start);
     if (result != AVIF_RESULT_OK) {
-        avifDecoderDestroy(decoder);
-        (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
+        avifRWDataFree(&output);
         throwIOException(env, avifResultToString(result));
         return NULL;
     }
     
-    jbyteArray iccArray = NULL;
-    if (decoder->image->icc.size > 0) {
-        iccArray = (*env)->NewByteArray(env, (jsize)decoder->image->icc.size);
-        if (iccArray != NULL) {
-            (*env)->SetByteArrayRegion(env, iccArray, 0, (jsize)decoder->image->icc.size, 
-                (const jbyte*)decoder->image->icc.data);
+    jbyteArray resultArray = newByteArrayFromData(env, &output);
+    avifRWDataFree(&output);
+    return resultArray;
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderSession_closeNative
+  (JNIEnv *env, jclass cls, jlong ptr) {
+    EncoderSession *session = (EncoderSession*)(intptr_t)ptr;
+    if (session != NULL) {
+        if (session->encoder != NULL) {
+            avifEncoderDestroy(session->encoder);
         }
+        free(session);
     }
-    
-    avifDecoderDestroy(decoder);
-    (*env)->ReleaseByteArrayElements(env, data, dataBytes, JNI_ABORT);
-    
-    return iccArray;
+}
+
+/* ============================================================================
+ * Encoded buffer JNI methods
+ * ============================================================================ */
+
+JNIEXPORT jobject JNICALL Java_com_github_avifimageio_AvifEncodedBuffer_wrapNative
+  (JNIEnv *env, jclass cls, jlong ptr) {
+    avifRWData *data = (avifRWData*)(intptr_t)ptr;
+    return (*env)->NewDirectByteBuffer(env, data->data, (jlong)data->size);
+}
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncodedBuffer_freeNative
+  (JNIEnv *env, jclass cls, jlong ptr) {
+    avifRWData *data = (avifRWData*)(intptr_t)ptr;
+    if (data != NULL) {
+        avifRWDataFree(data);
+        free(data);
+    }
+}
+
+JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_Avif_encodeRGBNative
+  (JNIEnv *env, jclass cls, jlong configPtr, jbyteArray rgbData,
+   jint width, jint height, jint stride) {
+    return encodeInternal(env, configPtr, rgbData, width, height, stride, 0);
+}
+
+JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_Avif_encodeRGBANative
+  (JNIEnv *env, jclass cls, jlong configPtr, jbyteArray rgbaData,
+   jint width, jint height, jint stride) {
+    return encodeInternal(env, configPtr, rgbaData, width, height, stride, 1);
 }
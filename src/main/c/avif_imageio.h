@@ -17,6 +17,9 @@ JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifEncoderOptions_createCon
 JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_deleteConfig
   (JNIEnv *, jclass, jlong);
 
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifEncoderOptions_copyConfig
+  (JNIEnv *, jclass, jlong);
+
 JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifEncoderOptions_getQuality
   (JNIEnv *, jobject);
 
@@ -41,6 +44,42 @@ JNIEXPORT jboolean JNICALL Java_com_github_avifimageio_AvifEncoderOptions_isLoss
 JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setLossless
   (JNIEnv *, jobject, jboolean);
 
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifEncoderOptions_getMaxThreads
+  (JNIEnv *, jobject);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setMaxThreads
+  (JNIEnv *, jobject, jint);
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifEncoderOptions_getTileRowsLog2
+  (JNIEnv *, jobject);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setTileRowsLog2
+  (JNIEnv *, jobject, jint);
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifEncoderOptions_getTileColsLog2
+  (JNIEnv *, jobject);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setTileColsLog2
+  (JNIEnv *, jobject, jint);
+
+JNIEXPORT jboolean JNICALL Java_com_github_avifimageio_AvifEncoderOptions_isAutoTiling
+  (JNIEnv *, jobject);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setAutoTiling
+  (JNIEnv *, jobject, jboolean);
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifEncoderOptions_getPixelFormat
+  (JNIEnv *, jobject);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setPixelFormat
+  (JNIEnv *, jobject, jint);
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifEncoderOptions_getKeyframeInterval
+  (JNIEnv *, jobject);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderOptions_setKeyframeInterval
+  (JNIEnv *, jobject, jint);
+
 /*
  * Decoder Options
  */
@@ -50,6 +89,9 @@ JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifDecoderOptions_createOpt
 JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_deleteOptions
   (JNIEnv *, jclass, jlong);
 
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifDecoderOptions_copyOptions
+  (JNIEnv *, jclass, jlong);
+
 JNIEXPORT jboolean JNICALL Java_com_github_avifimageio_AvifDecoderOptions_isIgnoreIcc
   (JNIEnv *, jobject);
 
@@ -62,17 +104,108 @@ JNIEXPORT jboolean JNICALL Java_com_github_avifimageio_AvifDecoderOptions_isIgno
 JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setIgnoreExif
   (JNIEnv *, jobject, jboolean);
 
+JNIEXPORT jboolean JNICALL Java_com_github_avifimageio_AvifDecoderOptions_isHighBitDepth
+  (JNIEnv *, jobject);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setHighBitDepth
+  (JNIEnv *, jobject, jboolean);
+
+JNIEXPORT jboolean JNICALL Java_com_github_avifimageio_AvifDecoderOptions_isIgnoreXmp
+  (JNIEnv *, jobject);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setIgnoreXmp
+  (JNIEnv *, jobject, jboolean);
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifDecoderOptions_getMaxThreads
+  (JNIEnv *, jobject);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setMaxThreads
+  (JNIEnv *, jobject, jint);
+
+JNIEXPORT jstring JNICALL Java_com_github_avifimageio_AvifDecoderOptions_getCodec
+  (JNIEnv *, jobject);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setCodec
+  (JNIEnv *, jobject, jstring);
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifDecoderOptions_getStrictFlags
+  (JNIEnv *, jobject);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setStrictFlags
+  (JNIEnv *, jobject, jint);
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifDecoderOptions_getImageSizeLimit
+  (JNIEnv *, jobject);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setImageSizeLimit
+  (JNIEnv *, jobject, jint);
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_AvifDecoderOptions_getImageDimensionLimit
+  (JNIEnv *, jobject);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setImageDimensionLimit
+  (JNIEnv *, jobject, jint);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderOptions_setPrimaryItemOnly
+  (JNIEnv *, jobject, jboolean);
+
+/*
+ * Decoder session
+ */
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifDecoderSession_openNative
+  (JNIEnv *, jclass, jlong, jlong, jbyteArray, jint, jint);
+
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifDecoderSession_openDirectNative
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
+
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifDecoderSession_openStreamNative
+  (JNIEnv *, jclass, jlong, jobject, jlong);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderSession_reconfigureNative
+  (JNIEnv *, jclass, jlong, jlong);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderSession_closeNative
+  (JNIEnv *, jclass, jlong);
+
+JNIEXPORT jobject JNICALL Java_com_github_avifimageio_AvifDecoderSession_getInfoNative
+  (JNIEnv *, jclass, jlong);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderSession_decodeIntoNative
+  (JNIEnv *, jclass, jlong, jint, jarray, jint, jint, jint, jint, jint, jint, jint, jint);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderSession_decodeRegionNative
+  (JNIEnv *, jclass, jlong, jint, jint, jint, jint, jint, jint, jint,
+   jarray, jint, jint, jint, jint, jint, jint, jint, jint);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifDecoderSession_decodeScaledNative
+  (JNIEnv *, jclass, jlong, jint, jarray, jint, jint, jint, jint, jint, jint, jint, jint);
+
+JNIEXPORT jlongArray JNICALL Java_com_github_avifimageio_AvifDecoderSession_getFrameTimingNative
+  (JNIEnv *, jclass, jlong, jint);
+
+JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_AvifDecoderSession_getExifNative
+  (JNIEnv *, jclass, jlong);
+
+JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_AvifDecoderSession_getIccProfileNative
+  (JNIEnv *, jclass, jlong);
+
+JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_AvifDecoderSession_getXmpNative
+  (JNIEnv *, jclass, jlong);
+
 /*
  * Avif main class
  */
-JNIEXPORT jobject JNICALL Java_com_github_avifimageio_Avif_getInfoNative
-  (JNIEnv *, jclass, jbyteArray, jint, jint);
+JNIEXPORT void JNICALL Java_com_github_avifimageio_Avif_setAutoThreadCount
+  (JNIEnv *, jclass, jint);
 
-JNIEXPORT jobject JNICALL Java_com_github_avifimageio_Avif_decodeNative
-  (JNIEnv *, jclass, jlong, jbyteArray, jint, jint);
+/*
+ * Metrics
+ */
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifMetricsRegistry_setEnabledNative
+  (JNIEnv *, jclass, jboolean);
 
-JNIEXPORT jobject JNICALL Java_com_github_avifimageio_Avif_decodeFrameNative
-  (JNIEnv *, jclass, jlong, jbyteArray, jint, jint, jint);
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifMetricsRegistry_takeStageValuesNative
+  (JNIEnv *, jclass, jlongArray);
 
 JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_Avif_encodeRGBNative
   (JNIEnv *, jclass, jlong, jbyteArray, jint, jint, jint);
@@ -80,11 +213,54 @@ JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_Avif_encodeRGBNative
 JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_Avif_encodeRGBANative
   (JNIEnv *, jclass, jlong, jbyteArray, jint, jint, jint);
 
-JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_Avif_getExifNative
-  (JNIEnv *, jclass, jbyteArray, jint, jint);
+JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_Avif_encodeLayoutNative
+  (JNIEnv *, jclass, jlong, jarray, jint, jint, jint, jint, jint, jint, jint, jint,
+   jbyteArray, jint, jint, jbyteArray, jint, jint, jbyteArray, jint, jint);
+
+JNIEXPORT jint JNICALL Java_com_github_avifimageio_Avif_encodeDirectNative
+  (JNIEnv *, jclass, jlong, jobject, jint, jint, jint, jint, jint, jboolean, jobject, jint, jint);
+
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_Avif_encodeToNativeBufferNative
+  (JNIEnv *, jclass, jlong, jobject, jint, jint, jint, jint, jint, jboolean);
+
+/*
+ * Encoder Session
+ */
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifEncoderSession_openNative
+  (JNIEnv *, jclass, jlong, jlong);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderSession_addFrameNative
+  (JNIEnv *, jclass, jlong, jarray, jint, jint, jint, jint, jint, jint, jint, jint, jlong, jboolean);
+
+JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_AvifEncoderSession_finishNative
+  (JNIEnv *, jclass, jlong);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncoderSession_closeNative
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Encoded Buffer
+ */
+JNIEXPORT jobject JNICALL Java_com_github_avifimageio_AvifEncodedBuffer_wrapNative
+  (JNIEnv *, jclass, jlong);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifEncodedBuffer_freeNative
+  (JNIEnv *, jclass, jlong);
 
-JNIEXPORT jbyteArray JNICALL Java_com_github_avifimageio_Avif_getIccProfileNative
-  (JNIEnv *, jclass, jbyteArray, jint, jint);
+/*
+ * Thread Resources
+ */
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifThreadResources_createNative
+  (JNIEnv *, jclass);
+
+JNIEXPORT jlong JNICALL Java_com_github_avifimageio_AvifThreadResources_capacityNative
+  (JNIEnv *, jclass, jlong);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifThreadResources_trimNative
+  (JNIEnv *, jclass, jlong);
+
+JNIEXPORT void JNICALL Java_com_github_avifimageio_AvifThreadResources_freeNative
+  (JNIEnv *, jclass, jlong);
 
 #ifdef __cplusplus
 }
@@ -1,6 +1,12 @@
 package com.github.avifimageio;
 
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Path;
 
 /**
  * AVIF 编解码 JNI 桥接类
@@ -39,7 +45,11 @@ public final class Avif {
             } else {
                 NativeLibraryUtils.loadFromJar();
             }
+            // 自动线程数以 JVM 可见的核心数为准（可感知容器 CPU 配额）
+            setAutoThreadCount(Runtime.getRuntime().availableProcessors());
             NATIVE_LIBRARY_LOADED = true;
+            // 加载前注册的指标监听器在此开启原生计时
+            AvifMetricsRegistry.updateNative();
         } catch (Throwable e) {
             LOAD_ERROR = e;
         }
@@ -47,6 +57,8 @@ public final class Avif {
     
     private Avif() {}
     
+    private static native void setAutoThreadCount(int threads);
+    
     /**
      * 检查原生库是否可用
      * 
@@ -57,6 +69,13 @@ public final class Avif {
         return NATIVE_LIBRARY_LOADED;
     }
     
+    /**
+     * 检查原生库是否已加载（不会触发加载）
+     */
+    static boolean isLoaded() {
+        return NATIVE_LIBRARY_LOADED;
+    }
+    
     /**
      * 获取原生库加载错误（如果有）
      * 
@@ -80,6 +99,86 @@ public final class Avif {
         }
     }
     
+    /**
+     * 启用或禁用线程资源复用
+     * 
+     * <p>启用后，每个线程保留一个只增不减的原生输入缓冲区，从字节数组解码时复用，
+     * 高频解码时不再为每张图片分配和释放与文件等大的原生内存。
+     * 保留的总字节数受 {@link #setMaxRetainedBytes(long)} 限制。
+     * 禁用时释放所有空闲缓冲区。默认禁用。</p>
+     * 
+     * @param enabled true 启用复用
+     */
+    public static void setThreadResourcesEnabled(boolean enabled) {
+        AvifThreadResources.setEnabled(enabled);
+    }
+    
+    /**
+     * 检查是否启用了线程资源复用
+     * 
+     * @return true 如果已启用
+     */
+    public static boolean isThreadResourcesEnabled() {
+        return AvifThreadResources.isEnabled();
+    }
+    
+    /**
+     * 设置所有线程最多保留的缓冲区字节数
+     * 
+     * <p>会话关闭时保留总量超过上限的线程缓冲区会被立即释放。</p>
+     * 
+     * @param maxBytes 最大字节数（默认 64 MiB，0 表示不保留）
+     * @throws IllegalArgumentException 如果 maxBytes 小于 0
+     */
+    public static void setMaxRetainedBytes(long maxBytes) {
+        AvifThreadResources.setMaxRetainedBytes(maxBytes);
+    }
+    
+    /**
+     * 获取所有线程当前保留的缓冲区字节数
+     * 
+     * @return 字节数
+     */
+    public static long getRetainedBytes() {
+        return AvifThreadResources.getRetainedBytes();
+    }
+    
+    /**
+     * 释放当前线程保留的解码资源
+     * 
+     * <p>线程池中的线程在长时间空闲或结束前可以调用此方法归还内存；
+     * 结束的线程未调用时，其资源在其他线程下次创建资源时回收。
+     * 如果当前线程仍有打开的会话在使用缓冲区，缓冲区在该会话关闭时释放。</p>
+     */
+    public static void releaseThreadResources() {
+        AvifThreadResources.releaseCurrentThread();
+    }
+    
+    /**
+     * 注册全局编解码指标监听器
+     * 
+     * <p>监听 {@link #decode}、{@link #decodeFrame}、{@link #encodeRGB}、{@link #encodeRGBA}
+     * （字节数组和直接缓冲区版本）、解码会话和顺序帧迭代器、ImageIO 读写、动画编码会话
+     * 和 {@link AvifBatch} 的每次操作，
+     * 不报告指标的操作见 {@link AvifMetricsListener}。注册任何监听器后原生层开始测量各阶段耗时，
+     * 全部移除后停止。同一个监听器重复注册无效。</p>
+     * 
+     * @param listener 监听器
+     * @throws NullPointerException 如果 listener 为 null
+     */
+    public static void addMetricsListener(AvifMetricsListener listener) {
+        AvifMetricsRegistry.addListener(listener);
+    }
+    
+    /**
+     * 移除全局编解码指标监听器
+     * 
+     * @param listener 监听器（未注册时不做任何操作）
+     */
+    public static void removeMetricsListener(AvifMetricsListener listener) {
+        AvifMetricsRegistry.removeListener(listener);
+    }
+    
     /**
      * 获取 AVIF 图片信息（不完全解码）
      * 
@@ -99,11 +198,38 @@ public final class Avif {
         if (offset < 0 || length < 0 || offset + length > data.length) {
             throw new IllegalArgumentException("Invalid offset/length");
         }
-        return getInfoNative(data, offset, length);
+        try (AvifDecoderSession session = new AvifDecoderSession(data, offset, length, null)) {
+            return session.getInfo();
+        }
     }
     
-    private static native ImageInfo getInfoNative(byte[] data, int offset, int length) 
-        throws IOException;
+    /**
+     * 打开解码会话
+     * 
+     * <p>会话只解析一次容器，之后的图片信息、帧解码和元数据读取共享该解析结果。
+     * 需要对同一份数据进行多次操作时，应优先使用会话而非逐个调用静态方法。
+     * 会话会复制一份输入数据，调用返回后可以自由修改 data。</p>
+     * 
+     * @param data AVIF 数据
+     * @param offset 数据偏移量
+     * @param length 数据长度
+     * @param options 解码选项（可为 null 使用默认选项）
+     * @return 解码会话，使用完毕后必须关闭
+     * @throws IOException 如果数据无效或解析失败
+     * @throws NullPointerException 如果 data 为 null
+     * @throws IllegalArgumentException 如果 offset/length 无效
+     */
+    public static AvifDecoderSession openSession(byte[] data, int offset, int length,
+                                                 AvifDecoderOptions options) throws IOException {
+        ensureAvailable();
+        if (data == null) {
+            throw new NullPointerException("Input data may not be null");
+        }
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IllegalArgumentException("Invalid offset/length");
+        }
+        return new AvifDecoderSession(data, offset, length, options);
+    }
     
     /**
      * 解码 AVIF 图片
@@ -126,16 +252,15 @@ public final class Avif {
         if (offset < 0 || length < 0 || offset + length > data.length) {
             throw new IllegalArgumentException("Invalid offset/length");
         }
-        long optionsPtr = (options != null) ? options.getPointer() : 0;
-        return decodeNative(optionsPtr, data, offset, length);
+        return decodeRecorded(data, offset, length, 0, options);
     }
     
-    private static native DecodeResult decodeNative(long optionsPtr, byte[] data, 
-                                                     int offset, int length) throws IOException;
-    
     /**
      * 解码动画 AVIF 的指定帧
      * 
+     * <p>每次调用都会重新解析并从最近的关键帧开始解码，
+     * 顺序读取多帧请使用 {@link #openSequence}。</p>
+     * 
      * @param data AVIF 数据
      * @param offset 数据偏移量
      * @param length 数据长度
@@ -159,13 +284,209 @@ public final class Avif {
         if (offset < 0 || length < 0 || offset + length > data.length) {
             throw new IllegalArgumentException("Invalid offset/length");
         }
-        long optionsPtr = (options != null) ? options.getPointer() : 0;
-        return decodeFrameNative(optionsPtr, data, offset, length, frameIndex);
+        return decodeRecorded(data, offset, length, frameIndex, options);
     }
     
-    private static native DecodeResult decodeFrameNative(long optionsPtr, byte[] data,
-                                                          int offset, int length, int frameIndex) 
-        throws IOException;
+    /**
+     * 解码指定帧并在有指标监听器时报告指标
+     */
+    private static DecodeResult decodeRecorded(byte[] data, int offset, int length,
+                                               int frameIndex, AvifDecoderOptions options)
+            throws IOException {
+        AvifMetricsRegistry.Recording recording =
+            AvifMetricsRegistry.start(AvifMetrics.Operation.DECODE, null);
+        try (AvifDecoderSession session = new AvifDecoderSession(data, offset, length, options)) {
+            DecodeResult result = session.decodeFrame(frameIndex);
+            AvifMetricsRegistry.finish(recording, result.width(), result.height(), length,
+                4L * result.pixels().length, null);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            AvifMetricsRegistry.finish(recording, 0, 0, length, 0, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 打开动画 AVIF 的顺序帧迭代器
+     * 
+     * <p>迭代器复用同一个解码器逐帧前进，每帧只解码一次。
+     * 需要读取全部或连续多帧时，应使用此方法而非循环调用 {@link #decodeFrame}。</p>
+     * 
+     * @param data AVIF 数据
+     * @param offset 数据偏移量
+     * @param length 数据长度
+     * @param options 解码选项（可为 null 使用默认选项）
+     * @return 顺序帧迭代器，使用完毕后必须关闭
+     * @throws IOException 如果数据无效或解析失败
+     * @throws NullPointerException 如果 data 为 null
+     * @throws IllegalArgumentException 如果 offset/length 无效
+     */
+    public static AvifFrameSequence openSequence(byte[] data, int offset, int length,
+                                                 AvifDecoderOptions options) throws IOException {
+        return new AvifFrameSequence(openSession(data, offset, length, options));
+    }
+    
+    /**
+     * 获取 AVIF 图片信息（不完全解码）
+     * 
+     * <p>读取 data 从 position 到 limit 的数据，不改变缓冲区的位置。</p>
+     * 
+     * @param data AVIF 数据（直接缓冲区不会被复制）
+     * @return 图片信息
+     * @throws IOException 如果数据无效或解析失败
+     * @throws NullPointerException 如果 data 为 null
+     * @throws IllegalArgumentException 如果 data 既不是直接缓冲区也没有可访问的数组
+     */
+    public static ImageInfo getInfo(ByteBuffer data) throws IOException {
+        try (AvifDecoderSession session = openSession(data, null)) {
+            return session.getInfo();
+        }
+    }
+    
+    /**
+     * 只读取文件头获取 AVIF 图片信息
+     * 
+     * <p>由纯 Java 解析 ISOBMFF 容器：ftyp、meta 中的 ispe/pixi/av1C/auxC/colr 属性，
+     * 以及图片序列 moov 中的轨道尺寸和帧数，只读取这些 box，不读取图片数据，也不需要原生库。
+     * 图片项和轨道的选择与 libavif 的默认规则一致。</p>
+     * 
+     * @param path AVIF 文件路径
+     * @return 图片信息
+     * @throws IOException 如果读取失败、不是 AVIF 文件或文件头缺少图片尺寸
+     * @throws NullPointerException 如果 path 为 null
+     */
+    public static ImageInfo probe(Path path) throws IOException {
+        if (path == null) {
+            throw new NullPointerException("Path may not be null");
+        }
+        try (ImageInputStream stream = new FileImageInputStream(path.toFile())) {
+            return probe(stream);
+        }
+    }
+    
+    /**
+     * 只读取文件头获取 AVIF 图片信息
+     * 
+     * <p>数据从流的当前位置开始，读取结束后流的位置不确定。</p>
+     * 
+     * @param stream 输入流
+     * @return 图片信息
+     * @throws IOException 如果读取失败、不是 AVIF 文件或文件头缺少图片尺寸
+     * @throws NullPointerException 如果 stream 为 null
+     * @see #probe(Path)
+     */
+    public static ImageInfo probe(ImageInputStream stream) throws IOException {
+        if (stream == null) {
+            throw new NullPointerException("Input stream may not be null");
+        }
+        AvifContainer container = AvifContainer.parse(stream);
+        if (!container.isAvif()) {
+            throw new IOException("Not an AVIF file");
+        }
+        ImageInfo info = container.imageInfo();
+        if (info == null) {
+            throw new IOException("AVIF header does not declare the image size");
+        }
+        return info;
+    }
+    
+    /**
+     * 基于 ByteBuffer 打开解码会话
+     * 
+     * <p>直接缓冲区由原生解码器直接读取，不会复制到 Java 堆或原生堆，
+     * 会话关闭前不得修改或释放该缓冲区的内容。
+     * 堆缓冲区按 {@link #openSession(byte[], int, int, AvifDecoderOptions)} 处理（复制一次）。
+     * 读取 data 从 position 到 limit 的数据，不改变缓冲区的位置。</p>
+     * 
+     * @param data AVIF 数据
+     * @param options 解码选项（可为 null 使用默认选项）
+     * @return 解码会话，使用完毕后必须关闭
+     * @throws IOException 如果数据无效或解析失败
+     * @throws NullPointerException 如果 data 为 null
+     * @throws IllegalArgumentException 如果 data 既不是直接缓冲区也没有可访问的数组
+     */
+    public static AvifDecoderSession openSession(ByteBuffer data, AvifDecoderOptions options)
+            throws IOException {
+        ensureAvailable();
+        if (data == null) {
+            throw new NullPointerException("Input data may not be null");
+        }
+        if (data.isDirect()) {
+            return new AvifDecoderSession(data, options);
+        }
+        if (data.hasArray()) {
+            return new AvifDecoderSession(data.array(), data.arrayOffset() + data.position(),
+                data.remaining(), options);
+        }
+        throw new IllegalArgumentException("Buffer must be direct or backed by an accessible array");
+    }
+    
+    /**
+     * 基于 ImageInputStream 打开解码会话
+     * 
+     * <p>原生解码器通过回调按需定位和读取流：打开会话只读取容器头部的 box，
+     * 帧数据在解码时才读取，不会将整个文件缓冲到内存。
+     * 数据从流的当前位置开始，会话关闭前流必须保持打开。</p>
+     * 
+     * @param stream 输入流
+     * @param options 解码选项（可为 null 使用默认选项）
+     * @return 解码会话，使用完毕后必须关闭
+     * @throws IOException 如果读取流失败、数据无效或解析失败
+     * @throws NullPointerException 如果 stream 为 null
+     */
+    public static AvifDecoderSession openSession(ImageInputStream stream, AvifDecoderOptions options)
+            throws IOException {
+        ensureAvailable();
+        if (stream == null) {
+            throw new NullPointerException("Input stream may not be null");
+        }
+        return new AvifDecoderSession(new AvifStreamSource(stream), options);
+    }
+    
+    /**
+     * 解码 ByteBuffer 中的 AVIF 图片
+     * 
+     * @param data AVIF 数据（直接缓冲区不会被复制）
+     * @param options 解码选项（可为 null 使用默认选项）
+     * @return 解码结果
+     * @throws IOException 如果解码失败
+     * @throws NullPointerException 如果 data 为 null
+     * @throws IllegalArgumentException 如果 data 既不是直接缓冲区也没有可访问的数组
+     * @see #openSession(ByteBuffer, AvifDecoderOptions)
+     */
+    public static DecodeResult decode(ByteBuffer data, AvifDecoderOptions options)
+            throws IOException {
+        if (data == null) {
+            throw new NullPointerException("Input data may not be null");
+        }
+        int length = data.remaining();
+        AvifMetricsRegistry.Recording recording =
+            AvifMetricsRegistry.start(AvifMetrics.Operation.DECODE, null);
+        try (AvifDecoderSession session = openSession(data, options)) {
+            DecodeResult result = session.decodeFrame(0);
+            AvifMetricsRegistry.finish(recording, result.width(), result.height(), length,
+                4L * result.pixels().length, null);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            AvifMetricsRegistry.finish(recording, 0, 0, length, 0, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 基于 ByteBuffer 打开动画 AVIF 的顺序帧迭代器
+     * 
+     * @param data AVIF 数据（直接缓冲区不会被复制，迭代器关闭前不得修改）
+     * @param options 解码选项（可为 null 使用默认选项）
+     * @return 顺序帧迭代器，使用完毕后必须关闭
+     * @throws IOException 如果数据无效或解析失败
+     * @throws NullPointerException 如果 data 为 null
+     * @throws IllegalArgumentException 如果 data 既不是直接缓冲区也没有可访问的数组
+     */
+    public static AvifFrameSequence openSequence(ByteBuffer data, AvifDecoderOptions options)
+            throws IOException {
+        return new AvifFrameSequence(openSession(data, options));
+    }
     
     /**
      * 编码 RGB 图片为 AVIF
@@ -182,15 +503,10 @@ public final class Avif {
      */
     public static byte[] encodeRGB(byte[] rgbData, int width, int height, int stride,
                                    AvifEncoderOptions options) throws IOException {
-        ensureAvailable();
         if (rgbData == null) {
             throw new NullPointerException("RGB data may not be null");
         }
-        if (width <= 0 || height <= 0) {
-            throw new IllegalArgumentException("Invalid dimensions");
-        }
-        long configPtr = (options != null) ? options.getPointer() : 0;
-        return encodeRGBNative(configPtr, rgbData, width, height, stride);
+        return encodePixels(rgbData, width, height, stride, false, options);
     }
     
     private static native byte[] encodeRGBNative(long configPtr, byte[] rgbData, 
@@ -212,21 +528,332 @@ public final class Avif {
      */
     public static byte[] encodeRGBA(byte[] rgbaData, int width, int height, int stride,
                                     AvifEncoderOptions options) throws IOException {
-        ensureAvailable();
         if (rgbaData == null) {
             throw new NullPointerException("RGBA data may not be null");
         }
+        return encodePixels(rgbaData, width, height, stride, true, options);
+    }
+    
+    /**
+     * 编码 8 位 RGB(A) 字节数组，并在有指标监听器时报告指标
+     */
+    private static byte[] encodePixels(byte[] pixels, int width, int height, int stride,
+                                       boolean hasAlpha, AvifEncoderOptions options)
+            throws IOException {
+        ensureAvailable();
         if (width <= 0 || height <= 0) {
             throw new IllegalArgumentException("Invalid dimensions");
         }
         long configPtr = (options != null) ? options.getPointer() : 0;
-        return encodeRGBANative(configPtr, rgbaData, width, height, stride);
+        long inputBytes = (long) stride * height;
+        long nativeBytes = AvifNativeMemory.estimateImageBytes(width, height,
+            encoderBitDepth(options), hasAlpha);
+        AvifNativeMemory.allocated(nativeBytes);
+        AvifMetricsRegistry.Recording recording =
+            AvifMetricsRegistry.start(AvifMetrics.Operation.ENCODE, null);
+        try {
+            byte[] encoded = hasAlpha
+                ? encodeRGBANative(configPtr, pixels, width, height, stride)
+                : encodeRGBNative(configPtr, pixels, width, height, stride);
+            AvifMetricsRegistry.finish(recording, width, height, inputBytes,
+                (encoded != null) ? encoded.length : 0, null);
+            return encoded;
+        } catch (IOException | RuntimeException | Error e) {
+            AvifMetricsRegistry.finish(recording, width, height, inputBytes, 0, e);
+            throw e;
+        } finally {
+            AvifNativeMemory.freed(nativeBytes);
+        }
+    }
+    
+    private static int encoderBitDepth(AvifEncoderOptions options) {
+        return (options != null) ? options.getBitDepth() : AvifEncoderOptions.DEFAULT_BIT_DEPTH;
     }
     
     private static native byte[] encodeRGBANative(long configPtr, byte[] rgbaData, 
                                                    int width, int height, int stride) 
         throws IOException;
     
+    /**
+     * 打开动画编码会话
+     * 
+     * <p>会话持有一个原生编码器，逐帧添加图片，最后调用
+     * {@link AvifEncoderSession#finish()} 得到动画 AVIF。帧时长以毫秒为单位。</p>
+     * 
+     * @param options 编码选项（可为 null 使用默认选项），创建时复制
+     * @return 编码会话，使用完毕后必须关闭
+     * @throws IOException 如果创建编码器失败
+     */
+    public static AvifEncoderSession openEncoderSession(AvifEncoderOptions options)
+            throws IOException {
+        return openEncoderSession(options, null);
+    }
+    
+    /**
+     * 打开动画编码会话，指标额外报告给写入器上的监听器（由 {@link AvifImageWriter} 调用）
+     */
+    static AvifEncoderSession openEncoderSession(AvifEncoderOptions options,
+                                                 AvifMetricsListener metricsListener)
+            throws IOException {
+        ensureAvailable();
+        return new AvifEncoderSession(options, metricsListener);
+    }
+    
+    /**
+     * 按像素布局直接编码 BufferedImage 的底层数组
+     * 
+     * <p>原生层在临界区内直接读取数组完成 YUV 转换，并检测 Alpha 是否全部不透明，
+     * 不透明时不编码 Alpha 平面。灰度布局直接写入 4:0:0 图片的亮度平面。</p>
+     * 
+     * @param layout 像素布局（来自 {@link RasterLayout#of} 或 {@link RasterLayout#ofGray}）
+     * @param options 编码选项（可为 null 使用默认选项）
+     * @return AVIF 编码数据
+     * @throws IOException 如果编码失败
+     */
+    static byte[] encodeLayout(RasterLayout layout, AvifEncoderOptions options) throws IOException {
+        return encodeLayout(layout, options, null);
+    }
+    
+    /**
+     * 按像素布局直接编码 BufferedImage 的底层数组，并写入元数据
+     * 
+     * @param layout 像素布局（来自 {@link RasterLayout#of} 或 {@link RasterLayout#ofGray}）
+     * @param options 编码选项（可为 null 使用默认选项）
+     * @param metadata 写入的 EXIF、ICC 和 XMP（可为 null 不写入元数据）
+     * @return AVIF 编码数据
+     * @throws IOException 如果编码失败
+     */
+    static byte[] encodeLayout(RasterLayout layout, AvifEncoderOptions options,
+                               AvifMetadata metadata) throws IOException {
+        ensureAvailable();
+        long configPtr = (options != null) ? options.getPointer() : 0;
+        // 元数据以数组中的一段传给原生层，由原生层直接复制到图片中，Java 层不复制
+        AvifMetadata.Segment exif = (metadata != null) ? metadata.exifSegment() : null;
+        AvifMetadata.Segment icc = (metadata != null) ? metadata.iccSegment() : null;
+        AvifMetadata.Segment xmp = (metadata != null) ? metadata.xmpSegment() : null;
+        boolean gray = (layout.format == RasterLayout.FORMAT_GRAY);
+        boolean hasAlpha = !gray && layout.format != RasterLayout.FORMAT_RGB
+            && layout.format != RasterLayout.FORMAT_BGR;
+        long nativeBytes = AvifNativeMemory.estimateImageBytes(layout.width, layout.height,
+            encoderBitDepth(options), hasAlpha);
+        AvifNativeMemory.allocated(nativeBytes);
+        try {
+            return encodeLayoutNative(configPtr, layout.data, layout.bytesPerElement,
+                layout.offset, layout.scanlineStride, layout.width, layout.height,
+                layout.format, layout.depth, layout.flags,
+                segmentData(exif), segmentOffset(exif), segmentLength(exif),
+                segmentData(icc), segmentOffset(icc), segmentLength(icc),
+                segmentData(xmp), segmentOffset(xmp), segmentLength(xmp));
+        } finally {
+            AvifNativeMemory.freed(nativeBytes);
+        }
+    }
+    
+    private static native byte[] encodeLayoutNative(long configPtr, Object pixels,
+                                                    int bytesPerElement, int offset, int stride,
+                                                    int width, int height,
+                                                    int format, int depth, int flags,
+                                                    byte[] exif, int exifOffset, int exifLength,
+                                                    byte[] icc, int iccOffset, int iccLength,
+                                                    byte[] xmp, int xmpOffset, int xmpLength)
+        throws IOException;
+    
+    private static byte[] segmentData(AvifMetadata.Segment segment) {
+        return (segment != null) ? segment.data : null;
+    }
+    
+    private static int segmentOffset(AvifMetadata.Segment segment) {
+        return (segment != null) ? segment.offset : 0;
+    }
+    
+    private static int segmentLength(AvifMetadata.Segment segment) {
+        return (segment != null) ? segment.length : 0;
+    }
+    
+    /**
+     * 编码直接缓冲区中的 RGB 图片为 AVIF，结果保留在原生内存中
+     * 
+     * <p>像素从 rgbData 的 position 读取到 limit 为止，不改变缓冲区的位置，整个过程不产生堆拷贝。</p>
+     * 
+     * @param rgbData RGB 像素数据（直接缓冲区，每像素 3 字节：R, G, B）
+     * @param width 图片宽度
+     * @param height 图片高度
+     * @param stride 行字节数
+     * @param options 编码选项（可为 null 使用默认选项）
+     * @return 编码结果，使用完毕后必须关闭
+     * @throws IOException 如果编码失败
+     * @throws NullPointerException 如果 rgbData 为 null
+     * @throws IllegalArgumentException 如果 rgbData 不是直接缓冲区、尺寸无效或剩余字节少于 stride * height
+     */
+    public static AvifEncodedBuffer encodeRGB(ByteBuffer rgbData, int width, int height, int stride,
+                                              AvifEncoderOptions options) throws IOException {
+        return encodeToNativeBuffer(rgbData, width, height, stride, false, options);
+    }
+    
+    /**
+     * 编码直接缓冲区中的 RGB 图片为 AVIF，结果写入调用方提供的缓冲区
+     * 
+     * <p>编码数据写入 output 的当前位置，成功后 output 的位置前移编码数据长度。
+     * 直接缓冲区输出不产生任何堆拷贝。</p>
+     * 
+     * @param rgbData RGB 像素数据（直接缓冲区，每像素 3 字节：R, G, B）
+     * @param width 图片宽度
+     * @param height 图片高度
+     * @param stride 行字节数
+     * @param options 编码选项（可为 null 使用默认选项）
+     * @param output 输出缓冲区
+     * @return 写入的字节数
+     * @throws IOException 如果编码失败
+     * @throws BufferOverflowException 如果 output 剩余空间不足（output 不变）
+     * @throws NullPointerException 如果 rgbData 或 output 为 null
+     * @throws IllegalArgumentException 如果 rgbData 不是直接缓冲区、尺寸无效或剩余字节少于 stride * height
+     */
+    public static int encodeRGB(ByteBuffer rgbData, int width, int height, int stride,
+                                AvifEncoderOptions options, ByteBuffer output) throws IOException {
+        return encodeToBuffer(rgbData, width, height, stride, false, options, output);
+    }
+    
+    /**
+     * 编码直接缓冲区中的 RGBA 图片为 AVIF，结果保留在原生内存中
+     * 
+     * @param rgbaData RGBA 像素数据（直接缓冲区，每像素 4 字节：R, G, B, A）
+     * @param width 图片宽度
+     * @param height 图片高度
+     * @param stride 行字节数
+     * @param options 编码选项（可为 null 使用默认选项）
+     * @return 编码结果，使用完毕后必须关闭
+     * @throws IOException 如果编码失败
+     * @throws NullPointerException 如果 rgbaData 为 null
+     * @throws IllegalArgumentException 如果 rgbaData 不是直接缓冲区、尺寸无效或剩余字节少于 stride * height
+     * @see #encodeRGB(ByteBuffer, int, int, int, AvifEncoderOptions)
+     */
+    public static AvifEncodedBuffer encodeRGBA(ByteBuffer rgbaData, int width, int height, int stride,
+                                               AvifEncoderOptions options) throws IOException {
+        return encodeToNativeBuffer(rgbaData, width, height, stride, true, options);
+    }
+    
+    /**
+     * 编码直接缓冲区中的 RGBA 图片为 AVIF，结果写入调用方提供的缓冲区
+     * 
+     * @param rgbaData RGBA 像素数据（直接缓冲区，每像素 4 字节：R, G, B, A）
+     * @param width 图片宽度
+     * @param height 图片高度
+     * @param stride 行字节数
+     * @param options 编码选项（可为 null 使用默认选项）
+     * @param output 输出缓冲区
+     * @return 写入的字节数
+     * @throws IOException 如果编码失败
+     * @throws BufferOverflowException 如果 output 剩余空间不足（output 不变）
+     * @throws NullPointerException 如果 rgbaData 或 output 为 null
+     * @throws IllegalArgumentException 如果 rgbaData 不是直接缓冲区、尺寸无效或剩余字节少于 stride * height
+     * @see #encodeRGB(ByteBuffer, int, int, int, AvifEncoderOptions, ByteBuffer)
+     */
+    public static int encodeRGBA(ByteBuffer rgbaData, int width, int height, int stride,
+                                 AvifEncoderOptions options, ByteBuffer output) throws IOException {
+        return encodeToBuffer(rgbaData, width, height, stride, true, options, output);
+    }
+    
+    private static void checkDirectPixels(ByteBuffer pixels, int width, int height, int stride) {
+        if (pixels == null) {
+            throw new NullPointerException("Pixel data may not be null");
+        }
+        if (!pixels.isDirect()) {
+            throw new IllegalArgumentException("Pixel data must be a direct buffer");
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid dimensions");
+        }
+        // 只读取 position 到 limit 之间的像素，limit 之后的字节不属于图片
+        if ((long) stride * height > pixels.remaining()) {
+            throw new IllegalArgumentException("Pixel buffer is too small for the image: "
+                + pixels.remaining() + " bytes remaining, " + ((long) stride * height) + " required");
+        }
+    }
+    
+    private static AvifEncodedBuffer encodeToNativeBuffer(ByteBuffer pixels, int width, int height,
+                                                          int stride, boolean hasAlpha,
+                                                          AvifEncoderOptions options)
+            throws IOException {
+        ensureAvailable();
+        checkDirectPixels(pixels, width, height, stride);
+        long configPtr = (options != null) ? options.getPointer() : 0;
+        long inputBytes = (long) stride * height;
+        long nativeBytes = AvifNativeMemory.estimateImageBytes(width, height,
+            encoderBitDepth(options), hasAlpha);
+        AvifNativeMemory.allocated(nativeBytes);
+        AvifMetricsRegistry.Recording recording =
+            AvifMetricsRegistry.start(AvifMetrics.Operation.ENCODE, null);
+        try {
+            long ptr = encodeToNativeBufferNative(configPtr, pixels, pixels.position(),
+                pixels.limit(), width, height, stride, hasAlpha);
+            AvifEncodedBuffer encoded = new AvifEncodedBuffer(ptr);
+            AvifMetricsRegistry.finish(recording, width, height, inputBytes, encoded.size(), null);
+            return encoded;
+        } catch (IOException | RuntimeException | Error e) {
+            AvifMetricsRegistry.finish(recording, width, height, inputBytes, 0, e);
+            throw e;
+        } finally {
+            AvifNativeMemory.freed(nativeBytes);
+        }
+    }
+    
+    private static int encodeToBuffer(ByteBuffer pixels, int width, int height, int stride,
+                                      boolean hasAlpha, AvifEncoderOptions options,
+                                      ByteBuffer output) throws IOException {
+        ensureAvailable();
+        checkDirectPixels(pixels, width, height, stride);
+        if (output == null) {
+            throw new NullPointerException("Output buffer may not be null");
+        }
+        if (output.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        if (!output.isDirect()) {
+            // 堆缓冲区无法被原生层直接写入，从原生内存复制一次
+            try (AvifEncodedBuffer encoded = encodeToNativeBuffer(pixels, width, height, stride,
+                    hasAlpha, options)) {
+                if (encoded.size() > output.remaining()) {
+                    throw new BufferOverflowException();
+                }
+                output.put(encoded.buffer());
+                return encoded.size();
+            }
+        }
+        long configPtr = (options != null) ? options.getPointer() : 0;
+        long inputBytes = (long) stride * height;
+        long nativeBytes = AvifNativeMemory.estimateImageBytes(width, height,
+            encoderBitDepth(options), hasAlpha);
+        AvifNativeMemory.allocated(nativeBytes);
+        AvifMetricsRegistry.Recording recording =
+            AvifMetricsRegistry.start(AvifMetrics.Operation.ENCODE, null);
+        try {
+            int written = encodeDirectNative(configPtr, pixels, pixels.position(), pixels.limit(),
+                width, height, stride, hasAlpha, output, output.position(), output.remaining());
+            if (written < 0) {
+                throw new BufferOverflowException();
+            }
+            output.position(output.position() + written);
+            AvifMetricsRegistry.finish(recording, width, height, inputBytes, written, null);
+            return written;
+        } catch (IOException | RuntimeException | Error e) {
+            AvifMetricsRegistry.finish(recording, width, height, inputBytes, 0, e);
+            throw e;
+        } finally {
+            AvifNativeMemory.freed(nativeBytes);
+        }
+    }
+    
+    private static native int encodeDirectNative(long configPtr, ByteBuffer pixels, int offset,
+                                                 int limit, int width, int height, int stride,
+                                                 boolean hasAlpha, ByteBuffer output,
+                                                 int outputOffset, int outputLength)
+        throws IOException;
+    
+    private static native long encodeToNativeBufferNative(long configPtr, ByteBuffer pixels,
+                                                          int offset, int limit, int width,
+                                                          int height, int stride, boolean hasAlpha)
+        throws IOException;
+    
     /**
      * 获取 EXIF 元数据
      * 
@@ -244,12 +871,11 @@ public final class Avif {
         if (offset < 0 || length < 0 || offset + length > data.length) {
             throw new IllegalArgumentException("Invalid offset/length");
         }
-        return getExifNative(data, offset, length);
+        try (AvifDecoderSession session = new AvifDecoderSession(data, offset, length, null)) {
+            return session.getExif();
+        }
     }
     
-    private static native byte[] getExifNative(byte[] data, int offset, int length) 
-        throws IOException;
-    
     /**
      * 获取 ICC 色彩配置
      * 
@@ -267,9 +893,30 @@ public final class Avif {
         if (offset < 0 || length < 0 || offset + length > data.length) {
             throw new IllegalArgumentException("Invalid offset/length");
         }
-        return getIccProfileNative(data, offset, length);
+        try (AvifDecoderSession session = new AvifDecoderSession(data, offset, length, null)) {
+            return session.getIccProfile();
+        }
     }
     
-    private static native byte[] getIccProfileNative(byte[] data, int offset, int length) 
-        throws IOException;
+    /**
+     * 获取 XMP 元数据
+     * 
+     * @param data AVIF 数据
+     * @param offset 数据偏移量
+     * @param length 数据长度
+     * @return XMP 数据，如果不存在则返回 null
+     * @throws IOException 如果读取失败
+     */
+    public static byte[] getXmp(byte[] data, int offset, int length) throws IOException {
+        ensureAvailable();
+        if (data == null) {
+            throw new NullPointerException("Input data may not be null");
+        }
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IllegalArgumentException("Invalid offset/length");
+        }
+        try (AvifDecoderSession session = new AvifDecoderSession(data, offset, length, null)) {
+            return session.getXmp();
+        }
+    }
 }
@@ -0,0 +1,392 @@
+package com.github.avifimageio;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并行批量解码和编码
+ *
+ * <p>在固定大小的线程池中执行任务，并在图片之间和单张图片的编解码线程之间分配同一份核心预算：
+ * 小图只使用一个编解码线程，多张图片并行处理；大图按像素数分配更多编解码线程，
+ * 同时减少并行处理的图片数。任何时刻所有任务使用的编解码线程总数不超过核心预算，
+ * 避免在外部线程池中调用 {@link Avif} 并提高线程数时造成的过度订阅。</p>
+ *
+ * <p>提交的任务数超过 {@link #getMaxPending()} 时，提交方法阻塞到有任务完成，
+ * 因此逐个提交大量图片时内存占用有上限。编解码选项在提交时复制，提交后可以立即关闭或修改，
+ * 选项中的线程数会被按图片分配的线程数替换。所有方法都是线程安全的。</p>
+ *
+ * <p>使用示例：</p>
+ * <pre>{@code
+ * try (AvifBatch batch = new AvifBatch();
+ *      AvifEncoderOptions options = new AvifEncoderOptions()) {
+ *     List<CompletableFuture<byte[]>> results = batch.encodeAll(images, options);
+ *     for (CompletableFuture<byte[]> result : results) {
+ *         byte[] avif = result.join();
+ *     }
+ * }
+ * }</pre>
+ */
+public final class AvifBatch implements AutoCloseable {
+
+    /** 默认核心预算：所有可用核心 */
+    public static final int DEFAULT_CORE_BUDGET = Runtime.getRuntime().availableProcessors();
+
+    /** 解码时每增加一个解码线程所需的像素数 */
+    static final long DECODE_PIXELS_PER_THREAD = 2L * 1024 * 1024;
+
+    /** 编码时每增加一个编码线程所需的像素数（编码每像素的开销远高于解码） */
+    static final long ENCODE_PIXELS_PER_THREAD = 512L * 1024;
+
+    private static final AtomicInteger BATCH_COUNT = new AtomicInteger();
+
+    private final int coreBudget;
+    private final int maxPending;
+    private final ExecutorService executor;
+    /** 编解码线程的核心预算（公平模式，需要多个线程的大图不会一直等待） */
+    private final Semaphore cores;
+    /** 未完成任务数的上限 */
+    private final Semaphore pending;
+
+    /**
+     * 使用所有可用核心创建批量处理器
+     */
+    public AvifBatch() {
+        this(DEFAULT_CORE_BUDGET);
+    }
+
+    /**
+     * 创建批量处理器，最多同时提交核心预算 4 倍的任务
+     *
+     * @param coreBudget 所有任务共享的核心数
+     * @throws IllegalArgumentException 如果核心数小于 1
+     */
+    public AvifBatch(int coreBudget) {
+        this(coreBudget, coreBudget * 4);
+    }
+
+    /**
+     * 创建批量处理器
+     *
+     * @param coreBudget 所有任务共享的核心数
+     * @param maxPending 最多同时提交（排队和执行中）的任务数
+     * @throws IllegalArgumentException 如果核心数或任务数小于 1
+     */
+    public AvifBatch(int coreBudget, int maxPending) {
+        if (coreBudget < 1) {
+            throw new IllegalArgumentException("Core budget must be >= 1, got: " + coreBudget);
+        }
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("Max pending must be >= 1, got: " + maxPending);
+        }
+        this.coreBudget = coreBudget;
+        this.maxPending = maxPending;
+        this.cores = new Semaphore(coreBudget, true);
+        this.pending = new Semaphore(maxPending);
+        this.executor = Executors.newFixedThreadPool(coreBudget,
+            new WorkerFactory(BATCH_COUNT.incrementAndGet()));
+    }
+
+    /**
+     * 获取核心预算
+     *
+     * @return 所有任务共享的核心数
+     */
+    public int getCoreBudget() {
+        return coreBudget;
+    }
+
+    /**
+     * 获取最多同时提交的任务数
+     *
+     * @return 任务数上限
+     */
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    /**
+     * 获取当前正在使用的编解码线程数
+     *
+     * @return 已分配给执行中任务的核心数
+     */
+    public int getActiveThreads() {
+        return coreBudget - cores.availablePermits();
+    }
+
+    /**
+     * 提交解码任务
+     *
+     * @param data AVIF 数据（任务完成前不能修改）
+     * @param options 解码选项（可为 null 使用默认选项）
+     * @return 解码得到的图片（只解码第一帧）
+     * @throws NullPointerException 如果 data 为 null
+     * @throws IllegalStateException 如果批量处理器已关闭
+     */
+    public CompletableFuture<BufferedImage> decode(final byte[] data, AvifDecoderOptions options) {
+        if (data == null) {
+            throw new NullPointerException("Input data may not be null");
+        }
+        final AvifDecoderOptions taskOptions = (options != null) ? options.copy()
+            : new AvifDecoderOptions();
+        return submit(new Task<BufferedImage>() {
+            @Override
+            BufferedImage run() throws IOException, InterruptedException {
+                // 先用单线程解析容器取得尺寸，大图再按分配的线程数重新解析
+                taskOptions.setMaxThreads(1);
+                AvifMetricsRegistry.Recording recording =
+                    AvifMetricsRegistry.start(AvifMetrics.Operation.DECODE, null);
+                try (AvifDecoderSession session =
+                         new AvifDecoderSession(data, 0, data.length, taskOptions)) {
+                    ImageInfo info = session.getInfo();
+                    int threads = threadsFor((long) info.width() * info.height(),
+                        DECODE_PIXELS_PER_THREAD, coreBudget);
+                    cores.acquire(threads);
+                    try {
+                        if (threads > 1) {
+                            taskOptions.setMaxThreads(threads);
+                            session.reconfigure(taskOptions);
+                        }
+                        BufferedImage image = session.decodeImage(0);
+                        AvifMetricsRegistry.finish(recording, image.getWidth(), image.getHeight(),
+                            data.length, AvifMetricsRegistry.imageBytes(image), null);
+                        return image;
+                    } finally {
+                        cores.release(threads);
+                    }
+                } catch (IOException | InterruptedException | RuntimeException | Error e) {
+                    // 等待核心时被中断也要结束记录，否则当前线程的原生计时状态一直保持开启
+                    AvifMetricsRegistry.finish(recording, 0, 0, data.length, 0, e);
+                    throw e;
+                }
+            }
+
+            @Override
+            void cleanup() {
+                taskOptions.close();
+            }
+        });
+    }
+
+    /**
+     * 提交多个解码任务
+     *
+     * @param inputs AVIF 数据列表
+     * @param options 解码选项（可为 null 使用默认选项）
+     * @return 与输入顺序一致的解码结果
+     * @throws NullPointerException 如果某个输入为 null
+     * @throws IllegalStateException 如果批量处理器已关闭
+     */
+    public List<CompletableFuture<BufferedImage>> decodeAll(List<byte[]> inputs,
+                                                            AvifDecoderOptions options) {
+        List<CompletableFuture<BufferedImage>> results =
+            new ArrayList<CompletableFuture<BufferedImage>>(inputs.size());
+        for (byte[] data : inputs) {
+            results.add(decode(data, options));
+        }
+        return results;
+    }
+
+    /**
+     * 提交编码任务
+     *
+     * @param image 要编码的图片（任务完成前不能修改）
+     * @param options 编码选项（可为 null 使用默认选项）
+     * @return AVIF 编码数据
+     * @throws NullPointerException 如果 image 为 null
+     * @throws IllegalStateException 如果批量处理器已关闭
+     */
+    public CompletableFuture<byte[]> encode(BufferedImage image, AvifEncoderOptions options) {
+        return encode(image, options, null);
+    }
+
+    /**
+     * 提交编码任务并写入元数据
+     */
+    CompletableFuture<byte[]> encode(final BufferedImage image, AvifEncoderOptions options,
+                                     final AvifMetadata metadata) {
+        if (image == null) {
+            throw new NullPointerException("Image may not be null");
+        }
+        final AvifEncoderOptions taskOptions = (options != null) ? options.copy()
+            : new AvifEncoderOptions();
+        return submit(new Task<byte[]>() {
+            @Override
+            byte[] run() throws IOException, InterruptedException {
+                return encodeOnCurrentThread(image, taskOptions, metadata);
+            }
+
+            @Override
+            void cleanup() {
+                taskOptions.close();
+            }
+        });
+    }
+
+    /**
+     * 在调用线程中编码，按核心预算分配编码线程（由编码任务和 {@link AvifTranscoder} 的工作线程调用）
+     *
+     * <p>不经过批量处理器的线程池，调用方自己的线程池不会与之叠加出额外的线程。</p>
+     *
+     * @param image 要编码的图片
+     * @param taskOptions 本次编码独占的选项，线程数会被替换
+     * @param metadata 写入的元数据（可为 null 不写入）
+     * @return AVIF 编码数据
+     * @throws IOException 如果编码失败
+     * @throws InterruptedException 如果等待核心时被中断
+     */
+    byte[] encodeOnCurrentThread(BufferedImage image, AvifEncoderOptions taskOptions,
+                                 AvifMetadata metadata) throws IOException, InterruptedException {
+        int threads = threadsFor((long) image.getWidth() * image.getHeight(),
+            ENCODE_PIXELS_PER_THREAD, coreBudget);
+        taskOptions.setMaxThreads(threads);
+        if (threads > 1 && taskOptions.getTileRowsLog2() == 0 && taskOptions.getTileColsLog2() == 0) {
+            // 编码默认不分块，未手动设置 tile 时打开自动分块，分配的线程才能并行
+            taskOptions.setAutoTiling(true);
+        }
+        cores.acquire(threads);
+        AvifMetricsRegistry.Recording recording =
+            AvifMetricsRegistry.start(AvifMetrics.Operation.ENCODE, null);
+        long inputBytes = (recording != null) ? AvifMetricsRegistry.imageBytes(image) : 0;
+        try {
+            byte[] encoded = AvifImageWriter.encodeImage(image, taskOptions, metadata);
+            AvifMetricsRegistry.finish(recording, image.getWidth(), image.getHeight(),
+                inputBytes, encoded.length, null);
+            return encoded;
+        } catch (IOException | RuntimeException | Error e) {
+            AvifMetricsRegistry.finish(recording, image.getWidth(), image.getHeight(),
+                inputBytes, 0, e);
+            throw e;
+        } finally {
+            cores.release(threads);
+        }
+    }
+
+    /**
+     * 提交多个编码任务
+     *
+     * @param images 要编码的图片列表
+     * @param options 编码选项（可为 null 使用默认选项）
+     * @return 与输入顺序一致的编码结果
+     * @throws NullPointerException 如果某个图片为 null
+     * @throws IllegalStateException 如果批量处理器已关闭
+     */
+    public List<CompletableFuture<byte[]>> encodeAll(List<? extends BufferedImage> images,
+                                                     AvifEncoderOptions options) {
+        List<CompletableFuture<byte[]>> results = new ArrayList<CompletableFuture<byte[]>>(images.size());
+        for (BufferedImage image : images) {
+            results.add(encode(image, options, null));
+        }
+        return results;
+    }
+
+    /**
+     * 关闭批量处理器，不再接受新任务，并等待已提交的任务完成
+     *
+     * <p>等待期间被中断时取消未开始的任务并保留中断状态。</p>
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // 继续等待执行中的任务
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 按像素数计算单张图片的编解码线程数
+     *
+     * @return 1 到 coreBudget 之间的线程数
+     */
+    static int threadsFor(long pixels, long pixelsPerThread, int coreBudget) {
+        long threads = (pixels + pixelsPerThread - 1) / pixelsPerThread;
+        return (int) Math.max(1, Math.min(threads, coreBudget));
+    }
+
+    /**
+     * 提交任务：等待未完成任务数低于上限，任务结束（成功、失败或取消）时释放名额和选项
+     */
+    private <T> CompletableFuture<T> submit(final Task<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        if (executor.isShutdown()) {
+            task.cleanup();
+            throw new IllegalStateException("AvifBatch has been closed");
+        }
+        try {
+            pending.acquire();
+        } catch (InterruptedException e) {
+            task.cleanup();
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return future;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!future.isDone()) {
+                            future.complete(task.run());
+                        }
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    } finally {
+                        task.cleanup();
+                        pending.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            task.cleanup();
+            pending.release();
+            throw new IllegalStateException("AvifBatch has been closed");
+        }
+        return future;
+    }
+
+    /**
+     * 在工作线程中执行的任务
+     */
+    private abstract static class Task<T> {
+
+        abstract T run() throws IOException, InterruptedException;
+
+        /** 释放提交时复制的选项 */
+        abstract void cleanup();
+    }
+
+    /**
+     * 创建守护工作线程，进程退出时不需要关闭批量处理器
+     */
+    private static final class WorkerFactory implements ThreadFactory {
+
+        private final int batchId;
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        WorkerFactory(int batchId) {
+            this.batchId = batchId;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable,
+                "avif-batch-" + batchId + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
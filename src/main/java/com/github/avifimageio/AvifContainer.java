@@ -0,0 +1,708 @@
+package com.github.avifimageio;
+
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AVIF 容器（ISOBMFF/HEIF）的纯 Java 解析结果
+ *
+ * <p>只读取顶层 box 的头部以及 ftyp、meta 和 moov box，不读取图片数据，也不需要原生库。
+ * 用于在不解码的情况下获取图片尺寸、位深度、Alpha 和帧数，
+ * 以及定位 libavif 不直接暴露的信息，例如缩略图项（iref 中的 'thmb' 引用）。
+ * 偏移量均相对于数据起点（流输入时为创建时流的位置）。</p>
+ */
+final class AvifContainer {
+
+    /** ftyp、meta 和 moov box 的最大长度，超过时视为无效数据，避免读取异常大的 box */
+    private static final long MAX_BOX_SIZE = 16L * 1024 * 1024;
+
+    /** Alpha 辅助图片的 auxC 类型 */
+    private static final String[] ALPHA_URNS = {
+        "urn:mpeg:mpegB:cicp:systems:auxiliary:alpha",
+        "urn:mpeg:hevc:2015:auxid:1"
+    };
+
+    /** ftyp 的主品牌，没有 ftyp box 时为 0 */
+    final int majorBrand;
+    /** ftyp 的兼容品牌 */
+    final int[] compatibleBrands;
+    /** 主图片项 ID，没有 pitm box 时为 -1 */
+    final int primaryItemId;
+    /** pitm box 中 item_ID 字段的偏移量，没有 pitm box 时为 -1 */
+    final long primaryItemIdOffset;
+    /** pitm box 中 item_ID 字段的字节数（2 或 4） */
+    final int primaryItemIdSize;
+    /** 主图片的缩略图项 ID（按 iref 中出现的顺序，只包含 libavif 可以解码的 av01 和 grid 项） */
+    final List<Integer> thumbnailItemIds;
+    /** 按 libavif 的规则从文件头得到的图片信息，缺少尺寸时为 null */
+    private final ImageInfo imageInfo;
+
+    private AvifContainer(int majorBrand, int[] compatibleBrands, Meta meta, ImageInfo imageInfo) {
+        this.majorBrand = majorBrand;
+        this.compatibleBrands = compatibleBrands;
+        this.primaryItemId = meta.primaryItemId;
+        this.primaryItemIdOffset = meta.primaryItemIdOffset;
+        this.primaryItemIdSize = meta.primaryItemIdSize;
+        this.thumbnailItemIds = Collections.unmodifiableList(meta.thumbnailItemIds);
+        this.imageInfo = imageInfo;
+    }
+
+    /**
+     * 从流的当前位置解析容器，解析后恢复流的位置
+     *
+     * <p>只读取 box 头部和需要的 box，跳过 mdat 等其他 box 时只移动流的位置。</p>
+     *
+     * @param stream 输入流
+     * @return 解析结果，找不到 meta box 时返回没有任何项的结果
+     * @throws IOException 如果读取失败或 box 结构无效
+     */
+    static AvifContainer parse(final ImageInputStream stream) throws IOException {
+        final long base = stream.getStreamPosition();
+        try {
+            return parse(new Source() {
+                @Override
+                public ByteBuffer read(long position, int length) throws IOException {
+                    stream.seek(base + position);
+                    return readUpTo(stream, length);
+                }
+            });
+        } finally {
+            stream.seek(base);
+        }
+    }
+
+    /**
+     * 从缓冲区的 position 处解析容器，不改变缓冲区的位置
+     *
+     * @param data 完整的 AVIF 数据
+     * @return 解析结果，找不到 meta box 时返回没有任何项的结果
+     * @throws IOException 如果 box 结构无效
+     */
+    static AvifContainer parse(ByteBuffer data) throws IOException {
+        final ByteBuffer buffer = data.slice();
+        return parse(new Source() {
+            @Override
+            public ByteBuffer read(long position, int length) {
+                ByteBuffer slice = buffer.duplicate();
+                slice.position((int) Math.min(position, buffer.limit()));
+                slice = slice.slice();
+                slice.limit(Math.min(length, slice.limit()));
+                return slice;
+            }
+        });
+    }
+
+    /**
+     * 遍历顶层 box，读取 ftyp、meta 和 moov
+     */
+    private static AvifContainer parse(Source source) throws IOException {
+        ByteBuffer ftyp = null;
+        ByteBuffer metaBox = null;
+        long metaOffset = -1;
+        ByteBuffer moov = null;
+        try {
+            long position = 0;
+            while (true) {
+                ByteBuffer header = source.read(position, 16);
+                if (header.remaining() < 8) {
+                    break;
+                }
+                long size = header.getInt() & 0xFFFFFFFFL;
+                int type = header.getInt();
+                int headerSize = 8;
+                if (size == 1) {
+                    if (header.remaining() < 8) {
+                        break;
+                    }
+                    size = header.getLong();
+                    headerSize = 16;
+                }
+                if (size != 0 && size < headerSize) {
+                    throw new IOException("Invalid box size: " + size);
+                }
+                boolean wanted = (type == fourcc("ftyp") && ftyp == null)
+                    || (type == fourcc("meta") && metaBox == null)
+                    || (type == fourcc("moov") && moov == null);
+                if (wanted) {
+                    long payloadSize = (size == 0) ? MAX_BOX_SIZE : size - headerSize;
+                    if (payloadSize > MAX_BOX_SIZE) {
+                        throw new IOException("Invalid " + typeName(type) + " box size: " + size);
+                    }
+                    ByteBuffer payload = source.read(position + headerSize, (int) payloadSize);
+                    if (type == fourcc("ftyp")) {
+                        ftyp = payload;
+                    } else if (type == fourcc("meta")) {
+                        metaBox = payload;
+                        metaOffset = position + headerSize;
+                    } else {
+                        moov = payload;
+                    }
+                }
+                // 主品牌为 avif 时 libavif 只使用图片项，找到 meta 后不再需要读取后面的 box
+                boolean itemsOnly = (ftyp != null) && ftyp.remaining() >= 4
+                    && ftyp.getInt(0) == fourcc("avif");
+                if (size == 0 || (metaBox != null && (moov != null || itemsOnly))) {
+                    break;
+                }
+                position += size;
+            }
+
+            int majorBrand = 0;
+            int[] compatibleBrands = new int[0];
+            if (ftyp != null && ftyp.remaining() >= 4) {
+                majorBrand = ftyp.getInt(0);
+                compatibleBrands = new int[Math.max(0, ftyp.remaining() - 8) / 4];
+                for (int i = 0; i < compatibleBrands.length; i++) {
+                    compatibleBrands[i] = ftyp.getInt(8 + 4 * i);
+                }
+            }
+            Meta meta = (metaBox != null) ? parseMeta(metaBox, metaOffset) : new Meta();
+            List<Track> tracks = (moov != null) ? parseMovie(moov) : Collections.<Track>emptyList();
+            return new AvifContainer(majorBrand, compatibleBrands, meta,
+                toImageInfo(majorBrand, meta, tracks));
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            // 子 box 的字段超出 box 长度
+            throw new IOException("Truncated AVIF container", e);
+        }
+    }
+
+    /**
+     * 检查 ftyp box 的内容是否声明了 AVIF 品牌（主品牌或兼容品牌为 avif 或 avis）
+     *
+     * @param ftyp ftyp box 的内容（不含 box 头部）
+     */
+    static boolean isAvifFileType(ByteBuffer ftyp) {
+        if (ftyp.remaining() < 4) {
+            return false;
+        }
+        int start = ftyp.position();
+        if (isAvifBrand(ftyp.getInt(start))) {
+            return true;
+        }
+        for (int offset = start + 8; offset + 4 <= ftyp.limit(); offset += 4) {
+            if (isAvifBrand(ftyp.getInt(offset))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true 如果 ftyp 声明了 AVIF 品牌
+     */
+    boolean isAvif() {
+        if (isAvifBrand(majorBrand)) {
+            return true;
+        }
+        for (int brand : compatibleBrands) {
+            if (isAvifBrand(brand)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取从文件头得到的图片信息
+     *
+     * <p>与 libavif 解析后的结果一致：主品牌为 avif 时使用主图片项，
+     * 否则有图片序列轨道时使用轨道（帧数为样本数）。</p>
+     *
+     * @return 图片信息，文件头没有声明尺寸时返回 null
+     */
+    ImageInfo imageInfo() {
+        return imageInfo;
+    }
+
+    private static boolean isAvifBrand(int brand) {
+        return brand == fourcc("avif") || brand == fourcc("avis");
+    }
+
+    /**
+     * 按 libavif 的 AVIF_DECODER_SOURCE_AUTO 规则选择图片项或轨道，生成图片信息
+     */
+    private static ImageInfo toImageInfo(int majorBrand, Meta meta, List<Track> tracks) {
+        Track color = null;
+        boolean alphaTrack = false;
+        for (Track track : tracks) {
+            if (!track.av1) {
+                continue;
+            }
+            if (track.auxiliary) {
+                alphaTrack = true;
+            } else if (color == null) {
+                color = track;
+            }
+        }
+        boolean useTracks = (color != null) && majorBrand != fourcc("avif");
+        if (useTracks) {
+            if (color.width <= 0 || color.height <= 0) {
+                return null;
+            }
+            int bitDepth = (color.bitDepth > 0) ? color.bitDepth : Math.max(meta.bitDepth, 8);
+            double duration = (color.timescale > 0) ? (double) color.duration / color.timescale : 0;
+            return new ImageInfo(color.width, color.height, bitDepth, alphaTrack,
+                color.sampleCount, duration, meta.hasIccProfile, meta.hasExif);
+        }
+        if (meta.width <= 0 || meta.height <= 0) {
+            return null;
+        }
+        // 单张图片的时长由 libavif 固定为 1 秒
+        return new ImageInfo(meta.width, meta.height, Math.max(meta.bitDepth, 8), meta.hasAlpha,
+            1, 1.0, meta.hasIccProfile, meta.hasExif);
+    }
+
+    /**
+     * 解析 meta box 的内容（FullBox 头部之后是子 box）
+     *
+     * @param metaBox meta box 的内容（不含 box 头部）
+     * @param metaOffset 内容在数据中的偏移量
+     */
+    private static Meta parseMeta(ByteBuffer metaBox, long metaOffset) throws IOException {
+        Meta meta = new Meta();
+        Map<Integer, Integer> itemTypes = new HashMap<Integer, Integer>();
+        List<int[]> references = new ArrayList<int[]>();
+        List<Property> properties = new ArrayList<Property>();
+        Map<Integer, int[]> associations = new HashMap<Integer, int[]>();
+
+        metaBox.position(metaBox.position() + 4);  // version + flags
+        for (Box box = nextBox(metaBox); box != null; box = nextBox(metaBox)) {
+            if (box.type == fourcc("iprp")) {
+                parseItemProperties(box.payload, properties, associations);
+                continue;
+            }
+            if (box.type != fourcc("pitm") && box.type != fourcc("iinf")
+                    && box.type != fourcc("iref")) {
+                continue;
+            }
+            int version = box.payload.get() & 0xFF;
+            box.payload.position(box.payload.position() + 3);  // flags
+            if (box.type == fourcc("pitm")) {
+                meta.primaryItemIdOffset = metaOffset + box.offset + 4;
+                meta.primaryItemIdSize = (version == 0) ? 2 : 4;
+                meta.primaryItemId = readId(box.payload, version == 0);
+            } else if (box.type == fourcc("iinf")) {
+                parseItemInfo(box.payload, version, itemTypes);
+            } else {
+                parseItemReferences(box.payload, version, references);
+            }
+        }
+
+        int primary = meta.primaryItemId;
+        applyProperties(meta, properties, associations.get(primary));
+        if (meta.bitDepth == 0) {
+            // 网格图片没有 pixi 时按第一个单元的 av1C 确定位深度
+            for (int[] ref : references) {
+                if (ref[0] == fourcc("dimg") && ref[1] == primary) {
+                    Meta tile = new Meta();
+                    applyProperties(tile, properties, associations.get(ref[2]));
+                    meta.bitDepth = tile.bitDepth;
+                    break;
+                }
+            }
+        }
+        for (int[] ref : references) {
+            if (ref[2] != primary) {
+                continue;
+            }
+            if (ref[0] == fourcc("thmb")) {
+                int itemId = ref[1];
+                Integer itemType = itemTypes.get(itemId);
+                boolean decodable = itemType != null
+                    && (itemType == fourcc("av01") || itemType == fourcc("grid"));
+                // 缩略图通过改写 pitm 解码，item_ID 必须能写入 pitm 的字段
+                boolean fits = meta.primaryItemIdSize == 4 || itemId <= 0xFFFF;
+                if (decodable && fits && !meta.thumbnailItemIds.contains(itemId)) {
+                    meta.thumbnailItemIds.add(itemId);
+                }
+            } else if (ref[0] == fourcc("auxl")) {
+                Meta auxiliary = new Meta();
+                applyProperties(auxiliary, properties, associations.get(ref[1]));
+                meta.hasAlpha |= auxiliary.alphaAuxiliary;
+            } else if (ref[0] == fourcc("cdsc")) {
+                Integer itemType = itemTypes.get(ref[1]);
+                meta.hasExif |= itemType != null && itemType == fourcc("Exif");
+            }
+        }
+        return meta;
+    }
+
+    /**
+     * 将项关联的属性写入 target
+     *
+     * @param indices 属性下标（从 0 开始），项没有关联属性时为 null
+     */
+    private static void applyProperties(Meta target, List<Property> properties, int[] indices) {
+        if (indices == null) {
+            return;
+        }
+        for (int index : indices) {
+            if (index < 0 || index >= properties.size()) {
+                continue;
+            }
+            Property property = properties.get(index);
+            if (property.type == fourcc("ispe")) {
+                target.width = property.width;
+                target.height = property.height;
+            } else if (property.type == fourcc("pixi")
+                    || (property.type == fourcc("av1C") && target.bitDepth == 0)) {
+                // pixi 优先于 av1C
+                target.bitDepth = property.bitDepth;
+            } else if (property.type == fourcc("auxC")) {
+                target.alphaAuxiliary = property.alphaAuxiliary;
+            } else if (property.type == fourcc("colr")) {
+                target.hasIccProfile |= property.iccProfile;
+            }
+        }
+    }
+
+    /**
+     * 解析 iprp box：ipco 中的属性按顺序编号，ipma 将项关联到属性编号
+     */
+    private static void parseItemProperties(ByteBuffer iprp, List<Property> properties,
+                                            Map<Integer, int[]> associations) throws IOException {
+        for (Box box = nextBox(iprp); box != null; box = nextBox(iprp)) {
+            if (box.type == fourcc("ipco")) {
+                for (Box child = nextBox(box.payload); child != null; child = nextBox(box.payload)) {
+                    properties.add(parseProperty(child));
+                }
+            } else if (box.type == fourcc("ipma")) {
+                ByteBuffer ipma = box.payload;
+                int version = ipma.get() & 0xFF;
+                int flags = ((ipma.get() & 0xFF) << 16) | (ipma.getShort() & 0xFFFF);
+                long count = ipma.getInt() & 0xFFFFFFFFL;
+                for (long i = 0; i < count; i++) {
+                    int itemId = readId(ipma, version < 1);
+                    int[] indices = new int[ipma.get() & 0xFF];
+                    for (int j = 0; j < indices.length; j++) {
+                        // 最高位为 essential 标志，编号从 1 开始，0 表示没有属性
+                        indices[j] = ((flags & 1) != 0)
+                            ? (ipma.getShort() & 0x7FFF) - 1 : (ipma.get() & 0x7F) - 1;
+                    }
+                    if (!associations.containsKey(itemId)) {
+                        associations.put(itemId, indices);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 解析一个项属性，只读取需要的字段
+     */
+    private static Property parseProperty(Box box) {
+        Property property = new Property(box.type);
+        ByteBuffer payload = box.payload;
+        if (box.type == fourcc("ispe") && payload.remaining() >= 12) {
+            payload.getInt();  // version + flags
+            property.width = clampToInt(payload.getInt() & 0xFFFFFFFFL);
+            property.height = clampToInt(payload.getInt() & 0xFFFFFFFFL);
+        } else if (box.type == fourcc("pixi") && payload.remaining() >= 6) {
+            payload.getInt();
+            if ((payload.get() & 0xFF) > 0) {
+                property.bitDepth = payload.get() & 0xFF;
+            }
+        } else if (box.type == fourcc("av1C") && payload.remaining() >= 3) {
+            property.bitDepth = av1BitDepth(payload);
+        } else if (box.type == fourcc("auxC") && payload.remaining() > 4) {
+            payload.getInt();
+            StringBuilder urn = new StringBuilder();
+            while (payload.hasRemaining()) {
+                byte c = payload.get();
+                if (c == 0) {
+                    break;
+                }
+                urn.append((char) (c & 0xFF));
+            }
+            property.alphaAuxiliary = Arrays.asList(ALPHA_URNS).contains(urn.toString());
+        } else if (box.type == fourcc("colr") && payload.remaining() >= 4) {
+            int colourType = payload.getInt();
+            property.iccProfile = colourType == fourcc("prof") || colourType == fourcc("rICC");
+        }
+        return property;
+    }
+
+    /**
+     * 从 av1C 的第 3 个字节读取位深度（high_bitdepth 和 twelve_bit 标志）
+     */
+    private static int av1BitDepth(ByteBuffer av1C) {
+        int flags = av1C.get(av1C.position() + 2) & 0xFF;
+        boolean highBitDepth = (flags & 0x40) != 0;
+        boolean twelveBit = (flags & 0x20) != 0;
+        return highBitDepth ? (twelveBit ? 12 : 10) : 8;
+    }
+
+    /**
+     * 解析 moov box 中的所有轨道
+     */
+    private static List<Track> parseMovie(ByteBuffer moov) throws IOException {
+        List<Track> tracks = new ArrayList<Track>();
+        for (Box box = nextBox(moov); box != null; box = nextBox(moov)) {
+            if (box.type == fourcc("trak")) {
+                Track track = new Track();
+                parseTrackBoxes(box.payload, track);
+                tracks.add(track);
+            }
+        }
+        return tracks;
+    }
+
+    /**
+     * 递归解析轨道中需要的 box：tkhd（尺寸）、tref（辅助轨道）、mdhd（时长）、
+     * stsd（av01 样本描述及其 av1C）和 stsz/stz2（样本数）
+     */
+    private static void parseTrackBoxes(ByteBuffer parent, Track track) throws IOException {
+        for (Box box = nextBox(parent); box != null; box = nextBox(parent)) {
+            ByteBuffer payload = box.payload;
+            if (box.type == fourcc("mdia") || box.type == fourcc("minf")
+                    || box.type == fourcc("stbl")) {
+                parseTrackBoxes(payload, track);
+            } else if (box.type == fourcc("tkhd")) {
+                int version = payload.get() & 0xFF;
+                // flags、时间戳、track_ID、时长，之后是 reserved、layer、alternate_group、
+                // volume、reserved 和 3x3 矩阵
+                payload.position(payload.position() + 3 + ((version == 1) ? 32 : 20) + 52);
+                track.width = payload.getInt() >>> 16;
+                track.height = payload.getInt() >>> 16;
+            } else if (box.type == fourcc("tref")) {
+                for (Box ref = nextBox(payload); ref != null; ref = nextBox(payload)) {
+                    track.auxiliary |= (ref.type == fourcc("auxl"));
+                }
+            } else if (box.type == fourcc("mdhd")) {
+                int version = payload.get() & 0xFF;
+                payload.position(payload.position() + 3 + ((version == 1) ? 16 : 8));
+                track.timescale = payload.getInt() & 0xFFFFFFFFL;
+                track.duration = (version == 1) ? payload.getLong() : (payload.getInt() & 0xFFFFFFFFL);
+            } else if (box.type == fourcc("stsd")) {
+                payload.position(payload.position() + 8);  // version + flags + entry_count
+                Box entry = nextBox(payload);
+                if (entry != null && entry.type == fourcc("av01")) {
+                    track.av1 = true;
+                    // VisualSampleEntry 的固定字段之后是子 box
+                    entry.payload.position(entry.payload.position() + 78);
+                    for (Box child = nextBox(entry.payload); child != null;
+                            child = nextBox(entry.payload)) {
+                        if (child.type == fourcc("av1C") && child.payload.remaining() >= 3) {
+                            track.bitDepth = av1BitDepth(child.payload);
+                        }
+                    }
+                }
+            } else if (box.type == fourcc("stsz")) {
+                payload.position(payload.position() + 8);  // version + flags + sample_size
+                track.sampleCount = clampToInt(payload.getInt() & 0xFFFFFFFFL);
+            } else if (box.type == fourcc("stz2")) {
+                payload.position(payload.position() + 8);  // version + flags + reserved + field_size
+                track.sampleCount = clampToInt(payload.getInt() & 0xFFFFFFFFL);
+            }
+        }
+    }
+
+    /**
+     * 解析 iinf box，记录每个 infe（版本 2 及以上）的 item_ID 和 item_type
+     */
+    private static void parseItemInfo(ByteBuffer box, int version, Map<Integer, Integer> itemTypes)
+            throws IOException {
+        long count = (version == 0) ? (box.getShort() & 0xFFFF) : (box.getInt() & 0xFFFFFFFFL);
+        Box infe = nextBox(box);
+        for (long i = 0; i < count && infe != null; i++, infe = nextBox(box)) {
+            if (infe.type == fourcc("infe")) {
+                int infeVersion = infe.payload.get() & 0xFF;
+                infe.payload.position(infe.payload.position() + 3);
+                if (infeVersion >= 2) {
+                    int itemId = readId(infe.payload, infeVersion == 2);
+                    infe.payload.getShort();  // item_protection_index
+                    itemTypes.put(itemId, infe.payload.getInt());
+                }
+            }
+        }
+    }
+
+    /**
+     * 解析 iref box，记录所有引用的 [reference_type, from_item_ID, to_item_ID]
+     */
+    private static void parseItemReferences(ByteBuffer box, int version, List<int[]> references)
+            throws IOException {
+        boolean shortIds = (version == 0);
+        for (Box ref = nextBox(box); ref != null; ref = nextBox(box)) {
+            int fromId = readId(ref.payload, shortIds);
+            int count = ref.payload.getShort() & 0xFFFF;
+            for (int i = 0; i < count; i++) {
+                references.add(new int[]{ref.type, fromId, readId(ref.payload, shortIds)});
+            }
+        }
+    }
+
+    /**
+     * 读取父 box 内容中的下一个子 box，并将父缓冲区的位置移到其后
+     *
+     * @return 子 box，剩余数据不足一个 box 头部时返回 null
+     * @throws IOException 如果 box 长度无效
+     */
+    private static Box nextBox(ByteBuffer parent) throws IOException {
+        if (parent.remaining() < 8) {
+            return null;
+        }
+        int start = parent.position();
+        long size = parent.getInt() & 0xFFFFFFFFL;
+        int type = parent.getInt();
+        if (size == 1) {
+            size = parent.getLong();
+        } else if (size == 0) {
+            size = parent.limit() - start;
+        }
+        int headerSize = parent.position() - start;
+        if (size < headerSize || size > parent.limit() - start) {
+            throw new IOException("Invalid " + typeName(type) + " box size: " + size);
+        }
+        int offset = parent.position();
+        return new Box(type, offset, slice(parent, (int) size - headerSize));
+    }
+
+    private static int readId(ByteBuffer buffer, boolean shortId) {
+        return shortId ? (buffer.getShort() & 0xFFFF) : buffer.getInt();
+    }
+
+    private static int clampToInt(long value) {
+        return (int) Math.min(value, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 从当前位置切出 length 字节的子缓冲区，并将原缓冲区的位置移到子缓冲区之后
+     */
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    /**
+     * 读取最多 length 字节，到达流末尾时返回较短的数据
+     *
+     * <p>缓冲区按实际读到的数据逐步扩大，长度未知的 box（size 为 0）不会预先分配最大长度。</p>
+     */
+    private static ByteBuffer readUpTo(ImageInputStream stream, int length) throws IOException {
+        byte[] buffer = new byte[Math.min(length, 64 * 1024)];
+        int total = 0;
+        while (total < length) {
+            if (total == buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min((long) buffer.length * 2, length));
+            }
+            int n = stream.read(buffer, total, buffer.length - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return ByteBuffer.wrap(buffer, 0, total).slice();
+    }
+
+    static int fourcc(String type) {
+        return (type.charAt(0) << 24) | (type.charAt(1) << 16) | (type.charAt(2) << 8) | type.charAt(3);
+    }
+
+    private static String typeName(int type) {
+        return new String(new char[]{
+            (char) ((type >>> 24) & 0xFF), (char) ((type >>> 16) & 0xFF),
+            (char) ((type >>> 8) & 0xFF), (char) (type & 0xFF)});
+    }
+
+    /**
+     * 生成将 pitm 改写为指定项的补丁
+     *
+     * @param itemId 新的主图片项 ID
+     * @return 按 pitm 字段宽度编码的大端字节
+     */
+    byte[] primaryItemPatch(int itemId) {
+        byte[] patch = new byte[primaryItemIdSize];
+        for (int i = 0; i < patch.length; i++) {
+            patch[i] = (byte) (itemId >>> (8 * (patch.length - 1 - i)));
+        }
+        return patch;
+    }
+
+    /**
+     * 按偏移读取数据的输入源
+     */
+    private interface Source {
+
+        /**
+         * 读取 [position, position + length) 的数据，到达末尾时返回较短的缓冲区
+         */
+        ByteBuffer read(long position, int length) throws IOException;
+    }
+
+    /**
+     * 子 box：类型、内容在父缓冲区中的偏移量和内容
+     */
+    private static final class Box {
+
+        final int type;
+        final int offset;
+        final ByteBuffer payload;
+
+        Box(int type, int offset, ByteBuffer payload) {
+            this.type = type;
+            this.offset = offset;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * ipco 中的一个项属性（只保留需要的字段）
+     */
+    private static final class Property {
+
+        final int type;
+        int width;
+        int height;
+        int bitDepth;
+        boolean alphaAuxiliary;
+        boolean iccProfile;
+
+        Property(int type) {
+            this.type = type;
+        }
+    }
+
+    /**
+     * meta box 的解析结果，也用于收集单个项的属性
+     */
+    private static final class Meta {
+
+        int primaryItemId = -1;
+        long primaryItemIdOffset = -1;
+        int primaryItemIdSize;
+        final List<Integer> thumbnailItemIds = new ArrayList<Integer>();
+        int width;
+        int height;
+        int bitDepth;
+        boolean hasAlpha;
+        boolean alphaAuxiliary;
+        boolean hasIccProfile;
+        boolean hasExif;
+    }
+
+    /**
+     * moov 中一个轨道的解析结果
+     */
+    private static final class Track {
+
+        int width;
+        int height;
+        int bitDepth;
+        boolean av1;
+        boolean auxiliary;
+        int sampleCount;
+        long timescale;
+        long duration;
+    }
+}
@@ -18,6 +18,34 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class AvifDecoderOptions implements AutoCloseable {
     
+    /** 自动线程数：使用所有可用核心 */
+    public static final int THREADS_AUTO = 0;
+    
+    /** 默认解码线程数（与 libavif 默认值一致） */
+    public static final int DEFAULT_MAX_THREADS = 1;
+    
+    /** 默认最大像素数 (16384 x 16384) */
+    public static final int DEFAULT_IMAGE_SIZE_LIMIT = 16384 * 16384;
+    
+    /** 默认最大宽/高 */
+    public static final int DEFAULT_IMAGE_DIMENSION_LIMIT = 32768;
+    
+    /** 严格模式标志：关闭所有严格检查 */
+    public static final int STRICT_DISABLED = 0;
+    
+    /** 严格模式标志：要求存在 pixi 属性 */
+    public static final int STRICT_PIXI_REQUIRED = 1;
+    
+    /** 严格模式标志：要求 clap 属性有效 */
+    public static final int STRICT_CLAP_VALID = 1 << 1;
+    
+    /** 严格模式标志：要求 Alpha 图像项存在 ispe 属性 */
+    public static final int STRICT_ALPHA_ISPE_REQUIRED = 1 << 2;
+    
+    /** 严格模式标志：启用所有严格检查（默认） */
+    public static final int STRICT_ENABLED =
+        STRICT_PIXI_REQUIRED | STRICT_CLAP_VALID | STRICT_ALPHA_ISPE_REQUIRED;
+    
     private volatile long fPointer;
     private final AtomicBoolean closed = new AtomicBoolean(false);
     
@@ -35,8 +63,25 @@ public class AvifDecoderOptions implements AutoCloseable {
         fPointer = createOptions();
     }
     
+    private AvifDecoderOptions(long ptr) {
+        fPointer = ptr;
+    }
+    
     private static native long createOptions();
     private static native void deleteOptions(long ptr);
+    private static native long copyOptions(long ptr);
+    
+    /**
+     * 复制当前选项（调用方负责关闭副本）
+     * 
+     * <p>用于在不修改调用方选项的前提下调整单次任务的设置，例如 {@link AvifBatch} 按图片分配线程数。</p>
+     * 
+     * @return 设置相同的新选项
+     * @throws IllegalStateException 如果选项已关闭
+     */
+    AvifDecoderOptions copy() {
+        return new AvifDecoderOptions(copyOptions(getPointer()));
+    }
     
     /**
      * 是否忽略 ICC 色彩配置
@@ -46,6 +91,9 @@ public class AvifDecoderOptions implements AutoCloseable {
     
     /**
      * 设置是否忽略 ICC 色彩配置
+     * 
+     * <p>忽略时不会将 ICC 配置复制到 Java 层。</p>
+     * 
      * @param ignore true 忽略 ICC 配置
      */
     public native void setIgnoreIcc(boolean ignore);
@@ -58,10 +106,129 @@ public class AvifDecoderOptions implements AutoCloseable {
     
     /**
      * 设置是否忽略 EXIF 元数据
+     * 
+     * <p>忽略时解码器不会读取 EXIF 数据，也不会将其复制到 Java 层。</p>
+     * 
      * @param ignore true 忽略 EXIF 元数据
      */
     public native void setIgnoreExif(boolean ignore);
     
+    /**
+     * 是否忽略 XMP 元数据
+     * @return true 如果忽略 XMP 元数据
+     */
+    public native boolean isIgnoreXmp();
+    
+    /**
+     * 设置是否忽略 XMP 元数据
+     * 
+     * <p>忽略时解码器不会读取 XMP 数据，也不会将其复制到 Java 层。</p>
+     * 
+     * @param ignore true 忽略 XMP 元数据
+     */
+    public native void setIgnoreXmp(boolean ignore);
+    
+    /**
+     * 获取解码线程数
+     * @return 解码线程数，{@link #THREADS_AUTO} 表示使用所有可用核心
+     */
+    public native int getMaxThreads();
+    
+    /**
+     * 设置解码线程数
+     * 
+     * <p>大图使用多线程解码（dav1d）可以显著降低延迟。</p>
+     * 
+     * @param maxThreads 解码线程数（默认 1，{@link #THREADS_AUTO} 表示使用所有可用核心）
+     * @throws IllegalArgumentException 如果线程数小于 0
+     */
+    public native void setMaxThreads(int maxThreads);
+    
+    /**
+     * 获取 AV1 解码器名称
+     * @return 解码器名称，"auto" 表示自动选择
+     */
+    public native String getCodec();
+    
+    /**
+     * 设置 AV1 解码器
+     * 
+     * @param codec 解码器名称，如 "dav1d"、"aom"、"libgav1"（默认 "auto" 自动选择）
+     * @throws IllegalArgumentException 如果解码器未知或未编译进原生库
+     */
+    public native void setCodec(String codec);
+    
+    /**
+     * 获取严格模式标志
+     * @return 严格模式标志组合
+     */
+    public native int getStrictFlags();
+    
+    /**
+     * 设置严格模式标志
+     * 
+     * @param strictFlags 严格模式标志组合（默认 {@link #STRICT_ENABLED}），
+     *                    {@link #STRICT_DISABLED} 可以兼容不规范的文件
+     * @throws IllegalArgumentException 如果包含未知标志
+     */
+    public native void setStrictFlags(int strictFlags);
+    
+    /**
+     * 获取最大像素数限制
+     * @return 最大像素数（宽 x 高）
+     */
+    public native int getImageSizeLimit();
+    
+    /**
+     * 设置最大像素数限制
+     * 
+     * <p>解析时根据文件头检查，超出限制的图片在分配像素内存之前即被拒绝。</p>
+     * 
+     * @param limit 最大像素数（1 到 {@link #DEFAULT_IMAGE_SIZE_LIMIT}，默认 {@link #DEFAULT_IMAGE_SIZE_LIMIT}）
+     * @throws IllegalArgumentException 如果限制值超出范围
+     */
+    public native void setImageSizeLimit(int limit);
+    
+    /**
+     * 获取最大宽/高限制
+     * @return 最大宽/高，0 表示不限制
+     */
+    public native int getImageDimensionLimit();
+    
+    /**
+     * 设置最大宽/高限制
+     * 
+     * @param limit 最大宽/高（默认 {@link #DEFAULT_IMAGE_DIMENSION_LIMIT}，0 表示不限制）
+     * @throws IllegalArgumentException 如果限制值小于 0
+     */
+    public native void setImageDimensionLimit(int limit);
+    
+    /**
+     * 是否保留高位深
+     * @return true 如果 10/12 位图片解码为 16 位每通道
+     */
+    public native boolean isHighBitDepth();
+    
+    /**
+     * 设置是否保留高位深
+     * 
+     * <p>启用后，{@link AvifDecoderSession#decodeImage(int)} 会将 10/12 位图片解码为
+     * 16 位每通道的图片（DataBufferUShort，RGB 或 RGBA 交错存储），而不是截断为 8 位。
+     * 8 位图片不受影响。</p>
+     * 
+     * @param highBitDepth true 保留高位深（默认 false）
+     */
+    public native void setHighBitDepth(boolean highBitDepth);
+    
+    /**
+     * 设置是否只解码主图片项
+     * 
+     * <p>启用后忽略图片序列的轨道，用于改写 pitm 后解码缩略图项。</p>
+     * 
+     * @param primaryItemOnly true 只解码主图片项（默认 false 由 libavif 自动选择）
+     */
+    native void setPrimaryItemOnly(boolean primaryItemOnly);
+    
     /**
      * 获取原生指针（线程安全版本）
      * 
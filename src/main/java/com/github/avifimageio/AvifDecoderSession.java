@@ -0,0 +1,505 @@
+package com.github.avifimageio;
+
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * AVIF 解码会话
+ *
+ * <p>持有一个已解析的原生解码器，图片信息、帧解码以及 EXIF/ICC/XMP 读取
+ * 都共享同一次容器解析结果，避免对同一份数据重复解析。
+ * {@link #decodeFrame}、{@link #decodeImage} 和 {@link #decodeInto} 每次报告一次解码指标
+ * （{@link AvifMetricsListener}），容器在创建会话时解析，不计入解码耗时。
+ * 实现 AutoCloseable 接口以确保原生资源正确释放。
+ * 所有方法都是线程安全的（内部串行执行）。</p>
+ *
+ * <p>使用示例：</p>
+ * <pre>{@code
+ * try (AvifDecoderSession session = Avif.openSession(avifData, 0, avifData.length, null)) {
+ *     ImageInfo info = session.getInfo();
+ *     DecodeResult frame = session.decodeFrame(0);
+ *     byte[] exif = session.getExif();
+ * }
+ * }</pre>
+ */
+public final class AvifDecoderSession implements AutoCloseable {
+
+    private volatile long fPointer;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private volatile ImageInfo imageInfo;
+    private volatile boolean highBitDepth;
+    /** 原生解码器直接引用的输入（直接缓冲区或流适配器），会话关闭前必须保持可达 */
+    private Object retainedInput;
+    /** 启用线程资源复用时，输入数据所在的线程缓冲区，会话关闭时归还 */
+    private AvifThreadResources.InputBuffer inputBuffer;
+    /** 输入数据复制到原生内存的字节数（计入 {@link AvifNativeMemory}） */
+    private long copiedBytes;
+    /** 输入的 AVIF 数据长度（用于解码指标），未知时为 -1 */
+    private final long inputBytes;
+
+    /**
+     * 创建解码会话并解析容器
+     *
+     * <p>调用方负责参数校验，公开入口为 {@link Avif#openSession}。</p>
+     */
+    AvifDecoderSession(byte[] data, int offset, int length, AvifDecoderOptions options)
+            throws IOException {
+        long optionsPtr = (options != null) ? options.getPointer() : 0;
+        highBitDepth = (options != null) && options.isHighBitDepth();
+        AvifThreadResources.InputBuffer buffer = AvifThreadResources.acquire();
+        long bufferPtr = (buffer != null) ? buffer.pointer : 0;
+        long ptr;
+        try {
+            ptr = openNative(optionsPtr, bufferPtr, data, offset, length);
+            try {
+                imageInfo = getCheckedInfo(ptr);
+            } catch (Throwable t) {
+                closeNative(ptr);
+                throw t;
+            }
+        } catch (Throwable t) {
+            if (buffer != null) {
+                buffer.release();
+            }
+            throw t;
+        }
+        inputBuffer = buffer;
+        if (buffer == null) {
+            // 线程缓冲区由 AvifThreadResources 单独统计
+            copiedBytes = length;
+            AvifNativeMemory.allocated(copiedBytes);
+        }
+        inputBytes = length;
+        fPointer = ptr;
+    }
+
+    /**
+     * 基于直接缓冲区创建解码会话，不复制输入数据
+     *
+     * <p>解析 data 从 position 到 limit 的数据，不改变缓冲区的位置。
+     * 调用方负责参数校验，公开入口为 {@link Avif#openSession(ByteBuffer, AvifDecoderOptions)}。</p>
+     */
+    AvifDecoderSession(ByteBuffer data, AvifDecoderOptions options) throws IOException {
+        long optionsPtr = (options != null) ? options.getPointer() : 0;
+        highBitDepth = (options != null) && options.isHighBitDepth();
+        long ptr = openDirectNative(optionsPtr, data, data.position(), data.remaining());
+        try {
+            imageInfo = getCheckedInfo(ptr);
+        } catch (Throwable t) {
+            closeNative(ptr);
+            throw t;
+        }
+        retainedInput = data;
+        inputBytes = data.remaining();
+        fPointer = ptr;
+    }
+    
+    /**
+     * 基于输入流创建解码会话，按需读取数据
+     *
+     * <p>解析只读取容器的 box，帧数据在解码时才读取，不会预先缓冲整个文件。
+     * 会话关闭前输入流必须保持打开，且不应被其他代码移动位置后并发读取。
+     * 公开入口为 {@link Avif#openSession(ImageInputStream, AvifDecoderOptions)}。</p>
+     */
+    AvifDecoderSession(AvifStreamSource source, AvifDecoderOptions options) throws IOException {
+        long optionsPtr = (options != null) ? options.getPointer() : 0;
+        highBitDepth = (options != null) && options.isHighBitDepth();
+        long size = source.size();
+        long ptr = openStreamNative(optionsPtr, source, size);
+        try {
+            imageInfo = getCheckedInfo(ptr);
+        } catch (Throwable t) {
+            closeNative(ptr);
+            throw t;
+        }
+        retainedInput = source;
+        inputBytes = size;
+        fPointer = ptr;
+    }
+
+    private static native long openNative(long optionsPtr, long inputBufferPtr,
+                                          byte[] data, int offset, int length)
+        throws IOException;
+    private static native long openDirectNative(long optionsPtr, ByteBuffer data,
+                                                int offset, int length) throws IOException;
+    private static native long openStreamNative(long optionsPtr, AvifStreamSource source,
+                                                long sizeHint) throws IOException;
+    private static native void reconfigureNative(long ptr, long optionsPtr) throws IOException;
+    private static native void closeNative(long ptr);
+    private static native ImageInfo getInfoNative(long ptr);
+    private static native void decodeIntoNative(long ptr, int frameIndex, Object pixels,
+                                                int bytesPerElement, int offset, int stride,
+                                                int width, int height,
+                                                int format, int depth, int flags)
+        throws IOException;
+    private static native void decodeRegionNative(long ptr, int frameIndex,
+                                                  int srcX, int srcY, int srcWidth, int srcHeight,
+                                                  int xSubsampling, int ySubsampling,
+                                                  Object pixels, int bytesPerElement,
+                                                  int offset, int stride, int width, int height,
+                                                  int format, int depth, int flags)
+        throws IOException;
+    private static native void decodeScaledNative(long ptr, int frameIndex, Object pixels,
+                                                  int bytesPerElement, int offset, int stride,
+                                                  int width, int height,
+                                                  int format, int depth, int flags)
+        throws IOException;
+    private static native long[] getFrameTimingNative(long ptr, int frameIndex)
+        throws IOException;
+    private static native byte[] getExifNative(long ptr);
+    private static native byte[] getIccProfileNative(long ptr);
+    private static native byte[] getXmpNative(long ptr);
+
+    /**
+     * 使用新的解码选项重新解析同一份数据
+     *
+     * <p>线程数、解码器、严格模式和尺寸限制只在解析时生效，
+     * 因此更换选项需要重新解析容器（不会重新复制输入数据）。</p>
+     *
+     * @param options 解码选项（可为 null 恢复默认选项）
+     * @throws IOException 如果重新解析失败
+     * @throws IllegalStateException 如果会话已关闭
+     */
+    synchronized void reconfigure(AvifDecoderOptions options) throws IOException {
+        long ptr = getPointer();
+        long optionsPtr = (options != null) ? options.getPointer() : 0;
+        reconfigureNative(ptr, optionsPtr);
+        highBitDepth = (options != null) && options.isHighBitDepth();
+        imageInfo = getCheckedInfo(ptr);
+    }
+
+    /**
+     * 读取图片信息并按 {@link AvifNativeMemory} 的全局尺寸限制检查
+     */
+    private static ImageInfo getCheckedInfo(long ptr) throws IOException {
+        ImageInfo info = getInfoNative(ptr);
+        AvifNativeMemory.checkLimits(info);
+        return info;
+    }
+
+    /**
+     * 解码前按图片尺寸预留解码内存，超出全局上限时拒绝或排队
+     *
+     * @return 预留的字节数，解码返回后由调用方通过 {@link AvifNativeMemory#releaseDecode} 归还
+     */
+    private long reserveDecodeMemory() throws IOException {
+        long bytes = AvifNativeMemory.estimateDecodeBytes(imageInfo);
+        AvifNativeMemory.reserveDecode(bytes);
+        return bytes;
+    }
+
+    /**
+     * 获取图片信息（解析时已获取，不会再次访问原生解码器）
+     *
+     * @return 图片信息
+     */
+    public ImageInfo getInfo() {
+        return imageInfo;
+    }
+
+    /**
+     * 解码指定帧为 ARGB 像素数组
+     *
+     * <p>按升序访问帧时只解码新增的帧，重复访问当前帧不会再次解码。</p>
+     *
+     * @param frameIndex 帧索引（从 0 开始）
+     * @return 解码结果
+     * @throws IOException 如果解码失败
+     * @throws IndexOutOfBoundsException 如果帧索引超出范围
+     * @throws IllegalStateException 如果会话已关闭
+     */
+    public synchronized DecodeResult decodeFrame(int frameIndex) throws IOException {
+        checkFrameIndex(frameIndex);
+        int width = imageInfo.width();
+        int height = imageInfo.height();
+        AvifMetricsRegistry.Recording recording =
+            AvifMetricsRegistry.start(AvifMetrics.Operation.DECODE, null);
+        try {
+            int[] pixels = new int[width * height];
+            decodeInto(frameIndex, RasterLayout.ofArgbPixels(pixels, width, height));
+            DecodeResult result = new DecodeResult(pixels, width, height,
+                imageInfo.hasAlpha(), imageInfo.bitDepth(), getIccProfile());
+            AvifMetricsRegistry.finish(recording, width, height, inputBytes,
+                4L * pixels.length, null);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            AvifMetricsRegistry.finish(recording, 0, 0, inputBytes, 0, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 解码指定帧为 BufferedImage
+     *
+     * <p>先分配图片，再由原生层直接将像素写入图片的底层数组，没有中间拷贝。
+     * 有 Alpha 通道时返回 TYPE_INT_ARGB，否则返回 TYPE_INT_RGB。
+     * 如果解码选项启用了 {@link AvifDecoderOptions#setHighBitDepth 高位深}且图片超过 8 位，
+     * 则返回 16 位每通道的图片。</p>
+     *
+     * @param frameIndex 帧索引（从 0 开始）
+     * @return 解码后的图片
+     * @throws IOException 如果解码失败
+     * @throws IndexOutOfBoundsException 如果帧索引超出范围
+     * @throws IllegalStateException 如果会话已关闭
+     */
+    public synchronized BufferedImage decodeImage(int frameIndex) throws IOException {
+        if (highBitDepth && imageInfo.bitDepth() > 8) {
+            checkFrameIndex(frameIndex);
+            BufferedImage image = RasterLayout.ushortType(imageInfo.hasAlpha())
+                .createBufferedImage(imageInfo.width(), imageInfo.height());
+            decodeInto(frameIndex, image);
+            return image;
+        }
+        int imageType = imageInfo.hasAlpha() ?
+            BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        return decodeImage(frameIndex, imageType);
+    }
+
+    /**
+     * 解码指定帧为指定类型的 BufferedImage
+     *
+     * <p>例如 TYPE_3BYTE_BGR、TYPE_4BYTE_ABGR、TYPE_INT_ARGB_PRE 等类型
+     * 由原生层在 YUV 到 RGB 的转换中直接生成，不需要额外的类型转换。</p>
+     *
+     * @param frameIndex 帧索引（从 0 开始）
+     * @param imageType BufferedImage 类型常量
+     * @return 解码后的图片
+     * @throws IOException 如果解码失败
+     * @throws IllegalArgumentException 如果 imageType 无效
+     * @throws IndexOutOfBoundsException 如果帧索引超出范围
+     * @throws IllegalStateException 如果会话已关闭
+     */
+    public synchronized BufferedImage decodeImage(int frameIndex, int imageType)
+            throws IOException {
+        checkFrameIndex(frameIndex);
+        BufferedImage image = new BufferedImage(imageInfo.width(), imageInfo.height(), imageType);
+        decodeInto(frameIndex, image);
+        return image;
+    }
+
+    /**
+     * 解码指定帧并写入已有的 BufferedImage
+     *
+     * <p>支持 int 打包（TYPE_INT_RGB/ARGB/ARGB_PRE/BGR）、字节交错（TYPE_3BYTE_BGR、
+     * TYPE_4BYTE_ABGR 等）以及 16 位交错（DataBufferUShort）存储的 RGB 图片，
+     * 原生层按图片的内存布局直接写入像素，16 位图片保留 10/12 位源图的完整精度。
+     * 其他存储方式会退回到逐像素 setRGB。</p>
+     *
+     * @param frameIndex 帧索引（从 0 开始）
+     * @param destination 目标图片，尺寸必须与图片一致
+     * @throws IOException 如果解码失败
+     * @throws IllegalArgumentException 如果目标图片尺寸不匹配
+     * @throws IndexOutOfBoundsException 如果帧索引超出范围
+     * @throws IllegalStateException 如果会话已关闭
+     */
+    public synchronized void decodeInto(int frameIndex, BufferedImage destination)
+            throws IOException {
+        checkFrameIndex(frameIndex);
+        if (destination.getWidth() != imageInfo.width()
+                || destination.getHeight() != imageInfo.height()) {
+            throw new IllegalArgumentException("Destination size "
+                + destination.getWidth() + "x" + destination.getHeight()
+                + " does not match image size " + imageInfo.width() + "x" + imageInfo.height());
+        }
+        AvifMetricsRegistry.Recording recording =
+            AvifMetricsRegistry.start(AvifMetrics.Operation.DECODE, null);
+        try {
+            RasterLayout layout = RasterLayout.of(destination);
+            if (layout != null) {
+                decodeInto(frameIndex, layout);
+            } else {
+                DecodeResult result = decodeFrame(frameIndex);
+                destination.setRGB(0, 0, result.width(), result.height(),
+                    result.pixels(), 0, result.width());
+            }
+            AvifMetricsRegistry.finish(recording, destination.getWidth(), destination.getHeight(),
+                inputBytes, AvifMetricsRegistry.imageBytes(destination), null);
+        } catch (IOException | RuntimeException | Error e) {
+            AvifMetricsRegistry.finish(recording, 0, 0, inputBytes, 0, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 解码指定帧的一个区域并按步长下采样，写入目标图片的指定位置
+     *
+     * <p>不下采样时在 YUV 层面裁剪，只转换区域内的像素；下采样时只取出输出需要的 YUV 样本再转换。
+     * 输出像素 (x, y) 对应源图 (srcRegion.x + x * xSubsampling, srcRegion.y + y * ySubsampling)。
+     * 整帧仍需完整解码，libavif 不支持跳过网格图片中区域以外的单元。</p>
+     *
+     * @param frameIndex 帧索引（从 0 开始）
+     * @param srcRegion 源区域，必须在图片范围内
+     * @param xSubsampling 水平步长（至少为 1）
+     * @param ySubsampling 垂直步长（至少为 1）
+     * @param destination 目标图片
+     * @param destX 目标区域左上角 x
+     * @param destY 目标区域左上角 y
+     * @throws IOException 如果解码失败
+     * @throws IllegalArgumentException 如果区域无效或超出目标图片
+     * @throws IndexOutOfBoundsException 如果帧索引超出范围
+     * @throws IllegalStateException 如果会话已关闭
+     */
+    synchronized void decodeRegion(int frameIndex, Rectangle srcRegion,
+                                   int xSubsampling, int ySubsampling,
+                                   BufferedImage destination, int destX, int destY)
+            throws IOException {
+        checkFrameIndex(frameIndex);
+        if (xSubsampling < 1 || ySubsampling < 1) {
+            throw new IllegalArgumentException("Subsampling must be >= 1");
+        }
+        int width = (srcRegion.width + xSubsampling - 1) / xSubsampling;
+        int height = (srcRegion.height + ySubsampling - 1) / ySubsampling;
+        // 子图片与目标图片共享底层数组，布局的偏移量直接指向目标区域
+        BufferedImage target = destination.getSubimage(destX, destY, width, height);
+        RasterLayout layout = RasterLayout.of(target);
+        boolean direct = (layout != null);
+        if (!direct) {
+            int[] pixels = new int[width * height];
+            layout = RasterLayout.ofArgbPixels(pixels, width, height);
+        }
+        long reserved = reserveDecodeMemory();
+        try {
+            decodeRegionNative(getPointer(), frameIndex,
+                srcRegion.x, srcRegion.y, srcRegion.width, srcRegion.height,
+                xSubsampling, ySubsampling, layout.data, layout.bytesPerElement,
+                layout.offset, layout.scanlineStride, layout.width, layout.height,
+                layout.format, layout.depth, layout.flags);
+        } finally {
+            AvifNativeMemory.releaseDecode(reserved);
+        }
+        if (!direct) {
+            target.setRGB(0, 0, width, height, (int[]) layout.data, 0, width);
+        }
+    }
+
+    /**
+     * 解码指定帧并缩放到目标图片的尺寸
+     *
+     * <p>缩放在 YUV 层面由 libavif（libyuv）完成，之后只对缩放后的像素做 RGB 转换，
+     * 生成预览图时比先转换整幅图片再在 Java2D 中缩放快得多。</p>
+     *
+     * @param frameIndex 帧索引（从 0 开始）
+     * @param destination 目标图片，任意尺寸
+     * @throws IOException 如果解码或缩放失败
+     * @throws IndexOutOfBoundsException 如果帧索引超出范围
+     * @throws IllegalStateException 如果会话已关闭
+     */
+    synchronized void decodeScaled(int frameIndex, BufferedImage destination) throws IOException {
+        checkFrameIndex(frameIndex);
+        int width = destination.getWidth();
+        int height = destination.getHeight();
+        RasterLayout layout = RasterLayout.of(destination);
+        boolean direct = (layout != null);
+        if (!direct) {
+            int[] pixels = new int[width * height];
+            layout = RasterLayout.ofArgbPixels(pixels, width, height);
+        }
+        long reserved = reserveDecodeMemory();
+        try {
+            decodeScaledNative(getPointer(), frameIndex, layout.data, layout.bytesPerElement,
+                layout.offset, layout.scanlineStride, layout.width, layout.height,
+                layout.format, layout.depth, layout.flags);
+        } finally {
+            AvifNativeMemory.releaseDecode(reserved);
+        }
+        if (!direct) {
+            destination.setRGB(0, 0, width, height, (int[]) layout.data, 0, width);
+        }
+    }
+
+    private void decodeInto(int frameIndex, RasterLayout layout) throws IOException {
+        long reserved = reserveDecodeMemory();
+        try {
+            decodeIntoNative(getPointer(), frameIndex, layout.data, layout.bytesPerElement,
+                layout.offset, layout.scanlineStride, layout.width, layout.height,
+                layout.format, layout.depth, layout.flags);
+        } finally {
+            AvifNativeMemory.releaseDecode(reserved);
+        }
+    }
+
+    private void checkFrameIndex(int frameIndex) {
+        if (frameIndex < 0 || frameIndex >= imageInfo.frameCount()) {
+            throw new IndexOutOfBoundsException(
+                "Frame index " + frameIndex + " out of range [0, " + imageInfo.frameCount() + ")");
+        }
+    }
+
+    /**
+     * 获取指定帧的时间信息（不解码帧）
+     *
+     * @param frameIndex 帧索引（从 0 开始）
+     * @return 时间信息数组：[timescale, ptsInTimescales, durationInTimescales]
+     * @throws IOException 如果读取失败
+     */
+    synchronized long[] getFrameTiming(int frameIndex) throws IOException {
+        checkFrameIndex(frameIndex);
+        return getFrameTimingNative(getPointer(), frameIndex);
+    }
+
+    /**
+     * 获取 EXIF 元数据
+     *
+     * @return EXIF 数据，如果不存在则返回 null
+     * @throws IllegalStateException 如果会话已关闭
+     */
+    public synchronized byte[] getExif() {
+        return getExifNative(getPointer());
+    }
+
+    /**
+     * 获取 ICC 色彩配置
+     *
+     * @return ICC 配置数据，如果不存在则返回 null
+     * @throws IllegalStateException 如果会话已关闭
+     */
+    public synchronized byte[] getIccProfile() {
+        return getIccProfileNative(getPointer());
+    }
+
+    /**
+     * 获取 XMP 元数据
+     *
+     * @return XMP 数据，如果不存在则返回 null
+     * @throws IllegalStateException 如果会话已关闭
+     */
+    public synchronized byte[] getXmp() {
+        return getXmpNative(getPointer());
+    }
+
+    /**
+     * 获取原生指针
+     *
+     * @return 原生会话指针
+     * @throws IllegalStateException 如果会话已关闭
+     */
+    private long getPointer() {
+        long ptr = fPointer;
+        if (ptr == 0 || closed.get()) {
+            throw new IllegalStateException("AvifDecoderSession has been closed");
+        }
+        return ptr;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed.compareAndSet(false, true)) {
+            long ptr = fPointer;
+            fPointer = 0;
+            if (ptr != 0) {
+                closeNative(ptr);
+            }
+            retainedInput = null;
+            if (inputBuffer != null) {
+                inputBuffer.release();
+                inputBuffer = null;
+            }
+            AvifNativeMemory.freed(copiedBytes);
+            copiedBytes = 0;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.avifimageio;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 原生内存中的 AVIF 编码结果
+ *
+ * <p>编码结果保留在 libavif 分配的内存中，通过直接缓冲区访问，不复制到 Java 堆。
+ * 实现 AutoCloseable 接口，应在使用完毕后尽快关闭以释放原生内存。
+ * 未关闭的缓冲区会在其 ByteBuffer 被垃圾回收后释放，但不应依赖此行为。
+ * 释放之前编码数据计入 {@link AvifNativeMemory#getLiveBytes()}。</p>
+ *
+ * <p>使用示例：</p>
+ * <pre>{@code
+ * try (AvifEncodedBuffer encoded = Avif.encodeRGB(rgbBuffer, width, height, stride, options)) {
+ *     channel.write(encoded.buffer());
+ * }
+ * }</pre>
+ */
+public final class AvifEncodedBuffer implements AutoCloseable {
+
+    /** 已被回收但尚未关闭的缓冲区 */
+    private static final ReferenceQueue<ByteBuffer> QUEUE = new ReferenceQueue<ByteBuffer>();
+
+    /** 保持 Deallocator 可达，直到其原生内存被释放 */
+    private static final Set<Deallocator> PENDING =
+        Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<Deallocator, Boolean>()));
+
+    private volatile long fPointer;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final ByteBuffer buffer;
+    private final Deallocator deallocator;
+
+    /**
+     * 接管原生编码结果（由 {@link Avif} 创建）
+     */
+    AvifEncodedBuffer(long ptr) {
+        drainQueue();
+        this.fPointer = ptr;
+        this.buffer = wrapNative(ptr);
+        // 以 ByteBuffer 为回收目标：只要调用方仍持有缓冲区视图，内存就不会被释放
+        this.deallocator = new Deallocator(buffer, ptr, buffer.capacity());
+        PENDING.add(deallocator);
+        AvifNativeMemory.allocated(deallocator.size);
+    }
+
+    private static native ByteBuffer wrapNative(long ptr);
+    private static native void freeNative(long ptr);
+
+    /**
+     * 获取编码结果
+     *
+     * <p>返回的缓冲区直接指向原生内存，关闭后不得再访问。
+     * 每次调用返回一个新的视图，位置为 0，界限为编码数据长度。</p>
+     *
+     * @return 编码数据的直接缓冲区视图
+     * @throws IllegalStateException 如果已关闭
+     */
+    public ByteBuffer buffer() {
+        checkOpen();
+        return buffer.duplicate();
+    }
+
+    /**
+     * 获取编码数据长度
+     *
+     * @return 字节数
+     * @throws IllegalStateException 如果已关闭
+     */
+    public int size() {
+        checkOpen();
+        return buffer.capacity();
+    }
+
+    private void checkOpen() {
+        if (fPointer == 0 || closed.get()) {
+            throw new IllegalStateException("AvifEncodedBuffer has been closed");
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            fPointer = 0;
+            deallocator.free();
+        }
+    }
+
+    /**
+     * 释放已被垃圾回收但未关闭的缓冲区
+     */
+    private static void drainQueue() {
+        Reference<? extends ByteBuffer> ref;
+        while ((ref = QUEUE.poll()) != null) {
+            ((Deallocator) ref).free();
+        }
+    }
+
+    /**
+     * 原生内存释放器，close() 和垃圾回收两条路径只会释放一次
+     */
+    private static final class Deallocator extends PhantomReference<ByteBuffer> {
+
+        private final AtomicBoolean freed = new AtomicBoolean(false);
+        private final long ptr;
+        private final long size;
+
+        Deallocator(ByteBuffer referent, long ptr, long size) {
+            super(referent, QUEUE);
+            this.ptr = ptr;
+            this.size = size;
+        }
+
+        void free() {
+            if (freed.compareAndSet(false, true)) {
+                PENDING.remove(this);
+                freeNative(ptr);
+                AvifNativeMemory.freed(size);
+            }
+        }
+    }
+}
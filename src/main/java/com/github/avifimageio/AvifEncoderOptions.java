@@ -28,6 +28,30 @@ public class AvifEncoderOptions implements AutoCloseable {
     /** 默认位深度 */
     public static final int DEFAULT_BIT_DEPTH = 8;
     
+    /** 自动线程数：使用所有可用核心 */
+    public static final int THREADS_AUTO = 0;
+    
+    /** 默认编码线程数（单线程，使用所有核心需显式设置 {@link #THREADS_AUTO}） */
+    public static final int DEFAULT_MAX_THREADS = 1;
+    
+    /** tile 行/列数以 2 为底的对数的最大值（最多 64 行/列） */
+    public static final int MAX_TILES_LOG2 = 6;
+    
+    /** 像素格式：YUV 4:4:4，色度不下采样（取值与 libavif 的 avifPixelFormat 一致） */
+    public static final int PIXEL_FORMAT_YUV444 = 1;
+    
+    /** 像素格式：YUV 4:2:2，色度水平方向下采样 */
+    public static final int PIXEL_FORMAT_YUV422 = 2;
+    
+    /** 像素格式：YUV 4:2:0，色度水平和垂直方向下采样，适合照片类内容 */
+    public static final int PIXEL_FORMAT_YUV420 = 3;
+    
+    /** 像素格式：YUV 4:0:0，仅亮度（灰度） */
+    public static final int PIXEL_FORMAT_YUV400 = 4;
+    
+    /** 默认像素格式 */
+    public static final int DEFAULT_PIXEL_FORMAT = PIXEL_FORMAT_YUV444;
+    
     private volatile long fPointer;
     private final AtomicBoolean closed = new AtomicBoolean(false);
     
@@ -45,8 +69,25 @@ public class AvifEncoderOptions implements AutoCloseable {
         fPointer = createConfig();
     }
     
+    private AvifEncoderOptions(long ptr) {
+        fPointer = ptr;
+    }
+    
     private static native long createConfig();
     private static native void deleteConfig(long ptr);
+    private static native long copyConfig(long ptr);
+    
+    /**
+     * 复制当前选项（调用方负责关闭副本）
+     * 
+     * <p>用于在不修改调用方选项的前提下调整单次任务的设置，例如 {@link AvifBatch} 按图片分配线程数。</p>
+     * 
+     * @return 设置相同的新选项
+     * @throws IllegalStateException 如果选项已关闭
+     */
+    AvifEncoderOptions copy() {
+        return new AvifEncoderOptions(copyConfig(getPointer()));
+    }
     
     /**
      * 获取质量值
@@ -99,6 +140,101 @@ public class AvifEncoderOptions implements AutoCloseable {
      */
     public native void setLossless(boolean lossless);
     
+    /**
+     * 获取编码线程数
+     * @return 编码线程数，{@link #THREADS_AUTO} 表示使用所有可用核心
+     */
+    public native int getMaxThreads();
+    
+    /**
+     * 设置编码线程数
+     * 
+     * <p>AV1 编码器在 tile 之间并行，多线程需要配合自动分块或手动设置 tile 数才能生效。</p>
+     * 
+     * @param maxThreads 编码线程数（默认 1，{@link #THREADS_AUTO} 表示使用所有可用核心）
+     * @throws IllegalArgumentException 如果线程数小于 0
+     */
+    public native void setMaxThreads(int maxThreads);
+    
+    /**
+     * 获取 tile 行数以 2 为底的对数
+     * @return tile 行数的 log2 (0-6)
+     */
+    public native int getTileRowsLog2();
+    
+    /**
+     * 设置 tile 行数以 2 为底的对数
+     * 
+     * <p>仅在关闭自动分块时生效。</p>
+     * 
+     * @param tileRowsLog2 tile 行数的 log2 (0-6, 默认 0)
+     * @throws IllegalArgumentException 如果值超出范围
+     */
+    public native void setTileRowsLog2(int tileRowsLog2);
+    
+    /**
+     * 获取 tile 列数以 2 为底的对数
+     * @return tile 列数的 log2 (0-6)
+     */
+    public native int getTileColsLog2();
+    
+    /**
+     * 设置 tile 列数以 2 为底的对数
+     * 
+     * <p>仅在关闭自动分块时生效。</p>
+     * 
+     * @param tileColsLog2 tile 列数的 log2 (0-6, 默认 0)
+     * @throws IllegalArgumentException 如果值超出范围
+     */
+    public native void setTileColsLog2(int tileColsLog2);
+    
+    /**
+     * 是否自动分块
+     * @return true 如果启用自动分块
+     */
+    public native boolean isAutoTiling();
+    
+    /**
+     * 设置是否自动分块
+     * 
+     * <p>启用时由 libavif 按图片尺寸和线程数选择 tile 行/列数，
+     * 忽略 {@link #setTileRowsLog2} 和 {@link #setTileColsLog2}。</p>
+     * 
+     * @param autoTiling true 启用自动分块（默认 false）
+     */
+    public native void setAutoTiling(boolean autoTiling);
+    
+    /**
+     * 获取像素格式（色度采样方式）
+     * @return 像素格式常量 PIXEL_FORMAT_*
+     */
+    public native int getPixelFormat();
+    
+    /**
+     * 设置像素格式（色度采样方式）
+     * 
+     * <p>4:2:0 编解码更快、文件更小，适合照片类内容；4:4:4 保留完整色度，适合文字和图形。
+     * 无损模式下始终使用 4:4:4，忽略此设置。</p>
+     * 
+     * @param pixelFormat 像素格式常量 PIXEL_FORMAT_*（默认 {@link #PIXEL_FORMAT_YUV444}）
+     * @throws IllegalArgumentException 如果像素格式无效
+     */
+    public native void setPixelFormat(int pixelFormat);
+    
+    /**
+     * 获取动画关键帧最大间隔
+     * @return 关键帧间隔（帧数），0 表示由编码器决定
+     */
+    public native int getKeyframeInterval();
+    
+    /**
+     * 设置动画关键帧最大间隔（仅对 {@link AvifEncoderSession} 编码的动画有效）
+     * 
+     * @param keyframeInterval 关键帧间隔（帧数，默认 0 由编码器决定）
+     * @throws IllegalArgumentException 如果间隔小于 0
+     */
+    public native void setKeyframeInterval(int keyframeInterval);
+    
     /**
      * 获取原生指针（线程安全版本）
      * 
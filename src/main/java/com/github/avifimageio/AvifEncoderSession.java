@@ -0,0 +1,210 @@
+package com.github.avifimageio;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * AVIF 动画编码会话
+ *
+ * <p>持有一个长期存在的原生编码器，逐帧添加图片生成动画 AVIF。
+ * 每帧在添加时立即编码，原始像素不会在 Java 层或原生层累积，
+ * 只有压缩后的帧数据保留到 {@link #finish()}。
+ * 每次 {@link #addFrame} 和 {@link #finish()} 各报告一次编码指标（{@link AvifMetricsListener}）。
+ * 实现 AutoCloseable 接口以确保原生资源正确释放。
+ * 所有方法都是线程安全的（内部串行执行）。</p>
+ *
+ * <p>使用示例：</p>
+ * <pre>{@code
+ * try (AvifEncoderSession session = Avif.openEncoderSession(options)) {
+ *     for (BufferedImage frame : frames) {
+ *         session.addFrame(frame, 100);
+ *     }
+ *     byte[] avif = session.finish();
+ * }
+ * }</pre>
+ */
+public final class AvifEncoderSession implements AutoCloseable {
+
+    /** 时间刻度：帧时长以毫秒为单位 */
+    static final long TIMESCALE_MILLIS = 1000;
+
+    private volatile long fPointer;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AvifMetricsListener metricsListener;
+    private int frameCount;
+    private int width;
+    private int height;
+    private boolean finished;
+
+    /**
+     * 创建编码会话
+     *
+     * <p>编码选项在创建时复制，之后修改 options 不影响会话。
+     * 公开入口为 {@link Avif#openEncoderSession}。</p>
+     */
+    AvifEncoderSession(AvifEncoderOptions options) throws IOException {
+        this(options, null);
+    }
+
+    /**
+     * 创建编码会话，指标额外报告给写入器上的监听器（由 {@link AvifImageWriter} 调用）
+     */
+    AvifEncoderSession(AvifEncoderOptions options, AvifMetricsListener metricsListener)
+            throws IOException {
+        long configPtr = (options != null) ? options.getPointer() : 0;
+        this.metricsListener = metricsListener;
+        fPointer = openNative(configPtr, TIMESCALE_MILLIS);
+    }
+
+    private static native long openNative(long configPtr, long timescale) throws IOException;
+    private static native void addFrameNative(long ptr, Object pixels, int bytesPerElement,
+                                              int offset, int stride, int width, int height,
+                                              int format, int depth, int flags,
+                                              long duration, boolean forceKeyframe)
+        throws IOException;
+    private static native byte[] finishNative(long ptr) throws IOException;
+    private static native void closeNative(long ptr);
+
+    /**
+     * 添加一帧
+     *
+     * @param image 帧图片，尺寸必须与第一帧一致
+     * @param durationMillis 帧时长（毫秒）
+     * @throws IOException 如果编码失败
+     * @throws IllegalArgumentException 如果帧时长不大于 0 或尺寸与第一帧不一致
+     * @throws IllegalStateException 如果会话已完成或已关闭
+     */
+    public void addFrame(BufferedImage image, long durationMillis) throws IOException {
+        addFrame(image, durationMillis, false);
+    }
+
+    /**
+     * 添加一帧
+     *
+     * <p>各帧的图片类型可以不同。第一帧带 Alpha 通道时整个动画都编码 Alpha，
+     * 后续不带 Alpha 的帧按完全不透明编码；否则后续帧的 Alpha 被忽略。</p>
+     *
+     * @param image 帧图片，尺寸必须与第一帧一致
+     * @param durationMillis 帧时长（毫秒）
+     * @param forceKeyframe true 强制将此帧编码为关键帧
+     * @throws IOException 如果编码失败
+     * @throws IllegalArgumentException 如果帧时长不大于 0 或尺寸与第一帧不一致
+     * @throws IllegalStateException 如果会话已完成或已关闭
+     */
+    public synchronized void addFrame(BufferedImage image, long durationMillis,
+                                      boolean forceKeyframe) throws IOException {
+        if (image == null) {
+            throw new NullPointerException("Image may not be null");
+        }
+        if (durationMillis <= 0) {
+            throw new IllegalArgumentException("Frame duration must be > 0, got: " + durationMillis);
+        }
+        long ptr = getPointer();
+        if (finished) {
+            throw new IllegalStateException("AvifEncoderSession has already been finished");
+        }
+        AvifMetricsRegistry.Recording recording =
+            AvifMetricsRegistry.start(AvifMetrics.Operation.ENCODE, metricsListener);
+        long inputBytes = (recording != null) ? AvifMetricsRegistry.imageBytes(image) : 0;
+        try {
+            RasterLayout layout = layoutOf(image);
+            addFrameNative(ptr, layout.data, layout.bytesPerElement, layout.offset,
+                layout.scanlineStride, layout.width, layout.height,
+                layout.format, layout.depth, layout.flags, durationMillis, forceKeyframe);
+            // 压缩后的帧保留在编码器中直到 finish，单帧没有输出字节数
+            AvifMetricsRegistry.finish(recording, image.getWidth(), image.getHeight(),
+                inputBytes, 0, null);
+        } catch (IOException | RuntimeException | Error e) {
+            AvifMetricsRegistry.finish(recording, image.getWidth(), image.getHeight(),
+                inputBytes, 0, e);
+            throw e;
+        }
+        if (frameCount == 0) {
+            width = image.getWidth();
+            height = image.getHeight();
+        }
+        frameCount++;
+    }
+
+    /**
+     * 获取图片的像素布局，无法直接访问的存储方式先转换为 ARGB 像素数组
+     *
+     * <p>序列中所有帧的 YUV 格式必须相同，灰度帧也按彩色编码（不使用 4:0:0），
+     * 这样灰度帧和彩色帧可以混在同一个动画中。</p>
+     */
+    static RasterLayout layoutOf(BufferedImage image) {
+        RasterLayout layout = RasterLayout.of(image);
+        if (layout == null) {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+            layout = RasterLayout.ofArgbPixels(pixels, width, height);
+        }
+        return layout;
+    }
+
+    /**
+     * 获取已添加的帧数
+     *
+     * @return 帧数
+     */
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * 完成编码并返回 AVIF 数据
+     *
+     * <p>完成后不能再添加帧，会话仍需关闭。</p>
+     *
+     * @return AVIF 编码数据
+     * @throws IOException 如果编码失败
+     * @throws IllegalStateException 如果没有添加任何帧、会话已完成或已关闭
+     */
+    public synchronized byte[] finish() throws IOException {
+        long ptr = getPointer();
+        if (finished) {
+            throw new IllegalStateException("AvifEncoderSession has already been finished");
+        }
+        if (frameCount == 0) {
+            throw new IllegalStateException("No frames have been added");
+        }
+        finished = true;
+        AvifMetricsRegistry.Recording recording =
+            AvifMetricsRegistry.start(AvifMetrics.Operation.ENCODE, metricsListener);
+        try {
+            byte[] encoded = finishNative(ptr);
+            AvifMetricsRegistry.finish(recording, width, height, 0, encoded.length, null);
+            return encoded;
+        } catch (IOException | RuntimeException | Error e) {
+            AvifMetricsRegistry.finish(recording, width, height, 0, 0, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 获取原生指针
+     *
+     * @return 原生会话指针
+     * @throws IllegalStateException 如果会话已关闭
+     */
+    private long getPointer() {
+        long ptr = fPointer;
+        if (ptr == 0 || closed.get()) {
+            throw new IllegalStateException("AvifEncoderSession has been closed");
+        }
+        return ptr;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed.compareAndSet(false, true)) {
+            long ptr = fPointer;
+            fPointer = 0;
+            if (ptr != 0) {
+                closeNative(ptr);
+            }
+        }
+    }
+}
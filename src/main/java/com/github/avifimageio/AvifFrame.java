@@ -0,0 +1,59 @@
+package com.github.avifimageio;
+
+/**
+ * 动画 AVIF 的单帧
+ * 
+ * <p>包含帧的解码结果以及显示时间戳（PTS）和持续时间。
+ * 时间值同时以秒和时间刻度（timescale）两种单位提供。</p>
+ */
+public final class AvifFrame {
+    
+    private final int index;
+    private final DecodeResult image;
+    private final long timescale;
+    private final long ptsInTimescales;
+    private final long durationInTimescales;
+    
+    /**
+     * 创建帧
+     * 
+     * @param index 帧索引（从 0 开始）
+     * @param image 帧解码结果
+     * @param timescale 时间刻度（每秒的刻度数）
+     * @param ptsInTimescales 显示时间戳（以时间刻度为单位）
+     * @param durationInTimescales 持续时间（以时间刻度为单位）
+     */
+    public AvifFrame(int index, DecodeResult image, long timescale,
+                     long ptsInTimescales, long durationInTimescales) {
+        this.index = index;
+        this.image = image;
+        this.timescale = timescale;
+        this.ptsInTimescales = ptsInTimescales;
+        this.durationInTimescales = durationInTimescales;
+    }
+    
+    /** 获取帧索引（从 0 开始） */
+    public int index() { return index; }
+    
+    /** 获取帧解码结果 */
+    public DecodeResult image() { return image; }
+    
+    /** 获取时间刻度（每秒的刻度数） */
+    public long timescale() { return timescale; }
+    
+    /** 获取显示时间戳（以时间刻度为单位） */
+    public long ptsInTimescales() { return ptsInTimescales; }
+    
+    /** 获取持续时间（以时间刻度为单位） */
+    public long durationInTimescales() { return durationInTimescales; }
+    
+    /** 获取显示时间戳（秒） */
+    public double pts() {
+        return timescale > 0 ? (double) ptsInTimescales / timescale : 0;
+    }
+    
+    /** 获取持续时间（秒） */
+    public double duration() {
+        return timescale > 0 ? (double) durationInTimescales / timescale : 0;
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.avifimageio;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 动画 AVIF 顺序帧迭代器
+ * 
+ * <p>基于单个解码会话按顺序逐帧解码，每次只解码下一帧，
+ * 遍历 N 帧的总解码量为 O(N)，而逐帧调用 {@link Avif#decodeFrame} 需要每次从关键帧重新解码。
+ * 实现 AutoCloseable 接口以确保原生资源正确释放。</p>
+ * 
+ * <p>使用示例：</p>
+ * <pre>{@code
+ * try (AvifFrameSequence frames = Avif.openSequence(avifData, 0, avifData.length, null)) {
+ *     while (frames.hasNext()) {
+ *         AvifFrame frame = frames.nextFrame();
+ *         long delayMillis = Math.round(frame.duration() * 1000);
+ *     }
+ * }
+ * }</pre>
+ */
+public final class AvifFrameSequence implements Iterator<AvifFrame>, AutoCloseable {
+    
+    private final AvifDecoderSession session;
+    private int nextIndex = 0;
+    
+    /**
+     * 创建顺序帧迭代器
+     * 
+     * <p>迭代器接管会话，关闭迭代器时会话一并关闭。公开入口为 {@link Avif#openSequence}。</p>
+     * 
+     * @param session 解码会话
+     */
+    AvifFrameSequence(AvifDecoderSession session) {
+        this.session = session;
+    }
+    
+    /**
+     * 获取图片信息
+     * 
+     * @return 图片信息
+     */
+    public ImageInfo getInfo() {
+        return session.getInfo();
+    }
+    
+    /**
+     * 获取下一帧的索引
+     * 
+     * @return 下一帧索引（从 0 开始）
+     */
+    public int nextIndex() {
+        return nextIndex;
+    }
+    
+    @Override
+    public boolean hasNext() {
+        return nextIndex < session.getInfo().frameCount();
+    }
+    
+    /**
+     * 解码下一帧
+     * 
+     * @return 下一帧
+     * @throws IOException 如果解码失败
+     * @throws NoSuchElementException 如果没有更多帧
+     * @throws IllegalStateException 如果迭代器已关闭
+     */
+    public AvifFrame nextFrame() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more frames");
+        }
+        int index = nextIndex;
+        DecodeResult image = session.decodeFrame(index);
+        long[] timing = session.getFrameTiming(index);
+        nextIndex++;
+        return new AvifFrame(index, image, timing[0], timing[1], timing[2]);
+    }
+    
+    /**
+     * 解码下一帧
+     * 
+     * @return 下一帧
+     * @throws UncheckedIOException 如果解码失败
+     * @throws NoSuchElementException 如果没有更多帧
+     */
+    @Override
+    public AvifFrame next() {
+        try {
+            return nextFrame();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    @Override
+    public void close() {
+        session.close();
+    }
+}
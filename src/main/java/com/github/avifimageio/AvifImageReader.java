@@ -6,11 +6,20 @@ import javax.imageio.ImageReader;
 import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.FileImageInputStream;
 import javax.imageio.stream.ImageInputStream;
-import java.awt.color.ICC_Profile;
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+import java.awt.image.Raster;
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -22,9 +31,21 @@ import java.util.List;
  */
 public class AvifImageReader extends ImageReader {
     
-    private byte[] avifData;
+    private AvifDecoderSession session;
     private ImageInfo imageInfo;
     private boolean headerRead = false;
+    /** 当前会话已应用的解码设置（null 表示默认设置） */
+    private AvifReadParam sessionSettings;
+    /** File/Path 输入的映射缓冲区（与会话共享） */
+    private ByteBuffer mappedInput;
+    /** ImageInputStream 输入时数据在流中的起点 */
+    private long streamBase;
+    /** mappedInput 或 streamBase 是否已确定 */
+    private boolean inputPrepared = false;
+    /** 容器结构（懒加载，用于查找缩略图项） */
+    private AvifContainer container;
+    /** 只监听此读取器的指标监听器 */
+    private AvifMetricsListener metricsListener;
     
     /**
      * 创建 AVIF 图片读取器
@@ -38,109 +59,514 @@ public class AvifImageReader extends ImageReader {
     @Override
     public void setInput(Object input, boolean seekForwardOnly, boolean ignoreMetadata) {
         super.setInput(input, seekForwardOnly, ignoreMetadata);
-        avifData = null;
+        closeSession();
+    }
+    
+    @Override
+    public void reset() {
+        setMetricsListener(null);
+        super.reset();
+    }
+    
+    @Override
+    public void dispose() {
+        closeSession();
+        setMetricsListener(null);
+        super.dispose();
+    }
+    
+    /**
+     * 设置只监听此读取器的指标监听器
+     * 
+     * <p>每次 {@link #read} 完成后回调一次，全局监听器（{@link Avif#addMetricsListener}）同样会收到。
+     * 解析阶段只在第一次读取时发生，之后读取同一输入的其他帧不再计入解析耗时。
+     * {@link #reset()} 和 {@link #dispose()} 会移除监听器。</p>
+     * 
+     * @param listener 监听器（null 表示移除）
+     */
+    public void setMetricsListener(AvifMetricsListener listener) {
+        if (metricsListener == null && listener != null) {
+            AvifMetricsRegistry.retain();
+        } else if (metricsListener != null && listener == null) {
+            AvifMetricsRegistry.release();
+        }
+        metricsListener = listener;
+    }
+    
+    /**
+     * 获取此读取器的指标监听器
+     * 
+     * @return 监听器，未设置时返回 null
+     */
+    public AvifMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+    
+    /**
+     * 关闭当前解码会话并清空头信息
+     */
+    private void closeSession() {
+        if (session != null) {
+            session.close();
+            session = null;
+        }
         imageInfo = null;
+        sessionSettings = null;
+        mappedInput = null;
+        inputPrepared = false;
+        container = null;
         headerRead = false;
     }
     
+    /**
+     * 将读取参数中的解码设置应用到当前会话
+     * 
+     * <p>设置与上次相同时不做任何操作；否则用新的选项重新解析已读入的数据，
+     * 不会重新读取输入流。</p>
+     */
+    private void applyDecoderSettings(ImageReadParam param) throws IOException {
+        AvifReadParam settings = (param instanceof AvifReadParam) ? (AvifReadParam) param : null;
+        boolean same = (settings != null) ? settings.hasSameDecoderSettings(sessionSettings)
+            : (sessionSettings == null || sessionSettings.hasSameDecoderSettings(null));
+        if (same) {
+            return;
+        }
+        if (settings == null) {
+            session.reconfigure(null);
+            sessionSettings = null;
+        } else {
+            AvifDecoderOptions options;
+            try {
+                options = settings.createDecoderOptions();
+            } catch (IllegalArgumentException e) {
+                throw new IIOException(e.getMessage(), e);
+            }
+            try {
+                session.reconfigure(options);
+            } finally {
+                options.close();
+            }
+            sessionSettings = settings.copyDecoderSettings();
+        }
+        imageInfo = session.getInfo();
+    }
+    
     /**
      * 读取 AVIF 头信息（懒加载）
+     * 
+     * <p>打开一个解码会话，之后的尺寸查询、帧解码和元数据读取都复用该会话的解析结果。
+     * File/Path 输入以只读方式映射到内存，由原生解码器直接读取映射区域；
+     * ImageInputStream 输入由原生解码器按需定位读取。两者都不在堆上分配文件大小的数组。</p>
      */
     private void readHeader() throws IOException {
         if (headerRead) return;
         
+        prepareInput();
+        if (mappedInput != null) {
+            session = Avif.openSession(mappedInput, null);
+        } else {
+            // 按需读取：尺寸和帧数只需要读取容器头部，帧数据在解码时才读取
+            ImageInputStream stream = (ImageInputStream) getInput();
+            stream.seek(streamBase);
+            session = Avif.openSession(stream, null);
+        }
+        imageInfo = session.getInfo();
+        headerRead = true;
+    }
+    
+    /**
+     * 映射 File/Path 输入或记录流输入的起点，原生会话和纯 Java 的容器解析共用
+     */
+    private void prepareInput() throws IOException {
+        if (inputPrepared) return;
+        
         Object input = getInput();
         if (input == null) {
             throw new IllegalStateException("Input not set");
         }
-        
-        if (!(input instanceof ImageInputStream)) {
-            throw new IIOException("Input must be an ImageInputStream");
+        if (input instanceof File || input instanceof Path) {
+            Path path = (input instanceof File) ? ((File) input).toPath() : (Path) input;
+            mappedInput = mapFile(path);
+        } else if (input instanceof ImageInputStream) {
+            streamBase = ((ImageInputStream) input).getStreamPosition();
+        } else {
+            throw new IIOException("Input must be an ImageInputStream, File or Path");
         }
-        
-        ImageInputStream stream = (ImageInputStream) input;
-        avifData = readAllBytes(stream);
-        imageInfo = Avif.getInfo(avifData, 0, avifData.length);
-        headerRead = true;
+        inputPrepared = true;
     }
     
     /**
-     * 从流中读取所有字节
+     * 获取头信息
+     * 
+     * <p>尚未打开解码会话时由纯 Java 的容器解析得到，只读取容器头部的 box，不需要原生库；
+     * 文件头缺少所需信息或无法解析时才打开原生会话。</p>
      */
-    private byte[] readAllBytes(ImageInputStream stream) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        byte[] buffer = new byte[8192];
-        int read;
-        while ((read = stream.read(buffer)) != -1) {
-            baos.write(buffer, 0, read);
+    private ImageInfo headerInfo() throws IOException {
+        if (!headerRead) {
+            ImageInfo probed = null;
+            try {
+                probed = container().imageInfo();
+            } catch (IOException e) {
+                // 交给 libavif 解析，由其报告错误或按非严格模式处理
+            }
+            if (probed != null) {
+                return probed;
+            }
+            readHeader();
+        }
+        return imageInfo;
+    }
+    
+    /**
+     * 以只读方式将文件映射到内存
+     * 
+     * <p>映射在通道关闭后依然有效，由会话持有映射缓冲区直到会话关闭。</p>
+     */
+    private static MappedByteBuffer mapFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IIOException("File too large to map: " + size + " bytes");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
         }
-        return baos.toByteArray();
     }
     
     @Override
     public int getWidth(int imageIndex) throws IOException {
         checkIndex(imageIndex);
-        readHeader();
-        return imageInfo.width();
+        return headerInfo().width();
     }
     
     @Override
     public int getHeight(int imageIndex) throws IOException {
         checkIndex(imageIndex);
-        readHeader();
-        return imageInfo.height();
+        return headerInfo().height();
     }
     
     @Override
     public int getNumImages(boolean allowSearch) throws IOException {
-        readHeader();
-        return imageInfo.frameCount();
+        return headerInfo().frameCount();
     }
     
     @Override
     public BufferedImage read(int imageIndex, ImageReadParam param) throws IOException {
+        AvifMetricsRegistry.Recording recording =
+            AvifMetricsRegistry.start(AvifMetrics.Operation.DECODE, metricsListener);
+        if (recording == null) {
+            return readImage(imageIndex, param);
+        }
+        try {
+            BufferedImage image = readImage(imageIndex, param);
+            AvifMetricsRegistry.finish(recording, image.getWidth(), image.getHeight(),
+                inputBytes(), AvifMetricsRegistry.imageBytes(image), null);
+            return image;
+        } catch (IOException | RuntimeException | Error e) {
+            AvifMetricsRegistry.finish(recording, 0, 0, inputBytes(), 0, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 输入的字节数，未知时返回 -1
+     */
+    private long inputBytes() {
+        if (mappedInput != null) {
+            return mappedInput.capacity();
+        }
+        if (headerRead && getInput() instanceof ImageInputStream) {
+            try {
+                long length = ((ImageInputStream) getInput()).length();
+                return (length >= 0) ? length - streamBase : -1;
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+    
+    private BufferedImage readImage(int imageIndex, ImageReadParam param) throws IOException {
         checkIndex(imageIndex);
         readHeader();
+        applyDecoderSettings(param);
+        
+        int width = imageInfo.width();
+        int height = imageInfo.height();
+        Dimension scaledSize = scaledSize(param);
+        if (scaledSize != null) {
+            // 按最大边长缩小：目标图片按缩小后的尺寸分配，缩放在原生层的 YUV 阶段完成
+            width = scaledSize.width;
+            height = scaledSize.height;
+        }
+        BufferedImage destination;
+        if (param instanceof AvifReadParam && ((AvifReadParam) param).isHighBitDepth()
+                && imageInfo.bitDepth() > 8
+                && param.getDestination() == null && param.getDestinationType() == null) {
+            // 未指定目标时保留 10/12 位源图的完整精度，尺寸与 getDestination 的计算方式一致
+            Rectangle srcRegion = new Rectangle();
+            Rectangle destRegion = new Rectangle();
+            computeRegions(param, width, height, null, srcRegion, destRegion);
+            destination = RasterLayout.ushortType(imageInfo.hasAlpha()).createBufferedImage(
+                destRegion.x + destRegion.width, destRegion.y + destRegion.height);
+        } else {
+            // 按 ImageReadParam 的目标图片或目标类型分配图片（默认为 getImageTypes 的第一项），
+            // 原生层按其内存布局选择对应的 RGB 格式直接写入，无需中间图片
+            destination = getDestination(param, getImageTypes(imageIndex), width, height);
+        }
+        
+        if (scaledSize != null) {
+            session.decodeScaled(imageIndex, destination);
+            return destination;
+        }
+        if (!hasRegionSettings(param)
+                && destination.getWidth() == width && destination.getHeight() == height) {
+            // 会话检测升序访问：读取下一帧时只前进一帧，不会从关键帧重新解码
+            session.decodeInto(imageIndex, destination);
+            return destination;
+        }
         
-        try (AvifDecoderOptions options = new AvifDecoderOptions()) {
-            DecodeResult result;
-            if (imageInfo.frameCount() > 1) {
-                result = Avif.decodeFrame(avifData, 0, avifData.length, imageIndex, options);
+        // 源区域、下采样和目标偏移由原生层在 YUV 到 RGB 的转换中处理，只转换需要的像素
+        Rectangle srcRegion = new Rectangle();
+        Rectangle destRegion = new Rectangle();
+        computeDecodeRegions(param, width, height, destination, srcRegion, destRegion);
+        if (destRegion.isEmpty()) {
+            return destination;
+        }
+        session.decodeRegion(imageIndex, srcRegion,
+            param.getSourceXSubsampling(), param.getSourceYSubsampling(),
+            destination, destRegion.x, destRegion.y);
+        return destination;
+    }
+    
+    /**
+     * 计算原生层解码的源区域和目标区域
+     * 
+     * <p>源区域按下采样后的尺寸与目标区域一致：输出像素 (x, y) 写入
+     * (destRegion.x + x, destRegion.y + y)，取自源图 (srcRegion.x + x * xSub, srcRegion.y + y * ySub)。</p>
+     */
+    static void computeDecodeRegions(ImageReadParam param, int width, int height,
+                                     BufferedImage destination,
+                                     Rectangle srcRegion, Rectangle destRegion) {
+        computeRegions(param, width, height, destination, srcRegion, destRegion);
+        if (destRegion.isEmpty()) {
+            return;
+        }
+        // computeRegions 裁剪目标区域后源区域可能多出不会被采样的行列，按目标尺寸收紧
+        int xSub = param.getSourceXSubsampling();
+        int ySub = param.getSourceYSubsampling();
+        srcRegion.width = Math.min(srcRegion.width, (destRegion.width - 1) * xSub + 1);
+        srcRegion.height = Math.min(srcRegion.height, (destRegion.height - 1) * ySub + 1);
+    }
+    
+    /**
+     * 按 {@link AvifReadParam#getMaxDimension()} 计算缩小后的尺寸
+     * 
+     * @return 缩小后的尺寸，不需要缩小或读取参数指定了区域、目标图片时返回 null
+     */
+    private Dimension scaledSize(ImageReadParam param) {
+        if (!(param instanceof AvifReadParam) || hasRegionSettings(param)
+                || param.getDestination() != null) {
+            return null;
+        }
+        int maxDimension = ((AvifReadParam) param).getMaxDimension();
+        int width = imageInfo.width();
+        int height = imageInfo.height();
+        if (maxDimension <= 0 || (width <= maxDimension && height <= maxDimension)) {
+            return null;
+        }
+        double scale = (double) maxDimension / Math.max(width, height);
+        return new Dimension(Math.max(1, (int) Math.round(width * scale)),
+            Math.max(1, (int) Math.round(height * scale)));
+    }
+    
+    /**
+     * 检查读取参数是否指定了源区域、下采样或目标偏移
+     */
+    private static boolean hasRegionSettings(ImageReadParam param) {
+        if (param == null) {
+            return false;
+        }
+        Point offset = param.getDestinationOffset();
+        return param.getSourceRegion() != null
+            || param.getSourceXSubsampling() != 1 || param.getSourceYSubsampling() != 1
+            || param.getSubsamplingXOffset() != 0 || param.getSubsamplingYOffset() != 0
+            || offset.x != 0 || offset.y != 0;
+    }
+    
+    @Override
+    public boolean readerSupportsThumbnails() {
+        return true;
+    }
+    
+    /**
+     * 获取缩略图数量
+     * 
+     * <p>缩略图是容器中通过 'thmb' 引用指向主图片的独立图片项，只属于第一张图片。</p>
+     */
+    @Override
+    public int getNumThumbnails(int imageIndex) throws IOException {
+        checkIndex(imageIndex);
+        if (imageIndex != 0) {
+            return 0;
+        }
+        return container().thumbnailItemIds.size();
+    }
+    
+    @Override
+    public int getThumbnailWidth(int imageIndex, int thumbnailIndex) throws IOException {
+        try (ThumbnailSession thumbnail = openThumbnail(imageIndex, thumbnailIndex)) {
+            return thumbnail.session.getInfo().width();
+        }
+    }
+    
+    @Override
+    public int getThumbnailHeight(int imageIndex, int thumbnailIndex) throws IOException {
+        try (ThumbnailSession thumbnail = openThumbnail(imageIndex, thumbnailIndex)) {
+            return thumbnail.session.getInfo().height();
+        }
+    }
+    
+    /**
+     * 读取内嵌的缩略图
+     * 
+     * <p>只解码缩略图项自身的数据，不解码主图片。</p>
+     */
+    @Override
+    public BufferedImage readThumbnail(int imageIndex, int thumbnailIndex) throws IOException {
+        try (ThumbnailSession thumbnail = openThumbnail(imageIndex, thumbnailIndex)) {
+            processThumbnailStarted(imageIndex, thumbnailIndex);
+            BufferedImage image = thumbnail.session.decodeImage(0);
+            processThumbnailComplete();
+            return image;
+        }
+    }
+    
+    /**
+     * 获取容器结构（懒加载）
+     */
+    private AvifContainer container() throws IOException {
+        prepareInput();
+        if (container == null) {
+            if (mappedInput != null) {
+                container = AvifContainer.parse(mappedInput.duplicate());
             } else {
-                result = Avif.decode(avifData, 0, avifData.length, options);
+                ImageInputStream stream = (ImageInputStream) getInput();
+                stream.seek(streamBase);
+                container = AvifContainer.parse(stream);
             }
-            
-            int imageType = result.hasAlpha() ? 
-                BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
-            BufferedImage image = new BufferedImage(result.width(), result.height(), imageType);
-            image.setRGB(0, 0, result.width(), result.height(), result.pixels(), 0, result.width());
-            
-            // 应用 ICC 色彩配置（可选）
-            if (result.iccProfile() != null && result.iccProfile().length > 0) {
-                try {
-                    ICC_Profile profile = ICC_Profile.getInstance(result.iccProfile());
-                    // 可以在这里进行色彩空间转换
-                } catch (Exception e) {
-                    // 忽略无效的 ICC 配置
-                }
+        }
+        return container;
+    }
+    
+    /**
+     * 打开缩略图解码会话
+     * 
+     * <p>libavif 只解码主图片项，因此读取时将 pitm 改写为缩略图项的 ID（只覆盖读取结果，不修改输入），
+     * 并要求解码器只使用图片项而不是图片序列的轨道。</p>
+     */
+    private ThumbnailSession openThumbnail(int imageIndex, int thumbnailIndex) throws IOException {
+        int count = getNumThumbnails(imageIndex);
+        if (thumbnailIndex < 0 || thumbnailIndex >= count) {
+            throw new IndexOutOfBoundsException(
+                "Thumbnail index " + thumbnailIndex + " out of range [0, " + count + ")");
+        }
+        byte[] patch = container.primaryItemPatch(container.thumbnailItemIds.get(thumbnailIndex));
+        
+        Object input = getInput();
+        ImageInputStream stream;
+        ImageInputStream ownedStream = null;
+        if (input instanceof ImageInputStream) {
+            stream = (ImageInputStream) input;
+            stream.seek(streamBase);
+        } else {
+            File file = (input instanceof File) ? (File) input : ((Path) input).toFile();
+            ownedStream = new FileImageInputStream(file);
+            stream = ownedStream;
+        }
+        
+        AvifDecoderOptions options = null;
+        try {
+            options = (sessionSettings != null) ? sessionSettings.createDecoderOptions()
+                : new AvifDecoderOptions();
+            options.setPrimaryItemOnly(true);
+            AvifStreamSource source = new AvifStreamSource(stream,
+                container.primaryItemIdOffset, patch);
+            return new ThumbnailSession(new AvifDecoderSession(source, options), ownedStream);
+        } catch (IOException | RuntimeException e) {
+            if (ownedStream != null) {
+                ownedStream.close();
+            }
+            throw e;
+        } finally {
+            if (options != null) {
+                options.close();
             }
-            
-            return image;
         }
     }
     
+    /**
+     * 缩略图解码会话及其自行打开的文件流
+     */
+    private static final class ThumbnailSession implements AutoCloseable {
+        
+        final AvifDecoderSession session;
+        private final ImageInputStream ownedStream;
+        
+        ThumbnailSession(AvifDecoderSession session, ImageInputStream ownedStream) {
+            this.session = session;
+            this.ownedStream = ownedStream;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            session.close();
+            if (ownedStream != null) {
+                ownedStream.close();
+            }
+        }
+    }
+    
+    @Override
+    public ImageReadParam getDefaultReadParam() {
+        return new AvifReadParam();
+    }
+    
+    @Override
+    public boolean canReadRaster() {
+        return true;
+    }
+    
+    @Override
+    public Raster readRaster(int imageIndex, ImageReadParam param) throws IOException {
+        // 返回的图片与其 Raster 共享同一个数组，取出 Raster 不产生拷贝
+        return read(imageIndex, param).getRaster();
+    }
+    
     @Override
     public Iterator<ImageTypeSpecifier> getImageTypes(int imageIndex) throws IOException {
         checkIndex(imageIndex);
         readHeader();
         
+        // 以下类型均由原生层直接写入，第一项为默认目标类型
         List<ImageTypeSpecifier> types = new ArrayList<ImageTypeSpecifier>();
         if (imageInfo.hasAlpha()) {
             types.add(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_ARGB));
             types.add(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_4BYTE_ABGR));
+            types.add(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_ARGB_PRE));
+            types.add(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_4BYTE_ABGR_PRE));
         } else {
             types.add(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB));
             types.add(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_3BYTE_BGR));
+            types.add(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_BGR));
+            // 不透明图片同样可以解码到带 Alpha 的类型（Alpha 填充为 255，预乘结果与未预乘相同）
+            types.add(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_ARGB));
+            types.add(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_4BYTE_ABGR));
+            types.add(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_ARGB_PRE));
+            types.add(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_4BYTE_ABGR_PRE));
+        }
+        if (imageInfo.bitDepth() > 8) {
+            // 10/12 位图片可解码为 16 位每通道，保留完整精度
+            types.add(RasterLayout.ushortType(imageInfo.hasAlpha()));
         }
         return types.iterator();
     }
@@ -155,9 +581,10 @@ public class AvifImageReader extends ImageReader {
         checkIndex(imageIndex);
         readHeader();
         
-        // 返回包含 EXIF 和 ICC 信息的元数据
-        if (imageInfo.hasExif() || imageInfo.hasIccProfile()) {
-            return new AvifMetadata(avifData);
+        // 返回包含 EXIF、ICC 和 XMP 信息的元数据，复用会话的解析结果
+        AvifMetadata metadata = new AvifMetadata(session);
+        if (imageInfo.hasExif() || imageInfo.hasIccProfile() || metadata.getXmpData() != null) {
+            return metadata;
         }
         return null;
     }
@@ -166,10 +593,10 @@ public class AvifImageReader extends ImageReader {
      * 检查图像索引是否有效
      */
     private void checkIndex(int imageIndex) throws IOException {
-        readHeader();
-        if (imageIndex < 0 || imageIndex >= imageInfo.frameCount()) {
+        int frameCount = headerInfo().frameCount();
+        if (imageIndex < 0 || imageIndex >= frameCount) {
             throw new IndexOutOfBoundsException(
-                "Image index " + imageIndex + " out of range [0, " + imageInfo.frameCount() + ")");
+                "Image index " + imageIndex + " out of range [0, " + frameCount + ")");
         }
     }
 }
@@ -2,8 +2,15 @@ package com.github.avifimageio;
 
 import javax.imageio.spi.ImageReaderSpi;
 import javax.imageio.stream.ImageInputStream;
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Locale;
 
 /**
@@ -13,12 +20,13 @@ import java.util.Locale;
  */
 public class AvifImageReaderSpi extends ImageReaderSpi {
     
-    private static final byte[] FTYP = {0x66, 0x74, 0x79, 0x70};  // "ftyp"
-    private static final byte[] AVIF = {0x61, 0x76, 0x69, 0x66};  // "avif"
-    private static final byte[] AVIS = {0x61, 0x76, 0x69, 0x73};  // "avis"
+    /** ftyp box 的最大长度，更长的视为不是 AVIF 文件 */
+    private static final int MAX_FTYP_LENGTH = 1024;
     
     /**
      * 创建 AVIF ImageReader SPI
+     * 
+     * <p>除 ImageInputStream 外还接受 File 和 Path 输入，文件输入由读取器以内存映射方式解码。</p>
      */
     public AvifImageReaderSpi() {
         super(
@@ -28,7 +36,7 @@ public class AvifImageReaderSpi extends ImageReaderSpi {
             new String[]{"avif"},                        // suffixes
             new String[]{"image/avif"},                  // MIMETypes
             AvifImageReader.class.getName(),             // readerClassName
-            new Class[]{ImageInputStream.class},         // inputTypes
+            new Class[]{ImageInputStream.class, File.class, Path.class}, // inputTypes
             new String[]{AvifImageWriterSpi.class.getName()}, // writerSpiNames
             false,                                       // supportsStandardStreamMetadataFormat
             null,                                        // nativeStreamMetadataFormatName
@@ -45,6 +53,12 @@ public class AvifImageReaderSpi extends ImageReaderSpi {
     
     @Override
     public boolean canDecodeInput(Object source) throws IOException {
+        if (source instanceof File) {
+            return canDecodeFile(((File) source).toPath());
+        }
+        if (source instanceof Path) {
+            return canDecodeFile((Path) source);
+        }
         if (!(source instanceof ImageInputStream)) {
             return false;
         }
@@ -53,31 +67,45 @@ public class AvifImageReaderSpi extends ImageReaderSpi {
         stream.mark();
         
         try {
-            // 跳过 box size (4 bytes)
-            stream.skipBytes(4);
-            
-            // 读取 box type，应为 "ftyp"
-            byte[] ftyp = new byte[4];
-            if (stream.read(ftyp) != 4) {
-                return false;
-            }
-            
-            if (!Arrays.equals(ftyp, FTYP)) {
-                return false;
-            }
-            
-            // 读取 major brand，应为 "avif" 或 "avis"
-            byte[] brand = new byte[4];
-            if (stream.read(brand) != 4) {
-                return false;
-            }
-            
-            return Arrays.equals(brand, AVIF) || Arrays.equals(brand, AVIS);
+            return isAvifFileType(stream);
         } finally {
             stream.reset();
         }
     }
     
+    /**
+     * 读取文件头判断是否为 AVIF 文件
+     */
+    private static boolean canDecodeFile(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), MAX_FTYP_LENGTH))) {
+            return isAvifFileType(in);
+        }
+    }
+    
+    /**
+     * 检查文件头：第一个 box 应为 ftyp，主品牌或兼容品牌中应有 "avif" 或 "avis"
+     * 
+     * <p>主品牌为 mif1/msf1 等通用品牌、只在兼容品牌中声明 avif 的文件同样可以解码。
+     * 只读取 ftyp box 本身。</p>
+     */
+    private static boolean isAvifFileType(DataInput in) throws IOException {
+        try {
+            long size = in.readInt() & 0xFFFFFFFFL;
+            if (in.readInt() != AvifContainer.fourcc("ftyp") || size < 12 || size > MAX_FTYP_LENGTH) {
+                return false;
+            }
+            byte[] payload = new byte[(int) size - 8];
+            in.readFully(payload);
+            return AvifContainer.isAvifFileType(ByteBuffer.wrap(payload));
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+    
     @Override
     public AvifImageReader createReaderInstance(Object extension) {
         return new AvifImageReader(this);
@@ -1,5 +1,6 @@
 package com.github.avifimageio;
 
+import javax.imageio.IIOException;
 import javax.imageio.IIOImage;
 import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.ImageWriteParam;
@@ -8,19 +9,40 @@ import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.spi.ImageWriterSpi;
 import javax.imageio.stream.ImageOutputStream;
 import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.io.IOException;
 
 /**
  * AVIF 图片写入器
  * 
  * <p>实现 ImageIO ImageWriter 接口，支持将图片编码为 AVIF 格式。</p>
+ * 
+ * <p>{@link IIOImage} 中的图片元数据可以是 {@link AvifMetadata}，也可以是 JDK JPEG/PNG 读取器返回的元数据，
+ * 其中的 EXIF、ICC 色彩配置和 XMP 随图片一起编码（动画序列不写入元数据）。
+ * EXIF 中的方向同时写为 irot/imir 属性。</p>
  */
 public class AvifImageWriter extends ImageWriter {
 
     private ImageOutputStream output;
     private boolean written = false;
+    /** 正在写入的动画序列（prepareWriteSequence 之后、endWriteSequence 之前） */
+    private AvifEncoderSession sequence;
+    private boolean sequencePrepared = false;
+    /** 只监听此写入器的指标监听器 */
+    private AvifMetricsListener metricsListener;
     
     /**
      * 创建 AVIF 图片写入器
@@ -33,6 +55,7 @@ public class AvifImageWriter extends ImageWriter {
     
     @Override
     public void setOutput(Object output) {
+        closeSequence();
         super.setOutput(output);
         if (output instanceof ImageOutputStream) {
             this.output = (ImageOutputStream) output;
@@ -49,11 +72,53 @@ public class AvifImageWriter extends ImageWriter {
         if (output == null) {
             throw new IllegalStateException("Output not set");
         }
+        if (sequence != null) {
+            throw new IllegalStateException("A sequence is being written, use writeToSequence");
+        }
         if (written) {
             throw new IllegalStateException("Only one image can be written per writer instance");
         }
+        checkParam(param);
+
+        clearAbortRequest();
+        processImageStarted(0);
+
+        BufferedImage bufferedImage = toBufferedImage(image);
+        AvifMetadata metadata = AvifMetadataConverter.convert(image.getMetadata(), bufferedImage);
+        
+        try (AvifEncoderOptions options = createOptions(param)) {
+            if (abortRequested()) {
+                processWriteAborted();
+                return;
+            }
+
+            AvifMetricsRegistry.Recording recording =
+                AvifMetricsRegistry.start(AvifMetrics.Operation.ENCODE, metricsListener);
+            long inputBytes = (recording != null) ? AvifMetricsRegistry.imageBytes(bufferedImage) : 0;
+            try {
+                byte[] encoded = encodeImage(bufferedImage, options, metadata);
+                output.write(encoded);
+                AvifMetricsRegistry.finish(recording, bufferedImage.getWidth(),
+                    bufferedImage.getHeight(), inputBytes, encoded.length, null);
+            } catch (IOException | RuntimeException | Error e) {
+                AvifMetricsRegistry.finish(recording, bufferedImage.getWidth(),
+                    bufferedImage.getHeight(), inputBytes, 0, e);
+                throw e;
+            }
+            written = true;
 
-        // 检查不支持的参数
+            if (abortRequested()) {
+                processWriteAborted();
+            } else {
+                processImageComplete();
+            }
+        }
+    }
+    
+    /**
+     * 检查不支持的参数
+     */
+    private void checkParam(ImageWriteParam param) throws IOException {
         if (param != null) {
             if (param.getSourceRegion() != null) {
                 throw new IOException("sourceRegion is not supported, please crop the image before writing");
@@ -65,21 +130,23 @@ public class AvifImageWriter extends ImageWriter {
                 throw new IOException("sourceBands is not supported");
             }
         }
-
-        clearAbortRequest();
-        processImageStarted(0);
-
-        RenderedImage renderedImage = image.getRenderedImage();
-        BufferedImage bufferedImage = toBufferedImage(renderedImage);
-
-        int width = bufferedImage.getWidth();
-        int height = bufferedImage.getHeight();
-        
+    }
+    
+    /**
+     * 根据写入参数创建编码选项（调用方负责关闭）
+     */
+    private AvifEncoderOptions createOptions(ImageWriteParam param) {
         // 获取编码参数
         int quality = AvifEncoderOptions.DEFAULT_QUALITY;
         int speed = AvifEncoderOptions.DEFAULT_SPEED;
         int bitDepth = AvifEncoderOptions.DEFAULT_BIT_DEPTH;
         boolean lossless = false;
+        int maxThreads = AvifEncoderOptions.DEFAULT_MAX_THREADS;
+        int tileRowsLog2 = 0;
+        int tileColsLog2 = 0;
+        boolean autoTiling = false;
+        int pixelFormat = AvifEncoderOptions.DEFAULT_PIXEL_FORMAT;
+        int keyframeInterval = 0;
         
         if (param instanceof AvifWriteParam) {
             AvifWriteParam avifParam = (AvifWriteParam) param;
@@ -87,94 +154,112 @@ public class AvifImageWriter extends ImageWriter {
             speed = avifParam.getSpeed();
             bitDepth = avifParam.getBitDepth();
             lossless = avifParam.isLossless();
+            maxThreads = avifParam.getMaxThreads();
+            tileRowsLog2 = avifParam.getTileRowsLog2();
+            tileColsLog2 = avifParam.getTileColsLog2();
+            autoTiling = avifParam.isAutoTiling();
+            pixelFormat = avifParam.getPixelFormat();
+            keyframeInterval = avifParam.getKeyframeInterval();
         } else if (param != null && param.getCompressionMode() == ImageWriteParam.MODE_EXPLICIT) {
             quality = (int) (param.getCompressionQuality() * 100);
         }
         
-        try (AvifEncoderOptions options = new AvifEncoderOptions()) {
-            options.setQuality(quality);
-            options.setSpeed(speed);
-            options.setBitDepth(bitDepth);
-            options.setLossless(lossless);
-            
-            if (abortRequested()) {
-                processWriteAborted();
-                return;
-            }
-
-            byte[] encoded;
-            boolean hasAlpha = bufferedImage.getColorModel().hasAlpha();
-
-            if (hasAlpha) {
-                int[] pixels = bufferedImage.getRGB(0, 0, width, height, null, 0, width);
-
-                // 检测 alpha 是否全为 255（完全不透明），跳过冗余的 alpha 通道编码
-                boolean opaqueAlpha = true;
-                for (int i = 0; i < pixels.length; i++) {
-                    if ((pixels[i] >>> 24) != 0xFF) {
-                        opaqueAlpha = false;
-                        break;
-                    }
-                }
-
-                if (opaqueAlpha) {
-                    byte[] rgb = packRGB(pixels);
-                    encoded = Avif.encodeRGB(rgb, width, height, width * 3, options);
-                } else {
-                    byte[] rgba = packRGBA(pixels);
-                    encoded = Avif.encodeRGBA(rgba, width, height, width * 4, options);
-                }
-            } else {
-                byte[] rgb = extractRGB(bufferedImage);
-                encoded = Avif.encodeRGB(rgb, width, height, width * 3, options);
-            }
-            
-            output.write(encoded);
-            written = true;
-
-            if (abortRequested()) {
-                processWriteAborted();
-            } else {
-                processImageComplete();
-            }
-        }
+        AvifEncoderOptions options = new AvifEncoderOptions();
+        options.setQuality(quality);
+        options.setSpeed(speed);
+        options.setBitDepth(bitDepth);
+        options.setLossless(lossless);
+        options.setMaxThreads(maxThreads);
+        options.setTileRowsLog2(tileRowsLog2);
+        options.setTileColsLog2(tileColsLog2);
+        options.setAutoTiling(autoTiling);
+        // 无损时原生层强制使用 4:4:4
+        options.setPixelFormat(lossless ? AvifEncoderOptions.PIXEL_FORMAT_YUV444 : pixelFormat);
+        options.setKeyframeInterval(keyframeInterval);
+        return options;
     }
     
     /**
-     * 从 BufferedImage 提取 RGB 字节数组
+     * 编码 BufferedImage（由 {@link #write}、{@link AvifBatch} 和 {@link AvifTranscoder} 调用）
      *
-     * <p>使用 getRGB() 保证统一的 ARGB 格式，避免不同 BufferedImage 类型的像素顺序问题。</p>
+     * <p>常见布局（int 打包、字节/16 位交错、灰度）直接交给原生层读取底层数组，
+     * 其他类型先转换为 sRGB 的 ARGB 像素。使用其他 ICC 色彩空间（如 Adobe RGB、线性 RGB）的图片
+     * 同样直接读取，并写入该色彩空间的 ICC 配置（替换 metadata 中的 ICC）。
+     * Alpha 是否全部不透明由原生层检测，不透明时不编码 Alpha 平面。</p>
+     *
+     * @param bufferedImage 要编码的图片
+     * @param options 编码选项（可为 null 使用默认选项）
+     * @param metadata 写入的元数据（可为 null 不写入）
+     * @return AVIF 编码数据
+     * @throws IOException 如果编码失败
      */
-    private byte[] extractRGB(BufferedImage image) {
-        int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
-        return packRGB(pixels);
+    static byte[] encodeImage(BufferedImage bufferedImage, AvifEncoderOptions options,
+                              AvifMetadata metadata) throws IOException {
+        RasterLayout layout = RasterLayout.of(bufferedImage);
+        if (layout == null) {
+            layout = RasterLayout.ofGray(bufferedImage);
+        }
+        if (layout == null) {
+            layout = RasterLayout.ofProfiled(bufferedImage);
+            if (layout != null) {
+                // 样本值仍在图片自身的色彩空间中，必须写入对应的 ICC 配置
+                ICC_ColorSpace colorSpace = (ICC_ColorSpace) bufferedImage.getColorModel().getColorSpace();
+                metadata = AvifMetadata.withIccProfile(metadata, colorSpace.getProfile().getData());
+            }
+        }
+        if (layout == null) {
+            int width = bufferedImage.getWidth();
+            int height = bufferedImage.getHeight();
+            int[] pixels = bufferedImage.getRGB(0, 0, width, height, null, 0, width);
+            layout = RasterLayout.ofArgbPixels(pixels, width, height);
+        }
+        return Avif.encodeLayout(layout, options, metadata);
     }
-
+    
     /**
-     * 将 ARGB int 数组打包为 RGB 字节数组
+     * 将 Raster 包装为共享同一数据的 BufferedImage
+     *
+     * <p>按通道数解释像素：1 通道为灰度，3 通道为 RGB，4 通道为 RGBA；
+     * int 打包的 Raster 按其位掩码解释。</p>
      */
-    private byte[] packRGB(int[] pixels) {
-        byte[] rgb = new byte[pixels.length * 3];
-        for (int i = 0; i < pixels.length; i++) {
-            rgb[i * 3]     = (byte) ((pixels[i] >> 16) & 0xFF); // R
-            rgb[i * 3 + 1] = (byte) ((pixels[i] >> 8) & 0xFF);  // G
-            rgb[i * 3 + 2] = (byte) (pixels[i] & 0xFF);         // B
+    private BufferedImage rasterToImage(Raster raster) throws IOException {
+        // 以 (0, 0) 为原点重新包装同一个 DataBuffer，不复制像素
+        WritableRaster writable = Raster.createWritableRaster(raster.getSampleModel(),
+            raster.getDataBuffer(),
+            new Point(raster.getSampleModelTranslateX(), raster.getSampleModelTranslateY()));
+        writable = writable.createWritableChild(raster.getMinX(), raster.getMinY(),
+            raster.getWidth(), raster.getHeight(), 0, 0, null);
+        
+        SampleModel sm = raster.getSampleModel();
+        int bands = sm.getNumBands();
+        ColorModel cm;
+        if (sm instanceof SinglePixelPackedSampleModel && sm.getDataType() == DataBuffer.TYPE_INT
+                && (bands == 3 || bands == 4)) {
+            int[] masks = ((SinglePixelPackedSampleModel) sm).getBitMasks();
+            cm = new DirectColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), bands == 4 ? 32 : 24,
+                masks[0], masks[1], masks[2], bands == 4 ? masks[3] : 0, false, DataBuffer.TYPE_INT);
+        } else if ((bands == 1 || bands == 3 || bands == 4)
+                && (sm.getDataType() == DataBuffer.TYPE_BYTE || sm.getDataType() == DataBuffer.TYPE_USHORT)) {
+            boolean hasAlpha = bands == 4;
+            ColorSpace cs = ColorSpace.getInstance(bands == 1 ? ColorSpace.CS_GRAY : ColorSpace.CS_sRGB);
+            cm = new ComponentColorModel(cs, hasAlpha, false,
+                hasAlpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE, sm.getDataType());
+        } else {
+            throw new IIOException("Unsupported raster layout: " + bands + " bands, data type "
+                + sm.getDataType());
+        }
+        if (!cm.isCompatibleRaster(writable)) {
+            throw new IIOException("Unsupported raster layout");
         }
-        return rgb;
+        return new BufferedImage(cm, writable, false, null);
     }
-
+    
     /**
-     * 将 ARGB int 数组打包为 RGBA 字节数组
+     * 取出 IIOImage 中的图片（Raster 或 RenderedImage）
      */
-    private byte[] packRGBA(int[] pixels) {
-        byte[] rgba = new byte[pixels.length * 4];
-        for (int i = 0; i < pixels.length; i++) {
-            rgba[i * 4]     = (byte) ((pixels[i] >> 16) & 0xFF); // R
-            rgba[i * 4 + 1] = (byte) ((pixels[i] >> 8) & 0xFF);  // G
-            rgba[i * 4 + 2] = (byte) (pixels[i] & 0xFF);         // B
-            rgba[i * 4 + 3] = (byte) ((pixels[i] >> 24) & 0xFF); // A
-        }
-        return rgba;
+    private BufferedImage toBufferedImage(IIOImage image) throws IOException {
+        return image.hasRaster() ?
+            rasterToImage(image.getRaster()) : toBufferedImage(image.getRenderedImage());
     }
     
     /**
@@ -195,6 +280,139 @@ public class AvifImageWriter extends ImageWriter {
         return buffered;
     }
     
+    @Override
+    public boolean canWriteSequence() {
+        return true;
+    }
+    
+    @Override
+    public void prepareWriteSequence(IIOMetadata streamMetadata) throws IOException {
+        if (output == null) {
+            throw new IllegalStateException("Output not set");
+        }
+        if (sequencePrepared) {
+            throw new IllegalStateException("prepareWriteSequence has already been called");
+        }
+        if (written) {
+            throw new IllegalStateException("Only one image can be written per writer instance");
+        }
+        // 编码器在第一帧时按该帧的写入参数创建
+        sequencePrepared = true;
+    }
+    
+    /**
+     * 向动画序列追加一帧
+     * 
+     * <p>帧在写入时立即编码，不会在内存中累积原始帧。
+     * 帧时长取自 {@link AvifWriteParam#getFrameDurationMillis()}；
+     * 编码质量、速度、关键帧间隔等选项取自第一帧的写入参数。</p>
+     */
+    @Override
+    public void writeToSequence(IIOImage image, ImageWriteParam param) throws IOException {
+        if (!sequencePrepared) {
+            throw new IllegalStateException("prepareWriteSequence has not been called");
+        }
+        checkParam(param);
+        
+        int frameIndex = (sequence != null) ? sequence.getFrameCount() : 0;
+        clearAbortRequest();
+        processImageStarted(frameIndex);
+        
+        if (sequence == null) {
+            try (AvifEncoderOptions options = createOptions(param)) {
+                sequence = Avif.openEncoderSession(options, metricsListener);
+            }
+        }
+        if (abortRequested()) {
+            processWriteAborted();
+            return;
+        }
+        
+        long duration = (param instanceof AvifWriteParam) ?
+            ((AvifWriteParam) param).getFrameDurationMillis() : AvifWriteParam.DEFAULT_FRAME_DURATION_MILLIS;
+        sequence.addFrame(toBufferedImage(image), duration);
+        
+        if (abortRequested()) {
+            processWriteAborted();
+        } else {
+            processImageComplete();
+        }
+    }
+    
+    @Override
+    public void endWriteSequence() throws IOException {
+        if (!sequencePrepared) {
+            throw new IllegalStateException("prepareWriteSequence has not been called");
+        }
+        try {
+            if (sequence != null) {
+                output.write(sequence.finish());
+                written = true;
+            }
+        } finally {
+            closeSequence();
+        }
+    }
+    
+    /**
+     * 关闭未完成的动画序列并释放原生编码器
+     */
+    private void closeSequence() {
+        if (sequence != null) {
+            sequence.close();
+            sequence = null;
+        }
+        sequencePrepared = false;
+    }
+    
+    @Override
+    public void reset() {
+        closeSequence();
+        setMetricsListener(null);
+        super.reset();
+    }
+    
+    @Override
+    public void dispose() {
+        closeSequence();
+        setMetricsListener(null);
+        super.dispose();
+    }
+    
+    /**
+     * 设置只监听此写入器的指标监听器
+     * 
+     * <p>每次 {@link #write} 完成后回调一次（耗时包括写入输出流），动画序列的每次
+     * {@link #writeToSequence} 和 {@link #endWriteSequence} 各回调一次（不包括写入输出流），
+     * 全局监听器（{@link Avif#addMetricsListener}）同样会收到。监听器在序列的第一帧时确定，
+     * 写入序列期间更换监听器只影响下一个序列。
+     * {@link #reset()} 和 {@link #dispose()} 会移除监听器。</p>
+     * 
+     * @param listener 监听器（null 表示移除）
+     */
+    public void setMetricsListener(AvifMetricsListener listener) {
+        if (metricsListener == null && listener != null) {
+            AvifMetricsRegistry.retain();
+        } else if (metricsListener != null && listener == null) {
+            AvifMetricsRegistry.release();
+        }
+        metricsListener = listener;
+    }
+    
+    /**
+     * 获取此写入器的指标监听器
+     * 
+     * @return 监听器，未设置时返回 null
+     */
+    public AvifMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+    
+    @Override
+    public boolean canWriteRasters() {
+        return true;
+    }
+    
     @Override
     public ImageWriteParam getDefaultWriteParam() {
         return new AvifWriteParam(getLocale());
@@ -205,9 +423,12 @@ public class AvifImageWriter extends ImageWriter {
         return null;
     }
     
+    /**
+     * 返回空的可修改 {@link AvifMetadata}，设置 EXIF、ICC 或 XMP 后放入 {@link IIOImage} 写入
+     */
     @Override
     public IIOMetadata getDefaultImageMetadata(ImageTypeSpecifier imageType, ImageWriteParam param) {
-        return null;
+        return new AvifMetadata();
     }
     
     @Override
@@ -215,9 +436,17 @@ public class AvifImageWriter extends ImageWriter {
         return null;
     }
     
+    /**
+     * 将 AVIF、JPEG 或 PNG 元数据转换为 {@link AvifMetadata}
+     * 
+     * @return 转换结果，格式不支持或没有 EXIF、ICC、XMP 时返回 null
+     */
     @Override
     public IIOMetadata convertImageMetadata(IIOMetadata inData, ImageTypeSpecifier imageType, 
                                             ImageWriteParam param) {
-        return null;
+        if (inData == null) {
+            throw new IllegalArgumentException("inData may not be null");
+        }
+        return AvifMetadataConverter.convert(inData);
     }
 }
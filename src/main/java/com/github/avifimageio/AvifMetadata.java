@@ -1,102 +1,358 @@
 package com.github.avifimageio;
 
+import javax.imageio.metadata.IIOInvalidTreeException;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.metadata.IIOMetadataNode;
 import org.w3c.dom.Node;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * AVIF 图片元数据
- * 
- * <p>提供对 AVIF 图片中 EXIF 和 ICC 色彩配置的访问。</p>
+ *
+ * <p>提供对 AVIF 图片中 EXIF、XMP 和 ICC 色彩配置的访问。</p>
+ *
+ * <p>读取器返回的元数据是只读的；通过构造方法或
+ * {@link AvifImageWriter#getDefaultImageMetadata} 创建的元数据可以修改，
+ * 放入 {@link javax.imageio.IIOImage} 后由 {@link AvifImageWriter} 写入编码结果。
+ * 原生格式的树为根节点下的 EXIF、ICC、XMP 节点，数据保存在节点的 userObject（byte[]）中。</p>
  */
 public class AvifMetadata extends IIOMetadata {
-    
-    private static final String NATIVE_FORMAT_NAME = "avif_metadata_1.0";
-    
+
+    /** 原生元数据格式名 */
+    public static final String NATIVE_FORMAT_NAME = "avif_metadata_1.0";
+
     private final byte[] avifData;
-    private byte[] exifData;
-    private byte[] iccProfile;
+    private final boolean readOnly;
+    private Segment exif;
+    private Segment icc;
+    private Segment xmp;
     private boolean loaded = false;
-    
+
     /**
      * 创建 AVIF 元数据
-     * 
+     *
      * @param avifData AVIF 图片数据
      */
     public AvifMetadata(byte[] avifData) {
         super(false, NATIVE_FORMAT_NAME, null, null, null);
         this.avifData = avifData;
+        this.readOnly = true;
     }
-    
+
+    /**
+     * 从已打开的解码会话创建元数据
+     *
+     * <p>元数据在创建时立即读取，之后不再依赖会话，会话可以随后关闭。</p>
+     *
+     * @param session 解码会话
+     */
+    AvifMetadata(AvifDecoderSession session) {
+        super(false, NATIVE_FORMAT_NAME, null, null, null);
+        this.avifData = null;
+        this.readOnly = true;
+        this.exif = Segment.of(session.getExif());
+        this.icc = Segment.of(session.getIccProfile());
+        this.xmp = Segment.of(session.getXmp());
+        this.loaded = true;
+    }
+
+    /**
+     * 创建空的可修改元数据（用于编码时写入）
+     */
+    public AvifMetadata() {
+        this(null, null, null);
+    }
+
     /**
-     * 懒加载元数据
+     * 从已有的元数据创建可修改的元数据（用于编码时写入）
+     *
+     * <p>数组不会被复制，编码完成前不得修改。</p>
+     *
+     * @param exifData EXIF 数据，从 TIFF 头开始（可为 null）
+     * @param iccProfile ICC 色彩配置（可为 null）
+     * @param xmpData XMP 数据（可为 null）
+     */
+    public AvifMetadata(byte[] exifData, byte[] iccProfile, byte[] xmpData) {
+        super(false, NATIVE_FORMAT_NAME, null, null, null);
+        this.avifData = null;
+        this.readOnly = false;
+        this.exif = Segment.of(exifData);
+        this.icc = Segment.of(iccProfile);
+        this.xmp = Segment.of(xmpData);
+        this.loaded = true;
+    }
+
+    /**
+     * 懒加载元数据（一次解析同时读取全部元数据）
      */
     private void loadMetadata() {
         if (loaded) return;
-        try {
-            exifData = Avif.getExif(avifData, 0, avifData.length);
-            iccProfile = Avif.getIccProfile(avifData, 0, avifData.length);
+        try (AvifDecoderSession session = Avif.openSession(avifData, 0, avifData.length, null)) {
+            exif = Segment.of(session.getExif());
+            icc = Segment.of(session.getIccProfile());
+            xmp = Segment.of(session.getXmp());
         } catch (IOException e) {
             // 忽略元数据加载错误
         }
         loaded = true;
     }
-    
+
     /**
      * 获取 EXIF 数据
-     * 
-     * @return EXIF 数据，如果不存在则返回 null
+     *
+     * @return EXIF 数据（只读元数据返回副本），如果不存在则返回 null
      */
     public byte[] getExifData() {
         loadMetadata();
-        return exifData;
+        return Segment.toArray(exif, readOnly);
     }
-    
+
     /**
      * 获取 ICC 色彩配置
-     * 
-     * @return ICC 配置数据，如果不存在则返回 null
+     *
+     * @return ICC 配置数据（只读元数据返回副本），如果不存在则返回 null
      */
     public byte[] getIccProfile() {
         loadMetadata();
-        return iccProfile;
+        return Segment.toArray(icc, readOnly);
+    }
+
+    /**
+     * 获取 XMP 数据
+     *
+     * @return XMP 数据（只读元数据返回副本），如果不存在则返回 null
+     */
+    public byte[] getXmpData() {
+        loadMetadata();
+        return Segment.toArray(xmp, readOnly);
+    }
+
+    /**
+     * 设置写入的 EXIF 数据（数组不会被复制）
+     *
+     * @param exifData EXIF 数据，从 TIFF 头开始（null 表示不写入）
+     * @throws IllegalStateException 如果元数据是只读的
+     */
+    public void setExifData(byte[] exifData) {
+        checkWritable();
+        exif = Segment.of(exifData);
+    }
+
+    /**
+     * 设置写入的 ICC 色彩配置（数组不会被复制）
+     *
+     * @param iccProfile ICC 配置数据（null 表示不写入）
+     * @throws IllegalStateException 如果元数据是只读的
+     */
+    public void setIccProfile(byte[] iccProfile) {
+        checkWritable();
+        icc = Segment.of(iccProfile);
+    }
+
+    /**
+     * 设置写入的 XMP 数据（数组不会被复制）
+     *
+     * @param xmpData XMP 数据（null 表示不写入）
+     * @throws IllegalStateException 如果元数据是只读的
+     */
+    public void setXmpData(byte[] xmpData) {
+        checkWritable();
+        xmp = Segment.of(xmpData);
+    }
+
+    /**
+     * 以数组中的一段设置 EXIF（用于去掉 JPEG APP1 段的 "Exif\0\0" 前缀而不复制）
+     */
+    void setExif(byte[] data, int offset, int length) {
+        exif = Segment.of(data, offset, length);
+    }
+
+    /**
+     * 以数组中的一段设置 XMP（用于去掉 JPEG APP1 段的命名空间前缀而不复制）
+     */
+    void setXmp(byte[] data, int offset, int length) {
+        xmp = Segment.of(data, offset, length);
+    }
+
+    /**
+     * 创建与 base 的 EXIF、XMP 相同但 ICC 替换为 iccProfile 的元数据（不修改 base）
+     *
+     * @param base 原元数据（可为 null）
+     * @param iccProfile ICC 配置
+     */
+    static AvifMetadata withIccProfile(AvifMetadata base, byte[] iccProfile) {
+        AvifMetadata result = new AvifMetadata();
+        if (base != null) {
+            result.exif = base.exifSegment();
+            result.xmp = base.xmpSegment();
+        }
+        result.icc = Segment.of(iccProfile);
+        return result;
     }
-    
+
+    Segment exifSegment() {
+        loadMetadata();
+        return exif;
+    }
+
+    Segment iccSegment() {
+        loadMetadata();
+        return icc;
+    }
+
+    Segment xmpSegment() {
+        loadMetadata();
+        return xmp;
+    }
+
+    /**
+     * @return true 如果 EXIF、ICC 和 XMP 都不存在
+     */
+    boolean isEmpty() {
+        loadMetadata();
+        return exif == null && icc == null && xmp == null;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new IllegalStateException("Metadata is read-only");
+        }
+    }
+
     @Override
-    public boolean isReadOnly() { 
-        return true; 
+    public boolean isReadOnly() {
+        return readOnly;
     }
-    
+
     @Override
     public Node getAsTree(String formatName) {
+        if (!NATIVE_FORMAT_NAME.equals(formatName)) {
+            throw new IllegalArgumentException("Unsupported metadata format: " + formatName);
+        }
         loadMetadata();
         IIOMetadataNode root = new IIOMetadataNode(formatName);
-        
-        if (exifData != null && exifData.length > 0) {
+
+        if (exif != null) {
             IIOMetadataNode exifNode = new IIOMetadataNode("EXIF");
-            exifNode.setUserObject(exifData);
+            exifNode.setUserObject(exif.toArray(readOnly));
             root.appendChild(exifNode);
         }
-        
-        if (iccProfile != null && iccProfile.length > 0) {
+
+        if (icc != null) {
             IIOMetadataNode iccNode = new IIOMetadataNode("ICC");
-            iccNode.setUserObject(iccProfile);
+            iccNode.setUserObject(icc.toArray(readOnly));
             root.appendChild(iccNode);
         }
-        
+
+        if (xmp != null) {
+            IIOMetadataNode xmpNode = new IIOMetadataNode("XMP");
+            xmpNode.setUserObject(xmp.toArray(readOnly));
+            root.appendChild(xmpNode);
+        }
+
         return root;
     }
-    
+
+    /**
+     * 合并原生格式的树：树中出现的 EXIF、ICC、XMP 节点替换现有数据，未出现的保持不变
+     */
     @Override
-    public void mergeTree(String formatName, Node root) {
-        throw new IllegalStateException("Metadata is read-only");
+    public void mergeTree(String formatName, Node root) throws IIOInvalidTreeException {
+        checkWritable();
+        if (!NATIVE_FORMAT_NAME.equals(formatName)) {
+            throw new IllegalArgumentException("Unsupported metadata format: " + formatName);
+        }
+        if (root == null) {
+            throw new IllegalArgumentException("Root may not be null");
+        }
+        if (!formatName.equals(root.getNodeName())) {
+            throw new IIOInvalidTreeException("Root must be " + formatName, root);
+        }
+        for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+            Object value = (child instanceof IIOMetadataNode) ?
+                ((IIOMetadataNode) child).getUserObject() : null;
+            if (!(value instanceof byte[])) {
+                throw new IIOInvalidTreeException("Node userObject must be a byte[]", child);
+            }
+            String name = child.getNodeName();
+            if ("EXIF".equals(name)) {
+                exif = Segment.of((byte[]) value);
+            } else if ("ICC".equals(name)) {
+                icc = Segment.of((byte[]) value);
+            } else if ("XMP".equals(name)) {
+                xmp = Segment.of((byte[]) value);
+            } else {
+                throw new IIOInvalidTreeException("Unknown node: " + name, child);
+            }
+        }
     }
-    
+
     @Override
     public void reset() {
+        if (!readOnly) {
+            exif = null;
+            icc = null;
+            xmp = null;
+            return;
+        }
+        // 从会话创建的元数据没有原始数据可供重新加载，保持现有内容
+        if (avifData == null) return;
         loaded = false;
-        exifData = null;
-        iccProfile = null;
+        exif = null;
+        icc = null;
+        xmp = null;
+    }
+
+    /**
+     * 字节数组中的一段，编码时原生层直接从该段复制到图片的元数据中
+     */
+    static final class Segment {
+
+        final byte[] data;
+        final int offset;
+        final int length;
+
+        private Segment(byte[] data, int offset, int length) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * @return 整个数组对应的段，数组为 null 或空时返回 null
+         */
+        static Segment of(byte[] data) {
+            return (data == null) ? null : of(data, 0, data.length);
+        }
+
+        /**
+         * @return 数组中的一段，长度为 0 时返回 null
+         */
+        static Segment of(byte[] data, int offset, int length) {
+            if (offset < 0 || length < 0 || offset > data.length - length) {
+                throw new IndexOutOfBoundsException("Invalid segment: offset " + offset
+                    + ", length " + length + ", array length " + data.length);
+            }
+            return (length == 0) ? null : new Segment(data, offset, length);
+        }
+
+        /**
+         * 只读元数据总是返回副本，调用方修改返回的数组不会改变读取到的元数据，
+         * 也不会改变之后写入时嵌入的数据
+         *
+         * @param copy true 总是返回副本
+         * @return copy 为 false 且段覆盖整个数组时返回数组本身，否则返回副本
+         */
+        byte[] toArray(boolean copy) {
+            if (!copy && offset == 0 && length == data.length) {
+                return data;
+            }
+            return Arrays.copyOfRange(data, offset, offset + length);
+        }
+
+        static byte[] toArray(Segment segment, boolean copy) {
+            return (segment != null) ? segment.toArray(copy) : null;
+        }
     }
 }
@@ -0,0 +1,301 @@
+package com.github.avifimageio;
+
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 将其他格式的图片元数据转换为 {@link AvifMetadata}
+ *
+ * <p>支持 JDK 的 JPEG 和 PNG 原生元数据树（JPEG 的 APP1/APP2 段、PNG 的 eXIf/iCCP/iTXt 块），
+ * 以及支持 AVIF 原生格式的元数据。JPEG 段中的 EXIF 和 XMP 以数组中的一段引用，不复制。
+ * 标准格式（javax_imageio_1.0）的树中没有 EXIF、ICC 和 XMP 数据，无法转换。</p>
+ */
+final class AvifMetadataConverter {
+
+    private static final String JPEG_FORMAT_NAME = "javax_imageio_jpeg_image_1.0";
+    private static final String PNG_FORMAT_NAME = "javax_imageio_png_1.0";
+
+    private static final byte[] EXIF_HEADER = "Exif\0\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] XMP_HEADER =
+        "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] ICC_HEADER = "ICC_PROFILE\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final int JPEG_APP1 = 0xE1;
+    private static final int JPEG_APP2 = 0xE2;
+    private static final String PNG_XMP_KEYWORD = "XML:com.adobe.xmp";
+
+    private AvifMetadataConverter() {
+    }
+
+    /**
+     * 转换元数据
+     *
+     * @param metadata 源元数据（可为 null）
+     * @return 转换结果，格式不支持或没有 EXIF、ICC、XMP 时返回 null
+     */
+    static AvifMetadata convert(IIOMetadata metadata) {
+        if (metadata == null) {
+            return null;
+        }
+        if (metadata instanceof AvifMetadata) {
+            return ((AvifMetadata) metadata).isEmpty() ? null : (AvifMetadata) metadata;
+        }
+        AvifMetadata result = new AvifMetadata();
+        if (supportsFormat(metadata, AvifMetadata.NATIVE_FORMAT_NAME)) {
+            try {
+                result.mergeTree(AvifMetadata.NATIVE_FORMAT_NAME,
+                    metadata.getAsTree(AvifMetadata.NATIVE_FORMAT_NAME));
+            } catch (IIOInvalidTreeException e) {
+                return null;
+            }
+        } else if (supportsFormat(metadata, JPEG_FORMAT_NAME)) {
+            Node root = metadata.getAsTree(JPEG_FORMAT_NAME);
+            jpegExif(root, result);
+            result.setIccProfile(jpegIcc(root));
+            jpegXmp(root, result);
+        } else if (supportsFormat(metadata, PNG_FORMAT_NAME)) {
+            Node root = metadata.getAsTree(PNG_FORMAT_NAME);
+            result.setExifData(pngExif(root));
+            result.setIccProfile(pngIcc(root));
+            result.setXmpData(pngXmp(root));
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * 转换要与 image 一起编码的元数据
+     *
+     * <p>从其他格式转换来的 ICC 配置不适用于编码的像素时（见 {@link #iccApplies}）被丢弃；
+     * 直接提供的 {@link AvifMetadata} 按原样写入。</p>
+     *
+     * @param metadata 源元数据（可为 null）
+     * @param image 要编码的图片
+     * @return 转换结果，没有可写入的元数据时返回 null
+     */
+    static AvifMetadata convert(IIOMetadata metadata, BufferedImage image) {
+        AvifMetadata result = convert(metadata);
+        if (result == null || result == metadata) {
+            return result;
+        }
+        byte[] icc = result.getIccProfile();
+        if (icc != null && !iccApplies(icc, image)) {
+            result.setIccProfile(null);
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * 检查 ICC 配置是否适用于编码的像素
+     *
+     * <p>读取器没有应用源 ICC 配置（图片标记为 sRGB 或标准灰度）时，像素仍处于源色彩空间，
+     * ICC 配置有效；图片使用其他 ICC 色彩空间时编码器写入图片自身的配置，
+     * 其他图片经过 getRGB() 转换为 sRGB，再写入源 ICC 会重复应用色彩配置。
+     * 配置的色彩空间还必须与编码的通道一致（灰度图片编码为 4:0:0）。</p>
+     */
+    static boolean iccApplies(byte[] icc, BufferedImage image) {
+        if (icc.length < 20) {
+            return false;
+        }
+        boolean gray = RasterLayout.ofGray(image) != null;
+        boolean raw = gray || image.getColorModel().getColorSpace().isCS_sRGB();
+        String space = new String(icc, 16, 4, StandardCharsets.ISO_8859_1);
+        return raw && space.equals(gray ? "GRAY" : "RGB ");
+    }
+
+    /**
+     * 读取 JPEG APP1 段中的 EXIF（去掉 "Exif\0\0" 前缀）
+     */
+    private static void jpegExif(Node root, AvifMetadata result) {
+        for (Node marker : jpegMarkers(root, JPEG_APP1)) {
+            byte[] data = (byte[]) ((IIOMetadataNode) marker).getUserObject();
+            if (startsWith(data, EXIF_HEADER)) {
+                result.setExif(data, EXIF_HEADER.length, data.length - EXIF_HEADER.length);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 读取 JPEG APP1 段中的 XMP（去掉命名空间前缀，不支持扩展 XMP）
+     */
+    private static void jpegXmp(Node root, AvifMetadata result) {
+        for (Node marker : jpegMarkers(root, JPEG_APP1)) {
+            byte[] data = (byte[]) ((IIOMetadataNode) marker).getUserObject();
+            if (startsWith(data, XMP_HEADER)) {
+                result.setXmp(data, XMP_HEADER.length, data.length - XMP_HEADER.length);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 读取 JPEG 的 ICC 配置
+     *
+     * <p>有 JFIF 段时 JDK 已将 APP2 段合并为 app2ICC 节点，否则按序号拼接未解析的 APP2 段。</p>
+     */
+    private static byte[] jpegIcc(Node root) {
+        Node icc = findNode(root, "app2ICC");
+        if (icc != null && ((IIOMetadataNode) icc).getUserObject() instanceof ICC_Profile) {
+            return ((ICC_Profile) ((IIOMetadataNode) icc).getUserObject()).getData();
+        }
+        TreeMap<Integer, byte[]> chunks = new TreeMap<Integer, byte[]>();
+        for (Node marker : jpegMarkers(root, JPEG_APP2)) {
+            byte[] data = (byte[]) ((IIOMetadataNode) marker).getUserObject();
+            if (startsWith(data, ICC_HEADER) && data.length > ICC_HEADER.length + 2) {
+                int sequence = data[ICC_HEADER.length] & 0xFF;
+                chunks.put(sequence, Arrays.copyOfRange(data, ICC_HEADER.length + 2, data.length));
+            }
+        }
+        if (chunks.isEmpty()) {
+            return null;
+        }
+        ByteArrayOutputStream profile = new ByteArrayOutputStream();
+        for (byte[] chunk : chunks.values()) {
+            profile.write(chunk, 0, chunk.length);
+        }
+        return profile.toByteArray();
+    }
+
+    /**
+     * 查找 markerSequence 中指定标记的未解析段
+     */
+    private static List<Node> jpegMarkers(Node root, int markerTag) {
+        List<Node> markers = new ArrayList<Node>();
+        Node sequence = findNode(root, "markerSequence");
+        if (sequence == null) {
+            return markers;
+        }
+        for (Node child = sequence.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if ("unknown".equals(child.getNodeName())
+                    && String.valueOf(markerTag).equals(attribute(child, "MarkerTag"))
+                    && ((IIOMetadataNode) child).getUserObject() instanceof byte[]) {
+                markers.add(child);
+            }
+        }
+        return markers;
+    }
+
+    /**
+     * 读取 PNG eXIf 块（JDK 作为未知块保留）
+     */
+    private static byte[] pngExif(Node root) {
+        Node chunks = findNode(root, "UnknownChunks");
+        if (chunks == null) {
+            return null;
+        }
+        for (Node child = chunks.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if ("eXIf".equals(attribute(child, "type"))
+                    && ((IIOMetadataNode) child).getUserObject() instanceof byte[]) {
+                return (byte[]) ((IIOMetadataNode) child).getUserObject();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读取并解压 PNG iCCP 块
+     */
+    private static byte[] pngIcc(Node root) {
+        Node iccp = findNode(root, "iCCP");
+        if (iccp == null || !(((IIOMetadataNode) iccp).getUserObject() instanceof byte[])) {
+            return null;
+        }
+        byte[] compressed = (byte[]) ((IIOMetadataNode) iccp).getUserObject();
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream profile = new ByteArrayOutputStream(compressed.length * 2);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return null;
+                }
+                profile.write(buffer, 0, n);
+            }
+            return profile.toByteArray();
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 读取 PNG iTXt 块中的 XMP（JDK 读取时已解压文本）
+     */
+    private static byte[] pngXmp(Node root) {
+        Node itxt = findNode(root, "iTXt");
+        if (itxt == null) {
+            return null;
+        }
+        for (Node child = itxt.getFirstChild(); child != null; child = child.getNextSibling()) {
+            String text = attribute(child, "text");
+            if (PNG_XMP_KEYWORD.equals(attribute(child, "keyword")) && text != null) {
+                return text.getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 检查元数据是否支持指定格式（原生格式或附加格式）
+     */
+    private static boolean supportsFormat(IIOMetadata metadata, String formatName) {
+        if (formatName.equals(metadata.getNativeMetadataFormatName())) {
+            return true;
+        }
+        String[] extraNames = metadata.getExtraMetadataFormatNames();
+        if (extraNames != null) {
+            for (String name : extraNames) {
+                if (formatName.equals(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Node findNode(Node node, String name) {
+        if (name.equals(node.getNodeName())) {
+            return node;
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            Node found = findNode(child, name);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private static String attribute(Node node, String name) {
+        NamedNodeMap attributes = node.getAttributes();
+        Node attribute = (attributes != null) ? attributes.getNamedItem(name) : null;
+        return (attribute != null) ? attribute.getNodeValue() : null;
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        if (data == null || data.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,170 @@
+package com.github.avifimageio;
+
+/**
+ * 一次编解码操作的指标
+ *
+ * <p>各阶段耗时由原生层在调用线程上测量，单位为纳秒：</p>
+ * <ul>
+ *   <li>解析：解析容器，从 ImageInputStream 读取时包括按需读取的时间</li>
+ *   <li>编解码：AV1 解码或编码（包括 libavif 内部线程的等待时间）</li>
+ *   <li>转换：YUV 与 RGB 之间的转换，以及区域采样和缩小</li>
+ *   <li>复制：输入数据复制到原生内存、编码结果复制到 Java 数组</li>
+ * </ul>
+ * <p>总耗时减去以上各阶段即为 Java 层的开销（参数检查、图片分配、写入输出流等）。</p>
+ */
+public final class AvifMetrics {
+
+    /**
+     * 操作类型
+     */
+    public enum Operation {
+        /** 解码 */
+        DECODE,
+        /** 编码 */
+        ENCODE
+    }
+
+    private final Operation operation;
+    private final int width;
+    private final int height;
+    private final long inputBytes;
+    private final long outputBytes;
+    private final int threads;
+    private final long parseNanos;
+    private final long codecNanos;
+    private final long convertNanos;
+    private final long copyNanos;
+    private final long totalNanos;
+    private final Throwable error;
+
+    AvifMetrics(Operation operation, int width, int height, long inputBytes, long outputBytes,
+                int threads, long parseNanos, long codecNanos, long convertNanos, long copyNanos,
+                long totalNanos, Throwable error) {
+        this.operation = operation;
+        this.width = width;
+        this.height = height;
+        this.inputBytes = inputBytes;
+        this.outputBytes = outputBytes;
+        this.threads = threads;
+        this.parseNanos = parseNanos;
+        this.codecNanos = codecNanos;
+        this.convertNanos = convertNanos;
+        this.copyNanos = copyNanos;
+        this.totalNanos = totalNanos;
+        this.error = error;
+    }
+
+    /**
+     * @return 操作类型
+     */
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return 图片宽度（解码为输出图片的宽度），失败前未知时为 0
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return 图片高度（解码为输出图片的高度），失败前未知时为 0
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return 像素数
+     */
+    public long getPixelCount() {
+        return (long) width * height;
+    }
+
+    /**
+     * @return 输入字节数（解码为 AVIF 数据，编码为像素数据），未知时为 -1
+     */
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    /**
+     * @return 输出字节数（解码为像素数据，编码为 AVIF 数据），失败时为 0
+     */
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    /**
+     * @return 编解码器使用的线程数，未到达编解码阶段时为 0
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return 解析阶段耗时（纳秒）
+     */
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * @return 编解码阶段耗时（纳秒）
+     */
+    public long getCodecNanos() {
+        return codecNanos;
+    }
+
+    /**
+     * @return 颜色转换阶段耗时（纳秒）
+     */
+    public long getConvertNanos() {
+        return convertNanos;
+    }
+
+    /**
+     * @return 数据复制阶段耗时（纳秒）
+     */
+    public long getCopyNanos() {
+        return copyNanos;
+    }
+
+    /**
+     * @return 从开始到结束的总耗时（纳秒）
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return 不属于任何原生阶段的耗时（纳秒）
+     */
+    public long getOtherNanos() {
+        return Math.max(0, totalNanos - parseNanos - codecNanos - convertNanos - copyNanos);
+    }
+
+    /**
+     * @return 失败原因，成功时为 null
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * @return true 如果操作成功
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return operation + " " + width + "x" + height
+            + " in=" + inputBytes + " out=" + outputBytes + " threads=" + threads
+            + " parse=" + parseNanos + " codec=" + codecNanos + " convert=" + convertNanos
+            + " copy=" + copyNanos + " total=" + totalNanos + "ns"
+            + (error != null ? " error=" + error : "");
+    }
+}
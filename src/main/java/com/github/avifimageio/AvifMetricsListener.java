@@ -0,0 +1,35 @@
+package com.github.avifimageio;
+
+/**
+ * 编解码指标监听器
+ *
+ * <p>通过 {@link Avif#addMetricsListener} 全局注册，或通过
+ * {@link AvifImageReader#setMetricsListener} / {@link AvifImageWriter#setMetricsListener}
+ * 只监听单个读取器或写入器。下列操作每次完成（成功或失败）后在执行该操作的线程上回调一次，
+ * 实现应尽快返回，抛出的运行时异常会被忽略：</p>
+ * <ul>
+ *   <li>{@link Avif} 的 {@code decode}、{@code decodeFrame}、{@code encodeRGB} 和 {@code encodeRGBA}
+ *       （包括字节数组和直接缓冲区版本）</li>
+ *   <li>{@link AvifDecoderSession} 的 {@code decodeFrame}、{@code decodeImage} 和 {@code decodeInto}，
+ *       以及 {@link AvifFrameSequence} 的逐帧解码</li>
+ *   <li>ImageIO 读取和写入（{@link AvifImageReader}、{@link AvifImageWriter}）</li>
+ *   <li>{@link AvifBatch} 和 {@link AvifTranscoder} 的解码和编码</li>
+ *   <li>动画编码：{@link AvifEncoderSession#addFrame} 每帧一次（输出字节数为 0，压缩数据在完成时才输出），
+ *       {@link AvifEncoderSession#finish()} 一次</li>
+ * </ul>
+ *
+ * <p>上述操作内部调用的其他操作（例如 {@link Avif#decode} 内部的会话解码）不单独报告，
+ * 每次外层调用只回调一次。{@code getInfo}/{@code probe}、会话的创建（容器解析）
+ * 以及 EXIF、ICC、XMP 的读取不报告指标。</p>
+ *
+ * <p>没有注册任何监听器时不会计时，也不会创建 {@link AvifMetrics}。</p>
+ */
+public interface AvifMetricsListener {
+
+    /**
+     * 一次编解码完成
+     *
+     * @param metrics 本次操作的指标
+     */
+    void operationCompleted(AvifMetrics metrics);
+}
@@ -0,0 +1,178 @@
+package com.github.avifimageio;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 编解码指标的注册与分发
+ *
+ * <p>原生层在每个线程上分别累计各阶段耗时，{@link #start} 清零当前线程的累计值，
+ * {@link Recording#finish} 取回累计值并分发给监听器。计时只在存在任何监听器
+ * （全局或单个读取器、写入器上）时开启，没有监听器时 {@link #start} 直接返回 null，
+ * 原生层每个阶段只多一次分支判断。公开入口在 {@link Avif}、{@link AvifImageReader}
+ * 和 {@link AvifImageWriter} 中。</p>
+ *
+ * <p>同一线程上已有进行中的记录时，{@link #start} 返回 null：外层操作（如 {@link Avif#decode}）
+ * 内部调用的会话解码不会重复报告，原生阶段耗时也全部计入外层记录。
+ * 调用方必须在所有退出路径上调用 {@link #finish}，否则当前线程之后的操作都不会报告。</p>
+ */
+final class AvifMetricsRegistry {
+
+    // 与原生层的阶段下标一致
+    private static final int STAGE_PARSE = 0;
+    private static final int STAGE_CODEC = 1;
+    private static final int STAGE_CONVERT = 2;
+    private static final int STAGE_COPY = 3;
+    private static final int STAGE_THREADS = 4;
+    private static final int STAGE_COUNT = 5;
+
+    private static final CopyOnWriteArrayList<AvifMetricsListener> LISTENERS =
+        new CopyOnWriteArrayList<AvifMetricsListener>();
+
+    /** 全局监听器与读取器、写入器上的监听器总数，大于 0 时开启原生计时 */
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+
+    /** 当前线程上进行中的记录，用于跳过嵌套的操作 */
+    private static final ThreadLocal<Recording> CURRENT = new ThreadLocal<Recording>();
+
+    private AvifMetricsRegistry() {
+    }
+
+    private static native void setEnabledNative(boolean enabled);
+    private static native void takeStageValuesNative(long[] values);
+
+    /**
+     * 注册全局监听器（同一个监听器重复注册无效）
+     */
+    static void addListener(AvifMetricsListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("Listener may not be null");
+        }
+        if (LISTENERS.addIfAbsent(listener)) {
+            retain();
+        }
+    }
+
+    /**
+     * 移除全局监听器
+     */
+    static void removeListener(AvifMetricsListener listener) {
+        if (listener != null && LISTENERS.remove(listener)) {
+            release();
+        }
+    }
+
+    /**
+     * 读取器或写入器设置了监听器，开启计时
+     */
+    static void retain() {
+        if (ACTIVE.getAndIncrement() == 0) {
+            updateNative();
+        }
+    }
+
+    /**
+     * 读取器或写入器移除了监听器，没有任何监听器时关闭计时
+     */
+    static void release() {
+        if (ACTIVE.decrementAndGet() == 0) {
+            updateNative();
+        }
+    }
+
+    /**
+     * 将计时开关同步到原生层（原生库加载后也会调用一次）
+     */
+    static synchronized void updateNative() {
+        if (Avif.isLoaded()) {
+            setEnabledNative(ACTIVE.get() > 0);
+        }
+    }
+
+    /**
+     * 开始记录一次操作
+     *
+     * @param operation 操作类型
+     * @param local 读取器或写入器上的监听器（可为 null）
+     * @return 记录，没有任何监听器或当前线程已有进行中的记录时返回 null
+     */
+    static Recording start(AvifMetrics.Operation operation, AvifMetricsListener local) {
+        if (local == null && LISTENERS.isEmpty()) {
+            return null;
+        }
+        if (CURRENT.get() != null) {
+            return null;
+        }
+        if (Avif.isLoaded()) {
+            takeStageValuesNative(null);
+        }
+        Recording recording = new Recording(operation, local);
+        CURRENT.set(recording);
+        return recording;
+    }
+
+    /**
+     * 结束记录并分发指标，recording 为 null 时不做任何操作
+     */
+    static void finish(Recording recording, int width, int height, long inputBytes,
+                       long outputBytes, Throwable error) {
+        if (recording != null) {
+            recording.finish(width, height, inputBytes, outputBytes, error);
+        }
+    }
+
+    /**
+     * 计算图片像素数据占用的字节数
+     */
+    static long imageBytes(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks()
+            * (DataBuffer.getDataTypeSize(buffer.getDataType()) / 8);
+    }
+
+    /**
+     * 一次进行中的操作
+     */
+    static final class Recording {
+
+        private final AvifMetrics.Operation operation;
+        private final AvifMetricsListener local;
+        private final long startNanos;
+
+        private Recording(AvifMetrics.Operation operation, AvifMetricsListener local) {
+            this.operation = operation;
+            this.local = local;
+            this.startNanos = System.nanoTime();
+        }
+
+        void finish(int width, int height, long inputBytes, long outputBytes, Throwable error) {
+            long totalNanos = System.nanoTime() - startNanos;
+            if (CURRENT.get() == this) {
+                CURRENT.remove();
+            }
+            long[] stages = new long[STAGE_COUNT];
+            if (Avif.isLoaded()) {
+                takeStageValuesNative(stages);
+            }
+            AvifMetrics metrics = new AvifMetrics(operation, width, height, inputBytes,
+                outputBytes, (int) stages[STAGE_THREADS], stages[STAGE_PARSE], stages[STAGE_CODEC],
+                stages[STAGE_CONVERT], stages[STAGE_COPY], totalNanos, error);
+            if (local != null) {
+                notify(local, metrics);
+            }
+            for (AvifMetricsListener listener : LISTENERS) {
+                notify(listener, metrics);
+            }
+        }
+
+        private static void notify(AvifMetricsListener listener, AvifMetrics metrics) {
+            try {
+                listener.operationCompleted(metrics);
+            } catch (RuntimeException e) {
+                // 监听器的异常不影响编解码结果
+            }
+        }
+    }
+}
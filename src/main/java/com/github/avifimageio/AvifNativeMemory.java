@@ -0,0 +1,282 @@
+package com.github.avifimageio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 原生内存统计与解码资源限制
+ *
+ * <p>libavif 和 AV1 解码器分配的内存（解码器状态、YUV 平面、输入数据的原生副本）
+ * 不在 Java 堆中，JVM 无法感知。本类按文件头给出的尺寸估算每个解码会话和编码调用占用的原生内存，
+ * 统计当前总量和峰值，并在分配之前执行全局限制：</p>
+ * <ul>
+ *   <li>像素数和宽/高限制：解析容器后立即检查，超出限制的图片不会进入解码</li>
+ *   <li>并发解码字节数：每次解码调用前按估算值预留，解码返回时归还。
+ *       预留超出上限时立即拒绝，或在 {@link #setDecodeQueueTimeout 排队超时}内等待其他解码完成</li>
+ * </ul>
+ *
+ * <p>并发解码上限只约束正在进行的解码：打开但空闲的会话（例如已读取完图片、尚未 dispose 的
+ * {@link AvifImageReader}）不占用预留额度，解码器在两次解码之间保留的帧缓冲也不计入。</p>
+ *
+ * <p>估算值按最坏情况计算：4:4:4 的 YUV 平面（超过 8 位时每样本 2 字节）和 Alpha 平面，
+ * 再加上 AV1 解码器内部同等大小的帧缓冲。全局限制与
+ * {@link AvifDecoderOptions#setImageSizeLimit} 等单次解码选项同时生效，以较严格者为准。</p>
+ *
+ * <p>所有方法都是线程安全的。</p>
+ */
+public final class AvifNativeMemory {
+
+    private static final AtomicLong liveBytes = new AtomicLong();
+    private static final AtomicLong peakBytes = new AtomicLong();
+
+    private static volatile long imageSizeLimit = 0;
+    private static volatile int imageDimensionLimit = 0;
+    private static volatile long maxDecodeBytes = Long.MAX_VALUE;
+    private static volatile long queueTimeoutNanos = 0;
+
+    /** 保护 decodeBytes，预留失败的线程在此等待 */
+    private static final Object DECODE_LOCK = new Object();
+    private static long decodeBytes = 0;
+
+    private AvifNativeMemory() {
+    }
+
+    /**
+     * 获取当前估算的原生内存占用
+     *
+     * <p>包括打开的解码会话、进行中的编码、尚未关闭的 {@link AvifEncodedBuffer}
+     * 和线程资源复用保留的缓冲区（{@link Avif#getRetainedBytes()}）。</p>
+     *
+     * @return 字节数
+     */
+    public static long getLiveBytes() {
+        return liveBytes.get() + AvifThreadResources.getRetainedBytes();
+    }
+
+    /**
+     * 获取自启动或上次 {@link #resetPeakBytes()} 以来 {@link #getLiveBytes()} 的峰值
+     *
+     * @return 字节数
+     */
+    public static long getPeakBytes() {
+        return peakBytes.get();
+    }
+
+    /**
+     * 将峰值重置为当前占用
+     */
+    public static void resetPeakBytes() {
+        peakBytes.set(getLiveBytes());
+    }
+
+    /**
+     * 获取当前为解码会话预留的字节数
+     *
+     * @return 字节数
+     */
+    public static long getDecodeBytes() {
+        synchronized (DECODE_LOCK) {
+            return decodeBytes;
+        }
+    }
+
+    /**
+     * 设置全局最大像素数限制
+     *
+     * @param limit 最大像素数（宽 x 高），0 表示只使用解码选项中的限制（默认）
+     * @throws IllegalArgumentException 如果 limit 小于 0
+     */
+    public static void setImageSizeLimit(long limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Image size limit must be >= 0, got: " + limit);
+        }
+        imageSizeLimit = limit;
+    }
+
+    /**
+     * 获取全局最大像素数限制
+     *
+     * @return 最大像素数，0 表示不限制
+     */
+    public static long getImageSizeLimit() {
+        return imageSizeLimit;
+    }
+
+    /**
+     * 设置全局最大宽/高限制
+     *
+     * @param limit 最大宽/高，0 表示只使用解码选项中的限制（默认）
+     * @throws IllegalArgumentException 如果 limit 小于 0
+     */
+    public static void setImageDimensionLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Image dimension limit must be >= 0, got: " + limit);
+        }
+        imageDimensionLimit = limit;
+    }
+
+    /**
+     * 获取全局最大宽/高限制
+     *
+     * @return 最大宽/高，0 表示不限制
+     */
+    public static int getImageDimensionLimit() {
+        return imageDimensionLimit;
+    }
+
+    /**
+     * 设置所有进行中的解码共同预留的最大字节数
+     *
+     * <p>只统计正在进行的解码调用，空闲的会话不占用额度。单张图片的估算值超过上限时总是立即拒绝。</p>
+     *
+     * @param maxBytes 最大字节数（默认 {@link Long#MAX_VALUE}，即不限制）
+     * @throws IllegalArgumentException 如果 maxBytes 不大于 0
+     */
+    public static void setMaxDecodeBytes(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Max decode bytes must be > 0, got: " + maxBytes);
+        }
+        maxDecodeBytes = maxBytes;
+        synchronized (DECODE_LOCK) {
+            DECODE_LOCK.notifyAll();
+        }
+    }
+
+    /**
+     * 获取所有进行中的解码共同预留的最大字节数
+     *
+     * @return 最大字节数
+     */
+    public static long getMaxDecodeBytes() {
+        return maxDecodeBytes;
+    }
+
+    /**
+     * 设置预留超出上限时的等待时间
+     *
+     * @param timeout 等待时间，0 表示立即拒绝（默认）
+     * @param unit 时间单位
+     * @throws IllegalArgumentException 如果 timeout 小于 0
+     */
+    public static void setDecodeQueueTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Queue timeout must be >= 0, got: " + timeout);
+        }
+        queueTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * 获取预留超出上限时的等待时间
+     *
+     * @param unit 时间单位
+     * @return 等待时间，0 表示立即拒绝
+     */
+    public static long getDecodeQueueTimeout(TimeUnit unit) {
+        return unit.convert(queueTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 按全局限制检查图片尺寸（解析容器后、解码前调用）
+     *
+     * @throws IOException 如果超出限制
+     */
+    static void checkLimits(ImageInfo info) throws IOException {
+        int dimensionLimit = imageDimensionLimit;
+        if (dimensionLimit > 0 && (info.width() > dimensionLimit || info.height() > dimensionLimit)) {
+            throw new IOException("Image dimensions " + info.width() + "x" + info.height()
+                + " exceed limit " + dimensionLimit);
+        }
+        long sizeLimit = imageSizeLimit;
+        if (sizeLimit > 0 && (long) info.width() * info.height() > sizeLimit) {
+            throw new IOException("Image size " + info.width() + "x" + info.height()
+                + " exceeds limit of " + sizeLimit + " pixels");
+        }
+    }
+
+    /**
+     * 估算解码一张图片占用的原生内存
+     */
+    static long estimateDecodeBytes(ImageInfo info) {
+        return estimateImageBytes(info.width(), info.height(), info.bitDepth(), info.hasAlpha());
+    }
+
+    /**
+     * 估算一张图片在编解码过程中占用的原生内存：YUV 和 Alpha 平面，加上编解码器内部同等大小的帧缓冲
+     */
+    static long estimateImageBytes(int width, int height, int bitDepth, boolean hasAlpha) {
+        long samples = (long) width * height * (hasAlpha ? 4 : 3);
+        return 2 * samples * ((bitDepth > 8) ? 2 : 1);
+    }
+
+    /**
+     * 为解码预留字节数，超出上限时按排队超时等待
+     *
+     * @throws IOException 如果超出上限且等待超时
+     * @throws InterruptedIOException 如果等待时被中断
+     */
+    static void reserveDecode(long bytes) throws IOException {
+        synchronized (DECODE_LOCK) {
+            long max = maxDecodeBytes;
+            if (bytes > max) {
+                throw new IOException("Decode needs an estimated " + bytes
+                    + " bytes of native memory, exceeding the limit of " + max);
+            }
+            long remaining = queueTimeoutNanos;
+            long deadline = System.nanoTime() + remaining;
+            while (decodeBytes + bytes > maxDecodeBytes) {
+                if (remaining <= 0 || bytes > maxDecodeBytes) {
+                    throw new IOException("Native decode memory limit reached: " + decodeBytes
+                        + " of " + maxDecodeBytes + " bytes in use, " + bytes + " requested");
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(DECODE_LOCK, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for decode memory");
+                }
+                remaining = deadline - System.nanoTime();
+            }
+            decodeBytes += bytes;
+        }
+        allocated(bytes);
+    }
+
+    /**
+     * 归还解码预留的字节数
+     */
+    static void releaseDecode(long bytes) {
+        synchronized (DECODE_LOCK) {
+            decodeBytes -= bytes;
+            DECODE_LOCK.notifyAll();
+        }
+        freed(bytes);
+    }
+
+    /**
+     * 记录分配（不受并发解码上限约束）
+     */
+    static void allocated(long bytes) {
+        liveBytes.addAndGet(bytes);
+        updatePeak();
+    }
+
+    /**
+     * 线程资源保留的缓冲区增长后更新峰值
+     */
+    static void updatePeak() {
+        long live = getLiveBytes();
+        long peak;
+        do {
+            peak = peakBytes.get();
+        } while (live > peak && !peakBytes.compareAndSet(peak, live));
+    }
+
+    /**
+     * 记录释放
+     */
+    static void freed(long bytes) {
+        liveBytes.addAndGet(-bytes);
+    }
+}
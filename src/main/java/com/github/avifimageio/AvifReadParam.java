@@ -0,0 +1,302 @@
+package com.github.avifimageio;
+
+import javax.imageio.ImageReadParam;
+
+/**
+ * AVIF 图片读取参数
+ *
+ * <p>扩展 ImageReadParam 以支持 AVIF 特定的解码参数，
+ * 读取时转换为 {@link AvifDecoderOptions} 应用到原生解码器。</p>
+ *
+ * <p>使用示例：</p>
+ * <pre>{@code
+ * ImageReader reader = ImageIO.getImageReadersByFormatName("avif").next();
+ * AvifReadParam param = (AvifReadParam) reader.getDefaultReadParam();
+ * param.setMaxThreads(AvifDecoderOptions.THREADS_AUTO);
+ * param.setIgnoreExif(true);
+ * reader.setInput(ImageIO.createImageInputStream(file));
+ * BufferedImage image = reader.read(0, param);
+ * }</pre>
+ */
+public class AvifReadParam extends ImageReadParam {
+
+    private int maxThreads = AvifDecoderOptions.DEFAULT_MAX_THREADS;
+    private String codec = "auto";
+    private boolean ignoreIcc = false;
+    private boolean ignoreExif = false;
+    private boolean ignoreXmp = false;
+    private int strictFlags = AvifDecoderOptions.STRICT_ENABLED;
+    private int imageSizeLimit = AvifDecoderOptions.DEFAULT_IMAGE_SIZE_LIMIT;
+    private int imageDimensionLimit = AvifDecoderOptions.DEFAULT_IMAGE_DIMENSION_LIMIT;
+    private boolean highBitDepth = false;
+    private int maxDimension = 0;
+
+    /**
+     * 创建默认 AVIF 读取参数
+     */
+    public AvifReadParam() {
+        super();
+    }
+
+    /**
+     * 获取解码线程数
+     * @return 解码线程数，{@link AvifDecoderOptions#THREADS_AUTO} 表示使用所有可用核心
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * 设置解码线程数
+     * @param maxThreads 解码线程数（默认 1，{@link AvifDecoderOptions#THREADS_AUTO} 表示使用所有可用核心）
+     * @throws IllegalArgumentException 如果线程数小于 0
+     */
+    public void setMaxThreads(int maxThreads) {
+        if (maxThreads < 0) {
+            throw new IllegalArgumentException("Max threads must be >= 0, got: " + maxThreads);
+        }
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * 获取 AV1 解码器名称
+     * @return 解码器名称，"auto" 表示自动选择
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * 设置 AV1 解码器
+     *
+     * <p>解码器是否可用在读取时检查。</p>
+     *
+     * @param codec 解码器名称，如 "dav1d"、"aom"（默认 "auto" 自动选择）
+     * @throws NullPointerException 如果 codec 为 null
+     */
+    public void setCodec(String codec) {
+        if (codec == null) {
+            throw new NullPointerException("Codec name may not be null");
+        }
+        this.codec = codec;
+    }
+
+    /**
+     * 是否忽略 ICC 色彩配置
+     * @return true 如果忽略 ICC 配置
+     */
+    public boolean isIgnoreIcc() {
+        return ignoreIcc;
+    }
+
+    /**
+     * 设置是否忽略 ICC 色彩配置
+     * @param ignoreIcc true 忽略 ICC 配置
+     */
+    public void setIgnoreIcc(boolean ignoreIcc) {
+        this.ignoreIcc = ignoreIcc;
+    }
+
+    /**
+     * 是否忽略 EXIF 元数据
+     * @return true 如果忽略 EXIF 元数据
+     */
+    public boolean isIgnoreExif() {
+        return ignoreExif;
+    }
+
+    /**
+     * 设置是否忽略 EXIF 元数据
+     * @param ignoreExif true 忽略 EXIF 元数据
+     */
+    public void setIgnoreExif(boolean ignoreExif) {
+        this.ignoreExif = ignoreExif;
+    }
+
+    /**
+     * 是否忽略 XMP 元数据
+     * @return true 如果忽略 XMP 元数据
+     */
+    public boolean isIgnoreXmp() {
+        return ignoreXmp;
+    }
+
+    /**
+     * 设置是否忽略 XMP 元数据
+     * @param ignoreXmp true 忽略 XMP 元数据
+     */
+    public void setIgnoreXmp(boolean ignoreXmp) {
+        this.ignoreXmp = ignoreXmp;
+    }
+
+    /**
+     * 获取严格模式标志
+     * @return 严格模式标志组合
+     */
+    public int getStrictFlags() {
+        return strictFlags;
+    }
+
+    /**
+     * 设置严格模式标志
+     * @param strictFlags 严格模式标志组合（默认 {@link AvifDecoderOptions#STRICT_ENABLED}）
+     * @throws IllegalArgumentException 如果包含未知标志
+     */
+    public void setStrictFlags(int strictFlags) {
+        if ((strictFlags & ~AvifDecoderOptions.STRICT_ENABLED) != 0) {
+            throw new IllegalArgumentException("Unknown strict flags: " + strictFlags);
+        }
+        this.strictFlags = strictFlags;
+    }
+
+    /**
+     * 获取最大像素数限制
+     * @return 最大像素数（宽 x 高）
+     */
+    public int getImageSizeLimit() {
+        return imageSizeLimit;
+    }
+
+    /**
+     * 设置最大像素数限制
+     * @param imageSizeLimit 最大像素数（1 到 {@link AvifDecoderOptions#DEFAULT_IMAGE_SIZE_LIMIT}）
+     * @throws IllegalArgumentException 如果限制值超出范围
+     */
+    public void setImageSizeLimit(int imageSizeLimit) {
+        if (imageSizeLimit <= 0 || imageSizeLimit > AvifDecoderOptions.DEFAULT_IMAGE_SIZE_LIMIT) {
+            throw new IllegalArgumentException(
+                "Image size limit must be between 1 and 16384 * 16384, got: " + imageSizeLimit);
+        }
+        this.imageSizeLimit = imageSizeLimit;
+    }
+
+    /**
+     * 获取最大宽/高限制
+     * @return 最大宽/高，0 表示不限制
+     */
+    public int getImageDimensionLimit() {
+        return imageDimensionLimit;
+    }
+
+    /**
+     * 设置最大宽/高限制
+     * @param imageDimensionLimit 最大宽/高（0 表示不限制）
+     * @throws IllegalArgumentException 如果限制值小于 0
+     */
+    public void setImageDimensionLimit(int imageDimensionLimit) {
+        if (imageDimensionLimit < 0) {
+            throw new IllegalArgumentException(
+                "Image dimension limit must be >= 0, got: " + imageDimensionLimit);
+        }
+        this.imageDimensionLimit = imageDimensionLimit;
+    }
+
+    /**
+     * 是否保留高位深
+     * @return true 如果 10/12 位图片默认解码为 16 位每通道
+     */
+    public boolean isHighBitDepth() {
+        return highBitDepth;
+    }
+
+    /**
+     * 设置是否保留高位深
+     *
+     * <p>启用后，未指定目标类型时 10/12 位图片解码为 16 位每通道的图片。</p>
+     *
+     * @param highBitDepth true 保留高位深（默认 false）
+     */
+    public void setHighBitDepth(boolean highBitDepth) {
+        this.highBitDepth = highBitDepth;
+    }
+
+    /**
+     * 获取输出的最大边长
+     * @return 最大边长（像素），0 表示不缩放
+     */
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+
+    /**
+     * 设置输出的最大边长
+     *
+     * <p>图片的宽或高超过该值时按比例缩小，使较长的一边等于该值。
+     * 缩放在 YUV 层面由 libavif 完成，之后只转换缩小后的像素，适合批量生成预览图。
+     * 指定了源区域、下采样、目标偏移或目标图片时忽略此设置。</p>
+     *
+     * @param maxDimension 最大边长（像素，默认 0 不缩放）
+     * @throws IllegalArgumentException 如果最大边长小于 0
+     */
+    public void setMaxDimension(int maxDimension) {
+        if (maxDimension < 0) {
+            throw new IllegalArgumentException("Max dimension must be >= 0, got: " + maxDimension);
+        }
+        this.maxDimension = maxDimension;
+    }
+
+    /**
+     * 创建对应的原生解码选项
+     *
+     * @return 解码选项，调用方负责关闭
+     * @throws IllegalArgumentException 如果解码器不可用
+     */
+    AvifDecoderOptions createDecoderOptions() {
+        AvifDecoderOptions options = new AvifDecoderOptions();
+        try {
+            options.setMaxThreads(maxThreads);
+            options.setCodec(codec);
+            options.setIgnoreIcc(ignoreIcc);
+            options.setIgnoreExif(ignoreExif);
+            options.setIgnoreXmp(ignoreXmp);
+            options.setStrictFlags(strictFlags);
+            options.setImageSizeLimit(imageSizeLimit);
+            options.setImageDimensionLimit(imageDimensionLimit);
+            options.setHighBitDepth(highBitDepth);
+            return options;
+        } catch (RuntimeException e) {
+            options.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 复制解码相关的设置（不含 ImageReadParam 的区域、目标等设置）
+     *
+     * @return 设置快照
+     */
+    AvifReadParam copyDecoderSettings() {
+        AvifReadParam copy = new AvifReadParam();
+        copy.maxThreads = maxThreads;
+        copy.codec = codec;
+        copy.ignoreIcc = ignoreIcc;
+        copy.ignoreExif = ignoreExif;
+        copy.ignoreXmp = ignoreXmp;
+        copy.strictFlags = strictFlags;
+        copy.imageSizeLimit = imageSizeLimit;
+        copy.imageDimensionLimit = imageDimensionLimit;
+        copy.highBitDepth = highBitDepth;
+        return copy;
+    }
+
+    /**
+     * 比较解码相关的设置是否相同
+     *
+     * @param other 另一组设置（null 视为默认设置）
+     * @return true 如果两者的解码设置相同
+     */
+    boolean hasSameDecoderSettings(AvifReadParam other) {
+        if (other == null) {
+            other = new AvifReadParam();
+        }
+        return maxThreads == other.maxThreads
+            && codec.equals(other.codec)
+            && ignoreIcc == other.ignoreIcc
+            && ignoreExif == other.ignoreExif
+            && ignoreXmp == other.ignoreXmp
+            && strictFlags == other.strictFlags
+            && imageSizeLimit == other.imageSizeLimit
+            && imageDimensionLimit == other.imageDimensionLimit
+            && highBitDepth == other.highBitDepth;
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.avifimageio;
+
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+
+/**
+ * 供原生 avifIO 回调的 ImageInputStream 适配器
+ *
+ * <p>原生解码器按需调用 {@link #readAt} 读取指定范围，只有解析和解码实际需要的
+ * box 和样本数据会被读取。偏移量相对于创建时流的位置。</p>
+ *
+ * <p>此类不是线程安全的，由持有它的 {@link AvifDecoderSession} 串行调用。</p>
+ */
+final class AvifStreamSource {
+
+    private final ImageInputStream stream;
+    private final long base;
+    /** 读取时覆盖到数据上的补丁（用于改写 pitm 以解码缩略图项），没有时为 null */
+    private final byte[] patch;
+    private final long patchOffset;
+
+    /**
+     * 以流的当前位置作为数据起点
+     *
+     * @param stream 输入流，会话关闭前必须保持打开
+     * @throws IOException 如果无法获取流的位置
+     */
+    AvifStreamSource(ImageInputStream stream) throws IOException {
+        this(stream, -1, null);
+    }
+
+    /**
+     * 以流的当前位置作为数据起点，读取时用 patch 覆盖 patchOffset 处的数据（不修改流本身）
+     *
+     * @param stream 输入流，会话关闭前必须保持打开
+     * @param patchOffset 补丁相对起点的偏移量
+     * @param patch 补丁数据，为 null 时不覆盖
+     * @throws IOException 如果无法获取流的位置
+     */
+    AvifStreamSource(ImageInputStream stream, long patchOffset, byte[] patch) throws IOException {
+        this.stream = stream;
+        this.base = stream.getStreamPosition();
+        this.patchOffset = patchOffset;
+        this.patch = patch;
+    }
+
+    /**
+     * 获取数据长度
+     *
+     * @return 从起点到流末尾的字节数，未知时返回 -1
+     * @throws IOException 如果读取流长度失败
+     */
+    long size() throws IOException {
+        long length = stream.length();
+        return (length < 0) ? -1 : Math.max(0, length - base);
+    }
+
+    /**
+     * 读取指定范围的数据（由原生层回调）
+     *
+     * @param offset 相对起点的偏移量
+     * @param buffer 目标数组
+     * @param length 期望读取的字节数
+     * @return 实际读取的字节数，只有到达流末尾时才会少于 length
+     * @throws IOException 如果读取失败
+     */
+    int readAt(long offset, byte[] buffer, int length) throws IOException {
+        stream.seek(base + offset);
+        int total = 0;
+        while (total < length) {
+            int n = stream.read(buffer, total, length - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        if (patch != null) {
+            // 只复制补丁与本次读取范围重叠的部分
+            long from = Math.max(offset, patchOffset);
+            long to = Math.min(offset + total, patchOffset + patch.length);
+            if (from < to) {
+                System.arraycopy(patch, (int) (from - patchOffset), buffer, (int) (from - offset),
+                    (int) (to - from));
+            }
+        }
+        return total;
+    }
+}
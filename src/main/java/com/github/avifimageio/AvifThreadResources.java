@@ -0,0 +1,193 @@
+package com.github.avifimageio;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按线程复用的原生解码资源
+ *
+ * <p>启用后，每个线程持有一个只增不减的原生输入缓冲区，从字节数组打开解码会话时
+ * 将输入复制到该缓冲区，不再为每次解码分配和释放与文件等大的内存。
+ * 同一线程同时打开多个会话时，只有第一个使用线程缓冲区，其余照常分配。</p>
+ *
+ * <p>所有线程保留的字节总数不超过 {@link #getMaxRetainedBytes()}，超出时会话关闭后立即释放缓冲区。
+ * 线程结束后其缓冲区在其他线程下次创建缓冲区时回收，也可以调用
+ * {@link Avif#releaseThreadResources()} 立即释放当前线程的缓冲区。
+ * 公开入口在 {@link Avif} 中。</p>
+ */
+final class AvifThreadResources {
+
+    /** 默认最多保留的字节数 */
+    static final long DEFAULT_MAX_RETAINED_BYTES = 64L * 1024 * 1024;
+
+    private static volatile boolean enabled = false;
+    private static volatile long maxRetainedBytes = DEFAULT_MAX_RETAINED_BYTES;
+    private static final AtomicLong retainedBytes = new AtomicLong();
+
+    private static final ThreadLocal<InputBuffer> LOCAL = new ThreadLocal<InputBuffer>();
+
+    /** 所有未释放的缓冲区，用于回收已结束线程的缓冲区 */
+    private static final Set<InputBuffer> BUFFERS =
+        Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<InputBuffer, Boolean>()));
+
+    private AvifThreadResources() {
+    }
+
+    private static native long createNative() throws IOException;
+    private static native long capacityNative(long ptr);
+    private static native void trimNative(long ptr);
+    private static native void freeNative(long ptr);
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 启用或禁用复用，禁用时释放所有空闲缓冲区（使用中的缓冲区在会话关闭时释放）
+     */
+    static void setEnabled(boolean enable) {
+        enabled = enable;
+        if (!enable) {
+            LOCAL.remove();
+            for (InputBuffer buffer : snapshot()) {
+                buffer.dispose();
+            }
+        }
+    }
+
+    static long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    static void setMaxRetainedBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Max retained bytes must be >= 0, got: " + maxBytes);
+        }
+        maxRetainedBytes = maxBytes;
+    }
+
+    static long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * 取得当前线程的输入缓冲区
+     *
+     * @return 缓冲区，未启用复用或当前线程的缓冲区正在使用时返回 null
+     * @throws IOException 如果创建原生缓冲区失败
+     */
+    static InputBuffer acquire() throws IOException {
+        if (!enabled) {
+            return null;
+        }
+        InputBuffer buffer = LOCAL.get();
+        if (buffer == null || buffer.disposed) {
+            sweepDeadThreads();
+            buffer = new InputBuffer(Thread.currentThread(), createNative());
+            BUFFERS.add(buffer);
+            LOCAL.set(buffer);
+        }
+        return buffer.tryAcquire() ? buffer : null;
+    }
+
+    /**
+     * 释放当前线程的缓冲区
+     */
+    static void releaseCurrentThread() {
+        InputBuffer buffer = LOCAL.get();
+        LOCAL.remove();
+        if (buffer != null) {
+            buffer.dispose();
+        }
+    }
+
+    /**
+     * 释放所属线程已结束的缓冲区
+     */
+    private static void sweepDeadThreads() {
+        for (InputBuffer buffer : snapshot()) {
+            Thread owner = buffer.owner.get();
+            if (owner == null || !owner.isAlive()) {
+                buffer.dispose();
+            }
+        }
+    }
+
+    private static List<InputBuffer> snapshot() {
+        synchronized (BUFFERS) {
+            return new ArrayList<InputBuffer>(BUFFERS);
+        }
+    }
+
+    /**
+     * 线程的原生输入缓冲区
+     */
+    static final class InputBuffer {
+
+        final long pointer;
+        private final WeakReference<Thread> owner;
+        private long capacity;
+        private boolean inUse;
+        private volatile boolean disposed;
+
+        InputBuffer(Thread owner, long pointer) {
+            this.owner = new WeakReference<Thread>(owner);
+            this.pointer = pointer;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (inUse || disposed) {
+                return false;
+            }
+            inUse = true;
+            return true;
+        }
+
+        /**
+         * 会话关闭后归还：更新保留字节数，超出上限时释放缓冲区内存
+         */
+        synchronized void release() {
+            inUse = false;
+            if (disposed) {
+                free();
+                return;
+            }
+            long newCapacity = capacityNative(pointer);
+            long total = retainedBytes.addAndGet(newCapacity - capacity);
+            capacity = newCapacity;
+            if (total > maxRetainedBytes) {
+                trimNative(pointer);
+                retainedBytes.addAndGet(-capacity);
+                capacity = 0;
+            } else {
+                AvifNativeMemory.updatePeak();
+            }
+        }
+
+        /**
+         * 释放缓冲区，使用中时推迟到归还时释放
+         */
+        synchronized void dispose() {
+            if (disposed) {
+                return;
+            }
+            disposed = true;
+            if (!inUse) {
+                free();
+            }
+        }
+
+        private void free() {
+            BUFFERS.remove(this);
+            retainedBytes.addAndGet(-capacity);
+            capacity = 0;
+            freeNative(pointer);
+        }
+    }
+}
@@ -0,0 +1,854 @@
+package com.github.avifimageio;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 并行转码：将 ImageIO 可读取的图片（JPEG、PNG 等）转换为 AVIF
+ *
+ * <p>每个文件在同一个工作线程中读取、解码和编码，编码线程数由 {@link AvifBatch}
+ * 按共享的核心预算分配，因此工作线程数不超过并行数，编码线程总数不超过核心预算。
+ * 编码结果先写入临时文件再替换目标文件，中断或失败时不会留下不完整的输出。
+ * 解码后的像素按宽 × 高 × 4 字节估算并计入 {@link #getMaxInFlightBytes()}，
+ * 超出时后续文件等待已有文件完成再解码，提交的文件数超过 {@link #getMaxPending()} 时提交方法阻塞，
+ * 因此遍历大量文件时内存占用有上限。单个文件超过上限时单独处理。</p>
+ *
+ * <p>默认保留源图片的 EXIF、XMP 和 ICC 色彩配置（JPEG 的 APP1/APP2、PNG 的 eXIf/iTXt/iCCP）。
+ * 像素需要经过色彩转换才能编码时不写入 ICC，避免重复应用色彩配置。</p>
+ *
+ * <p>每个文件的结果（成功、跳过或错误）单独报告，一个文件失败不影响其他文件。
+ * 也可以通过 {@code java -jar avif-imageio.jar} 在命令行转换目录，参见 {@link #main}。</p>
+ *
+ * <p>使用示例：</p>
+ * <pre>{@code
+ * try (AvifTranscoder transcoder = new AvifTranscoder();
+ *      AvifEncoderOptions options = new AvifEncoderOptions()) {
+ *     AvifTranscoder.Summary summary = transcoder.transcodeDirectory(
+ *         Paths.get("photos"), Paths.get("avif"), options, null);
+ *     System.out.println(summary);
+ * }
+ * }</pre>
+ */
+public final class AvifTranscoder implements AutoCloseable {
+
+    /** 默认的在途内存上限：最大堆的四分之一 */
+    public static final long DEFAULT_MAX_IN_FLIGHT_BYTES = Runtime.getRuntime().maxMemory() / 4;
+
+    /** 输出文件扩展名 */
+    static final String OUTPUT_SUFFIX = ".avif";
+
+    private static final AtomicInteger TRANSCODER_COUNT = new AtomicInteger();
+
+    private final int parallelism;
+    private final long maxInFlightBytes;
+    private final int maxPending;
+    private final AvifBatch batch;
+    private final ExecutorService executor;
+    /** 在途内存预算（以 KiB 为单位） */
+    private final Semaphore memory;
+    private final int memoryPermits;
+    /** 未完成文件数的上限 */
+    private final Semaphore pending;
+    private volatile boolean keepMetadata = true;
+    private volatile boolean overwrite = false;
+
+    /**
+     * 使用所有可用核心和默认内存上限创建转码器
+     */
+    public AvifTranscoder() {
+        this(AvifBatch.DEFAULT_CORE_BUDGET, DEFAULT_MAX_IN_FLIGHT_BYTES);
+    }
+
+    /**
+     * 创建转码器
+     *
+     * @param parallelism 同时转码的文件数，也是编码使用的核心预算
+     * @param maxInFlightBytes 解码后尚未编码完成的像素最多占用的字节数
+     * @throws IllegalArgumentException 如果并行数小于 1 或内存上限小于 1 KiB
+     */
+    public AvifTranscoder(int parallelism, long maxInFlightBytes) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be >= 1, got: " + parallelism);
+        }
+        if (maxInFlightBytes < 1024) {
+            throw new IllegalArgumentException("Max in-flight bytes must be >= 1024, got: "
+                + maxInFlightBytes);
+        }
+        this.parallelism = parallelism;
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.maxPending = parallelism * 4;
+        this.memoryPermits = (int) Math.min(maxInFlightBytes / 1024, Integer.MAX_VALUE);
+        this.memory = new Semaphore(memoryPermits, true);
+        this.pending = new Semaphore(maxPending);
+        this.batch = new AvifBatch(parallelism);
+        this.executor = Executors.newFixedThreadPool(parallelism,
+            new WorkerFactory(TRANSCODER_COUNT.incrementAndGet()));
+    }
+
+    /**
+     * 获取同时转码的文件数
+     *
+     * @return 并行数
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * 获取在途内存上限
+     *
+     * @return 字节数
+     */
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    /**
+     * 获取最多同时提交的文件数
+     *
+     * @return 文件数上限
+     */
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    /**
+     * 是否保留 EXIF、XMP 和 ICC 色彩配置
+     *
+     * @return true 如果保留
+     */
+    public boolean isKeepMetadata() {
+        return keepMetadata;
+    }
+
+    /**
+     * 设置是否保留 EXIF、XMP 和 ICC 色彩配置
+     *
+     * @param keepMetadata true 保留（默认）
+     */
+    public void setKeepMetadata(boolean keepMetadata) {
+        this.keepMetadata = keepMetadata;
+    }
+
+    /**
+     * 是否覆盖已存在的输出文件
+     *
+     * @return true 如果覆盖
+     */
+    public boolean isOverwrite() {
+        return overwrite;
+    }
+
+    /**
+     * 设置是否覆盖已存在的输出文件
+     *
+     * @param overwrite true 覆盖，false 跳过已存在的输出文件（默认）
+     */
+    public void setOverwrite(boolean overwrite) {
+        this.overwrite = overwrite;
+    }
+
+    /**
+     * 提交一个文件的转码任务
+     *
+     * <p>转码失败时结果正常完成，并通过 {@link Result#getError()} 报告。
+     * 只有 {@link Error}（例如 {@link OutOfMemoryError}）会使结果异常完成，
+     * 这类错误影响整个 JVM，不作为单个文件的失败处理。
+     * 编码选项在提交时复制，提交后可以立即关闭。</p>
+     *
+     * @param input 输入文件
+     * @param output 输出文件（父目录不存在时自动创建）
+     * @param options 编码选项（可为 null 使用默认选项）
+     * @return 转码结果
+     * @throws NullPointerException 如果 input 或 output 为 null
+     * @throws IllegalStateException 如果转码器已关闭
+     */
+    public CompletableFuture<Result> transcode(final Path input, final Path output,
+                                               AvifEncoderOptions options) {
+        if (input == null || output == null) {
+            throw new NullPointerException("Input and output may not be null");
+        }
+        final CompletableFuture<Result> future = new CompletableFuture<Result>();
+        if (executor.isShutdown()) {
+            throw new IllegalStateException("AvifTranscoder has been closed");
+        }
+        final AvifEncoderOptions taskOptions = (options != null) ? options.copy()
+            : new AvifEncoderOptions();
+        try {
+            pending.acquire();
+        } catch (InterruptedException e) {
+            taskOptions.close();
+            Thread.currentThread().interrupt();
+            future.complete(new Result(input, output, 0, 0, 0, false, e));
+            return future;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        future.complete(transcodeFile(input, output, taskOptions));
+                    } catch (Error e) {
+                        // JVM 级错误不是单个文件的失败，让等待结果的调用方和工作线程都看到
+                        future.completeExceptionally(e);
+                        throw e;
+                    } finally {
+                        taskOptions.close();
+                        pending.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            taskOptions.close();
+            pending.release();
+            throw new IllegalStateException("AvifTranscoder has been closed");
+        }
+        return future;
+    }
+
+    /**
+     * 转码目录中所有 ImageIO 可读取的图片，保留子目录结构
+     *
+     * <p>输出文件名为输入文件名替换扩展名为 {@code .avif}。阻塞到所有文件完成。</p>
+     *
+     * @param inputDir 输入目录
+     * @param outputDir 输出目录
+     * @param options 编码选项（可为 null 使用默认选项）
+     * @param listener 每个文件完成时的回调（可为 null，在调用线程中按完成顺序调用）
+     * @return 汇总统计
+     * @throws IOException 如果遍历输入目录失败
+     * @throws IllegalStateException 如果转码器已关闭
+     */
+    public Summary transcodeDirectory(final Path inputDir, final Path outputDir,
+                                      final AvifEncoderOptions options, final Listener listener)
+            throws IOException {
+        final long start = System.nanoTime();
+        final Set<String> suffixes = readableSuffixes();
+        final SummaryBuilder summary = new SummaryBuilder();
+        final List<CompletableFuture<Result>> futures = new ArrayList<CompletableFuture<Result>>();
+        Files.walkFileTree(inputDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile() || !suffixes.contains(suffix(file))) {
+                    return FileVisitResult.CONTINUE;
+                }
+                Path output = outputPath(inputDir.relativize(file), outputDir);
+                CompletableFuture<Result> future = transcode(file, output, options);
+                futures.add(future);
+                drainCompleted(futures, summary, listener);
+                return Thread.currentThread().isInterrupted()
+                    ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                Result result = new Result(file, null, 0, 0, 0, false, e);
+                summary.add(result);
+                if (listener != null) {
+                    listener.fileCompleted(result);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        for (CompletableFuture<Result> future : futures) {
+            Result result = resultOf(future);
+            summary.add(result);
+            if (listener != null) {
+                listener.fileCompleted(result);
+            }
+        }
+        return summary.build(System.nanoTime() - start);
+    }
+
+    /**
+     * 关闭转码器，不再接受新文件，并等待已提交的文件完成
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // 继续等待执行中的文件
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        batch.close();
+    }
+
+    /**
+     * 在工作线程中转码一个文件
+     */
+    private Result transcodeFile(Path input, Path output, AvifEncoderOptions options) {
+        long start = System.nanoTime();
+        long inputSize = 0;
+        int reserved = 0;
+        try {
+            inputSize = Files.size(input);
+            if (!overwrite && Files.exists(output)) {
+                return new Result(input, output, inputSize, 0, System.nanoTime() - start, true, null);
+            }
+            try (ImageInputStream stream = ImageIO.createImageInputStream(input.toFile())) {
+                ImageReader reader = readerFor(stream, input);
+                try {
+                    reader.setInput(stream, true, !keepMetadata);
+                    // 按头部中的尺寸预留内存后再解码像素
+                    long pixelBytes = (long) reader.getWidth(0) * reader.getHeight(0) * 4;
+                    reserved = (int) Math.min(Math.max(1, pixelBytes / 1024), memoryPermits);
+                    memory.acquire(reserved);
+
+                    IIOImage source = reader.readAll(0, null);
+                    BufferedImage image = toBufferedImage(source);
+                    AvifMetadata metadata = keepMetadata ? extractMetadata(source, image) : null;
+                    // 在当前工作线程中编码，编解码线程仍按批量处理器的核心预算分配
+                    byte[] encoded = batch.encodeOnCurrentThread(image, options, metadata);
+                    writeAtomically(output, encoded);
+                    return new Result(input, output, inputSize, encoded.length,
+                        System.nanoTime() - start, false, null);
+                } finally {
+                    reader.dispose();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(input, output, inputSize, 0, System.nanoTime() - start, false, e);
+        } catch (Exception e) {
+            // Error（包括 OutOfMemoryError）不作为单个文件的失败，由 transcode 传播给调用方
+            return new Result(input, output, inputSize, 0, System.nanoTime() - start, false, e);
+        } finally {
+            if (reserved > 0) {
+                memory.release(reserved);
+            }
+        }
+    }
+
+    private static ImageReader readerFor(ImageInputStream stream, Path input) throws IOException {
+        if (stream == null) {
+            throw new IOException("Cannot open " + input);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format: " + input);
+        }
+        return readers.next();
+    }
+
+    private static BufferedImage toBufferedImage(IIOImage source) throws IOException {
+        if (source.getRenderedImage() instanceof BufferedImage) {
+            return (BufferedImage) source.getRenderedImage();
+        }
+        throw new IOException("Source image is not a BufferedImage");
+    }
+
+    /**
+     * 先写入同目录的临时文件再替换目标文件
+     */
+    private static void writeAtomically(Path output, byte[] data) throws IOException {
+        Path parent = output.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = Files.createTempFile(parent, output.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, data);
+            try {
+                Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 从源图片的元数据中提取 EXIF、ICC 色彩配置和 XMP
+     *
+     * <p>图片使用非 sRGB 的 ICC 色彩空间时，由编码器写入该色彩空间的配置。</p>
+     *
+     * @return 元数据，都没有时返回 null
+     */
+    static AvifMetadata extractMetadata(IIOImage source, BufferedImage image) {
+        return AvifMetadataConverter.convert(source.getMetadata(), image);
+    }
+
+    /**
+     * 收集已完成的结果，避免遍历大量文件时 futures 列表无限增长
+     */
+    private static void drainCompleted(List<CompletableFuture<Result>> futures,
+                                       SummaryBuilder summary, Listener listener) {
+        for (Iterator<CompletableFuture<Result>> it = futures.iterator(); it.hasNext(); ) {
+            CompletableFuture<Result> future = it.next();
+            if (future.isDone()) {
+                Result result = resultOf(future);
+                summary.add(result);
+                if (listener != null) {
+                    listener.fileCompleted(result);
+                }
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 取得转码结果，工作线程中发生的 Error 原样抛出并终止整个目录的转码
+     */
+    private static Result resultOf(CompletableFuture<Result> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 获取已注册 ImageIO 读取器支持的扩展名（不含 AVIF 自身）
+     */
+    private static Set<String> readableSuffixes() {
+        Set<String> suffixes = new HashSet<String>();
+        for (String suffix : ImageIO.getReaderFileSuffixes()) {
+            suffixes.add(suffix.toLowerCase(Locale.ROOT));
+        }
+        suffixes.remove("avif");
+        return suffixes;
+    }
+
+    private static String suffix(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return (dot < 0) ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 将相对输入路径映射到输出目录，替换扩展名为 .avif
+     */
+    static Path outputPath(Path relative, Path outputDir) {
+        String name = relative.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = (dot < 0) ? name : name.substring(0, dot);
+        Path parent = relative.getParent();
+        Path directory = (parent != null) ? outputDir.resolve(parent.toString()) : outputDir;
+        return directory.resolve(base + OUTPUT_SUFFIX);
+    }
+
+    /**
+     * 命令行入口：转换目录中的图片
+     *
+     * <pre>
+     * java -jar avif-imageio.jar [选项] &lt;输入目录&gt; &lt;输出目录&gt;
+     *   -q, --quality N     质量 0-100（默认 60）
+     *   -s, --speed N       编码速度 0-10（默认 6）
+     *   -j, --jobs N        并行数（默认所有可用核心）
+     *   -m, --max-memory N  在途内存上限，单位 MiB（默认最大堆的四分之一）
+     *   --lossless          无损编码
+     *   --no-metadata       不保留 EXIF、XMP 和 ICC
+     *   --overwrite         覆盖已存在的输出文件
+     * </pre>
+     *
+     * <p>失败的文件输出到标准错误，结束时输出吞吐统计。有文件失败时退出码为 1，参数错误时为 2。</p>
+     *
+     * @param args 命令行参数
+     */
+    public static void main(String[] args) {
+        int exitCode;
+        try {
+            exitCode = run(args, System.out, System.err);
+        } catch (IllegalArgumentException e) {
+            System.err.println("error: " + e.getMessage());
+            printUsage(System.err);
+            exitCode = 2;
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * 执行命令行转码
+     *
+     * @return 退出码
+     */
+    static int run(String[] args, final PrintStream out, final PrintStream err) {
+        Arguments arguments = Arguments.parse(args);
+        if (arguments.help) {
+            printUsage(out);
+            return 0;
+        }
+        if (!Files.isDirectory(arguments.inputDir)) {
+            throw new IllegalArgumentException("Not a directory: " + arguments.inputDir);
+        }
+        if (!Avif.isAvailable()) {
+            err.println("error: AVIF native library not available: " + Avif.getLoadError());
+            return 1;
+        }
+
+        try (AvifTranscoder transcoder = new AvifTranscoder(arguments.jobs, arguments.maxMemory);
+             AvifEncoderOptions options = new AvifEncoderOptions()) {
+            options.setQuality(arguments.quality);
+            options.setSpeed(arguments.speed);
+            options.setLossless(arguments.lossless);
+            transcoder.setKeepMetadata(arguments.keepMetadata);
+            transcoder.setOverwrite(arguments.overwrite);
+            Summary summary = transcoder.transcodeDirectory(arguments.inputDir, arguments.outputDir,
+                options, new Listener() {
+                    @Override
+                    public void fileCompleted(Result result) {
+                        if (result.getError() != null) {
+                            err.println(result.getInput() + ": " + result.getError());
+                        }
+                    }
+                });
+            out.println(summary);
+            return (summary.getFailed() > 0) ? 1 : 0;
+        } catch (IOException e) {
+            err.println("error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * 解析后的命令行参数
+     */
+    static final class Arguments {
+
+        int quality = AvifEncoderOptions.DEFAULT_QUALITY;
+        int speed = AvifEncoderOptions.DEFAULT_SPEED;
+        int jobs = AvifBatch.DEFAULT_CORE_BUDGET;
+        long maxMemory = DEFAULT_MAX_IN_FLIGHT_BYTES;
+        boolean lossless = false;
+        boolean keepMetadata = true;
+        boolean overwrite = false;
+        boolean help = false;
+        Path inputDir;
+        Path outputDir;
+
+        /**
+         * 解析命令行参数（不检查目录是否存在）
+         *
+         * @throws IllegalArgumentException 如果选项未知、取值无效或目录个数不是两个
+         */
+        static Arguments parse(String[] args) {
+            Arguments arguments = new Arguments();
+            List<String> paths = new ArrayList<String>();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("-q".equals(arg) || "--quality".equals(arg)) {
+                    arguments.quality = intArgument(args, ++i, arg);
+                } else if ("-s".equals(arg) || "--speed".equals(arg)) {
+                    arguments.speed = intArgument(args, ++i, arg);
+                } else if ("-j".equals(arg) || "--jobs".equals(arg)) {
+                    arguments.jobs = intArgument(args, ++i, arg);
+                } else if ("-m".equals(arg) || "--max-memory".equals(arg)) {
+                    arguments.maxMemory = intArgument(args, ++i, arg) * 1024L * 1024L;
+                } else if ("--lossless".equals(arg)) {
+                    arguments.lossless = true;
+                } else if ("--no-metadata".equals(arg)) {
+                    arguments.keepMetadata = false;
+                } else if ("--overwrite".equals(arg)) {
+                    arguments.overwrite = true;
+                } else if ("-h".equals(arg) || "--help".equals(arg)) {
+                    arguments.help = true;
+                    return arguments;
+                } else if (arg.startsWith("-")) {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                } else {
+                    paths.add(arg);
+                }
+            }
+            if (paths.size() != 2) {
+                throw new IllegalArgumentException("Expected an input and an output directory");
+            }
+            arguments.inputDir = Paths.get(paths.get(0));
+            arguments.outputDir = Paths.get(paths.get(1));
+            return arguments;
+        }
+
+        private static int intArgument(String[] args, int index, String option) {
+            if (index >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            try {
+                return Integer.parseInt(args[index]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + option + ": " + args[index]);
+            }
+        }
+    }
+
+    private static void printUsage(PrintStream out) {
+        out.println("Usage: java -jar avif-imageio.jar [options] <input-dir> <output-dir>");
+        out.println("  -q, --quality N     quality 0-100 (default " + AvifEncoderOptions.DEFAULT_QUALITY + ")");
+        out.println("  -s, --speed N       encoder speed 0-10 (default " + AvifEncoderOptions.DEFAULT_SPEED + ")");
+        out.println("  -j, --jobs N        parallel jobs (default " + AvifBatch.DEFAULT_CORE_BUDGET + ")");
+        out.println("  -m, --max-memory N  in-flight pixel memory in MiB (default "
+            + DEFAULT_MAX_IN_FLIGHT_BYTES / (1024 * 1024) + ")");
+        out.println("  --lossless          lossless encoding");
+        out.println("  --no-metadata       drop EXIF, XMP and ICC");
+        out.println("  --overwrite         overwrite existing output files");
+    }
+
+    /**
+     * 文件完成回调
+     */
+    public interface Listener {
+
+        /**
+         * 一个文件转码完成（成功、跳过或失败）
+         *
+         * @param result 转码结果
+         */
+        void fileCompleted(Result result);
+    }
+
+    /**
+     * 单个文件的转码结果
+     */
+    public static final class Result {
+
+        private final Path input;
+        private final Path output;
+        private final long inputSize;
+        private final long outputSize;
+        private final long elapsedNanos;
+        private final boolean skipped;
+        private final Throwable error;
+
+        Result(Path input, Path output, long inputSize, long outputSize, long elapsedNanos,
+               boolean skipped, Throwable error) {
+            this.input = input;
+            this.output = output;
+            this.inputSize = inputSize;
+            this.outputSize = outputSize;
+            this.elapsedNanos = elapsedNanos;
+            this.skipped = skipped;
+            this.error = error;
+        }
+
+        /**
+         * @return 输入文件
+         */
+        public Path getInput() {
+            return input;
+        }
+
+        /**
+         * @return 输出文件，遍历目录失败时为 null
+         */
+        public Path getOutput() {
+            return output;
+        }
+
+        /**
+         * @return 输入文件字节数
+         */
+        public long getInputSize() {
+            return inputSize;
+        }
+
+        /**
+         * @return 输出文件字节数，失败或跳过时为 0
+         */
+        public long getOutputSize() {
+            return outputSize;
+        }
+
+        /**
+         * @return 读取、编码和写入的总耗时（纳秒）
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return true 如果输出文件已存在而跳过
+         */
+        public boolean isSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return 失败原因，成功或跳过时为 null
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * @return true 如果成功写入输出文件
+         */
+        public boolean isSuccess() {
+            return error == null && !skipped;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) {
+                return input + ": " + error;
+            }
+            return input + (skipped ? ": skipped" : " -> " + output + " (" + outputSize + " bytes)");
+        }
+    }
+
+    /**
+     * 目录转码的汇总统计
+     */
+    public static final class Summary {
+
+        private final int succeeded;
+        private final int skipped;
+        private final int failed;
+        private final long inputBytes;
+        private final long outputBytes;
+        private final long elapsedNanos;
+
+        Summary(int succeeded, int skipped, int failed, long inputBytes, long outputBytes,
+                long elapsedNanos) {
+            this.succeeded = succeeded;
+            this.skipped = skipped;
+            this.failed = failed;
+            this.inputBytes = inputBytes;
+            this.outputBytes = outputBytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return 成功转码的文件数
+         */
+        public int getSucceeded() {
+            return succeeded;
+        }
+
+        /**
+         * @return 输出文件已存在而跳过的文件数
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return 失败的文件数
+         */
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return 成功转码的文件的输入总字节数
+         */
+        public long getInputBytes() {
+            return inputBytes;
+        }
+
+        /**
+         * @return 成功转码的文件的输出总字节数
+         */
+        public long getOutputBytes() {
+            return outputBytes;
+        }
+
+        /**
+         * @return 从开始遍历到所有文件完成的耗时（纳秒）
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return 每秒成功转码的文件数
+         */
+        public double getImagesPerSecond() {
+            return (elapsedNanos > 0) ? succeeded * 1e9 / elapsedNanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            double ratio = (inputBytes > 0) ? (double) outputBytes / inputBytes : 0;
+            return String.format(Locale.ROOT,
+                "%d converted, %d skipped, %d failed in %.1f s (%.1f images/s, %.1f MB/s in, size ratio %.3f)",
+                succeeded, skipped, failed, seconds, getImagesPerSecond(),
+                (seconds > 0) ? inputBytes / seconds / 1e6 : 0, ratio);
+        }
+    }
+
+    /**
+     * 线程安全地累计结果
+     */
+    private static final class SummaryBuilder {
+
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicLong inputBytes = new AtomicLong();
+        private final AtomicLong outputBytes = new AtomicLong();
+
+        void add(Result result) {
+            if (result.getError() != null) {
+                failed.incrementAndGet();
+            } else if (result.isSkipped()) {
+                skipped.incrementAndGet();
+            } else {
+                succeeded.incrementAndGet();
+                inputBytes.addAndGet(result.getInputSize());
+                outputBytes.addAndGet(result.getOutputSize());
+            }
+        }
+
+        Summary build(long elapsedNanos) {
+            return new Summary(succeeded.get(), skipped.get(), failed.get(),
+                inputBytes.get(), outputBytes.get(), elapsedNanos);
+        }
+    }
+
+    /**
+     * 创建守护工作线程
+     */
+    private static final class WorkerFactory implements ThreadFactory {
+
+        private final int transcoderId;
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        WorkerFactory(int transcoderId) {
+            this.transcoderId = transcoderId;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable,
+                "avif-transcoder-" + transcoderId + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
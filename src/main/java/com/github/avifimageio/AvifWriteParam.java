@@ -10,9 +10,19 @@ import java.util.Locale;
  */
 public class AvifWriteParam extends ImageWriteParam {
 
+    /** 默认动画帧时长（毫秒） */
+    public static final long DEFAULT_FRAME_DURATION_MILLIS = 100;
+
     private int speed = AvifEncoderOptions.DEFAULT_SPEED;
     private int bitDepth = AvifEncoderOptions.DEFAULT_BIT_DEPTH;
     private boolean lossless = false;
+    private int maxThreads = AvifEncoderOptions.DEFAULT_MAX_THREADS;
+    private int tileRowsLog2 = 0;
+    private int tileColsLog2 = 0;
+    private boolean autoTiling = false;
+    private int pixelFormat = AvifEncoderOptions.DEFAULT_PIXEL_FORMAT;
+    private long frameDurationMillis = DEFAULT_FRAME_DURATION_MILLIS;
+    private int keyframeInterval = 0;
 
     /**
      * 创建 AVIF 写入参数
@@ -103,4 +113,167 @@ public class AvifWriteParam extends ImageWriteParam {
     public void setLossless(boolean lossless) { 
         this.lossless = lossless; 
     }
+    
+    /**
+     * 获取编码线程数
+     * @return 编码线程数，{@link AvifEncoderOptions#THREADS_AUTO} 表示使用所有可用核心
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+    
+    /**
+     * 设置编码线程数
+     * @param maxThreads 编码线程数（默认 1，{@link AvifEncoderOptions#THREADS_AUTO} 表示使用所有可用核心）
+     * @throws IllegalArgumentException 如果线程数小于 0
+     */
+    public void setMaxThreads(int maxThreads) {
+        if (maxThreads < 0) {
+            throw new IllegalArgumentException("Max threads must be >= 0, got: " + maxThreads);
+        }
+        this.maxThreads = maxThreads;
+    }
+    
+    /**
+     * 获取 tile 行数以 2 为底的对数
+     * @return tile 行数的 log2 (0-6)
+     */
+    public int getTileRowsLog2() {
+        return tileRowsLog2;
+    }
+    
+    /**
+     * 设置 tile 行数以 2 为底的对数（仅在关闭自动分块时生效）
+     * @param tileRowsLog2 tile 行数的 log2 (0-6)
+     * @throws IllegalArgumentException 如果值超出范围
+     */
+    public void setTileRowsLog2(int tileRowsLog2) {
+        checkTilesLog2("Tile rows log2", tileRowsLog2);
+        this.tileRowsLog2 = tileRowsLog2;
+    }
+    
+    /**
+     * 获取 tile 列数以 2 为底的对数
+     * @return tile 列数的 log2 (0-6)
+     */
+    public int getTileColsLog2() {
+        return tileColsLog2;
+    }
+    
+    /**
+     * 设置 tile 列数以 2 为底的对数（仅在关闭自动分块时生效）
+     * @param tileColsLog2 tile 列数的 log2 (0-6)
+     * @throws IllegalArgumentException 如果值超出范围
+     */
+    public void setTileColsLog2(int tileColsLog2) {
+        checkTilesLog2("Tile cols log2", tileColsLog2);
+        this.tileColsLog2 = tileColsLog2;
+    }
+    
+    /**
+     * 是否自动分块
+     * @return true 如果启用自动分块
+     */
+    public boolean isAutoTiling() {
+        return autoTiling;
+    }
+    
+    /**
+     * 设置是否自动分块
+     * @param autoTiling true 由 libavif 按图片尺寸和线程数选择 tile 数（默认 false）
+     */
+    public void setAutoTiling(boolean autoTiling) {
+        this.autoTiling = autoTiling;
+    }
+    
+    /**
+     * 获取像素格式（色度采样方式）
+     * @return 像素格式常量 AvifEncoderOptions.PIXEL_FORMAT_*
+     */
+    public int getPixelFormat() {
+        return pixelFormat;
+    }
+    
+    /**
+     * 设置像素格式（色度采样方式）
+     * 
+     * <p>无损模式下写入器始终使用 4:4:4，忽略此设置。</p>
+     * 
+     * @param pixelFormat 像素格式常量 AvifEncoderOptions.PIXEL_FORMAT_*
+     * @throws IllegalArgumentException 如果像素格式无效
+     */
+    public void setPixelFormat(int pixelFormat) {
+        if (pixelFormat != AvifEncoderOptions.PIXEL_FORMAT_YUV444
+                && pixelFormat != AvifEncoderOptions.PIXEL_FORMAT_YUV422
+                && pixelFormat != AvifEncoderOptions.PIXEL_FORMAT_YUV420
+                && pixelFormat != AvifEncoderOptions.PIXEL_FORMAT_YUV400) {
+            throw new IllegalArgumentException("Invalid pixel format: " + pixelFormat);
+        }
+        this.pixelFormat = pixelFormat;
+    }
+    
+    /**
+     * 应用面向 Web 分发的快速预设
+     * 
+     * <p>使用 4:2:0 色度采样和编码速度 8，关闭无损模式，质量保持不变。
+     * 适合照片类内容，编码更快、文件更小。</p>
+     */
+    public void applyWebPreset() {
+        this.pixelFormat = AvifEncoderOptions.PIXEL_FORMAT_YUV420;
+        this.speed = 8;
+        this.lossless = false;
+    }
+    
+    /**
+     * 获取动画帧时长
+     * @return 帧时长（毫秒）
+     */
+    public long getFrameDurationMillis() {
+        return frameDurationMillis;
+    }
+    
+    /**
+     * 设置动画帧时长
+     * 
+     * <p>用于 {@link AvifImageWriter#writeToSequence}，每帧可使用不同的写入参数指定各自的时长。</p>
+     * 
+     * @param frameDurationMillis 帧时长（毫秒，默认 100）
+     * @throws IllegalArgumentException 如果帧时长不大于 0
+     */
+    public void setFrameDurationMillis(long frameDurationMillis) {
+        if (frameDurationMillis <= 0) {
+            throw new IllegalArgumentException("Frame duration must be > 0, got: " + frameDurationMillis);
+        }
+        this.frameDurationMillis = frameDurationMillis;
+    }
+    
+    /**
+     * 获取动画关键帧最大间隔
+     * @return 关键帧间隔（帧数），0 表示由编码器决定
+     */
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+    
+    /**
+     * 设置动画关键帧最大间隔
+     * 
+     * <p>较小的间隔便于随机访问帧，较大的间隔文件更小。</p>
+     * 
+     * @param keyframeInterval 关键帧间隔（帧数，默认 0 由编码器决定）
+     * @throws IllegalArgumentException 如果间隔小于 0
+     */
+    public void setKeyframeInterval(int keyframeInterval) {
+        if (keyframeInterval < 0) {
+            throw new IllegalArgumentException("Keyframe interval must be >= 0, got: " + keyframeInterval);
+        }
+        this.keyframeInterval = keyframeInterval;
+    }
+    
+    private static void checkTilesLog2(String name, int value) {
+        if (value < 0 || value > AvifEncoderOptions.MAX_TILES_LOG2) {
+            throw new IllegalArgumentException(name + " must be between 0 and "
+                + AvifEncoderOptions.MAX_TILES_LOG2 + ", got: " + value);
+        }
+    }
 }
@@ -0,0 +1,296 @@
+package com.github.avifimageio;
+
+import javax.imageio.ImageTypeSpecifier;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteOrder;
+
+/**
+ * 像素内存布局描述
+ *
+ * <p>描述 BufferedImage 底层数组中像素的排列方式，原生层据此选择对应的
+ * libavif RGB 格式，直接读写 Java 数组而无需中间缓冲区。</p>
+ */
+final class RasterLayout {
+
+    /** 像素格式，取值与 libavif 的 avifRGBFormat 一致 */
+    static final int FORMAT_RGB = 0;
+    static final int FORMAT_RGBA = 1;
+    static final int FORMAT_ARGB = 2;
+    static final int FORMAT_BGR = 3;
+    static final int FORMAT_BGRA = 4;
+    static final int FORMAT_ABGR = 5;
+    /** 单通道灰度（不是 avifRGBFormat 的取值，仅用于编码） */
+    static final int FORMAT_GRAY = -1;
+
+    /** 布局标志：Alpha 已预乘 */
+    static final int FLAG_PREMULTIPLIED = 1;
+    /** 布局标志：第 4 个通道是填充字节而非 Alpha */
+    static final int FLAG_IGNORE_ALPHA = 2;
+
+    private static final boolean LITTLE_ENDIAN =
+        ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    /** 底层数组（byte[]、short[] 或 int[]） */
+    final Object data;
+    /** 每个数组元素的字节数 */
+    final int bytesPerElement;
+    /** 第一个像素在数组中的偏移量（以元素为单位） */
+    final int offset;
+    /** 行跨度（以元素为单位） */
+    final int scanlineStride;
+    final int format;
+    /** 每个通道的位数（8 或 16） */
+    final int depth;
+    final int flags;
+    final int width;
+    final int height;
+
+    private RasterLayout(Object data, int bytesPerElement, int offset, int scanlineStride,
+                         int format, int depth, int flags, int width, int height) {
+        this.data = data;
+        this.bytesPerElement = bytesPerElement;
+        this.offset = offset;
+        this.scanlineStride = scanlineStride;
+        this.format = format;
+        this.depth = depth;
+        this.flags = flags;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * 16 位每通道的 sRGB 图片类型（DataBufferUShort，RGB 或 RGBA 交错存储）
+     *
+     * @param hasAlpha 是否包含 Alpha 通道
+     * @return 图片类型
+     */
+    static ImageTypeSpecifier ushortType(boolean hasAlpha) {
+        int[] bandOffsets = hasAlpha ? new int[]{0, 1, 2, 3} : new int[]{0, 1, 2};
+        return ImageTypeSpecifier.createInterleaved(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+            bandOffsets, DataBuffer.TYPE_USHORT, hasAlpha, false);
+    }
+
+    /**
+     * 为紧密排列的 ARGB int 数组（0xAARRGGBB）创建布局
+     */
+    static RasterLayout ofArgbPixels(int[] pixels, int width, int height) {
+        int format = LITTLE_ENDIAN ? FORMAT_BGRA : FORMAT_ARGB;
+        return new RasterLayout(pixels, 4, 0, width, format, 8, 0, width, height);
+    }
+
+    /**
+     * 分析 sRGB 图片的底层布局
+     *
+     * <p>原生层按 sRGB 解释样本值，其他 RGB 色彩空间（线性 RGB、带 ICC 配置的色彩空间）
+     * 的图片不能直接访问，参见 {@link #ofProfiled}。</p>
+     *
+     * @param image 图片
+     * @return 像素布局，如果不是 sRGB 图片或存储方式无法被原生层直接访问则返回 null
+     */
+    static RasterLayout of(BufferedImage image) {
+        if (!image.getColorModel().getColorSpace().isCS_sRGB()) {
+            return null;
+        }
+        return rgbLayout(image);
+    }
+
+    /**
+     * 分析使用其他 ICC 色彩空间的 RGB 或灰度图片的底层布局（仅用于编码）
+     *
+     * <p>样本值保持在图片自身的色彩空间中，编码时必须同时写入该色彩空间的 ICC 配置。</p>
+     *
+     * @param image 图片
+     * @return 像素布局，如果色彩空间不是 ICC 色彩空间、已是 sRGB/标准灰度，
+     *         或存储方式无法被原生层直接访问则返回 null
+     */
+    static RasterLayout ofProfiled(BufferedImage image) {
+        ColorSpace cs = image.getColorModel().getColorSpace();
+        if (!(cs instanceof ICC_ColorSpace) || cs.isCS_sRGB() || isStandardGray(cs)) {
+            return null;
+        }
+        if (cs.getType() == ColorSpace.TYPE_RGB) {
+            return rgbLayout(image);
+        }
+        if (cs.getType() == ColorSpace.TYPE_GRAY) {
+            return grayLayout(image);
+        }
+        return null;
+    }
+
+    private static RasterLayout rgbLayout(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        SampleModel sm = raster.getSampleModel();
+        ColorModel cm = image.getColorModel();
+        if (buffer.getNumBanks() != 1 || cm.getColorSpace().getType() != ColorSpace.TYPE_RGB) {
+            return null;
+        }
+
+        int x0 = -raster.getSampleModelTranslateX();
+        int y0 = -raster.getSampleModelTranslateY();
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        boolean premultiplied = image.isAlphaPremultiplied();
+
+        if (buffer instanceof DataBufferInt && sm instanceof SinglePixelPackedSampleModel) {
+            SinglePixelPackedSampleModel sppsm = (SinglePixelPackedSampleModel) sm;
+            int format = packedFormat(sppsm.getBitMasks());
+            if (format < 0) {
+                return null;
+            }
+            int stride = sppsm.getScanlineStride();
+            int offset = buffer.getOffset() + y0 * stride + x0;
+            int flags = (sppsm.getNumBands() == 3) ? FLAG_IGNORE_ALPHA : 0;
+            if (premultiplied) {
+                flags |= FLAG_PREMULTIPLIED;
+            }
+            return new RasterLayout(((DataBufferInt) buffer).getData(), 4, offset, stride,
+                format, 8, flags, width, height);
+        }
+
+        boolean bytes = buffer instanceof DataBufferByte;
+        boolean ushorts = buffer instanceof DataBufferUShort;
+        if ((bytes || ushorts) && sm instanceof ComponentSampleModel) {
+            int bits = ushorts ? 16 : 8;
+            for (int size : cm.getComponentSize()) {
+                if (size != bits) {
+                    return null;
+                }
+            }
+            ComponentSampleModel csm = (ComponentSampleModel) sm;
+            int format = interleavedFormat(csm.getPixelStride(), csm.getBandOffsets());
+            if (format < 0) {
+                return null;
+            }
+            int stride = csm.getScanlineStride();
+            int offset = buffer.getOffset() + y0 * stride + x0 * csm.getPixelStride()
+                + min(csm.getBandOffsets());
+            int flags = premultiplied ? FLAG_PREMULTIPLIED : 0;
+            if (ushorts) {
+                return new RasterLayout(((DataBufferUShort) buffer).getData(), 2, offset, stride,
+                    format, 16, flags, width, height);
+            }
+            return new RasterLayout(((DataBufferByte) buffer).getData(), 1, offset, stride,
+                format, 8, flags, width, height);
+        }
+
+        return null;
+    }
+
+    /**
+     * 分析单通道灰度图片（如 TYPE_BYTE_GRAY、TYPE_USHORT_GRAY）的底层布局
+     *
+     * <p>灰度布局仅用于编码，灰度值直接写入 4:0:0 图片的亮度平面。
+     * 只接受标准灰度色彩空间（{@link ColorSpace#CS_GRAY}），其他灰度色彩空间参见 {@link #ofProfiled}。</p>
+     *
+     * @param image 图片
+     * @return 像素布局，如果不是可直接访问的标准单通道灰度图片则返回 null
+     */
+    static RasterLayout ofGray(BufferedImage image) {
+        if (!isStandardGray(image.getColorModel().getColorSpace())) {
+            return null;
+        }
+        return grayLayout(image);
+    }
+
+    private static boolean isStandardGray(ColorSpace cs) {
+        return cs == ColorSpace.getInstance(ColorSpace.CS_GRAY);
+    }
+
+    private static RasterLayout grayLayout(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        SampleModel sm = raster.getSampleModel();
+        ColorModel cm = image.getColorModel();
+        if (buffer.getNumBanks() != 1 || cm.getColorSpace().getType() != ColorSpace.TYPE_GRAY
+                || cm.hasAlpha() || !(sm instanceof ComponentSampleModel) || sm.getNumBands() != 1) {
+            return null;
+        }
+        boolean bytes = buffer instanceof DataBufferByte;
+        boolean ushorts = buffer instanceof DataBufferUShort;
+        int bits = ushorts ? 16 : 8;
+        if (!(bytes || ushorts) || cm.getComponentSize(0) != bits) {
+            return null;
+        }
+        ComponentSampleModel csm = (ComponentSampleModel) sm;
+        if (csm.getPixelStride() != 1) {
+            return null;
+        }
+        int x0 = -raster.getSampleModelTranslateX();
+        int y0 = -raster.getSampleModelTranslateY();
+        int stride = csm.getScanlineStride();
+        int offset = buffer.getOffset() + y0 * stride + x0 + csm.getBandOffsets()[0];
+        Object data = ushorts ? ((DataBufferUShort) buffer).getData()
+            : ((DataBufferByte) buffer).getData();
+        return new RasterLayout(data, ushorts ? 2 : 1, offset, stride, FORMAT_GRAY, bits, 0,
+            raster.getWidth(), raster.getHeight());
+    }
+
+    /**
+     * 根据 R/G/B(/A) 位掩码判断 int 打包像素在内存中的字节顺序
+     */
+    private static int packedFormat(int[] masks) {
+        if (masks.length != 3 && masks.length != 4) {
+            return -1;
+        }
+        if (masks.length == 4 && masks[3] != 0xFF000000) {
+            return -1;
+        }
+        if (masks[0] == 0x00FF0000 && masks[1] == 0x0000FF00 && masks[2] == 0x000000FF) {
+            // 0xAARRGGBB
+            return LITTLE_ENDIAN ? FORMAT_BGRA : FORMAT_ARGB;
+        }
+        if (masks[0] == 0x000000FF && masks[1] == 0x0000FF00 && masks[2] == 0x00FF0000) {
+            // 0xAABBGGRR
+            return LITTLE_ENDIAN ? FORMAT_RGBA : FORMAT_ABGR;
+        }
+        return -1;
+    }
+
+    /**
+     * 根据交错存储的通道偏移判断字节顺序（通道顺序为 R, G, B[, A]）
+     */
+    private static int interleavedFormat(int pixelStride, int[] bandOffsets) {
+        if (pixelStride != bandOffsets.length) {
+            return -1;
+        }
+        int base = min(bandOffsets);
+        char[] order = new char[pixelStride];
+        String channels = "RGBA";
+        for (int band = 0; band < bandOffsets.length; band++) {
+            int pos = bandOffsets[band] - base;
+            if (pos < 0 || pos >= pixelStride || order[pos] != 0) {
+                return -1;
+            }
+            order[pos] = channels.charAt(band);
+        }
+        switch (new String(order)) {
+            case "RGB":  return FORMAT_RGB;
+            case "BGR":  return FORMAT_BGR;
+            case "RGBA": return FORMAT_RGBA;
+            case "ARGB": return FORMAT_ARGB;
+            case "BGRA": return FORMAT_BGRA;
+            case "ABGR": return FORMAT_ABGR;
+            default:     return -1;
+        }
+    }
+
+    private static int min(int[] values) {
+        int min = Integer.MAX_VALUE;
+        for (int v : values) {
+            min = Math.min(min, v);
+        }
+        return min;
+    }
+}
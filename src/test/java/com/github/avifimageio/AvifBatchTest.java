@@ -0,0 +1,50 @@
+package com.github.avifimageio;
+
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.IntRange;
+import net.jqwik.api.constraints.LongRange;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AvifBatchTest {
+
+    @Test
+    void smallImagesUseOneThread() {
+        assertThat(AvifBatch.threadsFor(0, AvifBatch.DECODE_PIXELS_PER_THREAD, 8)).isEqualTo(1);
+        assertThat(AvifBatch.threadsFor(256 * 256, AvifBatch.DECODE_PIXELS_PER_THREAD, 8)).isEqualTo(1);
+        assertThat(AvifBatch.threadsFor(AvifBatch.DECODE_PIXELS_PER_THREAD,
+            AvifBatch.DECODE_PIXELS_PER_THREAD, 8)).isEqualTo(1);
+    }
+
+    @Test
+    void largeImagesRoundUpToBudget() {
+        long perThread = AvifBatch.ENCODE_PIXELS_PER_THREAD;
+        assertThat(AvifBatch.threadsFor(perThread + 1, perThread, 8)).isEqualTo(2);
+        assertThat(AvifBatch.threadsFor(3 * perThread, perThread, 8)).isEqualTo(3);
+        assertThat(AvifBatch.threadsFor(4000L * 3000, perThread, 8)).isEqualTo(8);
+        assertThat(AvifBatch.threadsFor(4000L * 3000, perThread, 1)).isEqualTo(1);
+    }
+
+    @Test
+    void maximumImageSizeDoesNotOverflow() {
+        long pixels = (long) Integer.MAX_VALUE * Integer.MAX_VALUE;
+        assertThat(AvifBatch.threadsFor(pixels, AvifBatch.ENCODE_PIXELS_PER_THREAD, 16)).isEqualTo(16);
+    }
+
+    @Property
+    void threadsStayWithinBudget(@ForAll @LongRange(min = 0, max = 1L << 40) long pixels,
+                                 @ForAll @LongRange(min = 1, max = 1L << 24) long perThread,
+                                 @ForAll @IntRange(min = 1, max = 256) int budget) {
+        int threads = AvifBatch.threadsFor(pixels, perThread, budget);
+        assertThat(threads).isBetween(1, budget);
+        // 未到上限时每个线程处理的像素数不超过 perThread，且少一个线程就会超过
+        if (threads < budget) {
+            assertThat((long) threads * perThread).isGreaterThanOrEqualTo(pixels);
+            if (threads > 1) {
+                assertThat((long) (threads - 1) * perThread).isLessThan(pixels);
+            }
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.github.avifimageio;
+
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.IntRange;
+import net.jqwik.api.constraints.Size;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AvifContainerTest {
+
+    private static final byte[] MDAT = box("mdat", new byte[32]);
+
+    @Test
+    void parsesPrimaryItem() throws IOException {
+        byte[] data = avif(ftyp("avif", "mif1", "miaf"), meta(0, 0, 0), MDAT);
+        AvifContainer container = AvifContainer.parse(ByteBuffer.wrap(data));
+        assertThat(container.isAvif()).isTrue();
+        assertThat(container.majorBrand).isEqualTo(AvifContainer.fourcc("avif"));
+        assertThat(container.compatibleBrands).containsExactly(
+            AvifContainer.fourcc("mif1"), AvifContainer.fourcc("miaf"));
+        assertImageInfo(container.imageInfo(), 640, 480, 10);
+        assertThat(container.primaryItemId).isEqualTo(1);
+        assertThat(container.primaryItemIdSize).isEqualTo(2);
+        // 偏移量指向 pitm 中的 item_ID 字段
+        assertThat(data[(int) container.primaryItemIdOffset]).isEqualTo((byte) 0);
+        assertThat(data[(int) container.primaryItemIdOffset + 1]).isEqualTo((byte) 1);
+    }
+
+    @Test
+    void parsesVersion1Ipma() throws IOException {
+        // 版本 1 的 ipma 使用 32 位 item_ID，flags 的最低位表示 16 位属性编号
+        for (int flags = 0; flags <= 1; flags++) {
+            AvifContainer container = AvifContainer.parse(
+                ByteBuffer.wrap(avif(ftyp("avif", "mif1"), meta(1, flags, 0), MDAT)));
+            assertImageInfo(container.imageInfo(), 640, 480, 10);
+        }
+    }
+
+    @Test
+    void parsesVersion1Pitm() throws IOException {
+        byte[] data = avif(ftyp("avif", "mif1"), meta(1, 0, 1), MDAT);
+        AvifContainer container = AvifContainer.parse(ByteBuffer.wrap(data));
+        assertThat(container.primaryItemId).isEqualTo(1);
+        assertThat(container.primaryItemIdSize).isEqualTo(4);
+        int offset = (int) container.primaryItemIdOffset;
+        assertThat(Arrays.copyOfRange(data, offset, offset + 4)).containsExactly(0, 0, 0, 1);
+        assertThat(container.primaryItemPatch(7)).containsExactly(0, 0, 0, 7);
+        assertImageInfo(container.imageInfo(), 640, 480, 10);
+    }
+
+    @Test
+    void parsesLargeSizeBoxes() throws IOException {
+        // size 为 1 时长度在其后的 64 位 largesize 字段中，顶层和子 box 都支持
+        byte[] data = avif(largeBox("ftyp", ftypPayload("avif", "mif1")),
+            meta(0, 0, 0, true), largeBox("mdat", new byte[16]));
+        assertImageInfo(AvifContainer.parse(ByteBuffer.wrap(data)).imageInfo(), 640, 480, 10);
+    }
+
+    @Test
+    void parsesBoxesExtendingToEnd() throws IOException {
+        // size 为 0 的 box 延伸到数据末尾
+        byte[] meta = meta(0, 0, 0);
+        byte[] openMeta = meta.clone();
+        openMeta[0] = openMeta[1] = openMeta[2] = openMeta[3] = 0;
+        assertImageInfo(AvifContainer.parse(ByteBuffer.wrap(avif(ftyp("avif"), openMeta)))
+            .imageInfo(), 640, 480, 10);
+
+        byte[] openMdat = MDAT.clone();
+        openMdat[0] = openMdat[1] = openMdat[2] = openMdat[3] = 0;
+        assertImageInfo(AvifContainer.parse(ByteBuffer.wrap(avif(ftyp("mif1", "avif"), meta, openMdat)))
+            .imageInfo(), 640, 480, 10);
+    }
+
+    @Test
+    void streamParseMatchesBufferAndRestoresPosition() throws IOException {
+        byte[] data = avif(new byte[5], ftyp("avif", "mif1"), meta(1, 1, 1), MDAT);
+        try (ImageInputStream stream = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+            stream.seek(5);
+            AvifContainer container = AvifContainer.parse(stream);
+            assertThat(stream.getStreamPosition()).isEqualTo(5);
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            buffer.position(5);
+            AvifContainer expected = AvifContainer.parse(buffer);
+            assertThat(buffer.position()).isEqualTo(5);
+            assertThat(container.primaryItemIdOffset).isEqualTo(expected.primaryItemIdOffset);
+            assertImageInfo(container.imageInfo(), 640, 480, 10);
+        }
+    }
+
+    @Test
+    void rejectsChildBoxLargerThanParent() {
+        byte[] data = avif(ftyp("avif"), meta(0, 0, 0), MDAT);
+        int ispe = indexOf(data, "ispe") - 4;
+        data[ispe + 3] = (byte) 0x7F;
+        assertThatThrownBy(() -> AvifContainer.parse(ByteBuffer.wrap(data)))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("ispe");
+    }
+
+    @Test
+    void rejectsBoxSmallerThanHeader() {
+        // 主品牌不是 avif 时 meta 之后继续查找 moov，会读到 mdat 的头部
+        byte[] data = avif(ftyp("mif1", "avif"), meta(0, 0, 0), MDAT);
+        int mdat = indexOf(data, "mdat") - 4;
+        data[mdat + 3] = 4;
+        assertThatThrownBy(() -> AvifContainer.parse(ByteBuffer.wrap(data)))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("Invalid box size");
+    }
+
+    @Test
+    void rejectsTruncatedIpma() {
+        // entry_count 声明了两项，只有一项的数据
+        byte[] data = avif(ftyp("avif"), meta(0, 0, 0), MDAT);
+        int entryCount = indexOf(data, "ipma") + 8;
+        data[entryCount + 3] = 2;
+        assertThatThrownBy(() -> AvifContainer.parse(ByteBuffer.wrap(data)))
+            .isInstanceOf(IOException.class)
+            .hasMessage("Truncated AVIF container");
+    }
+
+    @Property
+    void truncatedDataNeverThrowsUnexpectedException(@ForAll @IntRange(min = 0, max = 400) int length) {
+        byte[] data = avif(ftyp("avif", "mif1"), meta(1, 1, 1), MDAT);
+        byte[] truncated = Arrays.copyOf(data, Math.min(length, data.length));
+        assertParsesOrThrowsIOException(truncated);
+    }
+
+    @Property(tries = 2000)
+    void mutatedDataNeverThrowsUnexpectedException(
+            @ForAll @Size(max = 8) List<@IntRange(min = 0, max = 399) Integer> positions,
+            @ForAll @Size(max = 8) List<Byte> values,
+            @ForAll boolean largeIds) {
+        byte[] data = avif(ftyp("avif", "mif1"), meta(largeIds ? 1 : 0, largeIds ? 1 : 0, 0), MDAT);
+        for (int i = 0; i < Math.min(positions.size(), values.size()); i++) {
+            data[positions.get(i) % data.length] = values.get(i);
+        }
+        assertParsesOrThrowsIOException(data);
+    }
+
+    @Property
+    void randomDataNeverThrowsUnexpectedException(@ForAll @Size(max = 256) byte[] data) {
+        assertParsesOrThrowsIOException(data);
+    }
+
+    @Test
+    void brandCombinations() throws IOException {
+        AvifImageReaderSpi spi = new AvifImageReaderSpi();
+        assertThat(canDecode(spi, avif(ftyp("avif"), MDAT))).isTrue();
+        assertThat(canDecode(spi, avif(ftyp("avis", "msf1"), MDAT))).isTrue();
+        // 主品牌为通用品牌、只在兼容品牌中声明 AVIF
+        assertThat(canDecode(spi, avif(ftyp("mif1", "miaf", "avif"), MDAT))).isTrue();
+        assertThat(canDecode(spi, avif(ftyp("msf1", "avis"), MDAT))).isTrue();
+        assertThat(canDecode(spi, avif(ftyp("mif1", "heic"), MDAT))).isFalse();
+        assertThat(canDecode(spi, avif(ftyp("heic", "mif1"), MDAT))).isFalse();
+        // minor_version 不是品牌
+        assertThat(canDecode(spi, avif(box("ftyp", ascii("mif1avif")), MDAT))).isFalse();
+        // ftyp 必须是第一个 box
+        assertThat(canDecode(spi, avif(MDAT, ftyp("avif")))).isFalse();
+        assertThat(canDecode(spi, new byte[] {0, 0, 0, 20, 'f', 't', 'y', 'p', 'a', 'v'})).isFalse();
+        assertThat(canDecode(spi, new byte[0])).isFalse();
+        assertThat(spi.canDecodeInput("not a stream")).isFalse();
+
+        assertThat(AvifContainer.parse(ByteBuffer.wrap(avif(ftyp("mif1", "heic"), MDAT))).isAvif())
+            .isFalse();
+        assertThat(AvifContainer.parse(ByteBuffer.wrap(avif(ftyp("mif1", "avis"), MDAT))).isAvif())
+            .isTrue();
+        assertThat(AvifContainer.parse(ByteBuffer.wrap(MDAT)).isAvif()).isFalse();
+    }
+
+    @Test
+    void canDecodeInputResetsStream() throws IOException {
+        byte[] data = avif(ftyp("avif"), MDAT);
+        try (ImageInputStream stream = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+            stream.seek(3);
+            new AvifImageReaderSpi().canDecodeInput(stream);
+            assertThat(stream.getStreamPosition()).isEqualTo(3);
+        }
+    }
+
+    private static void assertParsesOrThrowsIOException(byte[] data) {
+        try {
+            AvifContainer.parse(ByteBuffer.wrap(data));
+        } catch (IOException e) {
+            // 无效数据只能以 IOException 报告
+        }
+        try (ImageInputStream stream = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+            AvifContainer.parse(stream);
+        } catch (IOException e) {
+            // 同上
+        }
+        try (ImageInputStream stream = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+            new AvifImageReaderSpi().canDecodeInput(stream);
+        } catch (IOException e) {
+            // 同上
+        }
+    }
+
+    private static boolean canDecode(AvifImageReaderSpi spi, byte[] data) throws IOException {
+        try (ImageInputStream stream = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+            return spi.canDecodeInput(stream);
+        }
+    }
+
+    private static void assertImageInfo(ImageInfo info, int width, int height, int bitDepth) {
+        assertThat(info).isNotNull();
+        assertThat(info.width()).isEqualTo(width);
+        assertThat(info.height()).isEqualTo(height);
+        assertThat(info.bitDepth()).isEqualTo(bitDepth);
+        assertThat(info.frameCount()).isEqualTo(1);
+        assertThat(info.hasAlpha()).isFalse();
+    }
+
+    /**
+     * 单个 av01 项的 meta box：ispe 640x480、pixi 10 位、av1C 8 位（pixi 优先）
+     *
+     * @param ipmaVersion ipma 版本（1 时 item_ID 为 32 位）
+     * @param ipmaFlags ipma flags（最低位为 1 时属性编号为 16 位）
+     * @param pitmVersion pitm 版本（1 时 item_ID 为 32 位）
+     */
+    private static byte[] meta(int ipmaVersion, int ipmaFlags, int pitmVersion) {
+        return meta(ipmaVersion, ipmaFlags, pitmVersion, false);
+    }
+
+    private static byte[] meta(int ipmaVersion, int ipmaFlags, int pitmVersion, boolean largeSize) {
+        byte[] ispe = fullBox("ispe", 0, 0, u32(640), u32(480));
+        byte[] ipco = box("ipco",
+            largeSize ? largeBox("ispe", concat(u32(0), u32(640), u32(480))) : ispe,
+            fullBox("pixi", 0, 0, new byte[] {3, 10, 10, 10}),
+            box("av1C", new byte[] {(byte) 0x81, 0, 0, 0}));
+        ByteArrayOutputStream ipma = new ByteArrayOutputStream();
+        write(ipma, u32(1));
+        write(ipma, (ipmaVersion < 1) ? u16(1) : u32(1));
+        ipma.write(3);
+        for (int index = 1; index <= 3; index++) {
+            write(ipma, ((ipmaFlags & 1) != 0) ? u16(0x8000 | index) : new byte[] {(byte) (0x80 | index)});
+        }
+        byte[] iinf = fullBox("iinf", 0, 0, u16(1),
+            fullBox("infe", 2, 0, u16(1), u16(0), ascii("av01"), new byte[1]));
+        return fullBox("meta", 0, 0,
+            fullBox("hdlr", 0, 0, u32(0), ascii("pict"), new byte[13]),
+            fullBox("pitm", pitmVersion, 0, (pitmVersion == 0) ? u16(1) : u32(1)),
+            iinf,
+            box("iprp", ipco, fullBox("ipma", ipmaVersion, ipmaFlags, ipma.toByteArray())));
+    }
+
+    private static byte[] ftyp(String major, String... compatible) {
+        return box("ftyp", ftypPayload(major, compatible));
+    }
+
+    private static byte[] ftypPayload(String major, String... compatible) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        write(payload, ascii(major));
+        write(payload, u32(0));
+        for (String brand : compatible) {
+            write(payload, ascii(brand));
+        }
+        return payload.toByteArray();
+    }
+
+    private static byte[] box(String type, byte[]... content) {
+        byte[] payload = concat(content);
+        return concat(u32(8 + payload.length), ascii(type), payload);
+    }
+
+    private static byte[] largeBox(String type, byte[] payload) {
+        return concat(u32(1), ascii(type), u64(16 + payload.length), payload);
+    }
+
+    private static byte[] fullBox(String type, int version, int flags, byte[]... content) {
+        return box(type, concat(u32((version << 24) | flags), concat(content)));
+    }
+
+    private static byte[] avif(byte[]... boxes) {
+        return concat(boxes);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            write(out, part);
+        }
+        return out.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] data) {
+        out.write(data, 0, data.length);
+    }
+
+    private static byte[] u16(int value) {
+        return ByteBuffer.allocate(2).putShort((short) value).array();
+    }
+
+    private static byte[] u32(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+
+    private static byte[] u64(long value) {
+        return ByteBuffer.allocate(8).putLong(value).array();
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static int indexOf(byte[] data, String type) {
+        byte[] pattern = ascii(type);
+        outer:
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        throw new IllegalArgumentException("Box not found: " + type);
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.avifimageio;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
+
+class AvifEncoderSessionTest {
+
+    private static final int SIZE = 16;
+
+    @Test
+    void grayFramesUseColorLayout() {
+        BufferedImage gray = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        assertThat(AvifEncoderSession.layoutOf(gray).format).isNotEqualTo(RasterLayout.FORMAT_GRAY);
+        BufferedImage ushortGray = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_USHORT_GRAY);
+        assertThat(AvifEncoderSession.layoutOf(ushortGray).format)
+            .isNotEqualTo(RasterLayout.FORMAT_GRAY);
+    }
+
+    @Test
+    void mixedFrameTypesAfterTranslucentFrame() throws IOException {
+        assumeThat(Avif.isAvailable()).isTrue();
+        BufferedImage[] frames = {
+            filled(BufferedImage.TYPE_INT_ARGB, 0x80FF0000),
+            filled(BufferedImage.TYPE_INT_RGB, 0xFF00FF00),
+            filled(BufferedImage.TYPE_3BYTE_BGR, 0xFF0000FF),
+            filled(BufferedImage.TYPE_BYTE_GRAY, 0xFFFFFFFF),
+        };
+        int[] alphas = decodeAlphas(encode(frames));
+        assertThat(alphas).hasSize(frames.length);
+        assertThat(alphas[0]).isBetween(0x70, 0x90);
+        // 不带 Alpha 的帧按完全不透明编码
+        assertThat(alphas[1]).isEqualTo(0xFF);
+        assertThat(alphas[2]).isEqualTo(0xFF);
+        assertThat(alphas[3]).isEqualTo(0xFF);
+    }
+
+    @Test
+    void mixedFrameTypesAfterGrayFrame() throws IOException {
+        assumeThat(Avif.isAvailable()).isTrue();
+        BufferedImage[] frames = {
+            filled(BufferedImage.TYPE_BYTE_GRAY, 0xFF808080),
+            filled(BufferedImage.TYPE_INT_ARGB, 0x80FF0000),
+            filled(BufferedImage.TYPE_INT_RGB, 0xFF00FF00),
+        };
+        byte[] avif = encode(frames);
+        try (AvifFrameSequence sequence = Avif.openSequence(avif, 0, avif.length, null)) {
+            assertThat(sequence.getInfo().frameCount()).isEqualTo(frames.length);
+            assertThat(sequence.getInfo().hasAlpha()).isFalse();
+            sequence.nextFrame();
+            // 第一帧为灰度时后续帧仍保留颜色
+            int red = sequence.nextFrame().image().pixels()[0];
+            assertThat((red >> 16) & 0xFF).isGreaterThan(0xC0);
+            assertThat(red & 0xFF).isLessThan(0x40);
+        }
+    }
+
+    private static BufferedImage filled(int type, int argb) {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, type);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                image.setRGB(x, y, argb);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage[] frames) throws IOException {
+        try (AvifEncoderOptions options = new AvifEncoderOptions()) {
+            options.setSpeed(10);
+            try (AvifEncoderSession session = Avif.openEncoderSession(options)) {
+                for (BufferedImage frame : frames) {
+                    session.addFrame(frame, 100);
+                }
+                return session.finish();
+            }
+        }
+    }
+
+    private static int[] decodeAlphas(byte[] avif) throws IOException {
+        try (AvifFrameSequence sequence = Avif.openSequence(avif, 0, avif.length, null)) {
+            int[] alphas = new int[sequence.getInfo().frameCount()];
+            for (int i = 0; i < alphas.length; i++) {
+                alphas[i] = sequence.nextFrame().image().pixels()[0] >>> 24;
+            }
+            return alphas;
+        }
+    }
+}
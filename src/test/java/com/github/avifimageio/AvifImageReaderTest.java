@@ -0,0 +1,164 @@
+package com.github.avifimageio;
+
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.IntRange;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageReadParam;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AvifImageReaderTest {
+
+    private static final int WIDTH = 23;
+    private static final int HEIGHT = 17;
+    private static final int UNWRITTEN = 0x12345678;
+
+    /**
+     * 源区域、下采样、下采样偏移和目标偏移的组合与 getSubimage 后逐点下采样的结果一致
+     */
+    @Property
+    void regionMatchesSubimageThenSubsample(@ForAll @IntRange(min = 0, max = 22) int srcX,
+                                            @ForAll @IntRange(min = 0, max = 16) int srcY,
+                                            @ForAll @IntRange(min = 1, max = 25) int srcWidth,
+                                            @ForAll @IntRange(min = 1, max = 19) int srcHeight,
+                                            @ForAll @IntRange(min = 1, max = 5) int xSub,
+                                            @ForAll @IntRange(min = 1, max = 5) int ySub,
+                                            @ForAll @IntRange(min = 0, max = 4) int xOffset,
+                                            @ForAll @IntRange(min = 0, max = 4) int yOffset,
+                                            @ForAll @IntRange(min = -3, max = 8) int destX,
+                                            @ForAll @IntRange(min = -3, max = 8) int destY,
+                                            @ForAll @IntRange(min = 1, max = 12) int destWidth,
+                                            @ForAll @IntRange(min = 1, max = 12) int destHeight) {
+        ImageReadParam param = new ImageReadParam();
+        param.setSourceRegion(new Rectangle(srcX, srcY, srcWidth, srcHeight));
+        // 下采样偏移必须小于下采样步长和源区域尺寸
+        param.setSourceSubsampling(xSub, ySub, Math.min(xOffset, Math.min(xSub, srcWidth) - 1),
+            Math.min(yOffset, Math.min(ySub, srcHeight) - 1));
+        param.setDestinationOffset(new Point(destX, destY));
+
+        BufferedImage source = source();
+        BufferedImage expected = reference(source, param, destWidth, destHeight);
+        BufferedImage actual = blank(destWidth, destHeight);
+
+        Rectangle srcRegion = new Rectangle();
+        Rectangle destRegion = new Rectangle();
+        try {
+            AvifImageReader.computeDecodeRegions(param, WIDTH, HEIGHT, actual, srcRegion, destRegion);
+        } catch (IllegalArgumentException e) {
+            // 源区域或目标区域为空：参考实现也不应写入任何像素
+            assertSamePixels(expected, actual);
+            return;
+        }
+        if (!destRegion.isEmpty()) {
+            decodeRegion(source, srcRegion, xSub, ySub, actual, destRegion.x, destRegion.y);
+        }
+        assertSamePixels(expected, actual);
+    }
+
+    @Test
+    void tightensSourceRegionToDestination() {
+        ImageReadParam param = new ImageReadParam();
+        param.setSourceSubsampling(3, 2, 0, 0);
+        BufferedImage destination = blank(4, 5);
+        Rectangle srcRegion = new Rectangle();
+        Rectangle destRegion = new Rectangle();
+        AvifImageReader.computeDecodeRegions(param, WIDTH, HEIGHT, destination, srcRegion, destRegion);
+        assertThat(destRegion).isEqualTo(new Rectangle(0, 0, 4, 5));
+        // 目标只容纳 4 列、5 行，源区域只保留会被采样的 (4 - 1) * 3 + 1 列和 (5 - 1) * 2 + 1 行
+        assertThat(srcRegion).isEqualTo(new Rectangle(0, 0, 10, 9));
+    }
+
+    @Test
+    void sourceRegionOutsideImageIsRejected() {
+        ImageReadParam param = new ImageReadParam();
+        param.setSourceRegion(new Rectangle(WIDTH, 0, 4, 4));
+        assertThatThrownBy(() -> AvifImageReader.computeDecodeRegions(param, WIDTH, HEIGHT,
+            blank(4, 4), new Rectangle(), new Rectangle()))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static BufferedImage source() {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, 0xFF000000 | (y << 8) | x);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage blank(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, UNWRITTEN);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * 按 ImageReadParam 的定义计算结果：裁剪源区域，应用下采样偏移，getSubimage 后逐点下采样，
+     * 放到目标偏移处，超出目标图片的像素丢弃
+     */
+    private static BufferedImage reference(BufferedImage source, ImageReadParam param,
+                                           int destWidth, int destHeight) {
+        BufferedImage destination = blank(destWidth, destHeight);
+        Rectangle region = param.getSourceRegion().intersection(
+            new Rectangle(0, 0, source.getWidth(), source.getHeight()));
+        region.x += param.getSubsamplingXOffset();
+        region.y += param.getSubsamplingYOffset();
+        region.width -= param.getSubsamplingXOffset();
+        region.height -= param.getSubsamplingYOffset();
+        if (region.width <= 0 || region.height <= 0) {
+            return destination;
+        }
+        BufferedImage sub = source.getSubimage(region.x, region.y, region.width, region.height);
+        int xSub = param.getSourceXSubsampling();
+        int ySub = param.getSourceYSubsampling();
+        Point offset = param.getDestinationOffset();
+        for (int y = 0; y * ySub < sub.getHeight(); y++) {
+            for (int x = 0; x * xSub < sub.getWidth(); x++) {
+                int dx = offset.x + x;
+                int dy = offset.y + y;
+                if (dx >= 0 && dy >= 0 && dx < destWidth && dy < destHeight) {
+                    destination.setRGB(dx, dy, sub.getRGB(x * xSub, y * ySub));
+                }
+            }
+        }
+        return destination;
+    }
+
+    /**
+     * 与原生层 decodeRegion 相同的采样：输出尺寸由源区域按下采样向上取整，必须完全落在目标图片内
+     */
+    private static void decodeRegion(BufferedImage source, Rectangle srcRegion, int xSub, int ySub,
+                                     BufferedImage destination, int destX, int destY) {
+        int width = (srcRegion.width + xSub - 1) / xSub;
+        int height = (srcRegion.height + ySub - 1) / ySub;
+        assertThat(new Rectangle(0, 0, source.getWidth(), source.getHeight())
+            .contains(srcRegion)).isTrue();
+        BufferedImage target = destination.getSubimage(destX, destY, width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                target.setRGB(x, y, source.getRGB(srcRegion.x + x * xSub, srcRegion.y + y * ySub));
+            }
+        }
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertThat(Integer.toHexString(actual.getRGB(x, y)))
+                    .as("pixel (%d, %d)", x, y)
+                    .isEqualTo(Integer.toHexString(expected.getRGB(x, y)));
+            }
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.github.avifimageio;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
+
+class AvifMetadataConverterTest {
+
+    private static final String JPEG_FORMAT = "javax_imageio_jpeg_image_1.0";
+    private static final String PNG_FORMAT = "javax_imageio_png_1.0";
+    private static final String XMP = "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\"/>";
+    /** EXIF 方向 6：需要顺时针旋转 90 度显示（竖拍的照片） */
+    private static final byte[] EXIF = orientationExif(6);
+    private static final byte[] RGB_PROFILE = ICC_Profile.getInstance(ColorSpace.CS_LINEAR_RGB).getData();
+
+    @Test
+    void jpegExifWithOrientationIsPassedThrough() throws IOException {
+        IIOMetadata jpeg = jpegRoundTrip(false,
+            app(0xE1, concat(ascii("Exif\0\0"), EXIF)));
+        AvifMetadata metadata = AvifMetadataConverter.convert(jpeg, rgbImage());
+        assertThat(metadata).isNotNull();
+        // 原生层据此写入 irot/imir，EXIF 本身保持不变
+        assertThat(metadata.getExifData()).isEqualTo(EXIF);
+        assertThat(orientation(metadata.getExifData())).isEqualTo(6);
+        assertThat(metadata.getIccProfile()).isNull();
+        assertThat(metadata.getXmpData()).isNull();
+    }
+
+    @Test
+    void jpegXmp() throws IOException {
+        IIOMetadata jpeg = jpegRoundTrip(false,
+            app(0xE1, concat(ascii("http://ns.adobe.com/xap/1.0/\0"), ascii(XMP))),
+            app(0xE1, concat(ascii("Exif\0\0"), EXIF)));
+        AvifMetadata metadata = AvifMetadataConverter.convert(jpeg);
+        assertThat(new String(metadata.getXmpData(), StandardCharsets.UTF_8)).isEqualTo(XMP);
+        assertThat(metadata.getExifData()).isEqualTo(EXIF);
+    }
+
+    @Test
+    void jpegIccChunksAreReassembledInSequenceOrder() throws IOException {
+        // 没有 JFIF 段时 JDK 保留未解析的 APP2 段，按序号拼接而不是按出现顺序
+        int split = RGB_PROFILE.length / 2;
+        IIOMetadata jpeg = jpegRoundTrip(false,
+            app(0xE2, iccChunk(2, 2, Arrays.copyOfRange(RGB_PROFILE, split, RGB_PROFILE.length))),
+            app(0xE2, iccChunk(1, 2, Arrays.copyOfRange(RGB_PROFILE, 0, split))));
+        assertThat(AvifMetadataConverter.convert(jpeg).getIccProfile()).isEqualTo(RGB_PROFILE);
+    }
+
+    @Test
+    void jpegIccFromJfif() throws IOException {
+        // 有 JFIF 段时 JDK 将 ICC 合并为 app2ICC 节点
+        IIOMetadata jpeg = jpegRoundTrip(true,
+            app(0xE2, iccChunk(1, 1, RGB_PROFILE)));
+        IIOMetadataNode root = (IIOMetadataNode) jpeg.getAsTree(JPEG_FORMAT);
+        assertThat(root.getElementsByTagName("app2ICC").getLength()).isEqualTo(1);
+        assertThat(AvifMetadataConverter.convert(jpeg).getIccProfile()).isEqualTo(RGB_PROFILE);
+    }
+
+    @Test
+    void pngIccpIsInflated() throws IOException {
+        IIOMetadataNode iccp = new IIOMetadataNode("iCCP");
+        iccp.setAttribute("profileName", "linear");
+        iccp.setAttribute("compressionMethod", "deflate");
+        iccp.setUserObject(deflate(RGB_PROFILE));
+        IIOMetadata png = pngRoundTrip(iccp);
+        AvifMetadata metadata = AvifMetadataConverter.convert(png);
+        assertThat(metadata.getIccProfile()).isEqualTo(RGB_PROFILE);
+    }
+
+    @Test
+    void pngItxtXmpAndExif() throws IOException {
+        IIOMetadataNode itxt = new IIOMetadataNode("iTXt");
+        itxt.appendChild(itxtEntry("Comment", "not xmp"));
+        itxt.appendChild(itxtEntry("XML:com.adobe.xmp", XMP));
+        IIOMetadataNode chunks = new IIOMetadataNode("UnknownChunks");
+        IIOMetadataNode exif = new IIOMetadataNode("UnknownChunk");
+        exif.setAttribute("type", "eXIf");
+        exif.setUserObject(EXIF);
+        chunks.appendChild(exif);
+        IIOMetadata png = pngRoundTrip(itxt, chunks);
+        AvifMetadata metadata = AvifMetadataConverter.convert(png);
+        assertThat(new String(metadata.getXmpData(), StandardCharsets.UTF_8)).isEqualTo(XMP);
+        assertThat(metadata.getExifData()).isEqualTo(EXIF);
+        assertThat(orientation(metadata.getExifData())).isEqualTo(6);
+    }
+
+    @Test
+    void metadataWithoutSegmentsConvertsToNull() throws IOException {
+        assertThat(AvifMetadataConverter.convert(null)).isNull();
+        assertThat(AvifMetadataConverter.convert(jpegRoundTrip(true))).isNull();
+        assertThat(AvifMetadataConverter.convert(new AvifMetadata())).isNull();
+        AvifMetadata avif = new AvifMetadata(EXIF, null, null);
+        assertThat(AvifMetadataConverter.convert(avif)).isSameAs(avif);
+    }
+
+    @Test
+    void iccAppliesOnlyToUnconvertedPixels() {
+        byte[] gray = ICC_Profile.getInstance(ColorSpace.CS_GRAY).getData();
+        BufferedImage rgb = rgbImage();
+        BufferedImage grayImage = new BufferedImage(4, 4, BufferedImage.TYPE_BYTE_GRAY);
+        assertThat(AvifMetadataConverter.iccApplies(RGB_PROFILE, rgb)).isTrue();
+        assertThat(AvifMetadataConverter.iccApplies(gray, grayImage)).isTrue();
+        // 通道与编码的 4:0:0 或 RGB 不一致
+        assertThat(AvifMetadataConverter.iccApplies(RGB_PROFILE, grayImage)).isFalse();
+        assertThat(AvifMetadataConverter.iccApplies(gray, rgb)).isFalse();
+        // 像素处于其他 ICC 色彩空间时编码器写入图片自身的配置
+        ColorSpace linear = ColorSpace.getInstance(ColorSpace.CS_LINEAR_RGB);
+        BufferedImage profiled = new BufferedImage(new ComponentColorModel(linear, false, false,
+            Transparency.OPAQUE, DataBuffer.TYPE_BYTE),
+            new ComponentColorModel(linear, false, false, Transparency.OPAQUE,
+                DataBuffer.TYPE_BYTE).createCompatibleWritableRaster(4, 4), false, null);
+        assertThat(profiled.getColorModel().getColorSpace()).isInstanceOf(ICC_ColorSpace.class);
+        assertThat(AvifMetadataConverter.iccApplies(RGB_PROFILE, profiled)).isFalse();
+        assertThat(AvifMetadataConverter.iccApplies(new byte[19], rgb)).isFalse();
+    }
+
+    @Test
+    void inapplicableIccIsDropped() throws IOException {
+        IIOMetadata jpeg = jpegRoundTrip(false,
+            app(0xE2, iccChunk(1, 1, RGB_PROFILE)),
+            app(0xE1, concat(ascii("Exif\0\0"), EXIF)));
+        BufferedImage gray = new BufferedImage(4, 4, BufferedImage.TYPE_BYTE_GRAY);
+        AvifMetadata metadata = AvifMetadataConverter.convert(jpeg, gray);
+        assertThat(metadata.getIccProfile()).isNull();
+        assertThat(metadata.getExifData()).isEqualTo(EXIF);
+
+        IIOMetadata iccOnly = jpegRoundTrip(false, app(0xE2, iccChunk(1, 1, RGB_PROFILE)));
+        assertThat(AvifMetadataConverter.convert(iccOnly, gray)).isNull();
+        assertThat(AvifMetadataConverter.convert(iccOnly, rgbImage()).getIccProfile())
+            .isEqualTo(RGB_PROFILE);
+    }
+
+    @Test
+    void orientedJpegIsRotatedByIrot() throws IOException {
+        assumeThat(Avif.isAvailable()).isTrue();
+        IIOMetadata jpeg = jpegRoundTrip(false, app(0xE1, concat(ascii("Exif\0\0"), EXIF)));
+        BufferedImage image = new BufferedImage(16, 8, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageWriter writer = new AvifImageWriterSpi().createWriterInstance(null);
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, jpeg), null);
+        } finally {
+            writer.dispose();
+        }
+        // 方向 6 对应逆时针旋转 270 度（irot angle 3）
+        byte[] avif = out.toByteArray();
+        int irot = indexOf(avif, ascii("irot"));
+        assertThat(irot).isPositive();
+        assertThat(avif[irot + 4] & 3).isEqualTo(3);
+    }
+
+    private static BufferedImage rgbImage() {
+        return new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * 用 JDK JPEG 写入器写出带指定标记段的图片，再用 JDK 读取器读回元数据
+     *
+     * @param jfif 是否保留 JFIF 段
+     */
+    private static IIOMetadata jpegRoundTrip(boolean jfif, IIOMetadataNode... markers)
+            throws IOException {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_3BYTE_BGR);
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        IIOMetadata metadata = writer.getDefaultImageMetadata(
+            ImageTypeSpecifier.createFromRenderedImage(image), null);
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(JPEG_FORMAT);
+        IIOMetadataNode variety = (IIOMetadataNode) root.getElementsByTagName("JPEGvariety").item(0);
+        if (!jfif) {
+            while (variety.hasChildNodes()) {
+                variety.removeChild(variety.getFirstChild());
+            }
+        }
+        IIOMetadataNode sequence = (IIOMetadataNode) root.getElementsByTagName("markerSequence").item(0);
+        for (IIOMetadataNode marker : markers) {
+            sequence.insertBefore(marker, sequence.getFirstChild());
+        }
+        metadata.setFromTree(JPEG_FORMAT, root);
+        return roundTrip(writer, image, metadata);
+    }
+
+    /**
+     * 用 JDK PNG 写入器写出带指定块的图片，再用 JDK 读取器读回元数据
+     */
+    private static IIOMetadata pngRoundTrip(IIOMetadataNode... chunks) throws IOException {
+        BufferedImage image = rgbImage();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        IIOMetadata metadata = writer.getDefaultImageMetadata(
+            ImageTypeSpecifier.createFromRenderedImage(image), null);
+        IIOMetadataNode root = new IIOMetadataNode(PNG_FORMAT);
+        for (IIOMetadataNode chunk : chunks) {
+            root.appendChild(chunk);
+        }
+        metadata.mergeTree(PNG_FORMAT, root);
+        return roundTrip(writer, image, metadata);
+    }
+
+    private static IIOMetadata roundTrip(ImageWriter writer, BufferedImage image, IIOMetadata metadata)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, metadata), null);
+        } finally {
+            writer.dispose();
+        }
+        ImageReader reader = ImageIO.getImageReader(writer);
+        try (ImageInputStream stream = ImageIO.createImageInputStream(
+                new ByteArrayInputStream(out.toByteArray()))) {
+            reader.setInput(stream);
+            return reader.getImageMetadata(0);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private static IIOMetadataNode app(int markerTag, byte[] data) {
+        IIOMetadataNode marker = new IIOMetadataNode("unknown");
+        marker.setAttribute("MarkerTag", String.valueOf(markerTag));
+        marker.setUserObject(data);
+        return marker;
+    }
+
+    private static byte[] iccChunk(int sequence, int count, byte[] data) {
+        return concat(ascii("ICC_PROFILE\0"), new byte[] {(byte) sequence, (byte) count}, data);
+    }
+
+    private static IIOMetadataNode itxtEntry(String keyword, String text) {
+        IIOMetadataNode entry = new IIOMetadataNode("iTXtEntry");
+        entry.setAttribute("keyword", keyword);
+        entry.setAttribute("compressionFlag", "FALSE");
+        entry.setAttribute("compressionMethod", "0");
+        entry.setAttribute("languageTag", "");
+        entry.setAttribute("translatedKeyword", "");
+        entry.setAttribute("text", text);
+        return entry;
+    }
+
+    /**
+     * 只有一个 Orientation 项的大端 TIFF 结构（EXIF 数据从 TIFF 头开始）
+     */
+    private static byte[] orientationExif(int orientation) {
+        ByteBuffer tiff = ByteBuffer.allocate(26);
+        tiff.put(ascii("MM")).putShort((short) 42).putInt(8);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1)
+            .putShort((short) orientation).putShort((short) 0);
+        tiff.putInt(0);
+        return tiff.array();
+    }
+
+    /**
+     * 读取 {@link #orientationExif} 结构中第一个 IFD 的 Orientation 值
+     */
+    private static int orientation(byte[] exif) {
+        ByteBuffer tiff = ByteBuffer.wrap(exif);
+        int ifd = tiff.getInt(4);
+        int count = tiff.getShort(ifd) & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + 12 * i;
+            if ((tiff.getShort(entry) & 0xFFFF) == 0x0112) {
+                return tiff.getShort(entry + 8) & 0xFFFF;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
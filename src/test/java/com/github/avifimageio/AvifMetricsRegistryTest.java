@@ -0,0 +1,57 @@
+package com.github.avifimageio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AvifMetricsRegistryTest {
+
+    @Test
+    void nestedOperationsAreReportedOnce() {
+        List<AvifMetrics> reported = new CopyOnWriteArrayList<AvifMetrics>();
+        AvifMetricsListener listener = reported::add;
+        AvifMetricsRegistry.addListener(listener);
+        try {
+            AvifMetricsRegistry.Recording outer =
+                AvifMetricsRegistry.start(AvifMetrics.Operation.DECODE, null);
+            assertThat(outer).isNotNull();
+            // 外层记录进行中时，内部的会话解码不单独记录
+            assertThat(AvifMetricsRegistry.start(AvifMetrics.Operation.DECODE, null)).isNull();
+            AvifMetricsRegistry.finish(outer, 4, 4, 10, 64, null);
+            assertThat(reported).hasSize(1);
+
+            AvifMetricsRegistry.Recording next =
+                AvifMetricsRegistry.start(AvifMetrics.Operation.ENCODE, null);
+            assertThat(next).isNotNull();
+            AvifMetricsRegistry.finish(next, 4, 4, 64, 10, new IllegalStateException());
+            assertThat(reported).hasSize(2);
+            assertThat(reported.get(1).getOperation()).isEqualTo(AvifMetrics.Operation.ENCODE);
+        } finally {
+            AvifMetricsRegistry.removeListener(listener);
+        }
+    }
+
+    @Test
+    void otherThreadsAreNotAffected() throws InterruptedException {
+        AvifMetricsListener listener = metrics -> { };
+        AvifMetricsRegistry.addListener(listener);
+        try {
+            AvifMetricsRegistry.Recording outer =
+                AvifMetricsRegistry.start(AvifMetrics.Operation.DECODE, null);
+            final AvifMetricsRegistry.Recording[] other = new AvifMetricsRegistry.Recording[1];
+            Thread thread = new Thread(() -> {
+                other[0] = AvifMetricsRegistry.start(AvifMetrics.Operation.DECODE, null);
+                AvifMetricsRegistry.finish(other[0], 1, 1, 1, 4, null);
+            });
+            thread.start();
+            thread.join();
+            assertThat(other[0]).isNotNull();
+            AvifMetricsRegistry.finish(outer, 1, 1, 1, 4, null);
+        } finally {
+            AvifMetricsRegistry.removeListener(listener);
+        }
+    }
+}
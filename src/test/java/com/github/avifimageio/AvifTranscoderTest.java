@@ -0,0 +1,122 @@
+package com.github.avifimageio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AvifTranscoderTest {
+
+    private static final Path OUTPUT = Paths.get("out");
+
+    @Test
+    void outputPathReplacesExtension() {
+        assertThat(AvifTranscoder.outputPath(Paths.get("photo.jpg"), OUTPUT))
+            .isEqualTo(OUTPUT.resolve("photo.avif"));
+        assertThat(AvifTranscoder.outputPath(Paths.get("PHOTO.JPEG"), OUTPUT))
+            .isEqualTo(OUTPUT.resolve("PHOTO.avif"));
+        // 只替换最后一个扩展名
+        assertThat(AvifTranscoder.outputPath(Paths.get("archive.tar.png"), OUTPUT))
+            .isEqualTo(OUTPUT.resolve("archive.tar.avif"));
+        assertThat(AvifTranscoder.outputPath(Paths.get("noextension"), OUTPUT))
+            .isEqualTo(OUTPUT.resolve("noextension.avif"));
+    }
+
+    @Test
+    void outputPathKeepsSubdirectories() {
+        Path relative = Paths.get("2024", "trip", "beach.png");
+        assertThat(AvifTranscoder.outputPath(relative, OUTPUT))
+            .isEqualTo(OUTPUT.resolve("2024").resolve("trip").resolve("beach.avif"));
+    }
+
+    @Test
+    void parseDefaults() {
+        AvifTranscoder.Arguments arguments = AvifTranscoder.Arguments.parse(new String[] {"in", "out"});
+        assertThat(arguments.quality).isEqualTo(AvifEncoderOptions.DEFAULT_QUALITY);
+        assertThat(arguments.speed).isEqualTo(AvifEncoderOptions.DEFAULT_SPEED);
+        assertThat(arguments.jobs).isEqualTo(AvifBatch.DEFAULT_CORE_BUDGET);
+        assertThat(arguments.maxMemory).isEqualTo(AvifTranscoder.DEFAULT_MAX_IN_FLIGHT_BYTES);
+        assertThat(arguments.lossless).isFalse();
+        assertThat(arguments.keepMetadata).isTrue();
+        assertThat(arguments.overwrite).isFalse();
+        assertThat(arguments.help).isFalse();
+        assertThat(arguments.inputDir).isEqualTo(Paths.get("in"));
+        assertThat(arguments.outputDir).isEqualTo(Paths.get("out"));
+    }
+
+    @Test
+    void parseShortOptions() {
+        AvifTranscoder.Arguments arguments = AvifTranscoder.Arguments.parse(
+            new String[] {"-q", "80", "in", "-s", "3", "-j", "2", "-m", "64", "out"});
+        assertThat(arguments.quality).isEqualTo(80);
+        assertThat(arguments.speed).isEqualTo(3);
+        assertThat(arguments.jobs).isEqualTo(2);
+        assertThat(arguments.maxMemory).isEqualTo(64L * 1024 * 1024);
+        assertThat(arguments.inputDir).isEqualTo(Paths.get("in"));
+        assertThat(arguments.outputDir).isEqualTo(Paths.get("out"));
+    }
+
+    @Test
+    void parseLongOptionsAndFlags() {
+        AvifTranscoder.Arguments arguments = AvifTranscoder.Arguments.parse(new String[] {
+            "--quality", "90", "--speed", "8", "--jobs", "4", "--max-memory", "4096",
+            "--lossless", "--no-metadata", "--overwrite", "in", "out"});
+        assertThat(arguments.quality).isEqualTo(90);
+        assertThat(arguments.speed).isEqualTo(8);
+        assertThat(arguments.jobs).isEqualTo(4);
+        // MiB 换算为字节时不溢出 int
+        assertThat(arguments.maxMemory).isEqualTo(4096L * 1024 * 1024);
+        assertThat(arguments.lossless).isTrue();
+        assertThat(arguments.keepMetadata).isFalse();
+        assertThat(arguments.overwrite).isTrue();
+    }
+
+    @Test
+    void helpIgnoresRemainingArguments() {
+        assertThat(AvifTranscoder.Arguments.parse(new String[] {"--help", "--bogus"}).help).isTrue();
+        assertThat(AvifTranscoder.Arguments.parse(new String[] {"-h"}).help).isTrue();
+    }
+
+    @Test
+    void parseRejectsInvalidArguments() {
+        assertInvalid("Unknown option: --fast", "--fast", "in", "out");
+        assertInvalid("Missing value for -q", "in", "out", "-q");
+        assertInvalid("Invalid value for --speed: fast", "--speed", "fast", "in", "out");
+        assertInvalid("Expected an input and an output directory", "in");
+        assertInvalid("Expected an input and an output directory", "in", "out", "extra");
+    }
+
+    @Test
+    void runPrintsUsageForHelp() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int exitCode = AvifTranscoder.run(new String[] {"--help"},
+            new PrintStream(out, true), new PrintStream(err, true));
+        assertThat(exitCode).isZero();
+        assertThat(out.toString()).startsWith("Usage: ");
+        assertThat(err.size()).isZero();
+    }
+
+    @Test
+    void runRejectsMissingInputDirectory(@TempDir Path directory) throws IOException {
+        Path file = Files.createFile(directory.resolve("input.jpg"));
+        String[] args = {file.toString(), directory.resolve("out").toString()};
+        assertThatThrownBy(() -> AvifTranscoder.run(args, System.out, System.err))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Not a directory: " + file);
+    }
+
+    private static void assertInvalid(String message, String... args) {
+        assertThatThrownBy(() -> AvifTranscoder.Arguments.parse(args))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage(message);
+    }
+}
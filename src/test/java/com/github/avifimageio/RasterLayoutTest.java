@@ -0,0 +1,136 @@
+package com.github.avifimageio;
+
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.IntRange;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteOrder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RasterLayoutTest {
+
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    @Test
+    void packedIntTypes() {
+        RasterLayout rgb = RasterLayout.of(new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB));
+        assertThat(rgb.format).isEqualTo(LITTLE_ENDIAN ? RasterLayout.FORMAT_BGRA : RasterLayout.FORMAT_ARGB);
+        assertThat(rgb.flags).isEqualTo(RasterLayout.FLAG_IGNORE_ALPHA);
+        assertThat(rgb.bytesPerElement).isEqualTo(4);
+        assertThat(rgb.scanlineStride).isEqualTo(4);
+
+        RasterLayout argb = RasterLayout.of(new BufferedImage(4, 3, BufferedImage.TYPE_INT_ARGB));
+        assertThat(argb.format).isEqualTo(rgb.format);
+        assertThat(argb.flags).isZero();
+
+        RasterLayout pre = RasterLayout.of(new BufferedImage(4, 3, BufferedImage.TYPE_INT_ARGB_PRE));
+        assertThat(pre.flags).isEqualTo(RasterLayout.FLAG_PREMULTIPLIED);
+
+        RasterLayout bgr = RasterLayout.of(new BufferedImage(4, 3, BufferedImage.TYPE_INT_BGR));
+        assertThat(bgr.format).isEqualTo(LITTLE_ENDIAN ? RasterLayout.FORMAT_RGBA : RasterLayout.FORMAT_ABGR);
+    }
+
+    @Test
+    void interleavedByteTypes() {
+        RasterLayout bgr = RasterLayout.of(new BufferedImage(4, 3, BufferedImage.TYPE_3BYTE_BGR));
+        assertThat(bgr.format).isEqualTo(RasterLayout.FORMAT_BGR);
+        assertThat(bgr.scanlineStride).isEqualTo(12);
+        assertThat(bgr.depth).isEqualTo(8);
+
+        RasterLayout abgr = RasterLayout.of(new BufferedImage(4, 3, BufferedImage.TYPE_4BYTE_ABGR));
+        assertThat(abgr.format).isEqualTo(RasterLayout.FORMAT_ABGR);
+
+        RasterLayout abgrPre = RasterLayout.of(new BufferedImage(4, 3, BufferedImage.TYPE_4BYTE_ABGR_PRE));
+        assertThat(abgrPre.flags).isEqualTo(RasterLayout.FLAG_PREMULTIPLIED);
+    }
+
+    @Test
+    void ushortInterleaved() {
+        BufferedImage image = RasterLayout.ushortType(true).createBufferedImage(5, 2);
+        RasterLayout layout = RasterLayout.of(image);
+        assertThat(layout.format).isEqualTo(RasterLayout.FORMAT_RGBA);
+        assertThat(layout.depth).isEqualTo(16);
+        assertThat(layout.bytesPerElement).isEqualTo(2);
+    }
+
+    @Test
+    void unsupportedPackedMasks() {
+        assertThat(RasterLayout.of(new BufferedImage(4, 3, BufferedImage.TYPE_USHORT_565_RGB))).isNull();
+        ColorModel cm = new DirectColorModel(32, 0x0000FF00, 0x00FF0000, 0xFF000000, 0x000000FF);
+        WritableRaster raster = cm.createCompatibleWritableRaster(4, 3);
+        assertThat(RasterLayout.of(new BufferedImage(cm, raster, false, null))).isNull();
+    }
+
+    @Test
+    void grayLayouts() {
+        RasterLayout gray = RasterLayout.ofGray(new BufferedImage(4, 3, BufferedImage.TYPE_BYTE_GRAY));
+        assertThat(gray.format).isEqualTo(RasterLayout.FORMAT_GRAY);
+        assertThat(gray.depth).isEqualTo(8);
+
+        RasterLayout gray16 = RasterLayout.ofGray(new BufferedImage(4, 3, BufferedImage.TYPE_USHORT_GRAY));
+        assertThat(gray16.depth).isEqualTo(16);
+
+        assertThat(RasterLayout.of(new BufferedImage(4, 3, BufferedImage.TYPE_BYTE_GRAY))).isNull();
+        assertThat(RasterLayout.ofGray(new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB))).isNull();
+        assertThat(RasterLayout.ofProfiled(new BufferedImage(4, 3, BufferedImage.TYPE_BYTE_GRAY))).isNull();
+    }
+
+    @Test
+    void nonSrgbColorSpaceIsNotReadDirectlyAsSrgb() {
+        BufferedImage linear = withColorSpace(ColorSpace.getInstance(ColorSpace.CS_LINEAR_RGB));
+        assertThat(RasterLayout.of(linear)).isNull();
+        assertThat(RasterLayout.ofProfiled(linear)).isNotNull();
+
+        ICC_Profile profile = ICC_Profile.getInstance(ColorSpace.CS_LINEAR_RGB);
+        BufferedImage icc = withColorSpace(new ICC_ColorSpace(profile));
+        assertThat(RasterLayout.of(icc)).isNull();
+        assertThat(RasterLayout.ofProfiled(icc).format).isEqualTo(RasterLayout.FORMAT_RGB);
+    }
+
+    @Test
+    void srgbIsNotProfiled() {
+        assertThat(RasterLayout.ofProfiled(new BufferedImage(4, 3, BufferedImage.TYPE_3BYTE_BGR))).isNull();
+    }
+
+    @Property
+    void subimageOffsetPointsAtFirstPixel(@ForAll @IntRange(min = 0, max = 9) int x,
+                                          @ForAll @IntRange(min = 0, max = 7) int y,
+                                          @ForAll @IntRange(min = 1, max = 6) int width,
+                                          @ForAll @IntRange(min = 1, max = 4) int height) {
+        BufferedImage image = new BufferedImage(16, 12, BufferedImage.TYPE_INT_ARGB);
+        for (int row = 0; row < 12; row++) {
+            for (int col = 0; col < 16; col++) {
+                image.setRGB(col, row, 0xFF000000 | (row << 8) | col);
+            }
+        }
+        BufferedImage sub = image.getSubimage(x, y, width, height);
+        RasterLayout layout = RasterLayout.of(sub);
+        int[] data = (int[]) layout.data;
+        assertThat(layout.width).isEqualTo(width);
+        assertThat(layout.height).isEqualTo(height);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                assertThat(data[layout.offset + row * layout.scanlineStride + col])
+                    .isEqualTo(sub.getRGB(col, row));
+            }
+        }
+    }
+
+    private static BufferedImage withColorSpace(ColorSpace colorSpace) {
+        ColorModel cm = new ComponentColorModel(colorSpace, false, false,
+            Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        return new BufferedImage(cm, cm.createCompatibleWritableRaster(4, 3), false, null);
+    }
+}